@@ -0,0 +1,245 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Measures the configuration cost of the plugins in a generated build with many subprojects. Every
+ * subproject applies either the compiler plugin, the language plugin, or the compiler and the native
+ * image plugin. Three scenarios are measured with and without the configuration cache:</p>
+ *
+ * <ul>
+ *     <li>{@code configuration} - running {@code help}, i.e. configuring all projects,</li>
+ *     <li>{@code noop} - running {@code startScripts} when everything is up-to-date,</li>
+ *     <li>{@code startScripts} - generating all start scripts after they were deleted.</li>
+ * </ul>
+ *
+ * <p>Configured using system properties (see the {@code benchmark} task): {@code benchmark.projects},
+ * {@code benchmark.iterations}, {@code benchmark.warmups}, {@code benchmark.dir}, {@code benchmark.output}
+ * and optionally {@code benchmark.baseline} with {@code benchmark.tolerance}: when a baseline (a previous
+ * output) is given, the benchmark fails if a median is slower than the baseline by more than the
+ * tolerance (default 0.2, i.e. 20%).</p>
+ */
+public class PluginOverheadBenchmark {
+
+    private static final Pattern GRADLE_VERSION = Pattern.compile("^Gradle (\\d+)\\.(\\d+)", Pattern.MULTILINE);
+
+    private final File projectDir;
+    private final int projects;
+    private final int iterations;
+    private final int warmups;
+
+    private PluginOverheadBenchmark(File projectDir, int projects, int iterations, int warmups) {
+        this.projectDir = projectDir;
+        this.projects = projects;
+        this.iterations = iterations;
+        this.warmups = warmups;
+    }
+
+    public static void main(String[] args) throws IOException {
+        PluginOverheadBenchmark benchmark = new PluginOverheadBenchmark(
+                new File(System.getProperty("benchmark.dir", "build/benchmark-project")),
+                Integer.getInteger("benchmark.projects", 200),
+                Integer.getInteger("benchmark.iterations", 5),
+                Integer.getInteger("benchmark.warmups", 1)
+        );
+        File output = new File(System.getProperty("benchmark.output", "build/reports/benchmark/plugin-overhead.json"));
+        Map<String, Object> results = benchmark.run();
+        if (!output.getAbsoluteFile().getParentFile().isDirectory() && !output.getAbsoluteFile().getParentFile().mkdirs()) {
+            throw new IllegalStateException("Cannot create directory for " + output);
+        }
+        Files.write(output.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(results)).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + output.getAbsolutePath());
+
+        String baseline = System.getProperty("benchmark.baseline");
+        if (baseline != null && !baseline.isEmpty()) {
+            double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.2"));
+            List<String> regressions = regressions(readJson(new File(baseline)), results, tolerance);
+            for (String regression : regressions) {
+                System.err.println("REGRESSION: " + regression);
+            }
+            if (!regressions.isEmpty()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private Map<String, Object> run() throws IOException {
+        generateBuild();
+        String version = gradleVersion();
+        boolean configurationCache = supportsConfigurationCache(version);
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("gradleVersion", version);
+        results.put("projects", this.projects);
+        results.put("iterations", this.iterations);
+        List<Map<String, Object>> scenarios = new ArrayList<>();
+        for (boolean cache : Arrays.asList(false, true)) {
+            if (cache && !configurationCache) {
+                System.out.println("Gradle " + version + " does not support the configuration cache, skipping.");
+                continue;
+            }
+            scenarios.add(measure("configuration", cache, () -> {}, "help"));
+            scenarios.add(measure("noop", cache, () -> {}, "startScripts"));
+            scenarios.add(measure("startScripts", cache, this::deleteScripts, "startScripts"));
+        }
+        results.put("scenarios", scenarios);
+        return results;
+    }
+
+    private interface Setup {
+        void run() throws IOException;
+    }
+
+    private Map<String, Object> measure(String scenario, boolean cache, Setup setup, String... tasks) throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(tasks));
+        if (cache) {
+            arguments.add("--configuration-cache");
+            // Report incompatibilities of the plugins, but still measure the build.
+            arguments.add("--configuration-cache-problems=warn");
+        }
+        List<Double> millis = new ArrayList<>();
+        for (int i = 0; i < this.warmups + this.iterations; i++) {
+            setup.run();
+            long start = System.nanoTime();
+            runner(arguments).build();
+            double elapsed = (System.nanoTime() - start) / 1_000_000.0;
+            if (i >= this.warmups) millis.add(elapsed);
+        }
+        List<Double> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        double mean = 0;
+        for (double value : millis) mean += value / millis.size();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", scenario);
+        result.put("configurationCache", cache);
+        result.put("millis", millis);
+        result.put("mean", mean);
+        result.put("median", sorted.get(sorted.size() / 2));
+        result.put("min", sorted.get(0));
+        System.out.println(String.format(Locale.ROOT, "%-14s cache=%-5s median %8.1f ms", scenario, cache, sorted.get(sorted.size() / 2)));
+        return result;
+    }
+
+    private GradleRunner runner(List<String> arguments) {
+        GradleRunner runner = GradleRunner.create();
+        runner.withPluginClasspath();
+        runner.withProjectDir(this.projectDir);
+        runner.withArguments(arguments);
+        String version = System.getProperty("benchmark.gradleVersion");
+        if (version != null && !version.isEmpty()) {
+            runner.withGradleVersion(version);
+        }
+        return runner;
+    }
+
+    private String gradleVersion() {
+        BuildResult result = runner(Collections.singletonList("--version")).build();
+        Matcher matcher = GRADLE_VERSION.matcher(result.getOutput());
+        return matcher.find() ? matcher.group(1) + "." + matcher.group(2) : "unknown";
+    }
+
+    static boolean supportsConfigurationCache(String version) {
+        String[] parts = version.split("\\.");
+        if (parts.length < 2) return false;
+        int major = Integer.parseInt(parts[0]);
+        return major > 6 || (major == 6 && Integer.parseInt(parts[1]) >= 6);
+    }
+
+    /* One third compiler projects, one third language projects and one third native image projects. */
+    private void generateBuild() throws IOException {
+        if (this.projectDir.exists()) {
+            deleteRecursively(this.projectDir);
+        }
+        StringBuilder settings = new StringBuilder("rootProject.name = 'plugin-overhead'\n");
+        for (int i = 0; i < this.projects; i++) {
+            String name = String.format(Locale.ROOT, "p%03d", i);
+            settings.append("include '").append(name).append("'\n");
+            StringBuilder build = new StringBuilder("plugins {\n");
+            switch (i % 3) {
+                case 0:
+                    build.append("    id 'java'\n    id 'application'\n    id 'org.graalvm.plugin.compiler'\n}\n");
+                    build.append("graal { version '20.1.0' }\n");
+                    break;
+                case 1:
+                    build.append("    id 'java-library'\n    id 'application'\n    id 'org.graalvm.plugin.truffle-language'\n}\n");
+                    build.append("graal {\n    version '20.1.0'\n    languageId 'bench.").append(name)
+                            .append("'\n    languageName '").append(name).append("'\n}\n");
+                    break;
+                default:
+                    build.append("    id 'java'\n    id 'application'\n    id 'org.graalvm.plugin.compiler'\n    id 'org.graalvm.plugin.native-image'\n}\n");
+                    build.append("graal { version '20.1.0' }\n");
+            }
+            build.append("application { mainClassName 'bench.Main' }\n");
+            write(new File(this.projectDir, name + "/build.gradle"), build.toString());
+        }
+        write(new File(this.projectDir, "settings.gradle"), settings.toString());
+        write(new File(this.projectDir, "build.gradle"), "subprojects {\n    repositories { mavenCentral() }\n}\n");
+    }
+
+    private void deleteScripts() throws IOException {
+        File[] children = this.projectDir.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            File scripts = new File(child, "build/scripts");
+            if (scripts.exists()) deleteRecursively(scripts);
+        }
+    }
+
+    /* Scenarios whose median is slower than the baseline median by more than the tolerance. */
+    @SuppressWarnings("unchecked")
+    static List<String> regressions(Map<String, Object> baseline, Map<String, Object> results, double tolerance) {
+        Map<String, Double> expected = new LinkedHashMap<>();
+        for (Object item : (List<Object>) baseline.get("scenarios")) {
+            Map<String, Object> scenario = (Map<String, Object>) item;
+            expected.put(scenario.get("scenario") + "/" + scenario.get("configurationCache"), ((Number) scenario.get("median")).doubleValue());
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Object item : (List<Object>) results.get("scenarios")) {
+            Map<String, Object> scenario = (Map<String, Object>) item;
+            String key = scenario.get("scenario") + "/" + scenario.get("configurationCache");
+            Double before = expected.get(key);
+            double now = ((Number) scenario.get("median")).doubleValue();
+            if (before != null && now > before * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: median %.1f ms, baseline %.1f ms", key, now, before));
+            }
+        }
+        return regressions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readJson(File file) throws IOException {
+        return (Map<String, Object>) new JsonSlurper().parseText(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IllegalStateException("Cannot create directory " + file.getParent());
+        }
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+}
@@ -22,6 +22,7 @@ import static org.junit.Assert.*;
      - [Hotspot] `run` and `runCustom` can be executed and do not fail due to missing Graal
      - application scripts contain Graal compiler initialization
      - application scripts can be executed and do not fail due to missing Graal
+     - `verifyTruffleRuntime` confirms that the optimizing Truffle runtime is active
  */
 public class CompilerFunctionalTest extends AbstractFunctionalTest {
 
@@ -47,6 +48,14 @@ public class CompilerFunctionalTest extends AbstractFunctionalTest {
         cleanProject();
     }
 
+    @Test
+    public void verifiesTruffleRuntime() {
+        cleanProject();
+        BuildResult result = runBuild("verifyTruffleRuntime");
+        assertTrue(result.getOutput().contains("Polyglot engine: Graal"));
+        cleanProject();
+    }
+
     @Test
     public void addsCompilerToApplicationScripts() throws IOException, InterruptedException {
         cleanProject();
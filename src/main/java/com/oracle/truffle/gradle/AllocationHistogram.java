@@ -0,0 +1,193 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Aggregates the histogram printed by the Truffle memory tracer ({@code --memtracer.Output=histogram}
+ * or {@code typehistogram}) and checks it against allocation budgets (see
+ * {@link GraalTaskOptions#allocationBudget(String, long)}).</p>
+ */
+final class AllocationHistogram {
+
+    static final String LOCATIONS = "locations";
+    static final String TYPES = "types";
+
+    // `Location Histogram with Allocation Counts. Recorded a total of 5 allocations.`
+    private static final Pattern TOTAL = Pattern.compile("Recorded a total of (\\d+) allocations");
+    private static final Pattern COUNT = Pattern.compile("^\\s*(\\d+)");
+
+    static final class Entry {
+
+        final String name;
+        final String location;     // null in type histograms
+        long count;
+
+        Entry(String name, String location) {
+            this.name = name;
+            this.location = location;
+        }
+
+        String key() {
+            return location == null ? name : name + " (" + location + ")";
+        }
+
+        boolean matches(String pattern) {
+            return name.contains(pattern) || (location != null && location.contains(pattern));
+        }
+
+    }
+
+    static final class Budget {
+
+        final String name;      // null for the total budget
+        final long limit;
+        final long actual;
+
+        Budget(String name, long limit, long actual) {
+            this.name = name;
+            this.limit = limit;
+            this.actual = actual;
+        }
+
+        boolean isExceeded() {
+            return actual > limit;
+        }
+
+        @Override
+        public String toString() {
+            return (name == null ? "total" : "'" + name + "'") + ": " + actual + " allocations (budget " + limit + ")";
+        }
+
+    }
+
+    final String histogram;
+    long total;
+    final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long recorded = -1;
+    private long sum;
+
+    AllocationHistogram(String histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * <p>Parse the tracer output. Rows are {@code name | self count | ...} in type histograms and
+     * {@code name | self count | total count | location} in location histograms. Only self counts are used,
+     * so that nested calls are not counted twice. Rows with the same key (e.g. from several contexts) are summed.</p>
+     */
+    static AllocationHistogram parse(String histogram, List<String> lines) {
+        AllocationHistogram result = new AllocationHistogram(histogram);
+        for (String line : lines) {
+            result.accept(line);
+        }
+        return result.finish();
+    }
+
+    /* Add one line of the tracer output (see parse), so that the output can be parsed while it is printed. */
+    void accept(String line) {
+        Matcher total = TOTAL.matcher(line);
+        if (total.find()) {
+            recorded = Math.max(recorded, 0) + Long.parseLong(total.group(1));
+            return;
+        }
+        String[] cells = line.split("\\|");
+        if (cells.length < 2) return;
+        Matcher count = COUNT.matcher(cells[1]);
+        if (!count.find()) return;    // header or separator
+        String location = LOCATIONS.equals(histogram) && cells.length >= 4 ? cells[cells.length - 1].trim() : null;
+        Entry row = new Entry(cells[0].trim(), location);
+        Entry entry = entries.computeIfAbsent(row.key(), key -> row);
+        long value = Long.parseLong(count.group(1));
+        entry.count += value;
+        sum += value;
+    }
+
+    /* Compute the total after the last line. */
+    AllocationHistogram finish() {
+        total = recorded >= 0 ? recorded : sum;
+        return this;
+    }
+
+    /**
+     * <p>Evaluate the total budget (if not null) and the budgets of matching entries.</p>
+     */
+    List<Budget> check(Long totalBudget, Map<String, Long> budgets) {
+        List<Budget> result = new ArrayList<>();
+        if (totalBudget != null) {
+            result.add(new Budget(null, totalBudget, total));
+        }
+        for (Map.Entry<String, Long> budget : budgets.entrySet()) {
+            long actual = 0;
+            for (Entry entry : entries.values()) {
+                if (entry.matches(budget.getKey())) actual += entry.count;
+            }
+            result.add(new Budget(budget.getKey(), budget.getValue(), actual));
+        }
+        return result;
+    }
+
+    /**
+     * <p>Write {@code allocations.md} and {@code allocations.json} (entries sorted by count) into the given directory.</p>
+     */
+    void write(List<Budget> budgets, File dir) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+
+        StringBuilder table = new StringBuilder();
+        table.append("Allocations by ").append(LOCATIONS.equals(histogram) ? "source location" : "type")
+                .append(": ").append(total).append(" in total\n\n");
+        table.append("| ").append(LOCATIONS.equals(histogram) ? "Root | Location" : "Type").append(" | Allocations |\n");
+        table.append(LOCATIONS.equals(histogram) ? "|---|---|---|\n" : "|---|---|\n");
+        List<Map<String, Object>> jsonEntries = new ArrayList<>();
+        for (Entry entry : sorted) {
+            table.append("| ").append(entry.name);
+            if (LOCATIONS.equals(histogram)) table.append(" | ").append(entry.location == null ? "" : entry.location);
+            table.append(" | ").append(entry.count).append(" |\n");
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("name", entry.name);
+            if (entry.location != null) json.put("location", entry.location);
+            json.put("count", entry.count);
+            jsonEntries.add(json);
+        }
+        List<Map<String, Object>> jsonBudgets = new ArrayList<>();
+        if (!budgets.isEmpty()) {
+            table.append("\n| Budget | Allocations | Limit | Status |\n|---|---|---|---|\n");
+        }
+        for (Budget budget : budgets) {
+            table.append("| ").append(budget.name == null ? "total" : budget.name)
+                    .append(" | ").append(budget.actual)
+                    .append(" | ").append(budget.limit)
+                    .append(" | ").append(budget.isExceeded() ? "exceeded" : "ok")
+                    .append(" |\n");
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("name", budget.name);
+            json.put("limit", budget.limit);
+            json.put("actual", budget.actual);
+            json.put("exceeded", budget.isExceeded());
+            jsonBudgets.add(json);
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("histogram", histogram);
+        json.put("total", total);
+        json.put("entries", jsonEntries);
+        json.put("budgets", jsonBudgets);
+        Files.write(new File(dir, "allocations.md").toPath(), table.toString().getBytes(Charset.defaultCharset()));
+        Files.write(
+                new File(dir, "allocations.json").toPath(),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(Charset.defaultCharset())
+        );
+    }
+
+}
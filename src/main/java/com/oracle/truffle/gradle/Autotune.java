@@ -0,0 +1,384 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A task prototype which runs a {@code JavaExec} benchmark workload with every configuration of a search
+ * space of Truffle engine options and JVM options, ranks the configurations by steady state throughput and
+ * warmup, and writes the JVM arguments of the best one to the tuned settings file
+ * ({@code graal { tuningFile ... }}, {@code graal-tuning.args} in the project directory by default). When the
+ * file exists, its arguments are added to the {@code run} task, to {@code Test} tasks and to the start scripts of
+ * the distributions.</p>
+ *
+ * {@code
+ * task autotune(type: Autotune) {
+ *     // The JavaExec task whose main class, classpath and arguments are used as the workload.
+ *     workload runBenchmark
+ *     // Truffle engine options (-Dpolyglot.engine.<name>=<value>).
+ *     engineOption 'CompilationThreshold', 100, 1000, 3000
+ *     engineOption 'InliningNodeBudget', 3000, 6000
+ *     engineOption 'CompilerThreads', 1, 2, 4
+ *     // JVM options, every value is a space separated list of arguments ('' keeps the JVM default).
+ *     jvmOption 'gc', '', '-XX:+UseParallelGC'
+ *     jvmOption 'heap', '-Xms512m -Xmx512m', '-Xms2g -Xmx2g'
+ *     // At most this many configurations are measured, a reproducible sample of larger spaces (default 32).
+ *     maxConfigurations 24
+ *     // Number of JVM forks per configuration (default 2).
+ *     forks 3
+ *     // Number of forks running at the same time (default is half of the available cores).
+ *     parallelForks 4
+ *     // Weight of the first iteration in the score, the rest is the steady state (default 0.25).
+ *     warmupWeight 0.5
+ * }
+ * }
+ *
+ * <p>The ranking ({@code report.md} and {@code report.json} in {@code build/reports/autotune/<task>}) includes
+ * the workload without any extra arguments as a baseline. Workloads which do not print iteration times are
+ * ranked by their fork time.</p>
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class Autotune extends DefaultTask {
+
+    private final Property<JavaExec> workload = getProject().getObjects().property(JavaExec.class);
+    private final TuningSpace space = new TuningSpace();
+    private final Property<Integer> maxConfigurations = getProject().getObjects().property(Integer.class);
+    private final Property<Integer> forks = getProject().getObjects().property(Integer.class);
+    private final Property<Integer> parallelForks = getProject().getObjects().property(Integer.class);
+    private final Property<Double> warmupWeight = getProject().getObjects().property(Double.class);
+    private final Property<String> iterationPattern = getProject().getObjects().property(String.class);
+    private final RegularFileProperty settingsFile = getProject().getObjects().fileProperty();
+    private final DirectoryProperty reportDir = getProject().getObjects().directoryProperty();
+
+    public Autotune() {
+        this.maxConfigurations.set(32);
+        this.forks.set(2);
+        this.parallelForks.set(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        this.warmupWeight.set(0.25);
+        this.iterationPattern.set(WorkloadRun.DEFAULT_ITERATION_PATTERN);
+        this.settingsFile.fileProvider(getProject().provider(() -> GraalExtension.initInProject(getProject()).getTuningFile()));
+        this.reportDir.set(new File(getProject().getBuildDir(), "reports/autotune/" + getName()));
+        this.setGroup("graal");
+        // Benchmark results are never up-to-date.
+        this.getOutputs().upToDateWhen(it -> false);
+    }
+
+    /**
+     * Set the {@code JavaExec} task which is used as the benchmark workload.
+     *
+     * @param task Workload task.
+     */
+    public void setWorkload(JavaExec task) {
+        this.workload.set(task);
+        this.dependsOn(task.getTaskDependencies());
+    }
+
+    @Internal
+    public JavaExec getWorkload() {
+        return this.workload.getOrNull();
+    }
+
+    /**
+     * Add a Truffle engine option to the search space.
+     *
+     * @param name Option name without the {@code engine.} prefix, e.g. {@code CompilationThreshold}.
+     * @param values Tried values.
+     */
+    public void engineOption(String name, Object... values) {
+        List<String> args = new ArrayList<>();
+        for (Object value : values) {
+            args.add("-Dpolyglot.engine." + name + "=" + value);
+        }
+        this.space.add(name, args);
+    }
+
+    /**
+     * Add JVM options to the search space.
+     *
+     * @param name Name of the dimension used in the report, e.g. {@code gc}.
+     * @param values Tried values, each a space separated list of JVM arguments ({@code ''} for none).
+     */
+    public void jvmOption(String name, String... values) {
+        this.space.add(name, Arrays.asList(values));
+    }
+
+    /**
+     * @return Dimensions of the search space mapped to their tried values (JVM arguments).
+     */
+    @Input
+    public Map<String, List<String>> getSearchSpace() {
+        return this.space.getDimensions();
+    }
+
+    public void setMaxConfigurations(int max) {
+        this.maxConfigurations.set(max);
+    }
+
+    /**
+     * @return Maximal number of measured configurations (besides the baseline).
+     */
+    @Input
+    public int getMaxConfigurations() {
+        return this.maxConfigurations.get();
+    }
+
+    public void setForks(int forks) {
+        this.forks.set(forks);
+    }
+
+    /**
+     * @return Number of JVM forks executed for every configuration.
+     */
+    @Input
+    public int getForks() {
+        return this.forks.get();
+    }
+
+    public void setParallelForks(int parallelForks) {
+        this.parallelForks.set(parallelForks);
+    }
+
+    /**
+     * @return Maximal number of forks running at the same time.
+     */
+    @Internal
+    public int getParallelForks() {
+        return this.parallelForks.get();
+    }
+
+    public void setWarmupWeight(double weight) {
+        if (weight < 0 || weight > 1) {
+            throw new IllegalArgumentException("Warmup weight must be between 0 and 1, got " + weight + ".");
+        }
+        this.warmupWeight.set(weight);
+    }
+
+    /**
+     * @return Weight of the first iteration in the score of a configuration.
+     */
+    @Input
+    public double getWarmupWeight() {
+        return this.warmupWeight.get();
+    }
+
+    public void setIterationPattern(String pattern) {
+        this.iterationPattern.set(pattern);
+    }
+
+    /**
+     * @return Regular expression matching one iteration time (in milliseconds) in the workload output.
+     */
+    @Input
+    public String getIterationPattern() {
+        return this.iterationPattern.get();
+    }
+
+    public void setSettingsFile(Object file) {
+        this.settingsFile.set(getProject().file(file));
+    }
+
+    /**
+     * @return File with the JVM arguments of the best configuration.
+     */
+    @OutputFile
+    public File getSettingsFile() {
+        return this.settingsFile.getAsFile().get();
+    }
+
+    public void setReportDir(Object dir) {
+        this.reportDir.set(getProject().file(dir));
+    }
+
+    @OutputDirectory
+    public File getReportDir() {
+        return this.reportDir.getAsFile().get();
+    }
+
+    /* Injected by Gradle. */
+    @Inject
+    protected ExecOperations getExecOperations() {
+        throw new UnsupportedOperationException();
+    }
+
+    @TaskAction
+    public void tune() throws IOException {
+        GraalExtension config = GraalExtension.initInProject(getProject());
+        JavaExec workload = this.workload.getOrNull();
+        if (workload == null) {
+            throw new IllegalStateException("Please specify the benchmark using `workload someJavaExecTask`.");
+        }
+        if (this.space.getDimensions().isEmpty()) {
+            throw new IllegalStateException("Please specify the search space using `engineOption` or `jvmOption`.");
+        }
+        // Same compiler as the workload task itself (see CompilerPlugin), the forks bypass its doFirst actions.
+        JvmProbe jvm = JvmProbe.forTask(workload);
+        List<String> compilerArgs = jvm.isGraalVM() || !jvm.hasJVMCI()
+                ? Collections.emptyList()
+                : Arrays.asList(PluginUtils.compilerJvmArgs(config.getCompilerDir().getAbsolutePath()));
+        // Settings of a previous run were added to the workload if it already executed in this build.
+        List<String> previousSettings = TuningSpace.readSettings(getSettingsFile());
+
+        List<Map<String, String>> configurations = new ArrayList<>();
+        configurations.add(Collections.emptyMap());
+        for (Map<String, String> configuration : this.space.configurations(this.maxConfigurations.get())) {
+            // The baseline is measured anyway.
+            if (!TuningSpace.args(configuration).isEmpty()) configurations.add(configuration);
+        }
+        getLogger().lifecycle("Measuring " + (configurations.size() - 1) + " of " + this.space.size()
+                + " configurations with " + this.forks.get() + " forks each.");
+
+        Pattern pattern = Pattern.compile(this.iterationPattern.get());
+        ExecOperations operations = getExecOperations();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.parallelForks.get()));
+        List<List<Future<WorkloadRun>>> pending = new ArrayList<>();
+        for (int i = 0; i < configurations.size(); i++) pending.add(new ArrayList<>());
+        try {
+            // Interleave configurations so that a noisy period of the machine does not affect just one of them.
+            for (int fork = 0; fork < this.forks.get(); fork++) {
+                for (int i = 0; i < configurations.size(); i++) {
+                    Map<String, String> configuration = configurations.get(i);
+                    String label = TuningSpace.label(configuration);
+                    List<String> args = engineArgs(TuningSpace.args(configuration));
+                    int forkIndex = fork;
+                    pending.get(i).add(executor.submit(() -> {
+                        getLogger().lifecycle("Running " + workload.getName() + " with " + label + " (fork " + forkIndex + ")");
+                        return WorkloadRun.fork(operations, workload, label, forkIndex, pattern, exec -> {
+                            List<String> jvmArgs = new ArrayList<>(exec.getJvmArgs());
+                            jvmArgs.removeAll(previousSettings);
+                            jvmArgs.addAll(compilerArgs);
+                            jvmArgs.addAll(args);
+                            exec.setJvmArgs(jvmArgs);
+                        });
+                    }));
+                }
+            }
+            List<List<WorkloadRun>> results = new ArrayList<>();
+            for (List<Future<WorkloadRun>> runs : pending) {
+                List<WorkloadRun> finished = new ArrayList<>();
+                for (Future<WorkloadRun> run : runs) {
+                    finished.add(run.get());
+                }
+                results.add(finished);
+            }
+            writeResults(configurations, results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Autotune interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Autotune fork failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* Tried engine options are often experimental. */
+    private static List<String> engineArgs(List<String> args) {
+        for (String arg : args) {
+            if (arg.startsWith("-Dpolyglot.engine.")) {
+                List<String> result = new ArrayList<>(args);
+                result.add("-Dpolyglot.engine.AllowExperimentalOptions=true");
+                return result;
+            }
+        }
+        return args;
+    }
+
+    /* Rank configurations, write the report and the settings of the winner. */
+    private void writeResults(List<Map<String, String>> configurations, List<List<WorkloadRun>> results) throws IOException {
+        List<Double> steady = new ArrayList<>();
+        List<Double> warmup = new ArrayList<>();
+        for (List<WorkloadRun> runs : results) {
+            List<Double> wall = new ArrayList<>();
+            List<Double> steadyRuns = new ArrayList<>();
+            List<Double> warmupRuns = new ArrayList<>();
+            for (WorkloadRun run : runs) {
+                wall.add(run.wallMillis);
+                if (!run.iterations.isEmpty()) {
+                    steadyRuns.add(run.steadyStateMillis());
+                    warmupRuns.add(run.warmupMillis());
+                }
+            }
+            steady.add(steadyRuns.isEmpty() ? Statistics.mean(wall) : Statistics.mean(steadyRuns));
+            warmup.add(warmupRuns.isEmpty() ? Double.NaN : Statistics.mean(warmupRuns));
+        }
+        List<Double> scores = TuningSpace.scores(steady, warmup, this.warmupWeight.get());
+        List<Integer> ranking = new ArrayList<>();
+        for (int i = 0; i < configurations.size(); i++) ranking.add(i);
+        ranking.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+
+        StringBuilder table = new StringBuilder();
+        table.append("| Rank | Configuration | Score | Steady iteration [ms] | Warmup iteration [ms] | Throughput [ops/s] |\n");
+        table.append("|---|---|---|---|---|---|\n");
+        List<Map<String, Object>> json = new ArrayList<>();
+        for (int rank = 0; rank < ranking.size(); rank++) {
+            int i = ranking.get(rank);
+            String label = TuningSpace.label(configurations.get(i));
+            table.append("| ").append(rank + 1)
+                    .append(" | ").append(label)
+                    .append(" | ").append(Statistics.format(scores.get(i)))
+                    .append(" | ").append(Statistics.format(steady.get(i)))
+                    .append(" | ").append(Statistics.format(warmup.get(i)))
+                    .append(" | ").append(Statistics.format(1000.0 / steady.get(i)))
+                    .append(" |\n");
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("configuration", label);
+            entry.put("jvmArgs", TuningSpace.args(configurations.get(i)));
+            entry.put("score", scores.get(i));
+            entry.put("steadyStateMillis", steady.get(i));
+            entry.put("warmupMillis", Double.isNaN(warmup.get(i)) ? null : warmup.get(i));
+            List<Double> forkMillis = new ArrayList<>();
+            for (WorkloadRun run : results.get(i)) forkMillis.add(run.wallMillis);
+            entry.put("forkMillis", forkMillis);
+            json.add(entry);
+        }
+        File dir = getReportDir();
+        Files.write(new File(dir, "report.md").toPath(), table.toString().getBytes(Charset.defaultCharset()));
+        Files.write(
+                new File(dir, "report.json").toPath(),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(Charset.defaultCharset())
+        );
+        getLogger().lifecycle(table.toString());
+
+        int best = ranking.get(0);
+        StringBuilder settings = new StringBuilder();
+        settings.append("# JVM arguments selected by ").append(getPath()).append(" for ").append(getWorkload().getPath())
+                .append(", one per line (regenerate using the task).\n");
+        settings.append("# ").append(TuningSpace.label(configurations.get(best)))
+                .append(": steady ").append(Statistics.format(steady.get(best)))
+                .append(" ms, warmup ").append(Statistics.format(warmup.get(best))).append(" ms\n");
+        for (String arg : engineArgs(TuningSpace.args(configurations.get(best)))) {
+            settings.append(arg).append('\n');
+        }
+        File file = getSettingsFile();
+        Files.write(file.toPath(), settings.toString().getBytes(Charset.defaultCharset()));
+        getLogger().lifecycle("Tuned settings written to " + file.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,543 @@
+package com.oracle.truffle.gradle;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Minimal model of a compiled class used by {@link TruffleLint}: fields and methods with their annotations
+ * (runtime visible and invisible) and the field, method and allocation instructions of method bodies with
+ * their line numbers and whether their receiver is {@code this}. Only what the lint rules need is read,
+ * everything else in the class file is skipped.</p>
+ */
+final class ClassFile {
+
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_BRIDGE = 0x0040;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+
+    /* A field or method, annotation type descriptors are mapped to their constant elements (strings and numbers). */
+    static class Annotated {
+
+        final String name;
+        final String descriptor;
+        final int access;
+        final Map<String, Map<String, Object>> annotations = new LinkedHashMap<>();
+
+        Annotated(String name, String descriptor, int access) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.access = access;
+        }
+
+        boolean is(int flag) {
+            return (this.access & flag) != 0;
+        }
+
+        boolean hasAnnotation(String type) {
+            return this.annotations.containsKey(type);
+        }
+
+    }
+
+    /* A field, method or allocation instruction (owner is an internal class name). */
+    static final class Instruction {
+
+        final int offset;
+        final int opcode;
+        final String owner;
+        final String name;
+        final String descriptor;
+        int line = -1;
+        boolean onThis;     // field read or instance invocation on this
+
+        Instruction(int offset, int opcode, String owner, String name, String descriptor) {
+            this.offset = offset;
+            this.opcode = opcode;
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+    }
+
+    static final class Method extends Annotated {
+
+        final List<Instruction> instructions = new ArrayList<>();
+
+        Method(String name, String descriptor, int access) {
+            super(name, descriptor, access);
+        }
+
+    }
+
+    final String name;
+    final String superName;
+    String sourceFile;
+    final Map<String, Map<String, Object>> annotations = new LinkedHashMap<>();
+    final List<Annotated> fields = new ArrayList<>();
+    final List<Method> methods = new ArrayList<>();
+
+    ClassFile(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    Annotated findField(String name) {
+        for (Annotated field : this.fields) {
+            if (field.name.equals(name)) return field;
+        }
+        return null;
+    }
+
+    Method findMethod(String name, String descriptor) {
+        for (Method method : this.methods) {
+            if (method.name.equals(name) && method.descriptor.equals(descriptor)) return method;
+        }
+        return null;
+    }
+
+    /**
+     * @throws IOException if the stream does not contain a valid class file.
+     */
+    static ClassFile read(InputStream stream) throws IOException {
+        return new Reader(new DataInputStream(stream)).read();
+    }
+
+    private static final class Reader {
+
+        private final DataInputStream in;
+        private Object[] pool;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        ClassFile read() throws IOException {
+            if (this.in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file.");
+            this.in.readUnsignedShort();    // minor version
+            this.in.readUnsignedShort();    // major version
+            readConstantPool();
+            this.in.readUnsignedShort();    // access flags
+            String name = className(this.in.readUnsignedShort());
+            int superIndex = this.in.readUnsignedShort();
+            ClassFile result = new ClassFile(name, superIndex == 0 ? null : className(superIndex));
+            this.in.skipBytes(2 * this.in.readUnsignedShort());   // interfaces
+            int fields = this.in.readUnsignedShort();
+            for (int i = 0; i < fields; i++) {
+                result.fields.add(readMember(false));
+            }
+            int methods = this.in.readUnsignedShort();
+            for (int i = 0; i < methods; i++) {
+                result.methods.add((Method) readMember(true));
+            }
+            int attributes = this.in.readUnsignedShort();
+            for (int i = 0; i < attributes; i++) {
+                String attribute = (String) this.pool[this.in.readUnsignedShort()];
+                int length = this.in.readInt();
+                if ("SourceFile".equals(attribute)) {
+                    result.sourceFile = (String) this.pool[this.in.readUnsignedShort()];
+                } else if (isAnnotations(attribute)) {
+                    readAnnotations(result.annotations);
+                } else {
+                    this.in.skipBytes(length);
+                }
+            }
+            return result;
+        }
+
+        private void readConstantPool() throws IOException {
+            int count = this.in.readUnsignedShort();
+            this.pool = new Object[count];
+            for (int i = 1; i < count; i++) {
+                int tag = this.in.readUnsignedByte();
+                switch (tag) {
+                    case 1: this.pool[i] = this.in.readUTF(); break;
+                    case 3: this.pool[i] = this.in.readInt(); break;
+                    case 4: this.pool[i] = this.in.readFloat(); break;
+                    case 5: this.pool[i++] = this.in.readLong(); break;       // takes two entries
+                    case 6: this.pool[i++] = this.in.readDouble(); break;
+                    case 7: case 8: case 16: case 19: case 20:
+                        this.pool[i] = new int[] { tag, this.in.readUnsignedShort() };
+                        break;
+                    case 9: case 10: case 11: case 12: case 17: case 18:
+                        this.pool[i] = new int[] { tag, this.in.readUnsignedShort(), this.in.readUnsignedShort() };
+                        break;
+                    case 15:
+                        this.pool[i] = new int[] { tag, this.in.readUnsignedByte(), this.in.readUnsignedShort() };
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + ".");
+                }
+            }
+        }
+
+        private String className(int index) {
+            return (String) this.pool[((int[]) this.pool[index])[1]];
+        }
+
+        private Annotated readMember(boolean method) throws IOException {
+            int access = this.in.readUnsignedShort();
+            String name = (String) this.pool[this.in.readUnsignedShort()];
+            String descriptor = (String) this.pool[this.in.readUnsignedShort()];
+            Annotated member = method ? new Method(name, descriptor, access) : new Annotated(name, descriptor, access);
+            int attributes = this.in.readUnsignedShort();
+            for (int i = 0; i < attributes; i++) {
+                String attribute = (String) this.pool[this.in.readUnsignedShort()];
+                int length = this.in.readInt();
+                if (isAnnotations(attribute)) {
+                    readAnnotations(member.annotations);
+                } else if (method && "Code".equals(attribute)) {
+                    readCode((Method) member);
+                } else {
+                    this.in.skipBytes(length);
+                }
+            }
+            return member;
+        }
+
+        /* Truffle DSL annotations are retained in class files only (invisible). */
+        private static boolean isAnnotations(String attribute) {
+            return "RuntimeVisibleAnnotations".equals(attribute) || "RuntimeInvisibleAnnotations".equals(attribute);
+        }
+
+        private void readAnnotations(Map<String, Map<String, Object>> target) throws IOException {
+            int count = this.in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                readAnnotation(target);
+            }
+        }
+
+        private void readAnnotation(Map<String, Map<String, Object>> target) throws IOException {
+            String type = (String) this.pool[this.in.readUnsignedShort()];
+            Map<String, Object> elements = new LinkedHashMap<>();
+            int count = this.in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                String element = (String) this.pool[this.in.readUnsignedShort()];
+                Object value = readElementValue();
+                if (value != null) elements.put(element, value);
+            }
+            if (target != null) target.put(type, elements);
+        }
+
+        /* Constant values are returned, enums, classes, nested annotations and arrays are skipped. */
+        private Object readElementValue() throws IOException {
+            int tag = this.in.readUnsignedByte();
+            switch (tag) {
+                case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z': case 's':
+                    return this.pool[this.in.readUnsignedShort()];
+                case 'e':
+                    this.in.skipBytes(4);
+                    return null;
+                case 'c':
+                    this.in.skipBytes(2);
+                    return null;
+                case '@':
+                    readAnnotation(null);
+                    return null;
+                case '[':
+                    int count = this.in.readUnsignedShort();
+                    for (int i = 0; i < count; i++) readElementValue();
+                    return null;
+                default:
+                    throw new IOException("Unknown annotation element tag " + (char) tag + ".");
+            }
+        }
+
+        private void readCode(Method method) throws IOException {
+            this.in.skipBytes(4);   // max stack and locals
+            byte[] code = new byte[this.in.readInt()];
+            this.in.readFully(code);
+            decode(method, code);
+            this.in.skipBytes(8 * this.in.readUnsignedShort());   // exception table
+            int attributes = this.in.readUnsignedShort();
+            for (int i = 0; i < attributes; i++) {
+                String attribute = (String) this.pool[this.in.readUnsignedShort()];
+                int length = this.in.readInt();
+                if ("LineNumberTable".equals(attribute)) {
+                    int count = this.in.readUnsignedShort();
+                    int[][] lines = new int[count][];
+                    for (int j = 0; j < count; j++) {
+                        lines[j] = new int[] { this.in.readUnsignedShort(), this.in.readUnsignedShort() };
+                    }
+                    for (Instruction instruction : method.instructions) {
+                        int start = -1;
+                        for (int[] entry : lines) {
+                            if (entry[0] <= instruction.offset && entry[0] > start) {
+                                start = entry[0];
+                                instruction.line = entry[1];
+                            }
+                        }
+                    }
+                } else {
+                    this.in.skipBytes(length);
+                }
+            }
+        }
+
+        /* Walk the bytecode and keep field reads, invocations and allocations. The operand stack is simulated
+           with the kind of each value only, to know the receivers which are this. */
+        private void decode(Method method, byte[] code) throws IOException {
+            List<Integer> stack = new ArrayList<>();
+            Map<Integer, List<Integer>> branches = new HashMap<>();
+            boolean fallsThrough = true;
+            int offset = 0;
+            while (offset < code.length) {
+                int opcode = code[offset] & 0xff;
+                int length = instructionLength(code, offset, opcode);
+                if (!fallsThrough) {
+                    // Exception handlers and dead code start without tracked values.
+                    List<Integer> branch = branches.get(offset);
+                    stack = branch == null ? new ArrayList<>() : new ArrayList<>(branch);
+                }
+                if (opcode == GETFIELD || (opcode >= INVOKEVIRTUAL && opcode <= INVOKEINTERFACE)) {
+                    int[] ref = (int[]) this.pool[u2(code, offset + 1)];
+                    int[] nameAndType = (int[]) this.pool[ref[2]];
+                    Instruction instruction = new Instruction(offset, opcode, className(ref[1]),
+                            (String) this.pool[nameAndType[1]], (String) this.pool[nameAndType[2]]);
+                    if (opcode != INVOKESTATIC) {
+                        int arguments = opcode == GETFIELD ? 0 : argumentCount(instruction.descriptor);
+                        instruction.onThis = peek(stack, arguments) == THIS;
+                    }
+                    method.instructions.add(instruction);
+                } else if (opcode == NEW) {
+                    method.instructions.add(new Instruction(offset, opcode, className(u2(code, offset + 1)), null, null));
+                }
+                fallsThrough = execute(method, code, offset, opcode, stack, branches);
+                offset += length;
+            }
+        }
+
+        private static final int VALUE = 0;
+        private static final int WIDE = 1;      // long or double, a single value which takes two slots
+        private static final int THIS = 2;
+
+        /* Applies an instruction to the kinds of the stack values and records the stack at forward branch
+           targets, returns false if the next instruction is not reached from this one. */
+        private boolean execute(Method method, byte[] code, int offset, int opcode, List<Integer> stack,
+                                Map<Integer, List<Integer>> branches) {
+            if (opcode == 0xc4) {   // wide
+                int widened = code[offset + 1] & 0xff;
+                if (widened >= 0x15 && widened <= 0x19) load(method, stack, widened - 0x15, u2(code, offset + 2));
+                else if (widened >= 0x36 && widened <= 0x3a) pop(stack, 1);
+                return widened != 0xa9;
+            }
+            if (opcode == 0x00 || opcode == 0x84) return true;   // nop, iinc
+            if (opcode <= 0x14) {   // constants
+                push(stack, opcode == 0x09 || opcode == 0x0a || opcode == 0x0e || opcode == 0x0f || opcode == 0x14 ? WIDE : VALUE);
+            } else if (opcode <= 0x19) {
+                load(method, stack, opcode - 0x15, code[offset + 1] & 0xff);
+            } else if (opcode <= 0x2d) {
+                load(method, stack, (opcode - 0x1a) / 4, (opcode - 0x1a) % 4);
+            } else if (opcode <= 0x35) {    // array loads
+                pop(stack, 2);
+                push(stack, opcode == 0x2f || opcode == 0x31 ? WIDE : VALUE);
+            } else if (opcode <= 0x4e) {    // stores
+                pop(stack, 1);
+            } else if (opcode <= 0x56) {    // array stores
+                pop(stack, 3);
+            } else if (opcode <= 0x5f) {
+                shuffle(stack, opcode);
+            } else if (opcode >= 0x74 && opcode <= 0x77) {  // negation
+                pop(stack, 1);
+                push(stack, (opcode & 1) == 1 ? WIDE : VALUE);
+            } else if (opcode <= 0x83) {    // arithmetic, odd opcodes are long and double operations
+                pop(stack, 2);
+                push(stack, (opcode & 1) == 1 ? WIDE : VALUE);
+            } else if (opcode <= 0x93) {    // conversions
+                pop(stack, 1);
+                push(stack, opcode == 0x85 || opcode == 0x87 || opcode == 0x8a || opcode == 0x8c || opcode == 0x8d || opcode == 0x8f ? WIDE : VALUE);
+            } else if (opcode <= 0x98) {    // comparisons
+                pop(stack, 2);
+                push(stack, VALUE);
+            } else if (opcode <= 0xa6 || opcode == 0xc6 || opcode == 0xc7) {     // conditional branches
+                pop(stack, opcode >= 0x9f && opcode <= 0xa6 ? 2 : 1);
+                branches.putIfAbsent(offset + (short) u2(code, offset + 1), new ArrayList<>(stack));
+            } else if (opcode == 0xa7 || opcode == 0xc8) {     // goto
+                int target = opcode == 0xa7 ? (short) u2(code, offset + 1) : s4(code, offset + 1);
+                branches.putIfAbsent(offset + target, new ArrayList<>(stack));
+                return false;
+            } else if (opcode == 0xa8 || opcode == 0xc9) {     // jsr, the subroutine is not followed
+                return true;
+            } else if (opcode <= 0xb1 || opcode == 0xbf) {     // ret, switches, returns and athrow
+                return false;
+            } else if (opcode <= 0xb5) {    // field access
+                String descriptor = memberDescriptor(code, offset);
+                pop(stack, opcode == 0xb2 ? 0 : opcode == 0xb5 ? 2 : 1);
+                if (opcode == 0xb2 || opcode == 0xb4) push(stack, kind(descriptor));
+            } else if (opcode <= 0xba) {    // invocations
+                String descriptor = memberDescriptor(code, offset);
+                pop(stack, argumentCount(descriptor) + (opcode == INVOKESTATIC || opcode == 0xba ? 0 : 1));
+                String returned = descriptor.substring(descriptor.indexOf(')') + 1);
+                if (!"V".equals(returned)) push(stack, kind(returned));
+            } else if (opcode == NEW) {
+                push(stack, VALUE);
+            } else if (opcode == 0xc5) {    // multianewarray
+                pop(stack, code[offset + 3] & 0xff);
+                push(stack, VALUE);
+            } else if (opcode != 0xc0) {    // checkcast keeps the kind of the value
+                pop(stack, 1);
+                if (opcode != 0xc2 && opcode != 0xc3) push(stack, VALUE);
+            }
+            return true;
+        }
+
+        /* The descriptor of the field, method or call site referenced by the instruction. */
+        private String memberDescriptor(byte[] code, int offset) {
+            int[] ref = (int[]) this.pool[u2(code, offset + 1)];
+            return (String) this.pool[((int[]) this.pool[ref[2]])[2]];
+        }
+
+        /* Type is the offset of the load opcode: int, long, float, double and reference. */
+        private static void load(Method method, List<Integer> stack, int type, int local) {
+            if (type == 1 || type == 3) push(stack, WIDE);
+            else push(stack, type == 4 && local == 0 && !method.is(ACC_STATIC) ? THIS : VALUE);
+        }
+
+        /* pop, pop2, the dup instructions and swap, whose effect depends on the size of the values. */
+        private static void shuffle(List<Integer> stack, int opcode) {
+            int first = pop(stack, 1);
+            switch (opcode) {
+                case 0x57:  // pop
+                    break;
+                case 0x58:  // pop2
+                    if (first != WIDE) pop(stack, 1);
+                    break;
+                case 0x59:  // dup
+                    push(stack, first, first);
+                    break;
+                case 0x5a: {    // dup_x1
+                    int second = pop(stack, 1);
+                    push(stack, first, second, first);
+                    break;
+                }
+                case 0x5b: {    // dup_x2
+                    int second = pop(stack, 1);
+                    if (second == WIDE) push(stack, first, second, first);
+                    else push(stack, first, pop(stack, 1), second, first);
+                    break;
+                }
+                case 0x5c:      // dup2
+                    if (first == WIDE) push(stack, first, first);
+                    else {
+                        int second = pop(stack, 1);
+                        push(stack, second, first, second, first);
+                    }
+                    break;
+                case 0x5d: {    // dup2_x1
+                    int second = pop(stack, 1);
+                    if (first == WIDE) push(stack, first, second, first);
+                    else {
+                        int third = pop(stack, 1);
+                        push(stack, second, first, third, second, first);
+                    }
+                    break;
+                }
+                case 0x5e: {    // dup2_x2
+                    int second = pop(stack, 1);
+                    if (first == WIDE && second == WIDE) push(stack, first, second, first);
+                    else if (first == WIDE) push(stack, first, pop(stack, 1), second, first);
+                    else {
+                        int third = pop(stack, 1);
+                        if (third == WIDE) push(stack, second, first, third, second, first);
+                        else push(stack, second, first, pop(stack, 1), third, second, first);
+                    }
+                    break;
+                }
+                default: {      // swap
+                    int second = pop(stack, 1);
+                    push(stack, first, second);
+                    break;
+                }
+            }
+        }
+
+        private static void push(List<Integer> stack, int... kinds) {
+            for (int kind : kinds) stack.add(kind);
+        }
+
+        /* Returns the last value removed, values which were not tracked are plain values. */
+        private static int pop(List<Integer> stack, int count) {
+            int kind = VALUE;
+            for (int i = 0; i < count; i++) {
+                kind = stack.isEmpty() ? VALUE : stack.remove(stack.size() - 1);
+            }
+            return kind;
+        }
+
+        private static int peek(List<Integer> stack, int depth) {
+            return depth < stack.size() ? stack.get(stack.size() - 1 - depth) : VALUE;
+        }
+
+        private static int kind(String descriptor) {
+            return descriptor.startsWith("J") || descriptor.startsWith("D") ? WIDE : VALUE;
+        }
+
+        private static int argumentCount(String descriptor) {
+            int count = 0;
+            for (int i = 1; descriptor.charAt(i) != ')'; i++, count++) {
+                while (descriptor.charAt(i) == '[') i++;
+                if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+            }
+            return count;
+        }
+
+        private static int u2(byte[] code, int offset) {
+            return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+        }
+
+        private static int s4(byte[] code, int offset) {
+            return (u2(code, offset) << 16) | u2(code, offset + 2);
+        }
+
+        private static int instructionLength(byte[] code, int offset, int opcode) throws IOException {
+            if (opcode <= 0x0f) return 1;
+            switch (opcode) {
+                case 0x10: case 0x12: case 0xa9: case 0xbc:
+                    return 2;
+                case 0x11: case 0x13: case 0x14: case 0x84: case 0xbb: case 0xbd: case 0xc0: case 0xc1: case 0xc6: case 0xc7:
+                    return 3;
+                case 0xc5:
+                    return 4;
+                case 0xb9: case 0xba: case 0xc8: case 0xc9:
+                    return 5;
+                case 0xc4:  // wide
+                    return (code[offset + 1] & 0xff) == 0x84 ? 6 : 4;
+                case 0xaa: {    // tableswitch
+                    int start = offset + 1 + (4 - (offset + 1) % 4) % 4;
+                    int low = s4(code, start + 4);
+                    int high = s4(code, start + 8);
+                    return start - offset + 12 + 4 * (high - low + 1);
+                }
+                case 0xab: {    // lookupswitch
+                    int start = offset + 1 + (4 - (offset + 1) % 4) % 4;
+                    return start - offset + 8 + 8 * s4(code, start + 4);
+                }
+                default:
+                    break;
+            }
+            if (opcode >= 0x15 && opcode <= 0x19) return 2;     // loads
+            if (opcode >= 0x36 && opcode <= 0x3a) return 2;     // stores
+            if (opcode >= 0x99 && opcode <= 0xa8) return 3;     // branches
+            if (opcode >= 0xb2 && opcode <= 0xb8) return 3;     // fields and invocations
+            if (opcode <= 0xc3) return 1;
+            throw new IOException("Unknown opcode " + opcode + ".");
+        }
+
+    }
+
+}
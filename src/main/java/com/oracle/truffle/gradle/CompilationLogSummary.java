@@ -0,0 +1,153 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Summarizes Truffle compilations from the engine log produced with {@code engine.TraceCompilation},
+ * {@code engine.TraceInlining} and {@code engine.TracePerformanceWarnings}. For every compilation, it
+ * collects graph node counts, code size, inlined call targets and the performance warnings about virtual
+ * calls and allocations which survived partial evaluation.</p>
+ */
+final class CompilationLogSummary {
+
+    // `[engine] opt done   fib   |AST 23|...`, the event name is followed by the call target name.
+    private static final Pattern EVENT = Pattern.compile("\\b(opt done|opt failed|inline start|inline success|inline failed|perf warn)\\s+([^\\s|]+)(.*)");
+    private static final Pattern NODES = Pattern.compile("Nodes\\s+(\\d+)\\s*/\\s*(\\d+)");
+    private static final Pattern CODE_SIZE = Pattern.compile("CodeSize\\s+(\\d+)");
+
+    static final class Compilation {
+
+        final String callTarget;
+        String status = "unknown";
+        int nodesAfterPartialEvaluation = -1;
+        int nodesAfterCompilation = -1;
+        int codeSize = -1;
+        final List<String> inlined = new ArrayList<>();
+        final List<String> notInlined = new ArrayList<>();
+        final List<String> virtualCalls = new ArrayList<>();
+        final List<String> allocations = new ArrayList<>();
+        final List<String> otherWarnings = new ArrayList<>();
+
+        Compilation(String callTarget) {
+            this.callTarget = callTarget;
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("callTarget", callTarget);
+            json.put("status", status);
+            json.put("nodesAfterPartialEvaluation", nodesAfterPartialEvaluation);
+            json.put("nodesAfterCompilation", nodesAfterCompilation);
+            json.put("codeSize", codeSize);
+            json.put("inlined", inlined);
+            json.put("notInlined", notInlined);
+            json.put("virtualCalls", virtualCalls);
+            json.put("allocations", allocations);
+            json.put("otherWarnings", otherWarnings);
+            return json;
+        }
+
+    }
+
+    private CompilationLogSummary() {}
+
+    /**
+     * <p>Group log lines into compilations. Inlining and warnings are printed before the compilation
+     * finishes, so they are attached to the pending compilation of the same call target.</p>
+     */
+    static List<Compilation> parse(List<String> lines) {
+        List<Compilation> result = new ArrayList<>();
+        Map<String, Compilation> pending = new LinkedHashMap<>();
+        String inlining = null;     // call target whose inlining decisions are being printed
+        for (String line : lines) {
+            Matcher matcher = EVENT.matcher(line);
+            if (!matcher.find()) continue;
+            String event = matcher.group(1);
+            String name = matcher.group(2);
+            String details = matcher.group(3);
+            switch (event) {
+                case "inline start":
+                    inlining = name;
+                    pending.computeIfAbsent(name, Compilation::new);
+                    break;
+                case "inline success":
+                case "inline failed":
+                    if (inlining == null) break;
+                    Compilation root = pending.computeIfAbsent(inlining, Compilation::new);
+                    (event.equals("inline success") ? root.inlined : root.notInlined).add(name);
+                    break;
+                case "perf warn":
+                    classifyWarning(pending.computeIfAbsent(name, Compilation::new), details);
+                    break;
+                default:    // opt done, opt failed
+                    Compilation compilation = pending.remove(name);
+                    if (compilation == null) compilation = new Compilation(name);
+                    compilation.status = event.equals("opt done") ? "done" : "failed";
+                    Matcher nodes = NODES.matcher(details);
+                    if (nodes.find()) {
+                        compilation.nodesAfterPartialEvaluation = Integer.parseInt(nodes.group(1));
+                        compilation.nodesAfterCompilation = Integer.parseInt(nodes.group(2));
+                    }
+                    Matcher size = CODE_SIZE.matcher(details);
+                    if (size.find()) {
+                        compilation.codeSize = Integer.parseInt(size.group(1));
+                    }
+                    if (name.equals(inlining)) inlining = null;
+                    result.add(compilation);
+            }
+        }
+        result.addAll(pending.values());    // unfinished when the process ended
+        return result;
+    }
+
+    /* Sort a performance warning into virtual calls, allocations or anything else. */
+    private static void classifyWarning(Compilation compilation, String details) {
+        String message = details.replaceFirst("^\\s*\\|", "").trim();
+        String lower = message.toLowerCase();
+        if (lower.contains("virtual") && (lower.contains("call") || lower.contains("invoke"))) {
+            compilation.virtualCalls.add(message);
+        } else if (lower.contains("alloc") || lower.contains("virtualiz") || lower.contains("escape")) {
+            compilation.allocations.add(message);
+        } else {
+            compilation.otherWarnings.add(message);
+        }
+    }
+
+    /**
+     * <p>Write {@code summary.md} and {@code summary.json} into the given directory.</p>
+     */
+    static void write(List<Compilation> compilations, File dir) throws IOException {
+        StringBuilder table = new StringBuilder();
+        table.append("| Call target | Status | Nodes (PE/final) | Code size | Inlined | Virtual calls | Allocations |\n");
+        table.append("|---|---|---|---|---|---|---|\n");
+        List<Map<String, Object>> json = new ArrayList<>();
+        for (Compilation c : compilations) {
+            table.append("| ").append(c.callTarget)
+                    .append(" | ").append(c.status)
+                    .append(" | ").append(c.nodesAfterPartialEvaluation).append("/").append(c.nodesAfterCompilation)
+                    .append(" | ").append(c.codeSize)
+                    .append(" | ").append(String.join(", ", c.inlined))
+                    .append(" | ").append(c.virtualCalls.size())
+                    .append(" | ").append(c.allocations.size())
+                    .append(" |\n");
+            json.add(c.toJson());
+        }
+        Files.write(new File(dir, "summary.md").toPath(), table.toString().getBytes(Charset.defaultCharset()));
+        Files.write(
+                new File(dir, "summary.json").toPath(),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(Charset.defaultCharset())
+        );
+    }
+
+}
@@ -0,0 +1,245 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A task prototype which runs the same {@code JavaExec} workload with every Graal compiler version
+ * declared in {@code graal { compilerMatrix ... }} and writes a combined comparison report. Each version
+ * is loaded from its own {@code prepareCompiler<version>} directory. Only works on Hotspot JVMs with
+ * JVMCI, since GraalVM always uses its built-in compiler.</p>
+ *
+ * {@code
+ * graal {
+ *     version '20.1.0'
+ *     compilerMatrix '20.1.0', '20.2.0', '20.3.0'
+ * }
+ *
+ * task compareCompilers(type: CompilerMatrix) {
+ *     // The JavaExec task whose main class, classpath and arguments are used as the workload.
+ *     workload runBenchmark
+ *     // Number of JVM forks per compiler version (default 3).
+ *     forks 5
+ *     // Number of forks running at the same time (default is half of the available cores).
+ *     parallelForks 2
+ *     // Regex for iteration times in the workload output, first group is milliseconds.
+ *     iterationPattern 'iteration \\d+: ([0-9.]+) ms'
+ * }
+ * }
+ *
+ * <p>The report ({@code report.md} and {@code report.json} in {@code build/reports/compilerMatrix/<task>})
+ * shows the total fork time for every version. If the workload prints iteration times, the report also
+ * shows the first iteration (warmup) and the mean of the second half of iterations (steady state).</p>
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class CompilerMatrix extends DefaultTask {
+
+    private final Property<JavaExec> workload = getProject().getObjects().property(JavaExec.class);
+    private final Property<Integer> forks = getProject().getObjects().property(Integer.class);
+    private final Property<Integer> parallelForks = getProject().getObjects().property(Integer.class);
+    private final Property<String> iterationPattern = getProject().getObjects().property(String.class);
+    private final DirectoryProperty reportDir = getProject().getObjects().directoryProperty();
+
+    public CompilerMatrix() {
+        this.forks.set(3);
+        this.parallelForks.set(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        this.iterationPattern.set(WorkloadRun.DEFAULT_ITERATION_PATTERN);
+        this.reportDir.set(new File(getProject().getBuildDir(), "reports/compilerMatrix/" + getName()));
+        this.setGroup("graal");
+        // Benchmark results are never up-to-date.
+        this.getOutputs().upToDateWhen(it -> false);
+    }
+
+    /**
+     * Set the {@code JavaExec} task which is used as the benchmark workload.
+     *
+     * @param task Workload task.
+     */
+    public void setWorkload(JavaExec task) {
+        this.workload.set(task);
+        this.dependsOn(task.getTaskDependencies());
+    }
+
+    @Internal
+    public JavaExec getWorkload() {
+        return this.workload.getOrNull();
+    }
+
+    public void setForks(int forks) {
+        this.forks.set(forks);
+    }
+
+    /**
+     * @return Number of JVM forks executed for every compiler version.
+     */
+    @Input
+    public int getForks() {
+        return this.forks.get();
+    }
+
+    public void setParallelForks(int parallelForks) {
+        this.parallelForks.set(parallelForks);
+    }
+
+    /**
+     * @return Maximal number of forks running at the same time.
+     */
+    @Internal
+    public int getParallelForks() {
+        return this.parallelForks.get();
+    }
+
+    public void setIterationPattern(String pattern) {
+        this.iterationPattern.set(pattern);
+    }
+
+    /**
+     * @return Regular expression matching one iteration time (in milliseconds) in the workload output.
+     */
+    @Input
+    public String getIterationPattern() {
+        return this.iterationPattern.get();
+    }
+
+    public void setReportDir(Object dir) {
+        this.reportDir.set(getProject().file(dir));
+    }
+
+    @OutputDirectory
+    public File getReportDir() {
+        return this.reportDir.getAsFile().get();
+    }
+
+    /* Injected by Gradle. */
+    @Inject
+    protected ExecOperations getExecOperations() {
+        throw new UnsupportedOperationException();
+    }
+
+    @TaskAction
+    public void runMatrix() throws IOException {
+        GraalExtension config = GraalExtension.initInProject(getProject());
+        List<String> versions = config.getCompilerMatrix();
+        JavaExec workload = this.workload.getOrNull();
+        if (workload == null) {
+            throw new IllegalStateException("Please specify the benchmark using `workload someJavaExecTask`.");
+        }
+        if (versions.isEmpty()) {
+            throw new IllegalStateException("Please specify compiler versions using `graal { compilerMatrix '20.1.0', '20.2.0' }`.");
+        }
+        JvmProbe jvm = JvmProbe.forTask(workload);
+        if (jvm.isGraalVM() || !jvm.hasJVMCI()) {
+            throw new IllegalStateException("Compiler matrix requires a Hotspot JVM with JVM Compiler Interface (JDK 11+).");
+        }
+
+        Pattern pattern = Pattern.compile(this.iterationPattern.get());
+        ExecOperations operations = getExecOperations();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.parallelForks.get()));
+        Map<String, List<Future<WorkloadRun>>> pending = new LinkedHashMap<>();
+        try {
+            // Interleave versions so that a noisy period of the machine does not affect just one of them.
+            for (int fork = 0; fork < this.forks.get(); fork++) {
+                for (String version : versions) {
+                    String compilerPath = config.getCompilerDir(version).getAbsolutePath();
+                    int forkIndex = fork;
+                    pending.computeIfAbsent(version, v -> new ArrayList<>()).add(executor.submit(() -> {
+                        getLogger().lifecycle("Running " + workload.getName() + " with Graal " + version + " (fork " + forkIndex + ")");
+                        return WorkloadRun.fork(operations, workload, version, forkIndex, pattern, exec ->
+                                exec.jvmArgs((Object[]) PluginUtils.compilerJvmArgs(compilerPath))
+                        );
+                    }));
+                }
+            }
+            Map<String, List<WorkloadRun>> results = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Future<WorkloadRun>>> entry : pending.entrySet()) {
+                List<WorkloadRun> runs = new ArrayList<>();
+                for (Future<WorkloadRun> run : entry.getValue()) {
+                    runs.add(run.get());
+                }
+                results.put(entry.getKey(), runs);
+            }
+            writeReport(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Compiler matrix interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Compiler matrix fork failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* Write markdown and JSON versions of the report and print the table. */
+    private void writeReport(Map<String, List<WorkloadRun>> results) throws IOException {
+        StringBuilder table = new StringBuilder();
+        table.append("| Compiler | Forks | Fork time [ms] | Warmup iteration [ms] | Steady iteration [ms] | Throughput [ops/s] |\n");
+        table.append("|---|---|---|---|---|---|\n");
+        List<Map<String, Object>> json = new ArrayList<>();
+        for (Map.Entry<String, List<WorkloadRun>> entry : results.entrySet()) {
+            List<Double> wall = new ArrayList<>();
+            List<Double> warmup = new ArrayList<>();
+            List<Double> steady = new ArrayList<>();
+            for (WorkloadRun run : entry.getValue()) {
+                wall.add(run.wallMillis);
+                if (!run.iterations.isEmpty()) {
+                    warmup.add(run.warmupMillis());
+                    steady.add(run.steadyStateMillis());
+                }
+            }
+            double steadyMean = Statistics.mean(steady);
+            double throughput = Double.isNaN(steadyMean) ? Double.NaN : 1000.0 / steadyMean;
+            table.append("| ").append(entry.getKey())
+                    .append(" | ").append(entry.getValue().size())
+                    .append(" | ").append(Statistics.format(Statistics.mean(wall)))
+                    .append(" +- ").append(Statistics.format(Statistics.stddev(wall)))
+                    .append(" | ").append(Statistics.format(Statistics.mean(warmup)))
+                    .append(" | ").append(Statistics.format(steadyMean))
+                    .append(" +- ").append(Statistics.format(Statistics.stddev(steady)))
+                    .append(" | ").append(Statistics.format(throughput))
+                    .append(" |\n");
+
+            Map<String, Object> version = new LinkedHashMap<>();
+            version.put("version", entry.getKey());
+            version.put("forkMillis", wall);
+            version.put("warmupMillis", warmup);
+            version.put("steadyStateMillis", steady);
+            List<List<Double>> iterations = new ArrayList<>();
+            for (WorkloadRun run : entry.getValue()) {
+                iterations.add(run.iterations);
+            }
+            version.put("iterationMillis", iterations);
+            json.add(version);
+        }
+        File dir = getReportDir();
+        Files.write(new File(dir, "report.md").toPath(), table.toString().getBytes(Charset.defaultCharset()));
+        Files.write(
+                new File(dir, "report.json").toPath(),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(Charset.defaultCharset())
+        );
+        getLogger().lifecycle(table.toString());
+    }
+
+}
@@ -4,17 +4,33 @@ import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ResolvableDependencies;
+import org.gradle.api.artifacts.dsl.DependencyHandler;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.distribution.Distribution;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.tasks.Copy;
+import org.gradle.api.tasks.JavaExec;
 import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.testing.Test;
 import org.gradle.jvm.application.tasks.CreateStartScripts;
 import org.gradle.process.JavaForkOptions;
 
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>Graal Compiler Plugin ({@code org.graalvm.plugin.compiler}) is responsible for managing dependencies on
@@ -55,6 +71,16 @@ import java.io.IOException;
 public class CompilerPlugin implements Plugin<Project> {
 
     private static final String COMPILER_CONFIG = "graalCompiler";
+    private static final String METRICS_AGENT_CONFIG = "graalMetricsAgent";
+
+    // Artifacts which must have the same version as the compiler, and configurations which get the constraint.
+    private static final List<String> ALIGNED_MODULES = Arrays.asList(
+            "org.graalvm.sdk:graal-sdk", "org.graalvm.sdk:launcher-common", "org.graalvm.truffle:truffle-api",
+            "org.graalvm.truffle:truffle-dsl-processor", "org.graalvm.truffle:truffle-nfi", "org.graalvm.compiler:compiler"
+    );
+    private static final List<String> ALIGNED_CONFIGURATIONS = Arrays.asList(
+            "implementation", "runtimeOnly", "annotationProcessor", "language", "installedLanguage", COMPILER_CONFIG
+    );
 
     @Override
     public void apply(@Nonnull Project project) {
@@ -63,12 +89,27 @@ public class CompilerPlugin implements Plugin<Project> {
 
         // Setup Graal compiler
         Task compilerTask = this.declareCompilerDependency(project, config);
+        this.declareCompilerMatrix(project, config);
+        this.declareProfilerDependency(project, config);
         this.setupGraalCompilerInExecutableTasks(project, config, compilerTask);
+        this.setupHostCompiler(project, config, compilerTask);
         this.setupGraalCompilerInDistributions(project);
+        this.setupTaskOptions(project, config);
+        this.setupTunedSettings(project, config);
+        this.setupMetricsAgent(project, config);
+        this.setupVersionAlignment(project, config);
+        this.declareRuntimeVerification(project);
 
         // Setup language dependency configurations
         this.setupLanguageDependencyConfigurations(project);
         this.setupDynamicGraalLanguages(project);
+        this.setupResourcePruning(project, config);
+
+        // Setup Truffle performance tests (if requested)
+        this.setupPerformanceTests(project, config);
+
+        // Setup shared engine runtime library (if requested)
+        this.setupContextPool(project, config);
     }
 
     /* Create dependency, configuration and download task for the Graal compiler. */
@@ -86,32 +127,68 @@ public class CompilerPlugin implements Plugin<Project> {
                 task.setGroup("graal")
         );
 
-        // Task must be configured after project because it depends on config and dependency resolution.
+        // Task must be configured after project because it depends on config. The configuration resolves lazily.
         project.afterEvaluate(it -> {
-            prepareCompiler.from(compilerConfig.getFiles());
+            prepareCompiler.from(compilerConfig);
             prepareCompiler.into(config.getCompilerDir());
         });
 
         return prepareCompiler;
     }
 
+    /* Create a configuration with the Truffle profiler tools used when profiling on Hotspot. */
+    private void declareProfilerDependency(Project project, GraalExtension config) {
+        Configuration profilerConfig = project.getConfigurations().create(CpuSampler.PROFILER_CONFIG);
+        profilerConfig.setVisible(false);
+        profilerConfig.setCanBeResolved(true);
+        // Truffle itself is already on the classpath of the profiled application.
+        profilerConfig.setTransitive(false);
+        profilerConfig.setDescription("Truffle profiler tools (CPU sampler).");
+        profilerConfig.withDependencies(dependencies ->
+                dependencies.add(project.getDependencies().create("org.graalvm.tools:profiler:"+config.getVersion()))
+        );
+    }
+
+    /* Create a configuration and a prepare task for every compiler version in the compiler matrix. */
+    private void declareCompilerMatrix(Project project, GraalExtension config) {
+        // Versions are only known once the build script is evaluated.
+        project.afterEvaluate(it -> {
+            List<Task> prepareTasks = new ArrayList<>();
+            for (String version : new LinkedHashSet<>(config.getCompilerMatrix())) {
+                String suffix = PluginUtils.versionSuffix(version);
+                Configuration compilerConfig = project.getConfigurations().create(COMPILER_CONFIG + suffix);
+                compilerConfig.setVisible(false);
+                compilerConfig.setCanBeResolved(true);
+                compilerConfig.setDescription("Graal compiler " + version + " and its dependencies.");
+                compilerConfig.getDependencies().add(
+                        project.getDependencies().create("org.graalvm.compiler:compiler:" + version)
+                );
+                prepareTasks.add(project.getTasks().create("prepareCompiler" + suffix, Copy.class, task -> {
+                    task.setGroup("graal");
+                    task.from(compilerConfig);
+                    task.into(config.getCompilerDir(version));
+                }));
+            }
+            project.getTasks().withType(CompilerMatrix.class).all(task -> task.dependsOn(prepareTasks));
+        });
+    }
+
     /* Setup every JavaForOptions task so that it uses the Graal compiler. */
     private void setupGraalCompilerInExecutableTasks(Project project, GraalExtension config, Task compilerTask) {
         project.getTasks().all(task -> {
             if (task instanceof JavaForkOptions) {
                 task.dependsOn(compilerTask);
                 task.doFirst(it -> {
-                   if (!PluginUtils.isGraalVM()) {  // When running on Graal, the compiler is already there...
-                       if (!PluginUtils.hasJVMCI()) {   // Unsupported JVM - print warning.
-                           System.err.println("WARNING: Support for JVM Compiler Interface not detected.");
-                           System.err.println("Truffle languages running in interpreter mode only.");
+                   // Decide based on the JVM the task forks, which is not necessarily the one running Gradle.
+                   JvmProbe jvm = JvmProbe.forTask(it);
+                   if (!jvm.isGraalVM()) {  // When running on Graal, the compiler is already there...
+                       if (!jvm.hasJVMCI()) {   // Unsupported JVM - print warning.
+                           it.getLogger().warn("WARNING: Support for JVM Compiler Interface not detected in " + jvm.getJavaHome() + ".");
+                           it.getLogger().warn("Truffle languages running in interpreter mode only (see the verifyTruffleRuntime task).");
                        } else {
                            JavaForkOptions opts = (JavaForkOptions) it;
                            String compilerPath = config.getCompilerDir().getAbsolutePath();
-                           opts.jvmArgs(
-                                   "-XX:+UnlockExperimentalVMOptions", "-XX:+EnableJVMCI",
-                                   "--module-path=" + compilerPath, "--upgrade-module-path=" + compilerPath
-                           );
+                           opts.jvmArgs((Object[]) PluginUtils.compilerJvmArgs(compilerPath));
                        }
                    }
                 });
@@ -120,6 +197,251 @@ public class CompilerPlugin implements Plugin<Project> {
         });
     }
 
+    /* Select the JIT compiler of host code in fork tasks and start scripts when requested. */
+    private void setupHostCompiler(Project project, GraalExtension config, Task compilerTask) {
+        project.getTasks().all(task -> {
+            if (task instanceof JavaForkOptions) {
+                task.doFirst(it -> {
+                    String hostCompiler = config.getHostCompiler();
+                    if (hostCompiler == null) return;
+                    JvmProbe jvm = JvmProbe.forTask(it);
+                    if (jvm.isGraalVM() || jvm.hasJVMCI()) {
+                        ((JavaForkOptions) it).jvmArgs((Object[]) PluginUtils.hostCompilerJvmArgs(hostCompiler));
+                    } else if (GraalExtension.HOST_COMPILER_GRAAL.equals(hostCompiler)) {
+                        it.getLogger().warn("WARNING: Host code of " + it.getName() + " runs with C2, " + jvm.getJavaHome() + " does not support JVMCI.");
+                    }
+                });
+            }
+        });
+        // Start scripts ignore unrecognized options (see addCompilerArgsToDistribution), so JVMs without JVMCI keep C2.
+        project.getTasks().withType(CreateStartScripts.class, scripts ->
+                GraalStartScripts.addJvmOpts(scripts, project.provider(() -> config.getHostCompiler() == null
+                        ? Collections.<String>emptyList()
+                        : Arrays.asList(PluginUtils.hostCompilerJvmArgs(config.getHostCompiler()))
+                ))
+        );
+        project.getTasks().withType(HostCompilerComparison.class).all(task -> task.dependsOn(compilerTask));
+    }
+
+    /*
+        Truffle falls back to the interpreter when the Truffle API and the compiler do not match, so all Graal and
+        Truffle artifacts on the classpath require the compiler version: the release of the GraalVM running the
+        tests if it has one, otherwise the configured version. Conflict resolution still selects a higher version
+        requested by another dependency (also transitively, e.g. through a language), so the resolved versions are
+        checked and a mismatch fails the resolution.
+     */
+    private void setupVersionAlignment(Project project, GraalExtension config) {
+        project.afterEvaluate(it -> {
+            if (!config.getAlignVersions()) return;
+            String version = getCompilerVersion(project, config);
+            for (String configuration : ALIGNED_CONFIGURATIONS) {
+                if (project.getConfigurations().findByName(configuration) == null) continue;
+                for (String module : ALIGNED_MODULES) {
+                    project.getDependencies().getConstraints().add(configuration, module, constraint -> {
+                        constraint.version(v -> v.require(version));
+                        constraint.because("Truffle runs in the interpreter unless it matches the Graal compiler " + version
+                                + ". Use graal { alignVersions false } to disable this check.");
+                    });
+                }
+            }
+            project.getConfigurations().all(configuration -> {
+                if (!configuration.isCanBeResolved()) return;
+                boolean aligned = configuration.getHierarchy().stream()
+                        .anyMatch(parent -> ALIGNED_CONFIGURATIONS.contains(parent.getName()));
+                if (!aligned) return;
+                configuration.getIncoming().afterResolve(resolved -> checkAlignedVersions(resolved, version));
+            });
+        });
+    }
+
+    /* Version of the Graal compiler used by the tests, the compiler of GraalVM releases is built-in. */
+    private static String getCompilerVersion(Project project, GraalExtension config) {
+        String release = JvmProbe.forTask(project.getTasks().getByName("test")).getGraalVersion();
+        return release != null ? release : config.getVersion();
+    }
+
+    /* Fail when conflict resolution selected another version of an aligned artifact. */
+    private static void checkAlignedVersions(ResolvableDependencies resolved, String version) {
+        for (ResolvedComponentResult component : resolved.getResolutionResult().getAllComponents()) {
+            ModuleVersionIdentifier id = component.getModuleVersion();
+            if (id == null || !ALIGNED_MODULES.contains(id.getGroup() + ":" + id.getName())) continue;
+            if (!version.equals(id.getVersion())) {
+                throw new IllegalStateException(
+                        id + " in " + resolved.getName() + " does not match the Graal compiler " + version
+                                + ", Truffle would run in the interpreter. Align the dependency versions or use"
+                                + " graal { alignVersions false } to disable this check."
+                );
+            }
+        }
+    }
+
+    /*
+        A JavaExec task running a probe with the runtime classpath. It is configured by this plugin like any other
+        fork task, so it fails when the application would run with the interpreter only.
+     */
+    private void declareRuntimeVerification(Project project) {
+        project.getTasks().create("verifyTruffleRuntime", JavaExec.class, task -> {
+            task.setGroup("verification");
+            task.setDescription("Fails when Truffle does not use the Graal compiler in the configured JVM.");
+            File probe = new File(task.getTemporaryDir(), "probe");
+            task.setMain(TruffleRuntimeProbe.class.getName());
+            task.setIgnoreExitValue(true);
+            JavaPluginConvention javaPlugin = project.getConvention().getPlugin(JavaPluginConvention.class);
+            task.setClasspath(javaPlugin.getSourceSets().getAt("main").getRuntimeClasspath().plus(project.files(probe))
+                    .plus(PluginUtils.getRuntimeArtifacts(project, "truffle-runtime-support")));
+            task.doFirst(it -> {
+                String classFile = TruffleRuntimeProbe.class.getName().replace('.', '/') + ".class";
+                File target = new File(probe, classFile);
+                if (!target.getParentFile().isDirectory() && !target.getParentFile().mkdirs()) {
+                    throw new IllegalStateException("Cannot create probe directory at " + probe.getAbsolutePath());
+                }
+                try (InputStream stream = TruffleRuntimeProbe.class.getClassLoader().getResourceAsStream(classFile)) {
+                    if (stream == null) throw new IllegalStateException("Missing " + classFile + " in plugin classpath.");
+                    Files.copy(stream, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            task.doLast(it -> {
+                int exitValue = task.getExecutionResult().get().getExitValue();
+                if (exitValue == TruffleRuntimeProbe.NOT_OPTIMIZING) {
+                    throw new IllegalStateException("Truffle runs in interpreter mode only. Check that the JVM supports "
+                            + "JVMCI (JDK 11+ or GraalVM) and that the Truffle dependencies match graal { version }.");
+                } else if (exitValue == TruffleRuntimeProbe.NO_TRUFFLE) {
+                    throw new IllegalStateException("Truffle is not on the runtime classpath of " + project.getPath() + ".");
+                } else if (exitValue != 0) {
+                    throw new IllegalStateException("Truffle runtime probe failed with exit code " + exitValue + ".");
+                }
+            });
+        });
+    }
+
+    /*
+        Performance tests run in a separate Test task with synchronous Truffle compilation, so that the number
+        of calls until a call target compiles is deterministic. They are excluded from the normal test task.
+     */
+    private void setupPerformanceTests(Project project, GraalExtension config) {
+        project.afterEvaluate(it -> {
+            List<String> includes = config.getPerformanceTests();
+            if (includes.isEmpty()) return;
+            project.getDependencies().add(
+                    "testImplementation", PluginUtils.getRuntimeArtifacts(project, "truffle-test-support", "truffle-runtime-support")
+            );
+            Test test = (Test) project.getTasks().getByName("test");
+            test.exclude(includes);
+            Test performanceTest = project.getTasks().create("performanceTest", Test.class, task -> {
+                task.setGroup("verification");
+                task.setDescription("Runs Truffle performance tests with synchronous compilation.");
+                task.setTestClassesDirs(test.getTestClassesDirs());
+                task.setClasspath(test.getClasspath());
+                task.include(includes);
+                task.systemProperty("polyglot.engine.BackgroundCompilation", "false");
+                // Tests compete for compiler threads and CPU otherwise, making results flaky.
+                task.setMaxParallelForks(1);
+                task.shouldRunAfter(test);
+            });
+            project.getTasks().getByName("check").dependsOn(performanceTest);
+        });
+    }
+
+    /* Add the runtime library with the shared engine and pass the pool configuration to tasks and distributions. */
+    private void setupContextPool(Project project, GraalExtension config) {
+        project.afterEvaluate(it -> {
+            ContextPoolOptions pool = config.getContextPool();
+            if (pool == null) return;
+            project.getDependencies().add("implementation", PluginUtils.getRuntimeArtifacts(project, "truffle-runtime-support"));
+            project.getDependencies().add("testImplementation", PluginUtils.getRuntimeArtifacts(project, "truffle-test-support"));
+            Map<String, String> properties = pool.toSystemProperties();
+            project.getTasks().all(task -> {
+                if (task instanceof JavaForkOptions) {
+                    task.doFirst(t -> ((JavaForkOptions) t).systemProperties(properties));
+                }
+            });
+            List<String> opts = new ArrayList<>();
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                opts.add("-D" + property.getKey() + "=" + property.getValue());
+            }
+            project.getTasks().withType(CreateStartScripts.class, task ->
+                    GraalStartScripts.addJvmOpts(task, project.provider(() -> opts))
+            );
+        });
+    }
+
+    /* Add the `graalOptions` extension with diagnostic options to every fork task. */
+    private void setupTaskOptions(Project project, GraalExtension config) {
+        project.getTasks().all(task -> {
+            if (task instanceof JavaForkOptions) {
+                GraalTaskOptions options = task.getExtensions().create("graalOptions", GraalTaskOptions.class);
+                GraphDumps.configure(project, task, options);
+                CpuSampler.configure(project, task, options);
+                MemoryTracer.configure(project, task, options);
+                FlightRecorder.configure(project, task, options, config);
+            }
+        });
+        MemoryTracer.declareBudgetChecks(project);
+        GraphDumps.declarePacking(project);
+        project.getPluginManager().withPlugin("application", plugin -> {
+            CpuSampler.declareDistributionProfiling(project);
+            FlightRecorder.declareDistributionRecording(project);
+        });
+    }
+
+    /*
+        JVM arguments selected by an Autotune task are used by the application (the run task and the start scripts)
+        and by tests. Other fork tasks, e.g. benchmarks compared by CompilerMatrix or verifyTruffleRuntime, keep
+        their own arguments.
+     */
+    private void setupTunedSettings(Project project, GraalExtension config) {
+        project.getTasks().all(task -> {
+            if (task instanceof Test || (task instanceof JavaExec && task.getName().equals("run"))) {
+                ((JavaForkOptions) task).getJvmArgumentProviders().add(new TuningSpace.Settings(config));
+            }
+        });
+        project.getTasks().withType(CreateStartScripts.class, task ->
+                GraalStartScripts.addJvmOpts(task, project.provider(() -> TuningSpace.readSettings(config.getTuningFile())))
+        );
+    }
+
+    /*
+        The metrics agent is resolved only when a fork task or a distribution uses it. Fork tasks get the agent
+        from the Gradle user home, distributions carry it in graalMetrics/ next to the compiler.
+     */
+    private void setupMetricsAgent(Project project, GraalExtension config) {
+        Configuration agentConfig = project.getConfigurations().create(METRICS_AGENT_CONFIG);
+        agentConfig.setVisible(false);
+        agentConfig.setCanBeResolved(true);
+        agentConfig.setTransitive(false);
+        agentConfig.setDescription("Java agent exposing Truffle compilation metrics.");
+        agentConfig.withDependencies(dependencies -> dependencies.add(project.getDependencies().create(
+                PluginUtils.getRuntimeArtifacts(project, "truffle-metrics-agent")
+        )));
+        project.getTasks().all(task -> {
+            if (task instanceof JavaForkOptions) {
+                GraalTaskOptions options = task.getExtensions().getByType(GraalTaskOptions.class);
+                task.doFirst(it -> {
+                    if (!options.isMetricsAgent()) return;
+                    MetricsAgentOptions agent = config.getMetricsAgent() != null ? config.getMetricsAgent() : new MetricsAgentOptions();
+                    ((JavaForkOptions) it).jvmArgs("-javaagent:" + agentConfig.getSingleFile().getAbsolutePath() + "=" + agent.toAgentArgs());
+                });
+            }
+        });
+        project.afterEvaluate(it -> {
+            MetricsAgentOptions agent = config.getMetricsAgent();
+            if (agent == null) return;
+            PluginUtils.withDistributions(it, distributions -> distributions.all(distribution ->
+                    distribution.getContents().from(agentConfig, spec -> {
+                        spec.into("graalMetrics");
+                        spec.rename(name -> "truffle-metrics-agent.jar");
+                    })
+            ));
+            project.getTasks().withType(CreateStartScripts.class, task ->
+                    GraalStartScripts.addJvmOpts(task, project.provider(() -> Collections.singletonList(
+                            "-javaagent:" + GraalStartScripts.APP_HOME + "/graalMetrics/truffle-metrics-agent.jar=" + agent.toAgentArgs()
+                    )))
+            );
+        });
+    }
+
     /* Add Graal compiler to every distribution and hack into CreateStartScripts so that it is actually used. */
     private void setupGraalCompilerInDistributions(Project project) {
         project.afterEvaluate(it -> {   // needs to be done after evaluation because we depend on compilerConfig
@@ -127,17 +449,12 @@ public class CompilerPlugin implements Plugin<Project> {
 
             // Copy compiler to all distributions
             PluginUtils.withDistributions(it, distributions -> distributions.all(distribution ->
-                    distribution.getContents().from(compilerConfig.getFiles(), spec -> spec.into("graalCompiler"))
+                    distribution.getContents().from(compilerConfig, spec -> spec.into("graalCompiler"))
             ));
 
-            // In all CreateStartScripts tasks, replace occurrences of __APP_HOME__ with the appropriate
-            // environment variable (this is also used in truffle language plugin).
-            project.getTasks().withType(CreateStartScripts.class)
-                    .all(CompilerPlugin::addReplaceAppHomeAction);
-
             // Add default JVM arguments to the start scripts which will enable the Graal compiler.
             project.getTasks().withType(CreateStartScripts.class)
-                    .all(CompilerPlugin::addCompilerArgsToDistribution);
+                    .all(scripts -> addCompilerArgsToDistribution(project, scripts));
         });
     }
 
@@ -164,75 +481,112 @@ public class CompilerPlugin implements Plugin<Project> {
 
     /* Load dynamic (not-installed) Graal languages using truffle.class.path.append. */
     private void setupDynamicGraalLanguages(Project project) {
-        // Update all fork tasks (relevant only if running on Graal):
-        if (PluginUtils.isGraalVM()) {
-            project.getTasks().all(task -> {
-                if (task instanceof JavaForkOptions) {
-                    // Do this as the task executes to make sure truffle classpath can be resolved.
-                    task.doFirst(it -> {
-                        JavaForkOptions opts = (JavaForkOptions) task;
-                        opts.systemProperty("truffle.class.path.append", getTruffleClasspath(project, false).getAsPath());
-                    });
-                }
-            });
-        }
-        // Configure all distributions (relevant on any VM since distribution can run on anything):
-        project.getTasks().withType(CreateStartScripts.class).all(task -> task.doFirst(it -> {
-            CreateStartScripts scripts = (CreateStartScripts) it;
-            // Build the truffle classpath for the start script. Note that this is different from the
-            // runtime classpath used in Fork tasks, because here the path is relative to the APP_HOME folder.
-            StringBuilder classpath = new StringBuilder();
-            for (File f : getTruffleClasspath(project, true).getFiles()) {
-                classpath.append("__APP_HOME__/lib/");
-                classpath.append(f.getName());
-                classpath.append(":");
+        // Update all fork tasks (relevant only if the forked JVM is Graal):
+        project.getTasks().all(task -> {
+            if (task instanceof JavaForkOptions) {
+                // Do this as the task executes to make sure truffle classpath can be resolved.
+                task.doFirst(it -> {
+                    if (!JvmProbe.forTask(it).isGraalVM()) return;
+                    JavaForkOptions opts = (JavaForkOptions) task;
+                    opts.systemProperty("truffle.class.path.append", getTruffleClasspath(project, false).getAsPath());
+                });
             }
-            scripts.setDefaultJvmOpts(PluginUtils.appendIterable(
-                    scripts.getDefaultJvmOpts(),
-                    "-Dtruffle.class.path.append="+classpath.toString()
-            ));
-        }));
+        });
+        // Configure all distributions (relevant on any VM since distribution can run on anything):
+        project.getTasks().withType(CreateStartScripts.class).all(scripts ->
+                // Resolved when the task inputs are fingerprinted, so the truffle classpath is a declared input.
+                GraalStartScripts.addJvmOpts(scripts, project.provider(() -> {
+                    // Build the truffle classpath for the start script. Note that this is different from the
+                    // runtime classpath used in Fork tasks, because here the path is relative to the APP_HOME folder.
+                    StringBuilder classpath = new StringBuilder();
+                    for (File f : getTruffleClasspath(project, true).getFiles()) {
+                        classpath.append(GraalStartScripts.APP_HOME).append("/lib/");
+                        classpath.append(f.getName());
+                        classpath.append(":");
+                    }
+                    return Collections.singletonList("-Dtruffle.class.path.append=" + classpath);
+                }))
+        );
     }
 
-    /* Replace occurrences of __APP_HOME__ with a platform-specific environment variable. */
-    private static void addReplaceAppHomeAction(CreateStartScripts scripts) {
-        scripts.doLast(it -> {
-            try {
-                PluginUtils.replaceInFile(scripts.getUnixScript(), "__APP_HOME__", "$APP_HOME");
-                PluginUtils.replaceInFile(scripts.getWindowsScript(), "__APP_HOME__", "%APP_HOME%");
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+    /*
+        Pruning is an artifact transform requested through artifact views of the runtime and truffle classpaths.
+        The configurations themselves are not modified (they may already be resolved when the project is
+        evaluated), instead the consumers (test and run tasks, start scripts, dynamically loaded languages of fork
+        tasks, the main distribution and native images) use the views. Native image tasks also get the rules as
+        resource exclusions, which apply to resources included by the configuration of the libraries as well.
+     */
+    private void setupResourcePruning(Project project, GraalExtension config) {
+        JavaPluginConvention javaPlugin = project.getConvention().getPlugin(JavaPluginConvention.class);
+        SourceSet mainSources = javaPlugin.getSourceSets().getByName("main");
+        SourceSet testSources = javaPlugin.getSourceSets().getByName("test");
+        Configuration runtime = project.getConfigurations().getByName("runtimeClasspath");
+        project.getTasks().named("test", Test.class).configure(task ->
+                task.setClasspath(PruneResources.runtimeClasspath(project, testSources))
+        );
+        project.getPluginManager().withPlugin("application", plugin -> {
+            project.getTasks().named("run", JavaExec.class).configure(task ->
+                    task.setClasspath(PruneResources.runtimeClasspath(project, mainSources))
+            );
+            project.getTasks().named("startScripts", CreateStartScripts.class).configure(task ->
+                    task.setClasspath(project.files(project.getTasks().named("jar"), PruneResources.ifConfigured(project, runtime)))
+            );
+        });
+        project.afterEvaluate(it -> {
+            ResourcePruningOptions pruning = config.getResourcePruning();
+            if (pruning == null) return;
+            DependencyHandler dependencies = project.getDependencies();
+            dependencies.getAttributesSchema().attribute(PruneResources.PRUNED);
+            dependencies.getArtifactTypes().maybeCreate("jar").getAttributes().attribute(PruneResources.PRUNED, false);
+            dependencies.registerTransform(PruneResources.class, spec -> {
+                spec.getFrom().attribute(PruneResources.PRUNED, false).attribute(PruneResources.ARTIFACT_TYPE, "jar");
+                spec.getTo().attribute(PruneResources.PRUNED, true).attribute(PruneResources.ARTIFACT_TYPE, "jar");
+                spec.parameters(parameters -> {
+                    parameters.getKeepLocales().set(pruning.getKeepLocales());
+                    parameters.getExcludes().set(pruning.getExcludes());
+                });
+            });
+            // The main distribution copies the runtime classpath into lib, replace the jars which lose resources.
+            PluginUtils.withDistributions(it, distributions -> {
+                Distribution distribution = distributions.findByName("main");
+                if (distribution == null) return;
+                FileCollection pruned = PruneResources.pruned(runtime);
+                FileCollection replaced = runtime.minus(pruned);
+                distribution.getContents().exclude(element -> replaced.contains(element.getFile()));
+                distribution.getContents().from(pruned.minus(runtime), spec -> spec.into("lib"));
+            });
+            List<String> expressions = pruning.toFilter().getExpressions();
+            project.getTasks().withType(NativeImage.class).all(task ->
+                    task.excludeResources(expressions.toArray(new String[0]))
+            );
         });
     }
 
     /* Add default JVM options that enable the Graal compiler. */
-    private static void addCompilerArgsToDistribution(CreateStartScripts scripts) {
-        scripts.doFirst(it ->
-                scripts.setDefaultJvmOpts(PluginUtils.appendIterable(scripts.getDefaultJvmOpts(),
-                        // A workaround so that we don't have to remove Graal compiler on older JVMs.
-                        "-XX:+IgnoreUnrecognizedVMOptions",
-                        "-XX:+UnlockExperimentalVMOptions",
-                        "-XX:+EnableJVMCI",
-                        "--module-path=__APP_HOME__/graalCompiler/",
-                        "--upgrade-module-path=__APP_HOME__/graalCompiler/"
-                ))
-        );
+    private static void addCompilerArgsToDistribution(Project project, CreateStartScripts scripts) {
+        GraalStartScripts.addJvmOpts(scripts, project.provider(() -> Arrays.asList(
+                // A workaround so that we don't have to remove Graal compiler on older JVMs.
+                "-XX:+IgnoreUnrecognizedVMOptions",
+                "-XX:+UnlockExperimentalVMOptions",
+                "-XX:+EnableJVMCI",
+                "--module-path=" + GraalStartScripts.APP_HOME + "/graalCompiler/",
+                "--upgrade-module-path=" + GraalStartScripts.APP_HOME + "/graalCompiler/"
+        )));
     }
 
     /*
         In normal projects, truffle classpath is based on the truffleClasspath configuration. But if the language
         plugin is also applied, we add other dependencies and sources as well.
      */
-    private FileCollection getTruffleClasspath(Project project, boolean fromArchive) {
+    static FileCollection getTruffleClasspath(Project project, boolean fromArchive) {
         Configuration truffleClasspath = project.getConfigurations().findByName("truffleClasspath");
         assert truffleClasspath != null;
         if (!project.getPluginManager().hasPlugin("org.graalvm.plugin.truffle-language")) {
             // Normal project
-            return truffleClasspath;
+            return PruneResources.ifConfigured(project, truffleClasspath);
         } else {
             // Language project
-            FileCollection classpath = truffleClasspath;
+            FileCollection classpath = PruneResources.ifConfigured(project, truffleClasspath);
             // Add all runtime configuration files except for installed languages:
             Configuration runtime = project.getConfigurations().getAt("runtimeClasspath");
             for (Configuration cfg : runtime.getExtendsFrom()) {
@@ -0,0 +1,67 @@
+package com.oracle.truffle.gradle;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Configuration of the shared engine and context pool from the {@code truffle-runtime-support} library
+ * (see {@link GraalExtension#contextPool(org.gradle.api.Action)}). Values are passed to fork tasks and
+ * distributions as system properties.</p>
+ */
+public class ContextPoolOptions {
+
+    private Integer maxContexts;
+    private int sourceCacheSize = 256;
+    private final Map<String, String> engineOptions = new LinkedHashMap<>();
+
+    /**
+     * @return Maximal number of pooled contexts, null for the number of available processors.
+     */
+    public Integer getMaxContexts() {
+        return this.maxContexts;
+    }
+
+    public void setMaxContexts(Integer maxContexts) {
+        this.maxContexts = maxContexts;
+    }
+
+    /**
+     * @return Maximal number of cached sources.
+     */
+    public int getSourceCacheSize() {
+        return this.sourceCacheSize;
+    }
+
+    public void setSourceCacheSize(int sourceCacheSize) {
+        this.sourceCacheSize = sourceCacheSize;
+    }
+
+    /**
+     * Set an option of the shared engine, for example {@code engineOption 'engine.CompilationThreshold', '500'}.
+     *
+     * @param key Option key (without the {@code polyglot.} prefix).
+     * @param value Option value.
+     */
+    public void engineOption(String key, String value) {
+        this.engineOptions.put(key, value);
+    }
+
+    public Map<String, String> getEngineOptions() {
+        return Collections.unmodifiableMap(this.engineOptions);
+    }
+
+    /* System properties read by the runtime library and by the polyglot engine. */
+    Map<String, String> toSystemProperties() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (this.maxContexts != null) {
+            properties.put("org.graalvm.plugin.pool.maxContexts", String.valueOf(this.maxContexts));
+        }
+        properties.put("org.graalvm.plugin.pool.sourceCacheSize", String.valueOf(this.sourceCacheSize));
+        for (Map.Entry<String, String> option : this.engineOptions.entrySet()) {
+            properties.put("polyglot." + option.getKey(), option.getValue());
+        }
+        return properties;
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Exec;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.Sync;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+import org.gradle.process.JavaForkOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Runs fork tasks or the installed distribution with the Truffle CPU sampler and renders its JSON
+ * output as a flame graph (see {@link GraalTaskOptions#setCpuSampler(boolean)}). Outputs are stored in
+ * {@code build/graalProfile/<task>}.</p>
+ *
+ * <p>GraalVM ships the sampler, so nothing else is needed there. On Hotspot, the {@code graalProfiler}
+ * configuration (profiler tool of the configured Graal version) is added to the classpath of the task, or
+ * loaded using {@code truffle.class.path.append} in case of distributions.</p>
+ */
+final class CpuSampler {
+
+    static final String PROFILER_CONFIG = "graalProfiler";
+
+    private CpuSampler() {}
+
+    static void configure(Project project, Task task, GraalTaskOptions options) {
+        File dir = new File(project.getBuildDir(), "graalProfile/" + task.getName());
+        File json = new File(dir, "cpusampler.json");
+        task.doFirst(it -> {
+            if (!options.isCpuSampler()) return;
+            prepareOutputDir(project, dir);
+            ((JavaForkOptions) it).systemProperties(samplerProperties(json));
+            if (!JvmProbe.forTask(it).isGraalVM()) {
+                addProfilerToClasspath(project, it);
+            }
+        });
+        task.doLast(it -> {
+            if (options.isCpuSampler()) render(task, json, new File(dir, "flamegraph.svg"));
+        });
+    }
+
+    /**
+     * <p>Create the {@code profileDist} task which runs the installed distribution with the sampler.</p>
+     */
+    static void declareDistributionProfiling(Project project) {
+        project.getTasks().create("profileDist", Exec.class, task -> {
+            task.setGroup("graal");
+            task.setDescription("Runs the installed distribution with the Truffle CPU sampler.");
+            task.dependsOn("installDist");
+            File dir = new File(project.getBuildDir(), "graalProfile/" + task.getName());
+            File json = new File(dir, "cpusampler.json");
+            task.doFirst(it -> {
+                prepareOutputDir(project, dir);
+                Sync install = (Sync) project.getTasks().getByName("installDist");
+                CreateStartScripts scripts = (CreateStartScripts) project.getTasks().getByName("startScripts");
+                String script = "bin/" + scripts.getApplicationName() + (PluginUtils.isWindows() ? ".bat" : "");
+                task.setExecutable(new File(install.getDestinationDir(), script).getAbsolutePath());
+
+                List<String> opts = new ArrayList<>();
+                for (Map.Entry<String, String> property : samplerProperties(json).entrySet()) {
+                    opts.add("-D" + property.getKey() + "=" + property.getValue());
+                }
+                // The distribution does not contain the profiler, load it dynamically on Hotspot.
+                Object javaHome = task.getEnvironment().get("JAVA_HOME");
+                JvmProbe jvm = javaHome == null ? JvmProbe.current() : JvmProbe.forHome(new File(javaHome.toString()));
+                if (!jvm.isGraalVM()) {
+                    // JAVA_OPTS come after the options of the start script, so the property must also contain
+                    // the dynamic languages of the distribution the script would have appended.
+                    StringBuilder classpath = new StringBuilder();
+                    for (File file : CompilerPlugin.getTruffleClasspath(project, true).getFiles()) {
+                        classpath.append(new File(install.getDestinationDir(), "lib/" + file.getName()).getAbsolutePath());
+                        classpath.append(File.pathSeparator);
+                    }
+                    FileCollection profiler = project.getConfigurations().getByName(PROFILER_CONFIG);
+                    classpath.append(profiler.getAsPath());
+                    opts.add("-Dtruffle.class.path.append=" + classpath);
+                }
+                // Quoted like the options of the start script, paths may contain spaces.
+                String javaOpts = GraalStartScripts.quoteJvmOpts(opts, PluginUtils.isWindows());
+                Object userOpts = task.getEnvironment().get("JAVA_OPTS");
+                task.environment("JAVA_OPTS", userOpts == null ? javaOpts : userOpts + " " + javaOpts);
+            });
+            task.doLast(it -> render(task, json, new File(dir, "flamegraph.svg")));
+        });
+    }
+
+    private static Map<String, String> samplerProperties(File json) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("polyglot.cpusampler", "true");
+        properties.put("polyglot.cpusampler.Output", "json");
+        properties.put("polyglot.cpusampler.OutputFile", json.getAbsolutePath());
+        // Keep internal (non-guest) roots so that host frames show up in the flame graph.
+        properties.put("polyglot.cpusampler.SampleInternal", "true");
+        return properties;
+    }
+
+    /* Make the profiler tools available to a task forking a Hotspot JVM. */
+    static void addProfilerToClasspath(Project project, Task task) {
+        FileCollection profiler = project.getConfigurations().getByName(PROFILER_CONFIG);
+        if (task instanceof JavaExec) {
+            ((JavaExec) task).classpath(profiler);
+        } else if (task instanceof Test) {
+            Test test = (Test) task;
+            test.setClasspath(test.getClasspath().plus(profiler));
+        } else {
+            System.err.println("WARNING: Cannot add Graal profiler tools to the classpath of " + task.getName() + ".");
+        }
+    }
+
+    private static void prepareOutputDir(Project project, File dir) {
+        project.delete(dir);
+        if (!dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create profile directory at " + dir.getAbsolutePath());
+        }
+    }
+
+    private static void render(Task task, File json, File svg) {
+        if (!json.exists()) {
+            System.err.println("WARNING: CPU sampler produced no output. Did the task use a polyglot engine?");
+            return;
+        }
+        try {
+            String content = new String(Files.readAllBytes(json.toPath()), Charset.defaultCharset());
+            FlameGraph.Frame root = FlameGraph.fromCpuSamplerJson(content);
+            String title = "CPU samples of " + task.getPath() + " (" + root.total() + " samples)";
+            Files.write(svg.toPath(), FlameGraph.renderSvg(root, title).getBytes(Charset.defaultCharset()));
+            task.getLogger().lifecycle("Flame graph written to " + svg.getAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
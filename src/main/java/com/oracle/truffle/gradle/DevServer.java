@@ -0,0 +1,162 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The {@code devServer} task of a language project: a long-lived JVM which runs a guest script (or a main
+ * class) again whenever the classes of the language are recompiled, for example by {@code gradle -t classes}
+ * in another terminal or by the IDE. Pressing Enter runs it again without a change.</p>
+ *
+ * {@code
+ * devServer {
+ *     // Guest source evaluated with the language of the project...
+ *     script 'src/test/guest/fib.sl'
+ *     // ...or a main class of the project, loaded from the recompiled classes.
+ *     entryPoint 'com.example.lang.Main'
+ *     args '--size', '30'
+ *     // Polling interval of the class directories in milliseconds (default 500).
+ *     watchInterval 200
+ * }
+ * }
+ *
+ * <p>The compiled classes and resources of the {@code main} source set are loaded by a new class loader for
+ * every run, everything else (the Truffle runtime, the compiler, third-party libraries) is on the JVM
+ * classpath, so the compiler stays loaded and compiled between runs and only the guest code warms up again.
+ * The task is configured by the compiler plugin like any other {@code JavaExec} task. Classes of the
+ * project must not be retained outside of the run (static state in dependencies, threads left running),
+ * otherwise old versions of the language stay in memory.</p>
+ */
+public class DevServer extends JavaExec {
+
+    private final RegularFileProperty script = getProject().getObjects().fileProperty();
+    private final Property<String> entryPoint = getProject().getObjects().property(String.class);
+    private final Property<Long> watchInterval = getProject().getObjects().property(Long.class);
+
+    public DevServer() {
+        this.watchInterval.set(500L);
+        this.setGroup("graal");
+        this.setStandardInput(System.in);
+        JavaPluginConvention javaPlugin = getProject().getConvention().findPlugin(JavaPluginConvention.class);
+        if (javaPlugin != null) {
+            SourceSet main = javaPlugin.getSourceSets().getByName("main");
+            this.dependsOn(main.getClassesTaskName());
+            File server = new File(getTemporaryDir(), "server");
+            this.setClasspath(main.getRuntimeClasspath().minus(main.getOutput()).plus(getProject().files(server)));
+        }
+    }
+
+    public void setScript(Object file) {
+        this.script.set(getProject().file(file));
+    }
+
+    /**
+     * @return Guest source evaluated by the language of the project in every run.
+     */
+    @Internal
+    public File getScript() {
+        return this.script.getAsFile().getOrNull();
+    }
+
+    public void setEntryPoint(String className) {
+        this.entryPoint.set(className);
+    }
+
+    /**
+     * @return Main class executed in every run (instead of a script).
+     */
+    @Input @Optional
+    public String getEntryPoint() {
+        return this.entryPoint.getOrNull();
+    }
+
+    public void setWatchInterval(long millis) {
+        this.watchInterval.set(millis);
+    }
+
+    /**
+     * @return Polling interval of the watched class directories in milliseconds.
+     */
+    @Input
+    public long getWatchInterval() {
+        return this.watchInterval.get();
+    }
+
+    /**
+     * @return Directories loaded by a new class loader in every run.
+     */
+    @Internal
+    public FileCollection getReloadedClasses() {
+        JavaPluginConvention javaPlugin = getProject().getConvention().getPlugin(JavaPluginConvention.class);
+        return javaPlugin.getSourceSets().getByName("main").getOutput();
+    }
+
+    @Override
+    @TaskAction
+    public void exec() {
+        if ((getScript() == null) == (getEntryPoint() == null)) {
+            throw new IllegalStateException("Set either `script` or `entryPoint` of " + getPath() + ".");
+        }
+        copyServer(new File(getTemporaryDir(), "server"));
+        GraalExtension config = GraalExtension.initInProject(getProject());
+        List<String> serverArgs = new ArrayList<>();
+        serverArgs.add("--watch");
+        serverArgs.add(getReloadedClasses().getAsPath());
+        serverArgs.add("--language");
+        serverArgs.add(config.requireLanguageId());
+        if (getScript() != null) {
+            serverArgs.add("--script");
+            serverArgs.add(getScript().getAbsolutePath());
+        } else {
+            serverArgs.add("--main");
+            serverArgs.add(getEntryPoint());
+        }
+        serverArgs.add("--interval");
+        serverArgs.add(String.valueOf(getWatchInterval()));
+        serverArgs.add("--");
+        List<String> programArgs = getArgs();
+        if (programArgs != null) serverArgs.addAll(programArgs);
+        this.setArgs(serverArgs);
+        this.setMain(DevServerMain.class.getName());
+        // The language must be found through the context class loader of a run: on GraalVM, the compiler plugin
+        // loads it from truffle.class.path.append (once per JVM) and the locator ignores the classpath.
+        Map<String, Object> properties = new LinkedHashMap<>(getSystemProperties());
+        properties.remove("truffle.class.path.append");
+        properties.put("graalvm.locatorDisabled", "true");
+        this.setSystemProperties(properties);
+        super.exec();
+    }
+
+    private static void copyServer(File dir) {
+        String classFile = DevServerMain.class.getName().replace('.', '/') + ".class";
+        File target = new File(dir, classFile);
+        if (!target.getParentFile().isDirectory() && !target.getParentFile().mkdirs()) {
+            throw new IllegalStateException("Cannot create server directory at " + dir.getAbsolutePath());
+        }
+        try (InputStream stream = DevServerMain.class.getClassLoader().getResourceAsStream(classFile)) {
+            if (stream == null) throw new IllegalStateException("Missing " + classFile + " in plugin classpath.");
+            Files.copy(stream, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.oracle.truffle.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Main class of the {@code devServer} task. This class is copied from the plugin into the classpath of
+ * the task, it is not meant to be used directly.</p>
+ *
+ * <p>Usage: {@code DevServerMain --watch dirs --language name (--script file | --main class) [--interval ms] --
+ * args...}. The watched directories (the compiled classes and resources of the language) are not on the
+ * classpath of the JVM. For every run they are loaded by a new class loader, which is the context class loader
+ * Truffle uses to find languages, and the script (using a new polyglot context) or the main class is executed.
+ * Everything else stays loaded, so the compiler and the Truffle runtime remain warm between runs. A run starts
+ * when the content of the watched directories changes (and then stays the same for one interval, so that a
+ * compilation in progress is not picked up) or when Enter is pressed. The polyglot API is used reflectively,
+ * so that the server does not need Truffle to compile.</p>
+ */
+public final class DevServerMain {
+
+    private DevServerMain() {}
+
+    public static void main(String[] args) throws Exception {
+        List<File> watched = new ArrayList<>();
+        String language = null;
+        String script = null;
+        String mainClass = null;
+        long interval = 500;
+        int split = Arrays.asList(args).indexOf("--");
+        String[] programArgs = split < 0 ? new String[0] : Arrays.copyOfRange(args, split + 1, args.length);
+        int end = split < 0 ? args.length : split;
+        for (int i = 0; i + 1 < end; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--watch":
+                    for (String path : value.split(File.pathSeparator)) {
+                        if (!path.isEmpty()) watched.add(new File(path));
+                    }
+                    break;
+                case "--language": language = value; break;
+                case "--script": script = value; break;
+                case "--main": mainClass = value; break;
+                case "--interval": interval = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if ((script == null) == (mainClass == null)) {
+            throw new IllegalArgumentException("Expected either --script or --main.");
+        }
+
+        Map<String, Long> snapshot = snapshot(watched);
+        for (int run = 1; ; run++) {
+            long start = System.nanoTime();
+            execute(watched, language, script, mainClass, programArgs);
+            System.err.printf("[devServer] Run %d finished in %d ms. Waiting for changes (or press Enter to run again).%n",
+                    run, (System.nanoTime() - start) / 1_000_000);
+            snapshot = awaitChange(watched, snapshot, interval);
+        }
+    }
+
+    /* Run the script or the main class with the current content of the watched directories. */
+    private static void execute(List<File> watched, String language, String script, String mainClass, String[] args) throws IOException {
+        URL[] urls = new URL[watched.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = watched.get(i).toURI().toURL();
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader parent = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(urls, DevServerMain.class.getClassLoader())) {
+            thread.setContextClassLoader(loader);
+            if (script != null) {
+                runScript(loader, language, new File(script), args);
+            } else {
+                Method main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+                main.invoke(null, (Object) args);
+            }
+        } catch (InvocationTargetException e) {
+            report(e.getCause());
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            report(e);
+        } finally {
+            thread.setContextClassLoader(parent);
+        }
+    }
+
+    private static void runScript(ClassLoader loader, String language, File script, String[] args) throws ReflectiveOperationException {
+        Class<?> contextClass = Class.forName("org.graalvm.polyglot.Context", true, loader);
+        Class<?> sourceClass = Class.forName("org.graalvm.polyglot.Source", true, loader);
+        Object builder = contextClass.getMethod("newBuilder", String[].class).invoke(null, (Object) new String[] { language });
+        builder.getClass().getMethod("allowAllAccess", boolean.class).invoke(builder, true);
+        builder.getClass().getMethod("arguments", String.class, String[].class).invoke(builder, language, args);
+        Object context = builder.getClass().getMethod("build").invoke(builder);
+        try {
+            Object sourceBuilder = sourceClass.getMethod("newBuilder", String.class, File.class).invoke(null, language, script);
+            Object source = sourceBuilder.getClass().getMethod("build").invoke(sourceBuilder);
+            contextClass.getMethod("eval", sourceClass).invoke(context, source);
+        } finally {
+            contextClass.getMethod("close").invoke(context);
+        }
+    }
+
+    /* Print the failure of a run, the server keeps waiting for the next change. */
+    private static void report(Throwable failure) {
+        try {
+            // Guest exits (PolyglotException with isExit) are not failures.
+            Method isExit = failure.getClass().getMethod("isExit");
+            if (Boolean.TRUE.equals(isExit.invoke(failure))) {
+                System.err.println("[devServer] Exit status " + failure.getClass().getMethod("getExitStatus").invoke(failure));
+                return;
+            }
+        } catch (ReflectiveOperationException e) {
+            // Not a polyglot exception.
+        }
+        failure.printStackTrace();
+    }
+
+    /* Blocks until the watched content changed and is stable for one interval, or until Enter is pressed. */
+    private static Map<String, Long> awaitChange(List<File> watched, Map<String, Long> previous, long interval) throws Exception {
+        Map<String, Long> current = previous;
+        while (true) {
+            Thread.sleep(interval);
+            if (System.in.available() > 0) {
+                while (System.in.available() > 0 && System.in.read() != '\n') {
+                    // Consume the line.
+                }
+                return snapshot(watched);
+            }
+            Map<String, Long> next = snapshot(watched);
+            if (next.equals(current) && !next.equals(previous)) {
+                return next;
+            }
+            current = next;
+        }
+    }
+
+    /* Modification time and size of every file in the watched directories. */
+    static Map<String, Long> snapshot(List<File> watched) {
+        Map<String, Long> files = new TreeMap<>();
+        for (File dir : watched) {
+            collect(dir, files);
+        }
+        return files;
+    }
+
+    private static void collect(File file, Map<String, Long> files) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                collect(child, files);
+            }
+        } else if (file.isFile()) {
+            files.put(file.getPath(), file.lastModified() * 31 + file.length());
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.oracle.truffle.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * <p>Main class of native binaries with several entry points (see {@link NativeImage#entryPoint(String, String)}).
+ * This class is copied from the plugin into the image classpath, it is not meant to be used directly.</p>
+ *
+ * <p>The entry point is chosen by the name the binary was invoked with (a symlink named after the
+ * entry point, on Linux) or by the first argument ({@code binary tool-name args...}). The mapping from names
+ * to main classes is read from the {@value #MAPPING} resource generated by the task.</p>
+ */
+public final class EntryPointDispatcher {
+
+    static final String MAPPING = "META-INF/graal-entry-points.properties";
+
+    private EntryPointDispatcher() {}
+
+    public static void main(String[] args) throws Throwable {
+        Properties entryPoints = new Properties();
+        try (InputStream stream = EntryPointDispatcher.class.getClassLoader().getResourceAsStream(MAPPING)) {
+            if (stream == null) {
+                throw new IllegalStateException("Missing entry point mapping " + MAPPING + ".");
+            }
+            entryPoints.load(stream);
+        }
+        String program = programName();
+        if (program != null && entryPoints.containsKey(program)) {
+            invoke(entryPoints.getProperty(program), args);
+        } else if (args.length > 0 && entryPoints.containsKey(args[0])) {
+            invoke(entryPoints.getProperty(args[0]), Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            System.err.println("Usage: " + (program == null ? "<binary>" : program) + " <entry point> [args...]");
+            System.err.println("Entry points: " + String.join(", ", entryPoints.stringPropertyNames()));
+            System.exit(2);
+        }
+    }
+
+    /* Name the binary was started with (argv[0]), only available through /proc on Linux. */
+    private static String programName() {
+        try {
+            byte[] cmdline = Files.readAllBytes(Paths.get("/proc/self/cmdline"));
+            int end = 0;
+            while (end < cmdline.length && cmdline[end] != 0) end += 1;
+            return new File(new String(cmdline, 0, end)).getName();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void invoke(String mainClass, String[] args) throws Throwable {
+        Method main = Class.forName(mainClass).getMethod("main", String[].class);
+        try {
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonSlurper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Converts the JSON output of the Truffle CPU sampler ({@code --cpusampler.Output=json}) into a
+ * self-contained SVG flame graph. Guest frames (roots of a guest language, including builtins without a source
+ * location) and host frames (roots of the {@code host} language, i.e. Java code called from the guest, and
+ * roots the sampler cannot name) are drawn in different colors.</p>
+ */
+final class FlameGraph {
+
+    private static final int WIDTH = 1200;
+    private static final int FRAME_HEIGHT = 16;
+    private static final int TITLE_HEIGHT = 32;
+    private static final double CHAR_WIDTH = 6.5;
+    // Truffle language id of Java code accessed through host interop.
+    private static final String HOST_LANGUAGE = "host";
+
+    static final class Frame {
+
+        final String name;
+        final boolean host;
+        long self;
+        final Map<String, Frame> children = new LinkedHashMap<>();
+
+        Frame(String name, boolean host) {
+            this.name = name;
+            this.host = host;
+        }
+
+        long total() {
+            long total = self;
+            for (Frame child : children.values()) {
+                total += child.total();
+            }
+            return total;
+        }
+
+        int depth() {
+            int depth = 0;
+            for (Frame child : children.values()) {
+                depth = Math.max(depth, child.depth());
+            }
+            return depth + 1;
+        }
+
+        Frame child(String name, boolean host) {
+            return children.computeIfAbsent(name, n -> new Frame(n, host));
+        }
+
+    }
+
+    private FlameGraph() {}
+
+    /**
+     * <p>Build a frame tree from the CPU sampler JSON. Every thread becomes a child of the root frame.</p>
+     */
+    static Frame fromCpuSamplerJson(String json) {
+        Frame root = new Frame("all", true);
+        collect(new JsonSlurper().parseText(json), root);
+        return root;
+    }
+
+    /* Find sample trees anywhere in the document, the layout differs between Truffle versions. */
+    private static void collect(Object data, Frame parent) {
+        if (data instanceof List) {
+            for (Object item : (List<?>) data) {
+                collect(item, parent);
+            }
+        } else if (data instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) data;
+            if (map.get("samples") instanceof List) {
+                Object thread = map.get("thread");
+                Frame threadFrame = thread == null ? parent : parent.child("thread " + thread, true);
+                for (Object node : (List<?>) map.get("samples")) {
+                    addNode(node, threadFrame);
+                }
+            } else {
+                for (Object value : map.values()) {
+                    if (value instanceof List || value instanceof Map) collect(value, parent);
+                }
+            }
+        }
+    }
+
+    private static void addNode(Object data, Frame parent) {
+        if (!(data instanceof Map)) return;
+        Map<?, ?> node = (Map<?, ?>) data;
+        Object rootName = node.get("root_name");
+        String name = rootName == null ? "<unknown>" : rootName.toString();
+        String location = location(node.get("source_section"));
+        // Builtins of guest languages (e.g. Array.prototype.push) often have no source location, so only the
+        // language tells host code apart.
+        boolean host = rootName == null || HOST_LANGUAGE.equals(language(node));
+        Frame frame = parent.child(location == null ? name : name + " (" + location + ")", host);
+        frame.self += selfHits(node);
+        Object children = node.get("children");
+        if (children instanceof List) {
+            for (Object child : (List<?>) children) {
+                addNode(child, frame);
+            }
+        }
+    }
+
+    private static String location(Object section) {
+        if (!(section instanceof Map)) return null;
+        Map<?, ?> map = (Map<?, ?>) section;
+        Object source = map.get("source_name");
+        if (source == null) return null;
+        Object line = map.get("start_line");
+        return line == null ? source.toString() : source + ":" + line;
+    }
+
+    /* Language id of a root, reported next to the root or in its source section depending on the version. */
+    private static String language(Map<?, ?> node) {
+        Object language = node.get("language");
+        if (language == null && node.get("source_section") instanceof Map) {
+            language = ((Map<?, ?>) node.get("source_section")).get("language");
+        }
+        return language == null ? null : language.toString();
+    }
+
+    /* Older samplers report a single self count, newer ones split compiled and interpreted hits. */
+    private static long selfHits(Map<?, ?> node) {
+        if (node.get("self_hit_count") instanceof Number) {
+            return ((Number) node.get("self_hit_count")).longValue();
+        }
+        long hits = 0;
+        for (String key : new String[] { "self_compiled_hit_count", "self_interpreted_hit_count" }) {
+            if (node.get(key) instanceof Number) {
+                hits += ((Number) node.get(key)).longValue();
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * <p>Render the frame tree as a standalone SVG document (root at the bottom, hover for details).</p>
+     */
+    static String renderSvg(Frame root, String title) {
+        long total = Math.max(1, root.total());
+        int depth = root.depth();
+        int height = TITLE_HEIGHT + depth * FRAME_HEIGHT + 4;
+        StringBuilder svg = new StringBuilder();
+        svg.append("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+        svg.append(String.format(Locale.ROOT,
+                "<svg version=\"1.1\" width=\"%d\" height=\"%d\" xmlns=\"http://www.w3.org/2000/svg\" font-family=\"monospace\" font-size=\"11\">\n",
+                WIDTH, height));
+        svg.append("<rect x=\"0\" y=\"0\" width=\"100%\" height=\"100%\" fill=\"#f8f8f8\"/>\n");
+        svg.append(String.format(Locale.ROOT,
+                "<text x=\"%d\" y=\"20\" text-anchor=\"middle\" font-size=\"15\">%s</text>\n", WIDTH / 2, escape(title)));
+        renderFrame(svg, root, 0, 0, total, height);
+        svg.append("</svg>\n");
+        return svg.toString();
+    }
+
+    private static void renderFrame(StringBuilder svg, Frame frame, double x, int level, long total, int height) {
+        long frameTotal = frame.total();
+        double width = (double) frameTotal / total * WIDTH;
+        if (width < 0.3) return;    // too small to be visible
+        double y = height - (level + 1) * FRAME_HEIGHT - 2;
+        String label = escape(frame.name) + " (" + frameTotal + " samples, "
+                + String.format(Locale.ROOT, "%.2f", 100.0 * frameTotal / total) + "%, "
+                + (frame.host ? "host" : "guest") + ")";
+        svg.append("<g><title>").append(label).append("</title>");
+        svg.append(String.format(Locale.ROOT,
+                "<rect x=\"%.2f\" y=\"%.2f\" width=\"%.2f\" height=\"%d\" fill=\"%s\" rx=\"2\"/>",
+                x, y, width, FRAME_HEIGHT - 1, color(frame)));
+        int chars = (int) ((width - 6) / CHAR_WIDTH);
+        if (chars > 2) {
+            String text = frame.name.length() <= chars ? frame.name : frame.name.substring(0, chars - 2) + "..";
+            svg.append(String.format(Locale.ROOT, "<text x=\"%.2f\" y=\"%.2f\">%s</text>", x + 3, y + FRAME_HEIGHT - 4, escape(text)));
+        }
+        svg.append("</g>\n");
+        double childX = x;
+        for (Frame child : frame.children.values()) {
+            renderFrame(svg, child, childX, level + 1, total, height);
+            childX += (double) child.total() / total * WIDTH;
+        }
+    }
+
+    /* Warm colors for guest code, cold colors for host code; stable per frame name. */
+    private static String color(Frame frame) {
+        int hash = frame.name.hashCode() & 0x7fffffff;
+        if (frame.host) {
+            return String.format(Locale.ROOT, "rgb(%d,%d,%d)", 80 + hash % 40, 150 + hash % 50, 200 + hash % 55);
+        } else {
+            return String.format(Locale.ROOT, "rgb(%d,%d,%d)", 220 + hash % 35, 100 + hash % 100, 40 + hash % 40);
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.Exec;
+import org.gradle.api.tasks.Sync;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+import org.gradle.process.JavaForkOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Runs fork tasks, the installed distribution or the native binary with a Flight Recorder recording and
+ * summarizes it (see {@link GraalTaskOptions#setFlightRecorder(Boolean)} and {@link JfrSummary}). The
+ * recording ({@code recording.jfr}) and the summary ({@code jfr-summary.md} and {@code jfr-summary.json}) are
+ * stored in {@code build/graalProfile/<task>}, the summary is compared with the one of the previous run.
+ * Fork tasks may start several JVMs (e.g. tests with {@code maxParallelForks}), each of them writes a recording
+ * named by its process id to {@code recordings/} and the summary covers all of them.</p>
+ */
+final class FlightRecorder {
+
+    private FlightRecorder() {}
+
+    static void configure(Project project, Task task, GraalTaskOptions options, GraalExtension config) {
+        File dir = new File(project.getBuildDir(), "graalProfile/" + task.getName());
+        File recordings = new File(dir, "recordings");
+        task.doFirst(it -> {
+            if (!isEnabled(options, config)) return;
+            prepareOutputDir(dir);
+            project.delete(recordings);
+            if (!recordings.mkdirs()) {
+                throw new IllegalStateException("Cannot create recording directory at " + recordings.getAbsolutePath());
+            }
+            // JFR names a recording written to a directory by the process id, so parallel forks do not collide.
+            ((JavaForkOptions) it).jvmArgs(recordingOption(recordings));
+        });
+        task.doLast(it -> {
+            if (!isEnabled(options, config)) return;
+            File[] files = recordings.listFiles((d, name) -> name.endsWith(".jfr"));
+            summarize(task, dir, files == null ? new ArrayList<>() : Arrays.asList(files));
+        });
+    }
+
+    private static boolean isEnabled(GraalTaskOptions options, GraalExtension config) {
+        return options.getFlightRecorder() != null ? options.getFlightRecorder() : config.getFlightRecorder();
+    }
+
+    /**
+     * <p>Create the {@code recordDist} task which runs the installed distribution with Flight Recorder.</p>
+     */
+    static void declareDistributionRecording(Project project) {
+        project.getTasks().create("recordDist", Exec.class, task -> {
+            task.setGroup("graal");
+            task.setDescription("Runs the installed distribution with Flight Recorder and summarizes the recording.");
+            task.dependsOn("installDist");
+            File dir = new File(project.getBuildDir(), "graalProfile/" + task.getName());
+            File recording = new File(dir, "recording.jfr");
+            task.doFirst(it -> {
+                prepareOutputDir(dir);
+                Sync install = (Sync) project.getTasks().getByName("installDist");
+                CreateStartScripts scripts = (CreateStartScripts) project.getTasks().getByName("startScripts");
+                String script = "bin/" + scripts.getApplicationName() + (PluginUtils.isWindows() ? ".bat" : "");
+                task.setExecutable(new File(install.getDestinationDir(), script).getAbsolutePath());
+                Object userOpts = task.getEnvironment().get("JAVA_OPTS");
+                String javaOpts = recordingOption(recording);
+                task.environment("JAVA_OPTS", userOpts == null ? javaOpts : userOpts + " " + javaOpts);
+            });
+            task.doLast(it -> summarize(task, dir, Collections.singletonList(recording)));
+        });
+    }
+
+    /**
+     * <p>Create the {@code recordNative} task which runs the binary of the given native image task with Flight
+     * Recorder. The native image task is built with JFR support when {@code recordNative} is executed.</p>
+     */
+    static void declareNativeRecording(Project project, NativeImage image) {
+        project.getTasks().create("recordNative", Exec.class, task -> {
+            task.setGroup("graal");
+            task.setDescription("Runs the " + image.getName() + " binary with Flight Recorder and summarizes the recording.");
+            task.dependsOn(image);
+            File dir = new File(project.getBuildDir(), "graalProfile/" + task.getName());
+            File recording = new File(dir, "recording.jfr");
+            task.doFirst(it -> {
+                prepareOutputDir(dir);
+                String name = image.getOutputName() + (PluginUtils.isWindows() ? ".exe" : "");
+                task.setExecutable(new File(image.getOutputDir(), name).getAbsolutePath());
+                // Image options are given before the user arguments of the binary.
+                List<String> args = new ArrayList<>(task.getArgs());
+                args.add(0, "-XX:+FlightRecorder");
+                args.add(1, recordingOption(recording));
+                task.setArgs(args);
+            });
+            task.doLast(it -> summarize(task, dir, Collections.singletonList(recording)));
+        });
+        project.getGradle().getTaskGraph().whenReady(graph -> {
+            if (graph.hasTask(project.getTasks().getByName("recordNative"))) {
+                image.setFlightRecorder(true);
+            }
+        });
+    }
+
+    /*
+        The `profile` settings include compilation, lock and allocation events (and Truffle events on GraalVM).
+        The recording is either a file or a directory, in which the JVM names the recording by its process id.
+     */
+    private static String recordingOption(File recording) {
+        return "-XX:StartFlightRecording=filename=" + recording.getAbsolutePath() + ",settings=profile,dumponexit=true";
+    }
+
+    private static void prepareOutputDir(File dir) {
+        File recording = new File(dir, "recording.jfr");
+        if (recording.exists() && !recording.delete()) {
+            throw new IllegalStateException("Cannot delete previous recording " + recording.getAbsolutePath());
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create profile directory at " + dir.getAbsolutePath());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void summarize(Task task, File dir, List<File> recordings) {
+        List<File> existing = new ArrayList<>();
+        for (File recording : recordings) {
+            if (recording.exists()) existing.add(recording);
+        }
+        if (existing.isEmpty()) {
+            task.getLogger().warn("Flight Recorder produced no recording. Does the JVM of {} support JFR?", task.getName());
+            return;
+        }
+        Collections.sort(existing);
+        File json = new File(dir, "jfr-summary.json");
+        File report = new File(dir, "jfr-summary.md");
+        try {
+            List<JfrSummary.Event> events = new ArrayList<>();
+            for (File recording : existing) {
+                try {
+                    events.addAll(JfrSummary.read(recording));
+                } catch (IllegalStateException e) {
+                    task.getLogger().warn("{} The recording is available at {}", e.getMessage(), recording.getAbsolutePath());
+                    return;
+                }
+            }
+            Map<String, Object> previous = json.exists()
+                    ? (Map<String, Object>) new JsonSlurper().parse(json)
+                    : null;
+            Map<String, Object> summary = JfrSummary.summarize(events);
+            String title = "Flight Recorder summary of " + task.getPath();
+            Files.write(json.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(summary)).getBytes(Charset.defaultCharset()));
+            Files.write(report.toPath(), JfrSummary.render(title, summary, previous).getBytes(Charset.defaultCharset()));
+            task.getLogger().lifecycle("Flight Recorder summary written to " + report.getAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -1,21 +1,38 @@
 package com.oracle.truffle.gradle;
 
+import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.internal.extensibility.DefaultExtraPropertiesExtension;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class GraalExtension {
 
     public static final String DEFAULT_GRAAL_VERSION = "20.1.0";
+    public static final String HOST_COMPILER_GRAAL = "graal";
+    public static final String HOST_COMPILER_C2 = "c2";
 
     private String version;
     private String languageId;
     private String languageName;
 
     private File compilerDir;
+    private File tuningFile;
+    private final List<String> compilerMatrix = new ArrayList<>();
+    private final List<String> performanceTests = new ArrayList<>();
+    private final List<Object> launcherSources = new ArrayList<>();
+    private ContextPoolOptions contextPool;
+    private ResourcePruningOptions resourcePruning;
+    private MetricsAgentOptions metricsAgent;
+    private boolean alignVersions = true;
+    private boolean flightRecorder;
+    private String hostCompiler;
 
     /**
      * <p>Setup default configuration values from project properties.</p>
@@ -26,6 +43,10 @@ public class GraalExtension {
         if (this.compilerDir == null) {
             this.compilerDir = new File(project.getBuildDir(), "graalCompiler");
         }
+        // Settings written by Autotune tasks are meant to be committed with the project.
+        if (this.tuningFile == null) {
+            this.tuningFile = new File(project.getProjectDir(), "graal-tuning.args");
+        }
         // Try to load version from default extra properties.
         Object ext = project.getExtensions().findByName("ext");
         if (ext instanceof DefaultExtraPropertiesExtension) {
@@ -61,6 +82,204 @@ public class GraalExtension {
         return this.compilerDir;
     }
 
+    /**
+     * @return File with JVM arguments selected by {@link Autotune} tasks.
+     */
+    @Nonnull
+    public File getTuningFile() {
+        return this.tuningFile;
+    }
+
+    /**
+     * JVM arguments in this file (one per line, written by {@link Autotune} tasks) are added to the {@code run}
+     * task, to {@code Test} tasks and to the start scripts of distributions, if the file exists.
+     * @param tuningFile Tuned settings file, {@code graal-tuning.args} in the project directory by default.
+     */
+    public void setTuningFile(@Nonnull File tuningFile) {
+        this.tuningFile = tuningFile;
+    }
+
+    /**
+     * @param version A compiler version from the compiler matrix.
+     * @return Directory with the given version of the Graal compiler and its dependencies.
+     */
+    @Nonnull
+    public File getCompilerDir(@Nonnull String version) {
+        return new File(this.compilerDir.getParentFile(), this.compilerDir.getName() + "-" + version);
+    }
+
+    /**
+     * @return Compiler versions which should be compared by {@link CompilerMatrix} tasks.
+     */
+    @Nonnull
+    public List<String> getCompilerMatrix() {
+        return Collections.unmodifiableList(this.compilerMatrix);
+    }
+
+    /**
+     * Declare compiler versions which should be compared by {@link CompilerMatrix} tasks. Each version
+     * gets its own compiler configuration and {@code prepareCompiler} task.
+     * @param versions Graal compiler versions.
+     */
+    public void compilerMatrix(String... versions) {
+        this.compilerMatrix.addAll(Arrays.asList(versions));
+    }
+
+    /**
+     * @return Include patterns of test classes which run in the {@code performanceTest} task.
+     */
+    @Nonnull
+    public List<String> getPerformanceTests() {
+        return Collections.unmodifiableList(this.performanceTests);
+    }
+
+    /**
+     * Select test classes (using the include patterns of the {@code Test} task) which should run with
+     * synchronous Truffle compilation in a separate {@code performanceTest} task. This also adds the
+     * {@code truffle-test-support} library with compilation assertions to test dependencies.
+     * @param includes Include patterns of performance test classes.
+     */
+    public void performanceTests(String... includes) {
+        this.performanceTests.addAll(Arrays.asList(includes));
+    }
+
+    /**
+     * @return Guest sources bundled into the native launcher of the language.
+     */
+    @Nonnull
+    public List<Object> getLauncherSources() {
+        return Collections.unmodifiableList(this.launcherSources);
+    }
+
+    /**
+     * Bundle guest sources (anything accepted by {@code project.files}) into the native launcher of the language
+     * ({@code nativeLauncher} task). Bundled sources are read when the image is built and can be executed by
+     * their file name: {@code launcher prelude.sl args...}.
+     * @param sources Guest source files.
+     */
+    public void launcherSources(Object... sources) {
+        this.launcherSources.addAll(Arrays.asList(sources));
+    }
+
+    /**
+     * @return Configuration of the shared context pool, or null if the runtime library is not used.
+     */
+    @Nullable
+    public ContextPoolOptions getContextPool() {
+        return this.contextPool;
+    }
+
+    /**
+     * Add the {@code truffle-runtime-support} library (shared engine, context pool and source cache) to the
+     * project and configure it. Test dependencies also get {@code truffle-test-support} with a JUnit rule
+     * which shares the engine across test classes.
+     * @param action Configuration of the pool.
+     */
+    public void contextPool(Action<? super ContextPoolOptions> action) {
+        if (this.contextPool == null) {
+            this.contextPool = new ContextPoolOptions();
+        }
+        action.execute(this.contextPool);
+    }
+
+    /**
+     * @return Configuration of the metrics agent, or null if it is not bundled into distributions.
+     */
+    @Nullable
+    public MetricsAgentOptions getMetricsAgent() {
+        return this.metricsAgent;
+    }
+
+    /**
+     * Bundle the {@code truffle-metrics-agent} Java agent into distributions (next to {@code graalCompiler/})
+     * and enable it in the start scripts. The agent exposes Truffle compilation and JIT metrics through JMX and
+     * a Prometheus text endpoint. Fork tasks use the agent with {@link GraalTaskOptions#setMetricsAgent(boolean)}.
+     * @param action Configuration of the agent.
+     */
+    public void metricsAgent(Action<? super MetricsAgentOptions> action) {
+        if (this.metricsAgent == null) {
+            this.metricsAgent = new MetricsAgentOptions();
+        }
+        action.execute(this.metricsAgent);
+    }
+
+    /**
+     * @return Rules removing unused resources from the runtime classpath, or null if nothing is pruned.
+     */
+    @Nullable
+    public ResourcePruningOptions getResourcePruning() {
+        return this.resourcePruning;
+    }
+
+    /**
+     * Remove unused resources (e.g. ICU data of other locales in language dependencies) from the jars on the
+     * runtime classpath. This applies to the distributions, the language component and native images.
+     * @param action Configuration of the pruning rules.
+     */
+    public void pruneResources(Action<? super ResourcePruningOptions> action) {
+        if (this.resourcePruning == null) {
+            this.resourcePruning = new ResourcePruningOptions();
+        }
+        action.execute(this.resourcePruning);
+    }
+
+    /**
+     * @return True if Graal and Truffle dependencies must have the compiler version.
+     */
+    public boolean getAlignVersions() {
+        return this.alignVersions;
+    }
+
+    /**
+     * Graal SDK, Truffle and compiler artifacts require the compiler version (Truffle falls back to the
+     * interpreter if they differ), which is the release of the GraalVM running the tests or else {@code version}.
+     * Lower versions are upgraded, a dependency selecting a different version fails the resolution. Set to false to
+     * resolve such conflicts in the standard way instead.
+     * @param alignVersions False to disable the version constraints and the check.
+     */
+    public void setAlignVersions(boolean alignVersions) {
+        this.alignVersions = alignVersions;
+    }
+
+    /**
+     * @return True if every fork task and the {@code recordDist} task run with Flight Recorder.
+     */
+    public boolean getFlightRecorder() {
+        return this.flightRecorder;
+    }
+
+    /**
+     * Run every {@code JavaForkOptions} task with a Flight Recorder recording including compiler and Truffle
+     * compilation events, summarized in {@code build/graalProfile/<task>} (see
+     * {@link GraalTaskOptions#setFlightRecorder(boolean)} to enable it for a single task).
+     * @param flightRecorder True to record all fork tasks.
+     */
+    public void setFlightRecorder(boolean flightRecorder) {
+        this.flightRecorder = flightRecorder;
+    }
+
+    /**
+     * @return Top-tier JIT compiler of host Java code ({@code graal} or {@code c2}), or null for the default of
+     * the JVM (C2 on Hotspot, Graal on GraalVM).
+     */
+    @Nullable
+    public String getHostCompiler() {
+        return this.hostCompiler;
+    }
+
+    /**
+     * Select the top-tier JIT compiler of host Java code in fork tasks and distributions. With {@code graal},
+     * Graal (loaded through JVMCI like for Truffle) replaces C2 ({@code -XX:+UseJVMCICompiler}), with {@code c2}
+     * GraalVM uses C2 for host code. Truffle compilations always use Graal.
+     * @param hostCompiler {@code graal}, {@code c2} or null for the default of the JVM.
+     */
+    public void setHostCompiler(@Nullable String hostCompiler) {
+        if (hostCompiler != null && !HOST_COMPILER_GRAAL.equals(hostCompiler) && !HOST_COMPILER_C2.equals(hostCompiler)) {
+            throw new IllegalArgumentException("Unknown host compiler: " + hostCompiler + ". Use graal or c2.");
+        }
+        this.hostCompiler = hostCompiler;
+    }
+
     /**
      * @param version Requested Graal compiler version.
      */
@@ -85,6 +304,15 @@ public class GraalExtension {
         this.languageId = languageId;
     }
 
+    /* The language id, failing when it is not set (for tasks which need the language). */
+    @Nonnull
+    String requireLanguageId() {
+        if (this.languageId == null) {
+            throw new IllegalStateException("Please specify truffle language id using `graal { languageId = 'my.id.language' }`");
+        }
+        return this.languageId;
+    }
+
     @Nonnull
     public String getLanguageName() {
         return this.languageName;
@@ -0,0 +1,124 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.jvm.application.scripts.JavaAppStartScriptGenerationDetails;
+import org.gradle.jvm.application.scripts.ScriptGenerator;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>JVM options which the plugins add to start scripts. The options are a declared input of the
+ * {@code CreateStartScripts} task ({@code graalJvmOpts}) and are appended to {@code defaultJvmOpts} while the
+ * scripts are generated. Options may refer to the distribution directory using {@code __APP_HOME__}, which is
+ * replaced with the platform specific variable during generation, so that the task outputs are never modified
+ * after the task and the task can be up-to-date and cached.</p>
+ */
+final class GraalStartScripts {
+
+    static final String INPUT_NAME = "graalJvmOpts";
+    static final String APP_HOME = "__APP_HOME__";
+
+    private GraalStartScripts() {}
+
+    /**
+     * Append JVM options to the scripts generated by the task.
+     *
+     * @param scripts Start scripts task.
+     * @param opts Options, resolved when the task inputs are fingerprinted.
+     */
+    static void addJvmOpts(CreateStartScripts scripts, Provider<? extends Iterable<String>> opts) {
+        jvmOpts(scripts).addAll(opts);
+    }
+
+    /**
+     * Quote JVM options for the {@code JAVA_OPTS} variable read by the generated scripts. Every option becomes
+     * one double quoted word, like the options in {@code DEFAULT_JVM_OPTS}, so that the scripts keep paths with
+     * spaces or shell characters in one argument.
+     *
+     * @param opts Options.
+     * @param windows True for the batch script, false for the shell script.
+     * @return Value of JAVA_OPTS.
+     */
+    static String quoteJvmOpts(Iterable<String> opts, boolean windows) {
+        StringBuilder quoted = new StringBuilder();
+        for (String opt : opts) {
+            if (quoted.length() > 0) quoted.append(' ');
+            // The shell script evaluates the variable, the batch script passes it to java as it is.
+            String escaped = windows ? opt.replace("\"", "\\\"") : opt.replaceAll("([\"\\\\$`])", "\\\\$1");
+            quoted.append('"').append(escaped).append('"');
+        }
+        return quoted.toString();
+    }
+
+    /* Options of the task, installing the generators on first use. */
+    private static ListProperty<String> jvmOpts(CreateStartScripts scripts) {
+        ScriptGenerator unix = scripts.getUnixStartScriptGenerator();
+        if (unix instanceof Generator) {
+            return ((Generator) unix).opts;
+        }
+        ListProperty<String> opts = scripts.getProject().getObjects().listProperty(String.class);
+        scripts.getInputs().property(INPUT_NAME, opts);
+        scripts.setUnixStartScriptGenerator(new Generator(unix, opts, "$APP_HOME"));
+        scripts.setWindowsStartScriptGenerator(new Generator(scripts.getWindowsStartScriptGenerator(), opts, "%APP_HOME%"));
+        // The scripts depend only on declared inputs now (their generation is cheap, but the outputs are
+        // part of every distribution built by CI).
+        scripts.getOutputs().cacheIf("Graal JVM options are declared inputs", task -> true);
+        return opts;
+    }
+
+    /* Generates the script with extra default JVM options and replaces the app home placeholder. */
+    private static final class Generator implements ScriptGenerator {
+
+        private final ScriptGenerator delegate;
+        private final ListProperty<String> opts;
+        private final String appHome;
+
+        Generator(ScriptGenerator delegate, ListProperty<String> opts, String appHome) {
+            this.delegate = delegate;
+            this.opts = opts;
+            this.appHome = appHome;
+        }
+
+        @Override
+        public void generateScript(JavaAppStartScriptGenerationDetails details, Writer destination) {
+            List<String> jvmOpts = new ArrayList<>(details.getDefaultJvmOpts());
+            jvmOpts.addAll(this.opts.get());
+            StringWriter script = new StringWriter();
+            this.delegate.generateScript(withDefaultJvmOpts(details, jvmOpts), script);
+            try {
+                destination.write(script.toString().replace(APP_HOME, this.appHome));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /* The details interface grows with Gradle versions, so only the JVM options are overridden by a proxy. */
+        private static JavaAppStartScriptGenerationDetails withDefaultJvmOpts(JavaAppStartScriptGenerationDetails details, List<String> jvmOpts) {
+            return (JavaAppStartScriptGenerationDetails) Proxy.newProxyInstance(
+                    GraalStartScripts.class.getClassLoader(),
+                    new Class<?>[] { JavaAppStartScriptGenerationDetails.class },
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("getDefaultJvmOpts") && method.getParameterCount() == 0) {
+                            return jvmOpts;
+                        }
+                        try {
+                            return method.invoke(details, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+            );
+        }
+
+    }
+
+}
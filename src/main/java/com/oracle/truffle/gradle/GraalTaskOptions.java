@@ -0,0 +1,187 @@
+package com.oracle.truffle.gradle;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Per-task diagnostic options, available as the {@code graalOptions} extension of every
+ * {@code JavaExec}, {@code Test} or other {@code JavaForkOptions} task in a project with the compiler plugin:</p>
+ *
+ * {@code
+ * runCustom {
+ *     graalOptions {
+ *         // Dump compiler graphs of matching methods/call targets to build/graalDumps/runCustom.
+ *         dumpGraphs 'fib'
+ *         // Run with the Truffle CPU sampler and render a flame graph to build/graalProfile/runCustom.
+ *         cpuSampler true
+ *         // Trace guest allocations per source location and fail when the budgets are exceeded.
+ *         memoryTracer 'locations'
+ *         allocationBudget 2_000_000
+ *         allocationBudget 'Array', 500_000
+ *         // Record with Flight Recorder and summarize hot methods, GC pauses, compilations and lock contention.
+ *         flightRecorder true
+ *         // Expose compilation metrics through JMX and http://127.0.0.1:9404/metrics while the task runs.
+ *         metricsAgent true
+ *     }
+ * }
+ * }
+ */
+public class GraalTaskOptions {
+
+    private String dumpGraphs;
+    private boolean cpuSampler;
+    private Boolean flightRecorder;
+    private boolean metricsAgent;
+    private String memoryTracer;
+    private Long totalAllocationBudget;
+    private final Map<String, Long> allocationBudgets = new LinkedHashMap<>();
+
+    /**
+     * @return Method filter of dumped compilations, or null if dumping is disabled.
+     */
+    @Nullable
+    public String getDumpGraphs() {
+        return this.dumpGraphs;
+    }
+
+    /**
+     * <p>Enable compiler graph dumping for methods and Truffle call targets matching the given filter
+     * (Graal {@code MethodFilter} syntax, e.g. {@code fib} or {@code *Node.execute*}). Dumps are compressed into
+     * {@code build/graalDumps/<task>/graphs.zip} together with a per-compilation summary.</p>
+     *
+     * @param filter Method filter.
+     */
+    public void setDumpGraphs(@Nullable String filter) {
+        this.dumpGraphs = filter;
+    }
+
+    /**
+     * @return True if the task runs with the Truffle CPU sampler.
+     */
+    public boolean isCpuSampler() {
+        return this.cpuSampler;
+    }
+
+    /**
+     * <p>Run the task with the Truffle CPU sampler. The JSON output of the sampler and a flame graph with
+     * guest and host frames are stored in {@code build/graalProfile/<task>}.</p>
+     *
+     * @param cpuSampler True to enable the sampler.
+     */
+    public void setCpuSampler(boolean cpuSampler) {
+        this.cpuSampler = cpuSampler;
+    }
+
+    /**
+     * @return True or false if Flight Recorder is enabled or disabled for the task, null to use the
+     * {@code flightRecorder} option of the {@code graal} extension.
+     */
+    @Nullable
+    public Boolean getFlightRecorder() {
+        return this.flightRecorder;
+    }
+
+    /**
+     * <p>Run the task with a Flight Recorder recording (JDK 11+, or JDK 8 builds with JFR) using the
+     * {@code profile} settings, which include compiler and Truffle compilation events. The recording and a
+     * summary of hot methods, GC pauses, compilations per tier, Truffle compilations and lock contention are
+     * stored in {@code build/graalProfile/<task>}.</p>
+     *
+     * @param flightRecorder True to record the task, false to disable a recording enabled by the extension.
+     */
+    public void setFlightRecorder(@Nullable Boolean flightRecorder) {
+        this.flightRecorder = flightRecorder;
+    }
+
+    /**
+     * @return True if the task runs with the metrics agent.
+     */
+    public boolean isMetricsAgent() {
+        return this.metricsAgent;
+    }
+
+    /**
+     * <p>Run the task with the {@code truffle-metrics-agent} Java agent, configured by the {@code metricsAgent}
+     * block of the {@code graal} extension (or with the defaults if there is none). Tasks running in parallel
+     * need different ports.</p>
+     *
+     * @param metricsAgent True to enable the agent.
+     */
+    public void setMetricsAgent(boolean metricsAgent) {
+        this.metricsAgent = metricsAgent;
+    }
+
+    /**
+     * @return Histogram collected by the Truffle memory tracer ({@code locations} or {@code types}), or null
+     * if the tracer is disabled. Declaring a budget enables the {@code locations} histogram by default.
+     */
+    @Nullable
+    public String getMemoryTracer() {
+        if (this.memoryTracer == null && this.hasAllocationBudgets()) {
+            return AllocationHistogram.LOCATIONS;
+        }
+        return this.memoryTracer;
+    }
+
+    /**
+     * <p>Run the task with the Truffle memory tracer and aggregate the allocations reported by guest
+     * languages per source location ({@code locations}) or per allocated type ({@code types}). The report is
+     * stored in {@code build/graalProfile/<task>}. Only {@code JavaExec} tasks are supported, since the tracer
+     * prints the histogram to the standard output of the process.</p>
+     *
+     * @param histogram {@code locations}, {@code types} or null to disable the tracer.
+     */
+    public void setMemoryTracer(@Nullable String histogram) {
+        if (histogram != null && !AllocationHistogram.LOCATIONS.equals(histogram) && !AllocationHistogram.TYPES.equals(histogram)) {
+            throw new IllegalArgumentException("Unknown memory tracer histogram: " + histogram + ". Use locations or types.");
+        }
+        this.memoryTracer = histogram;
+    }
+
+    /**
+     * <p>Fail the task (and {@code check}, which then depends on it) when the workload allocates more than
+     * the given number of objects in total.</p>
+     *
+     * @param limit Maximal number of allocations.
+     */
+    public void allocationBudget(long limit) {
+        this.totalAllocationBudget = limit;
+    }
+
+    /**
+     * <p>Fail the task (and {@code check}, which then depends on it) when the histogram entries matching
+     * the given name allocate more than the given number of objects. An entry matches if its name
+     * (root name or type) or its source location contains the given string.</p>
+     *
+     * @param name Part of the root name, type or source location.
+     * @param limit Maximal number of allocations of all matching entries.
+     */
+    public void allocationBudget(String name, long limit) {
+        this.allocationBudgets.put(name, limit);
+    }
+
+    /**
+     * @return Total allocation budget, or null if not set.
+     */
+    @Nullable
+    public Long getTotalAllocationBudget() {
+        return this.totalAllocationBudget;
+    }
+
+    /**
+     * @return Allocation budgets of matching histogram entries.
+     */
+    public Map<String, Long> getAllocationBudgets() {
+        return Collections.unmodifiableMap(this.allocationBudgets);
+    }
+
+    /**
+     * @return True if any allocation budget is declared.
+     */
+    public boolean hasAllocationBudgets() {
+        return this.totalAllocationBudget != null || !this.allocationBudgets.isEmpty();
+    }
+
+}
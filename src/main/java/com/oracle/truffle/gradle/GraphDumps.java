@@ -0,0 +1,111 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.process.JavaForkOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>Captures Graal compiler graph dumps of a fork task (see {@link GraalTaskOptions#setDumpGraphs(String)}).
+ * The task is started with graph dumping limited to the configured method filter and with Truffle compilation
+ * tracing. After the task finishes, also when it fails, the {@code <task>GraphDumps} task compresses the raw BGV
+ * files into {@code graphs.zip} and summarizes the trace per compilation into {@code summary.md} and
+ * {@code summary.json}.</p>
+ */
+final class GraphDumps {
+
+    private GraphDumps() {}
+
+    static void configure(Project project, Task task, GraalTaskOptions options) {
+        File dir = getDumpDir(project, task);
+        File raw = new File(dir, "raw");
+        File log = new File(dir, "compilation.log");
+        task.doFirst(it -> {
+            if (options.getDumpGraphs() == null) return;
+            project.delete(dir);
+            if (!raw.mkdirs()) {
+                throw new IllegalStateException("Cannot create dump directory at " + raw.getAbsolutePath());
+            }
+            JavaForkOptions opts = (JavaForkOptions) it;
+            opts.systemProperty("graal.Dump", "Truffle:1");
+            opts.systemProperty("graal.MethodFilter", options.getDumpGraphs());
+            opts.systemProperty("graal.PrintGraph", "File");
+            opts.systemProperty("graal.DumpPath", raw.getAbsolutePath());
+            opts.systemProperty("polyglot.engine.TraceCompilation", "true");
+            opts.systemProperty("polyglot.engine.TraceInlining", "true");
+            opts.systemProperty("polyglot.engine.TracePerformanceWarnings", "all");
+            opts.systemProperty("polyglot.log.file", log.getAbsolutePath());
+        });
+    }
+
+    /**
+     * <p>Finalize every task which dumps graphs by a {@code <task>GraphDumps} task, so that dumps of a failed
+     * task (e.g. a failing test) are still packed and summarized. Tasks without dumping get no finalizer.</p>
+     */
+    static void declarePacking(Project project) {
+        project.afterEvaluate(it -> project.getTasks().matching(task -> task instanceof JavaForkOptions).all(task -> {
+            GraalTaskOptions options = task.getExtensions().getByType(GraalTaskOptions.class);
+            if (options.getDumpGraphs() == null) return;
+            File dir = getDumpDir(project, task);
+            File raw = new File(dir, "raw");
+            TaskProvider<Task> pack = project.getTasks().register(task.getName() + "GraphDumps", packTask -> {
+                packTask.setDescription("Compresses graph dumps and summarizes compilations of " + task.getName() + ".");
+                packTask.onlyIf(t -> raw.isDirectory());
+                packTask.doLast(t -> pack(project, packTask, dir, raw, new File(dir, "compilation.log")));
+            });
+            task.finalizedBy(pack);
+        }));
+    }
+
+    private static File getDumpDir(Project project, Task task) {
+        return new File(project.getBuildDir(), "graalDumps/" + task.getName());
+    }
+
+    /* Replace the raw dumps with a zip and summarize the compilation trace. */
+    private static void pack(Project project, Task task, File dir, File raw, File log) {
+        try {
+            compress(raw, new File(dir, "graphs.zip"));
+            project.delete(raw);
+            List<String> lines = log.exists()
+                    ? Files.readAllLines(log.toPath(), Charset.defaultCharset())
+                    : Collections.emptyList();
+            List<CompilationLogSummary.Compilation> compilations = CompilationLogSummary.parse(lines);
+            CompilationLogSummary.write(compilations, dir);
+            task.getLogger().lifecycle(
+                    "Graph dumps of " + compilations.size() + " compilation(s) stored in " + dir.getAbsolutePath()
+            );
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Zip all files in the directory (dumps are highly compressible). */
+    private static void compress(File dir, File zip) throws IOException {
+        Path root = dir.toPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        try (OutputStream out = Files.newOutputStream(zip.toPath()); ZipOutputStream stream = new ZipOutputStream(out)) {
+            for (Path file : files) {
+                stream.putNextEntry(new ZipEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                Files.copy(file, stream);
+                stream.closeEntry();
+            }
+        }
+    }
+
+}
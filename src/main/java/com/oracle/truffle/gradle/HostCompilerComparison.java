@@ -0,0 +1,267 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Runs the same {@code JavaExec} workload with C2 and with Graal as the top-tier JIT compiler of host Java
+ * code (see {@link GraalExtension#setHostCompiler(String)}) and compares throughput and iteration latency.
+ * Truffle compilations use Graal in both cases. On Hotspot, Graal is loaded from {@code prepareCompiler}.</p>
+ *
+ * {@code
+ * task compareHostCompilers(type: HostCompilerComparison) {
+ *     // The JavaExec task whose main class, classpath and arguments are used as the workload.
+ *     workload runBenchmark
+ *     // Number of JVM forks per compiler (default 3).
+ *     forks 5
+ *     // Number of forks running at the same time (default 1, parallel forks distort latencies).
+ *     parallelForks 1
+ *     // Regex for iteration times in the workload output, first group is milliseconds.
+ *     iterationPattern 'iteration \\d+: ([0-9.]+) ms'
+ * }
+ * }
+ *
+ * <p>The report ({@code report.md} and {@code report.json} in {@code build/reports/hostCompilers/<task>})
+ * shows the throughput (iterations per second in the steady state, i.e. the second half of iterations of every
+ * fork), the 50th, 90th, 99th percentile and maximum of steady state iteration times and the first iteration.
+ * Without iteration times in the workload output, only fork times are compared.</p>
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class HostCompilerComparison extends DefaultTask {
+
+    private static final List<String> COMPILERS = Arrays.asList(GraalExtension.HOST_COMPILER_C2, GraalExtension.HOST_COMPILER_GRAAL);
+
+    private final Property<JavaExec> workload = getProject().getObjects().property(JavaExec.class);
+    private final Property<Integer> forks = getProject().getObjects().property(Integer.class);
+    private final Property<Integer> parallelForks = getProject().getObjects().property(Integer.class);
+    private final Property<String> iterationPattern = getProject().getObjects().property(String.class);
+    private final DirectoryProperty reportDir = getProject().getObjects().directoryProperty();
+
+    public HostCompilerComparison() {
+        this.forks.set(3);
+        this.parallelForks.set(1);
+        this.iterationPattern.set(WorkloadRun.DEFAULT_ITERATION_PATTERN);
+        this.reportDir.set(new File(getProject().getBuildDir(), "reports/hostCompilers/" + getName()));
+        this.setGroup("graal");
+        // Benchmark results are never up-to-date.
+        this.getOutputs().upToDateWhen(it -> false);
+    }
+
+    /**
+     * Set the {@code JavaExec} task which is used as the benchmark workload.
+     *
+     * @param task Workload task.
+     */
+    public void setWorkload(JavaExec task) {
+        this.workload.set(task);
+        this.dependsOn(task.getTaskDependencies());
+    }
+
+    @Internal
+    public JavaExec getWorkload() {
+        return this.workload.getOrNull();
+    }
+
+    public void setForks(int forks) {
+        this.forks.set(forks);
+    }
+
+    /**
+     * @return Number of JVM forks executed for every compiler.
+     */
+    @Input
+    public int getForks() {
+        return this.forks.get();
+    }
+
+    public void setParallelForks(int parallelForks) {
+        this.parallelForks.set(parallelForks);
+    }
+
+    /**
+     * @return Maximal number of forks running at the same time.
+     */
+    @Internal
+    public int getParallelForks() {
+        return this.parallelForks.get();
+    }
+
+    public void setIterationPattern(String pattern) {
+        this.iterationPattern.set(pattern);
+    }
+
+    /**
+     * @return Regular expression matching one iteration time (in milliseconds) in the workload output.
+     */
+    @Input
+    public String getIterationPattern() {
+        return this.iterationPattern.get();
+    }
+
+    public void setReportDir(Object dir) {
+        this.reportDir.set(getProject().file(dir));
+    }
+
+    @OutputDirectory
+    public File getReportDir() {
+        return this.reportDir.getAsFile().get();
+    }
+
+    /* Injected by Gradle. */
+    @Inject
+    protected ExecOperations getExecOperations() {
+        throw new UnsupportedOperationException();
+    }
+
+    @TaskAction
+    public void compare() throws IOException {
+        GraalExtension config = GraalExtension.initInProject(getProject());
+        JavaExec workload = this.workload.getOrNull();
+        if (workload == null) {
+            throw new IllegalStateException("Please specify the benchmark using `workload someJavaExecTask`.");
+        }
+        JvmProbe jvm = JvmProbe.forTask(workload);
+        if (!jvm.isGraalVM() && !jvm.hasJVMCI()) {
+            throw new IllegalStateException("Comparing host compilers requires GraalVM or a JVM with JVM Compiler Interface (JDK 11+).");
+        }
+        List<String> compilerArgs = new ArrayList<>();
+        if (!jvm.isGraalVM()) {
+            compilerArgs.addAll(Arrays.asList(PluginUtils.compilerJvmArgs(config.getCompilerDir().getAbsolutePath())));
+        }
+
+        Pattern pattern = Pattern.compile(this.iterationPattern.get());
+        ExecOperations operations = getExecOperations();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.parallelForks.get()));
+        Map<String, List<Future<WorkloadRun>>> pending = new LinkedHashMap<>();
+        try {
+            // Interleave compilers so that a noisy period of the machine does not affect just one of them.
+            for (int fork = 0; fork < this.forks.get(); fork++) {
+                for (String compiler : COMPILERS) {
+                    int forkIndex = fork;
+                    pending.computeIfAbsent(compiler, c -> new ArrayList<>()).add(executor.submit(() -> {
+                        getLogger().lifecycle("Running " + workload.getName() + " with " + compiler + " (fork " + forkIndex + ")");
+                        return WorkloadRun.fork(operations, workload, compiler, forkIndex, pattern, exec -> {
+                            exec.jvmArgs(compilerArgs);
+                            // Given last, so they win over a host compiler selected in the graal extension.
+                            exec.jvmArgs((Object[]) PluginUtils.hostCompilerJvmArgs(compiler));
+                        });
+                    }));
+                }
+            }
+            Map<String, List<WorkloadRun>> results = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Future<WorkloadRun>>> entry : pending.entrySet()) {
+                List<WorkloadRun> runs = new ArrayList<>();
+                for (Future<WorkloadRun> run : entry.getValue()) {
+                    runs.add(run.get());
+                }
+                results.put(entry.getKey(), runs);
+            }
+            writeReport(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Host compiler comparison interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Host compiler comparison fork failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>Summary of one compiler: fork times, throughput and percentiles of steady state iterations (the second
+     * half of every fork) and the first iterations. Values are NaN when the workload reports no iterations.</p>
+     */
+    static Map<String, Double> summarize(List<Double> forkMillis, List<List<Double>> iterations) {
+        List<Double> warmup = new ArrayList<>();
+        List<Double> steady = new ArrayList<>();
+        for (List<Double> fork : iterations) {
+            if (fork.isEmpty()) continue;
+            warmup.add(fork.get(0));
+            steady.addAll(fork.subList(fork.size() / 2, fork.size()));
+        }
+        double steadyMean = Statistics.mean(steady);
+        Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put("forkMillis", Statistics.mean(forkMillis));
+        summary.put("forkMillisStddev", Statistics.stddev(forkMillis));
+        summary.put("throughput", Double.isNaN(steadyMean) ? Double.NaN : 1000.0 / steadyMean);
+        summary.put("p50", Statistics.percentile(steady, 50));
+        summary.put("p90", Statistics.percentile(steady, 90));
+        summary.put("p99", Statistics.percentile(steady, 99));
+        summary.put("max", Statistics.max(steady));
+        summary.put("warmupMillis", Statistics.mean(warmup));
+        return summary;
+    }
+
+    /* Write markdown and JSON versions of the report and print the table. */
+    private void writeReport(Map<String, List<WorkloadRun>> results) throws IOException {
+        StringBuilder table = new StringBuilder();
+        table.append("| Host compiler | Forks | Fork time [ms] | Throughput [ops/s] | Speedup | p50 [ms] | p90 [ms] | p99 [ms] | Max [ms] | Warmup iteration [ms] |\n");
+        table.append("|---|---|---|---|---|---|---|---|---|---|\n");
+        List<Map<String, Object>> json = new ArrayList<>();
+        Double baseline = null;
+        for (Map.Entry<String, List<WorkloadRun>> entry : results.entrySet()) {
+            List<Double> wall = new ArrayList<>();
+            List<List<Double>> iterations = new ArrayList<>();
+            for (WorkloadRun run : entry.getValue()) {
+                wall.add(run.wallMillis);
+                iterations.add(run.iterations);
+            }
+            Map<String, Double> summary = summarize(wall, iterations);
+            double throughput = summary.get("throughput");
+            if (baseline == null) baseline = throughput;    // C2 is the first compiler
+            table.append("| ").append(entry.getKey())
+                    .append(" | ").append(entry.getValue().size())
+                    .append(" | ").append(Statistics.format(summary.get("forkMillis")))
+                    .append(" +- ").append(Statistics.format(summary.get("forkMillisStddev")))
+                    .append(" | ").append(Statistics.format(throughput))
+                    .append(" | ").append(Double.isNaN(throughput) ? "-" : Statistics.format(throughput / baseline) + "x")
+                    .append(" | ").append(Statistics.format(summary.get("p50")))
+                    .append(" | ").append(Statistics.format(summary.get("p90")))
+                    .append(" | ").append(Statistics.format(summary.get("p99")))
+                    .append(" | ").append(Statistics.format(summary.get("max")))
+                    .append(" | ").append(Statistics.format(summary.get("warmupMillis")))
+                    .append(" |\n");
+
+            Map<String, Object> compiler = new LinkedHashMap<>();
+            compiler.put("compiler", entry.getKey());
+            for (Map.Entry<String, Double> value : summary.entrySet()) {
+                compiler.put(value.getKey(), Double.isNaN(value.getValue()) ? null : value.getValue());
+            }
+            compiler.put("forkMillisPerFork", wall);
+            compiler.put("iterationMillis", iterations);
+            json.add(compiler);
+        }
+        File dir = getReportDir();
+        Files.write(new File(dir, "report.md").toPath(), table.toString().getBytes(Charset.defaultCharset()));
+        Files.write(
+                new File(dir, "report.json").toPath(),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(Charset.defaultCharset())
+        );
+        getLogger().lifecycle(table.toString());
+    }
+
+}
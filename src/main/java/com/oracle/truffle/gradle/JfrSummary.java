@@ -0,0 +1,322 @@
+package com.oracle.truffle.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Summary of a Flight Recorder recording: hot methods (execution samples), GC pauses, compilations per
+ * tier, Truffle compilation events and lock contention (monitor enter and thread park events).</p>
+ *
+ * <p>Recordings are read using {@code jdk.jfr.consumer} reflectively, since the plugin is compiled for Java 8
+ * and the API is only available when Gradle runs on JDK 11+. JFR does not record compile queue times, so
+ * compilations are summarized by their duration (the {@code profile} settings record compilations longer than
+ * 100 ms).</p>
+ */
+final class JfrSummary {
+
+    static final String TRUFFLE_EVENTS = "org.graalvm.compiler.truffle.";
+    private static final int TOP = 20;
+
+    /* The part of a recorded event used by the summary. */
+    static final class Event {
+
+        final String type;
+        final double millis;
+        final Map<String, Object> fields = new LinkedHashMap<>();
+
+        Event(String type, double millis) {
+            this.type = type;
+            this.millis = millis;
+        }
+
+        Event with(String field, Object value) {
+            this.fields.put(field, value);
+            return this;
+        }
+
+        String string(String field) {
+            Object value = this.fields.get(field);
+            return value == null ? "?" : value.toString();
+        }
+
+        double number(String field) {
+            Object value = this.fields.get(field);
+            return value instanceof Number ? ((Number) value).doubleValue() : 0;
+        }
+
+    }
+
+    /* Count, total and maximum of durations. */
+    private static final class Durations {
+
+        final List<Double> values = new ArrayList<>();
+        int failed;
+
+        void add(double millis) {
+            this.values.add(millis);
+        }
+
+        double total() {
+            double total = 0;
+            for (double value : this.values) total += value;
+            return total;
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("count", this.values.size());
+            json.put("totalMs", round(total()));
+            json.put("maxMs", round(this.values.isEmpty() ? 0 : Statistics.max(this.values)));
+            json.put("p99Ms", round(this.values.isEmpty() ? 0 : Statistics.percentile(this.values, 99)));
+            return json;
+        }
+
+    }
+
+    private JfrSummary() {}
+
+    /**
+     * @return Relevant events of the recording.
+     * @throws IllegalStateException if the JVM running Gradle cannot read recordings.
+     */
+    static List<Event> read(File recording) throws IOException {
+        Class<?> recordingFile;
+        try {
+            recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Reading JFR recordings requires Gradle running on JDK 11+.");
+        }
+        List<Event> events = new ArrayList<>();
+        try {
+            List<?> recorded = (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, recording.toPath());
+            for (Object item : recorded) {
+                String type = (String) call(call(item, "getEventType"), "getName");
+                if (!isRelevant(type)) continue;
+                Event event = new Event(type, millis(call(item, "getDuration")));
+                if ("jdk.ExecutionSample".equals(type)) {
+                    event.with("method", topFrame(call(item, "getStackTrace")));
+                } else {
+                    for (String field : new String[] { "name", "sumOfPauses", "longestPause", "compileLevel", "succeded",
+                            "monitorClass", "parkedClass", "rootFunction", "source" }) {
+                        if (!(Boolean) call(item, "hasField", field)) continue;
+                        // Timespan fields are plain numbers (nanoseconds) when read with getValue.
+                        boolean timespan = field.endsWith("Pause") || field.endsWith("Pauses");
+                        event.with(field, value(call(item, timespan ? "getDuration" : "getValue", field)));
+                    }
+                }
+                events.add(event);
+            }
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException("Cannot read recording " + recording, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read recording " + recording, e);
+        }
+        return events;
+    }
+
+    private static boolean isRelevant(String type) {
+        switch (type) {
+            case "jdk.ExecutionSample":
+            case "jdk.GarbageCollection":
+            case "jdk.Compilation":
+            case "jdk.JavaMonitorEnter":
+            case "jdk.ThreadPark":
+                return true;
+            default:
+                return type.startsWith(TRUFFLE_EVENTS);
+        }
+    }
+
+    private static Object call(Object target, String method, Object... args) throws ReflectiveOperationException {
+        if (args.length == 0) {
+            return target.getClass().getMethod(method).invoke(target);
+        }
+        return target.getClass().getMethod(method, String.class).invoke(target, args);
+    }
+
+    private static double millis(Object duration) {
+        return duration instanceof Duration ? ((Duration) duration).toNanos() / 1e6 : 0;
+    }
+
+    /* Durations in milliseconds, classes and methods by name, everything else as is. */
+    private static Object value(Object value) throws ReflectiveOperationException {
+        if (value == null || value instanceof Number || value instanceof Boolean || value instanceof String) return value;
+        if (value instanceof Duration) return millis(value);
+        String type = value.getClass().getName();
+        if (type.equals("jdk.jfr.consumer.RecordedClass")) return call(value, "getName");
+        if (type.equals("jdk.jfr.consumer.RecordedMethod")) {
+            return call(call(value, "getType"), "getName") + "." + call(value, "getName");
+        }
+        return value.toString();
+    }
+
+    private static String topFrame(Object stackTrace) throws ReflectiveOperationException {
+        if (stackTrace == null) return "?";
+        List<?> frames = (List<?>) call(stackTrace, "getFrames");
+        if (frames.isEmpty()) return "?";
+        Object method = call(frames.get(0), "getMethod");
+        return (String) value(method);
+    }
+
+    /**
+     * @return JSON compatible summary of the events.
+     */
+    static Map<String, Object> summarize(List<Event> events) {
+        Map<String, Integer> samples = new TreeMap<>();
+        int sampleCount = 0;
+        Durations pauses = new Durations();
+        Map<String, Integer> collectors = new TreeMap<>();
+        double maxPause = 0;
+        Map<String, Durations> tiers = new TreeMap<>();
+        Map<String, Durations> truffle = new TreeMap<>();
+        Map<String, Durations> locks = new TreeMap<>();
+        for (Event event : events) {
+            switch (event.type) {
+                case "jdk.ExecutionSample":
+                    samples.merge(event.string("method"), 1, Integer::sum);
+                    sampleCount += 1;
+                    break;
+                case "jdk.GarbageCollection":
+                    pauses.add(event.number("sumOfPauses"));
+                    maxPause = Math.max(maxPause, event.number("longestPause"));
+                    collectors.merge(event.string("name"), 1, Integer::sum);
+                    break;
+                case "jdk.Compilation":
+                    int level = (int) event.number("compileLevel");
+                    Durations tier = tiers.computeIfAbsent(level == 4 ? "tier 4 (C2 or JVMCI)" : "tier " + level + " (C1)", k -> new Durations());
+                    tier.add(event.millis);
+                    if (Boolean.FALSE.equals(event.fields.get("succeded"))) tier.failed += 1;
+                    break;
+                case "jdk.JavaMonitorEnter":
+                    locks.computeIfAbsent("monitor " + event.string("monitorClass"), k -> new Durations()).add(event.millis);
+                    break;
+                case "jdk.ThreadPark":
+                    locks.computeIfAbsent("park " + event.string("parkedClass"), k -> new Durations()).add(event.millis);
+                    break;
+                default:
+                    truffle.computeIfAbsent(event.type.substring(TRUFFLE_EVENTS.length()), k -> new Durations()).add(event.millis);
+            }
+        }
+
+        List<Map<String, Object>> hotMethods = new ArrayList<>();
+        List<Map.Entry<String, Integer>> sortedSamples = new ArrayList<>(samples.entrySet());
+        sortedSamples.sort((a, b) -> b.getValue() - a.getValue());
+        for (Map.Entry<String, Integer> entry : sortedSamples.subList(0, Math.min(TOP, sortedSamples.size()))) {
+            Map<String, Object> method = new LinkedHashMap<>();
+            method.put("method", entry.getKey());
+            method.put("samples", entry.getValue());
+            method.put("percent", round(100.0 * entry.getValue() / sampleCount));
+            hotMethods.add(method);
+        }
+        Map<String, Object> gc = pauses.toJson();
+        gc.put("maxPauseMs", round(maxPause));
+        gc.put("collectors", collectors);
+        Map<String, Object> compilation = new LinkedHashMap<>();
+        for (Map.Entry<String, Durations> entry : tiers.entrySet()) {
+            Map<String, Object> json = entry.getValue().toJson();
+            json.put("failed", entry.getValue().failed);
+            compilation.put(entry.getKey(), json);
+        }
+        Map<String, Object> truffleJson = new LinkedHashMap<>();
+        for (Map.Entry<String, Durations> entry : truffle.entrySet()) {
+            truffleJson.put(entry.getKey(), entry.getValue().toJson());
+        }
+        List<Map.Entry<String, Durations>> sortedLocks = new ArrayList<>(locks.entrySet());
+        sortedLocks.sort((a, b) -> Double.compare(b.getValue().total(), a.getValue().total()));
+        Map<String, Object> lockJson = new LinkedHashMap<>();
+        for (Map.Entry<String, Durations> entry : sortedLocks.subList(0, Math.min(TOP, sortedLocks.size()))) {
+            lockJson.put(entry.getKey(), entry.getValue().toJson());
+        }
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("samples", sampleCount);
+        totals.put("gcPauseMs", round(pauses.total()));
+        totals.put("gcMaxPauseMs", round(maxPause));
+        totals.put("compilationMs", round(sum(tiers)));
+        totals.put("truffleCompilationMs", round(truffle.containsKey("Compilation") ? truffle.get("Compilation").total() : 0));
+        totals.put("lockWaitMs", round(sum(locks)));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("totals", totals);
+        summary.put("hotMethods", hotMethods);
+        summary.put("gc", gc);
+        summary.put("compilation", compilation);
+        summary.put("truffle", truffleJson);
+        summary.put("locks", lockJson);
+        return summary;
+    }
+
+    /**
+     * @param summary Summary of the recording.
+     * @param previous Summary of the previous recording of the same task, or null.
+     * @return Markdown report.
+     */
+    @SuppressWarnings("unchecked")
+    static String render(String title, Map<String, Object> summary, Map<String, Object> previous) {
+        StringBuilder report = new StringBuilder("# ").append(title).append("\n\n");
+        Map<String, Object> totals = (Map<String, Object>) summary.get("totals");
+        Map<String, Object> previousTotals = previous == null ? null : (Map<String, Object>) previous.get("totals");
+        report.append(previousTotals == null ? "| Metric | Value |\n|--------|------:|\n"
+                : "| Metric | Value | Previous | Change |\n|--------|------:|---------:|-------:|\n");
+        for (Map.Entry<String, Object> entry : totals.entrySet()) {
+            report.append("| ").append(entry.getKey()).append(" | ").append(entry.getValue());
+            if (previousTotals != null) {
+                Object before = previousTotals.get(entry.getKey());
+                report.append(" | ").append(before == null ? "-" : before).append(" | ").append(change(entry.getValue(), before));
+            }
+            report.append(" |\n");
+        }
+
+        report.append("\n## Hot methods\n\n| Method | Samples | % |\n|--------|--------:|--:|\n");
+        for (Map<String, Object> method : (List<Map<String, Object>>) summary.get("hotMethods")) {
+            report.append("| `").append(method.get("method")).append("` | ").append(method.get("samples"))
+                    .append(" | ").append(method.get("percent")).append(" |\n");
+        }
+        Map<String, Object> gc = (Map<String, Object>) summary.get("gc");
+        report.append(String.format(Locale.ROOT, "%n## GC pauses%n%n%s collections, %s ms paused in total, longest pause %s ms, p99 %s ms (%s).%n",
+                gc.get("count"), gc.get("totalMs"), gc.get("maxPauseMs"), gc.get("p99Ms"), gc.get("collectors")));
+        report.append("\n## Compilation\n\n| Compiler | Count | Total (ms) | Max (ms) | p99 (ms) |\n|----------|------:|-----------:|---------:|---------:|\n");
+        appendDurations(report, (Map<String, Object>) summary.get("compilation"), "");
+        appendDurations(report, (Map<String, Object>) summary.get("truffle"), "Truffle ");
+        report.append("\n## Lock contention\n\n| Lock | Count | Total (ms) | Max (ms) | p99 (ms) |\n|------|------:|-----------:|---------:|---------:|\n");
+        appendDurations(report, (Map<String, Object>) summary.get("locks"), "");
+        return report.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendDurations(StringBuilder report, Map<String, Object> entries, String prefix) {
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            Map<String, Object> json = (Map<String, Object>) entry.getValue();
+            report.append("| ").append(prefix).append(entry.getKey()).append(" | ").append(json.get("count"))
+                    .append(" | ").append(json.get("totalMs")).append(" | ").append(json.get("maxMs"))
+                    .append(" | ").append(json.get("p99Ms")).append(" |\n");
+        }
+    }
+
+    private static String change(Object value, Object before) {
+        if (!(value instanceof Number) || !(before instanceof Number) || ((Number) before).doubleValue() == 0) return "-";
+        double ratio = ((Number) value).doubleValue() / ((Number) before).doubleValue() - 1;
+        return String.format(Locale.ROOT, "%+.1f%%", ratio * 100);
+    }
+
+    private static double sum(Map<String, Durations> durations) {
+        double total = 0;
+        for (Durations value : durations.values()) total += value.total();
+        return total;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+}
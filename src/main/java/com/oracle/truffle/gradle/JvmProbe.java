@@ -0,0 +1,288 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.JavaVersion;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.process.JavaForkOptions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Describes a JVM which is used to run a forked process. The compiler flags and the truffle classpath
+ * depend on the JVM that actually executes the code, not the JVM which runs Gradle, so every forked task
+ * is probed separately.</p>
+ *
+ * <p>Probing executes {@code java -XshowSettings:properties -version} and reads the relevant system
+ * properties. Results are cached for the whole Gradle daemon, keyed by the canonical executable path.</p>
+ */
+final class JvmProbe {
+
+    private static final Map<String, JvmProbe> CACHE = new ConcurrentHashMap<>();
+
+    private static final String[] PROPERTIES = new String[] {
+            "java.home", "java.specification.version", "java.vendor.version", "java.vm.name", "java.vm.version"
+    };
+
+    // GraalVM CE 20.1.0, GraalVM EE 21.0.0, but also GraalVM CE 17.0.8+7.1 or Oracle GraalVM 24+36.1 (JDK versions).
+    private static final Pattern GRAAL_VERSION = Pattern.compile("GraalVM(?: [CE]E)? (\\d+)[0-9.]*(\\+)?");
+    // Only releases versioned independently of the JDK, GraalVM CE 17.0.8+7.1 is a JDK version.
+    private static final Pattern GRAAL_RELEASE = Pattern.compile("GraalVM(?: [CE]E)? (\\d+\\.\\d+\\.\\d+)(?![+.\\d])");
+    // 11.0.7+10-jvmci-20.1-b02, 21.0.1+12-jvmci-23.1-b19, but 24+36-jvmci-b01 has no release.
+    private static final Pattern JVMCI_RELEASE = Pattern.compile("jvmci-(\\d+)\\.\\d+");
+
+    private final Map<String, String> properties;
+
+    private JvmProbe(Map<String, String> properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * <p>A JVM with the given system properties.</p>
+     */
+    static JvmProbe forProperties(Map<String, String> properties) {
+        return new JvmProbe(new HashMap<>(properties));
+    }
+
+    /**
+     * <p>The JVM running Gradle.</p>
+     */
+    static JvmProbe current() {
+        Map<String, String> properties = new HashMap<>();
+        for (String key : PROPERTIES) {
+            properties.put(key, System.getProperty(key, ""));
+        }
+        return new JvmProbe(properties);
+    }
+
+    /**
+     * <p>The JVM that will be used by the given fork task. This is the toolchain launcher when one is
+     * configured (Gradle 6.7+), otherwise the task executable, otherwise the JVM running Gradle.</p>
+     */
+    static JvmProbe forTask(Task task) {
+        String executable = getLauncherExecutable(task);
+        if (executable == null && task instanceof JavaForkOptions) {
+            executable = ((JavaForkOptions) task).getExecutable();
+        }
+        return executable == null ? current() : forExecutable(executable);
+    }
+
+    /**
+     * <p>The JVM of the Java toolchain configured for the project (Gradle 6.7+), or null if the project does
+     * not configure a toolchain.</p>
+     */
+    @Nullable
+    static JvmProbe forToolchain(Project project) {
+        String executable = getToolchainExecutable(project);
+        return executable == null ? null : forExecutable(executable);
+    }
+
+    /**
+     * <p>The JVM with the given {@code java} executable.</p>
+     */
+    static JvmProbe forExecutable(@Nonnull String executable) {
+        String key = canonicalPath(new File(executable));
+        // Default executable of fork tasks is the JVM running Gradle, no need to start a process for that.
+        if (key.equals(canonicalPath(javaExecutable(new File(System.getProperty("java.home")))))) {
+            return current();
+        }
+        return CACHE.computeIfAbsent(key, JvmProbe::probe);
+    }
+
+    /**
+     * <p>The JVM installed in the given home directory.</p>
+     */
+    static JvmProbe forHome(@Nonnull File javaHome) {
+        return forExecutable(javaExecutable(javaHome).getAbsolutePath());
+    }
+
+    /**
+     * <p>Returns true if this JVM is GraalVM.</p>
+     */
+    boolean isGraalVM() {
+        // We don't want to use vendor name because GraalVM vendor also releases non-graal JVMs
+        // (JVMCI enabled OpenJDK8). For Graal based on JDK11, java.vendor.version is set. For older JDKs,
+        // java.vm.name should contain GraalVM as well.
+        return property("java.vendor.version").contains("GraalVM") || property("java.vm.name").contains("GraalVM");
+    }
+
+    /**
+     * <p>Returns true if this JVM supports JVMCI (Java Virtual Machine Compiler Interface).</p>
+     */
+    boolean hasJVMCI() {
+        // We assume a JVM supports CI if the version is at least 11 (first version where publicly available) or
+        // if the `java.vm.version` contains jvmci (indicates custom builds or graal vm).
+        String specification = property("java.specification.version");
+        if (specification.isEmpty()) return false;
+        JavaVersion version = JavaVersion.toVersion(specification);
+        return version.compareTo(JavaVersion.VERSION_11) >= 0 || property("java.vm.version").contains("jvmci");
+    }
+
+    /**
+     * <p>Returns the major release of GraalVM (e.g. 20 for 20.1.0, 23 for GraalVM for JDK 17 and 21, which are
+     * GraalVM 23.0 and 23.1), or -1 if this JVM is not GraalVM or the version is not known. Releases for JDK 24
+     * and later have no release number of their own, for them the JDK version (at least 24) is returned.</p>
+     */
+    int getGraalMajorVersion() {
+        if (!isGraalVM()) return -1;
+        // The JVMCI version matches the GraalVM release, vendor versions of newer releases are JDK versions.
+        Matcher release = JVMCI_RELEASE.matcher(property("java.vm.version"));
+        if (release.find()) return Integer.parseInt(release.group(1));
+        for (String key : new String[] { "java.vendor.version", "java.vm.name" }) {
+            Matcher matcher = GRAAL_VERSION.matcher(property(key));
+            if (!matcher.find()) continue;
+            if (matcher.group(2) == null) return Integer.parseInt(matcher.group(1));
+            return Math.max(24, Integer.parseInt(matcher.group(1)));
+        }
+        return -1;
+    }
+
+    /**
+     * <p>Returns the release of GraalVM (e.g. 20.1.0) if this JVM is a GraalVM release versioned independently of
+     * the JDK, which includes its Graal SDK and Truffle artifacts of the same version, or null.</p>
+     */
+    @Nullable
+    String getGraalVersion() {
+        if (!isGraalVM()) return null;
+        for (String key : new String[] { "java.vendor.version", "java.vm.name" }) {
+            Matcher matcher = GRAAL_RELEASE.matcher(property(key));
+            if (matcher.find()) return matcher.group(1);
+        }
+        return null;
+    }
+
+    /**
+     * <p>Home directory of this JVM.</p>
+     */
+    String getJavaHome() {
+        return property("java.home");
+    }
+
+    private String property(String key) {
+        String value = this.properties.get(key);
+        return value == null ? "" : value;
+    }
+
+    static File javaExecutable(File javaHome) {
+        return new File(javaHome, PluginUtils.isWindows() ? "bin/java.exe" : "bin/java");
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /* Start the JVM and read its properties (uncached). */
+    static JvmProbe probe(String executable) {
+        List<String> lines = new ArrayList<>();
+        try {
+            // The settings are printed to stderr, `-version` prints nothing to stdout.
+            Process process = new ProcessBuilder(executable, "-XshowSettings:properties", "-version")
+                    .redirectErrorStream(true)
+                    .start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Cannot probe JVM " + executable + ": exit code " + process.exitValue());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot probe JVM " + executable + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while probing JVM " + executable, e);
+        }
+        return new JvmProbe(parseSettings(lines));
+    }
+
+    /*
+        Read the `Property settings:` block, where properties are printed as indented `key = value` lines and
+        continuation lines of multi-valued properties have no `=`. Other output, e.g. `Picked up JAVA_TOOL_OPTIONS`
+        or the version, is ignored even if it contains ` = `.
+     */
+    static Map<String, String> parseSettings(List<String> lines) {
+        Map<String, String> properties = new HashMap<>();
+        boolean block = false;
+        for (String line : lines) {
+            if (line.trim().equals("Property settings:")) {
+                block = true;
+                continue;
+            }
+            if (!block) continue;
+            if (line.isEmpty() || !Character.isWhitespace(line.charAt(0))) break;
+            int separator = line.indexOf(" = ");
+            if (separator < 0) continue;
+            properties.put(line.substring(0, separator).trim(), line.substring(separator + 3).trim());
+        }
+        return properties;
+    }
+
+    /*
+        Toolchains are only available since Gradle 6.7, so we can't reference the API directly. If the task
+        has a `javaLauncher` property, read the executable path of the configured launcher.
+     */
+    @Nullable
+    private static String getLauncherExecutable(Task task) {
+        try {
+            Object property = task.getClass().getMethod("getJavaLauncher").invoke(task);
+            Object launcher = property instanceof Provider ? ((Provider<?>) property).getOrNull() : null;
+            return launcher == null ? null : getExecutablePath(launcher);
+        } catch (NoSuchMethodException e) {
+            return null;    // Older Gradle without toolchains.
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read java launcher of task " + task.getName(), e);
+        }
+    }
+
+    /*
+        The same for the toolchain of the project (java { toolchain { ... } }), which is only used if a language
+        version is configured. The launcher is requested from the `javaToolchains` service.
+     */
+    @Nullable
+    private static String getToolchainExecutable(Project project) {
+        Object java = project.getExtensions().findByName("java");
+        Object service = project.getExtensions().findByName("javaToolchains");
+        if (java == null || service == null) return null;   // Older Gradle without toolchains.
+        try {
+            Object spec = java.getClass().getMethod("getToolchain").invoke(java);
+            Object version = spec.getClass().getMethod("getLanguageVersion").invoke(spec);
+            if (!(version instanceof Provider) || !((Provider<?>) version).isPresent()) return null;
+            for (Method method : service.getClass().getMethods()) {
+                if (!method.getName().equals("launcherFor") || method.getParameterCount() != 1
+                        || !method.getParameterTypes()[0].isInstance(spec)) continue;
+                Object launcher = ((Provider<?>) method.invoke(service, spec)).getOrNull();
+                return launcher == null ? null : getExecutablePath(launcher);
+            }
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read java toolchain of project " + project.getPath(), e);
+        }
+    }
+
+    private static String getExecutablePath(Object launcher) throws ReflectiveOperationException {
+        Object path = launcher.getClass().getMethod("getExecutablePath").invoke(launcher);
+        return path instanceof RegularFile ? ((RegularFile) path).getAsFile().getAbsolutePath() : null;
+    }
+
+}
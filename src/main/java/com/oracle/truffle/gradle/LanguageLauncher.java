@@ -0,0 +1,110 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.JavaVersion;
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.compile.JavaCompile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * <p>Declares the {@code nativeLauncher} task of a language project: a {@link NativeImage} of a small
+ * generated launcher which runs a source file (or a bundled source) with the language of the project.
+ * The language context is pre-initialized when the image is built, so the initialized context is stored
+ * in the image heap. Sources declared using {@code graal { launcherSources ... }} are read and decoded at
+ * build time as well.</p>
+ *
+ * <p>The launcher is generated by {@code generateNativeLauncher} from a template in the plugin and
+ * compiled against the runtime classpath of the project by {@code compileNativeLauncher}.</p>
+ */
+final class LanguageLauncher {
+
+    static final String MAIN_CLASS = "org.graalvm.plugin.launcher.NativeLauncher";
+    private static final String PACKAGE_DIR = "org/graalvm/plugin/launcher";
+
+    private LanguageLauncher() {}
+
+    static void declare(Project project, GraalExtension config) {
+        JavaPluginConvention javaPlugin = project.getConvention().findPlugin(JavaPluginConvention.class);
+        if (javaPlugin == null) return;
+        SourceSet main = javaPlugin.getSourceSets().getByName("main");
+        File generated = new File(project.getBuildDir(), "generated/nativeLauncher");
+        File sourceDir = new File(generated, "java");
+        File resourceDir = new File(generated, "resources");
+        File classesDir = new File(project.getBuildDir(), "classes/java/nativeLauncher");
+
+        DefaultTask generate = project.getTasks().create("generateNativeLauncher", DefaultTask.class, task -> {
+            task.setGroup("graal");
+            task.setDescription("Generates the sources of the native language launcher.");
+            task.getInputs().property("language", project.provider(config::requireLanguageId));
+            task.getInputs().files(project.provider(() -> project.files(config.getLauncherSources())));
+            task.getOutputs().dir(generated);
+            task.doLast(it -> generate(project, config, sourceDir, resourceDir));
+        });
+
+        JavaCompile compile = project.getTasks().create("compileNativeLauncher", JavaCompile.class, task -> {
+            task.setGroup("graal");
+            task.setDescription("Compiles the native language launcher.");
+            task.dependsOn(generate);
+            task.source(sourceDir);
+            task.setClasspath(main.getRuntimeClasspath());
+            task.getDestinationDirectory().set(classesDir);
+            task.setSourceCompatibility("1.8");
+            task.setTargetCompatibility("1.8");
+            if (JavaVersion.current().isJava9Compatible()) {
+                // Compile against the Java 8 API as well, the launcher runs on the Java 8 variants of the GraalVM.
+                task.getOptions().getCompilerArgs().addAll(Arrays.asList("--release", "8"));
+            }
+        });
+
+        project.getTasks().create("nativeLauncher", NativeImage.class, task -> {
+            task.setDescription("Builds a native launcher of the language with a pre-initialized context.");
+            task.dependsOn(compile);
+            task.setForMainClass(MAIN_CLASS);
+            task.appendClasspath(classesDir, resourceDir);
+            // Lazy so that the user can configure the language (and the output name) in the build script.
+            task.outputNameConvention(project.provider(config::getLanguageName));
+            task.appendCmdArgs(project.provider(() -> Arrays.asList(
+                    "-Dpolyglot.image-build-time.PreinitializeContexts=" + config.requireLanguageId(),
+                    "--initialize-at-build-time=" + MAIN_CLASS + "$Bundled"
+            )));
+        });
+    }
+
+    private static void generate(Project project, GraalExtension config, File sourceDir, File resourceDir) {
+        project.delete(sourceDir, resourceDir);
+        File packageDir = new File(sourceDir, PACKAGE_DIR);
+        File sources = new File(resourceDir, PACKAGE_DIR + "/sources");
+        if (!packageDir.mkdirs() || !sources.mkdirs()) {
+            throw new IllegalStateException("Cannot create launcher directories in " + sourceDir.getParent());
+        }
+        try {
+            String template = PluginUtils.readTemplate("NativeLauncher.java.template");
+            String launcher = template.replace("${language}", config.requireLanguageId());
+            Files.write(new File(packageDir, "NativeLauncher.java").toPath(), launcher.getBytes(StandardCharsets.UTF_8));
+
+            FileCollection bundled = project.files(config.getLauncherSources());
+            Set<String> names = new LinkedHashSet<>();
+            for (File file : bundled.getFiles()) {
+                if (!names.add(file.getName())) {
+                    throw new IllegalStateException("Duplicate launcher source name " + file.getName() + ".");
+                }
+                Files.copy(file.toPath(), new File(sources, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.write(new File(sources, "index.txt").toPath(), String.join("\n", names).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
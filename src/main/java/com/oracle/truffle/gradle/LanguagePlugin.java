@@ -3,6 +3,7 @@ package com.oracle.truffle.gradle;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.bundling.Jar;
@@ -22,10 +23,28 @@ public class LanguagePlugin implements Plugin<Project> {
         project.getPluginManager().apply(CompilerPlugin.class);
         GraalExtension config = GraalExtension.initInProject(project);
 
+        // Native launcher of the language (only when native images are enabled in the project).
+        project.getPluginManager().withPlugin("org.graalvm.plugin.native-image", plugin ->
+                project.getPluginManager().withPlugin("java", java -> LanguageLauncher.declare(project, config))
+        );
+
+        // Long-lived JVM which reloads the language classes after every compilation.
+        project.getTasks().create("devServer", DevServer.class, task ->
+                task.setDescription("Runs a script of the language again whenever the language is recompiled.")
+        );
+
+        // Partial evaluation hazards in the compiled nodes of the language.
+        project.getPluginManager().withPlugin("java", java -> {
+            TruffleLint lint = project.getTasks().create("truffleLint", TruffleLint.class, task -> {
+                task.setDescription("Checks the compiled nodes of the language for partial evaluation hazards.");
+                JavaPluginConvention javaPlugin = project.getConvention().getPlugin(JavaPluginConvention.class);
+                task.setClasses(javaPlugin.getSourceSets().getByName("main").getOutput().getClassesDirs());
+            });
+            project.getTasks().getByName("check").dependsOn(lint);
+        });
+
         project.afterEvaluate(p -> {
-            if (config.getLanguageId() == null) {
-                throw new IllegalStateException("Please specify truffle language id using `graal { languageId = 'my.id.language' }`");
-            }
+            config.requireLanguageId();
             Jar graalComponent = project.getTasks().create("graalComponent", Jar.class, task -> {
                 task.setGroup("distribution");
                 task.getArchiveBaseName().set(config.getLanguageName() + "-component");
@@ -51,7 +70,10 @@ public class LanguagePlugin implements Plugin<Project> {
                 if (javaPlugin == null) return;
                 SourceSet mainSources = javaPlugin.getSourceSets().findByName("main");
                 if (mainSources == null) return;
-                task.from(mainSources.getCompileClasspath(), copy -> {
+                // Language dependencies are often large (e.g. ICU data), use the pruned jars if requested.
+                FileCollection libraries = config.getResourcePruning() == null ? mainSources.getCompileClasspath()
+                        : PruneResources.pruned(project.getConfigurations().getByName(mainSources.getCompileClasspathConfigurationName()));
+                task.from(libraries, copy -> {
                     copy.into("languages/"+config.getLanguageName()+"/lib");
                 });
                 task.from(project.getTasks().findByName("jar").getOutputs(), copy -> {
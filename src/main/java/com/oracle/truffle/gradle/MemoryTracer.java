@@ -0,0 +1,108 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.JavaExec;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Runs a {@code JavaExec} task with the Truffle memory tracer, aggregates the printed histogram per source
+ * location or type and checks it against the allocation budgets of the task (see
+ * {@link GraalTaskOptions#setMemoryTracer(String)}). Outputs are stored in {@code build/graalProfile/<task>}.</p>
+ *
+ * <p>Only allocations reported by the guest language (using {@code AllocationReporter}) are traced.</p>
+ */
+final class MemoryTracer {
+
+    private MemoryTracer() {}
+
+    static void configure(Project project, Task task, GraalTaskOptions options) {
+        File dir = new File(project.getBuildDir(), "graalProfile/" + task.getName());
+        File trace = new File(dir, "memtracer.txt");
+        AtomicReference<AllocationHistogram> histogram = new AtomicReference<>();
+        List<OutputStream> streams = new ArrayList<>();
+        task.doFirst(it -> {
+            if (options.getMemoryTracer() == null) return;
+            if (!(it instanceof JavaExec)) {
+                System.err.println("WARNING: Memory tracer is only supported for JavaExec tasks, "+it.getName()+" runs without it.");
+                return;
+            }
+            JavaExec exec = (JavaExec) it;
+            project.delete(trace, new File(dir, "allocations.md"), new File(dir, "allocations.json"));
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IllegalStateException("Cannot create profile directory at " + dir.getAbsolutePath());
+            }
+            // The output is parsed line by line while the process runs and copied to memtracer.txt.
+            AllocationHistogram parsed = new AllocationHistogram(options.getMemoryTracer());
+            histogram.set(parsed);
+            streams.clear();
+            try {
+                streams.add(new BufferedOutputStream(Files.newOutputStream(trace.toPath())));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            streams.add(NativeImageMetrics.lines(parsed::accept));
+            exec.setStandardOutput(new TeeOutputStream(
+                    exec.getStandardOutput(), new TeeOutputStream(streams.get(0), streams.get(1))
+            ));
+            exec.systemProperty("polyglot.memtracer", "true");
+            exec.systemProperty("polyglot.memtracer.Output",
+                    AllocationHistogram.TYPES.equals(options.getMemoryTracer()) ? "typehistogram" : "histogram"
+            );
+            if (!JvmProbe.forTask(it).isGraalVM()) {
+                CpuSampler.addProfilerToClasspath(project, it);
+            }
+        });
+        task.doLast(it -> {
+            if (options.getMemoryTracer() == null || !(it instanceof JavaExec)) return;
+            try {
+                for (OutputStream stream : streams) {
+                    stream.close();     // passes the last line to the parser as well
+                }
+                AllocationHistogram result = histogram.get().finish();
+                List<AllocationHistogram.Budget> budgets = result.check(
+                        options.getTotalAllocationBudget(), options.getAllocationBudgets()
+                );
+                result.write(budgets, dir);
+                task.getLogger().lifecycle(
+                        "Allocation report (" + result.total + " allocations) written to " + dir.getAbsolutePath()
+                );
+                List<String> exceeded = budgets.stream()
+                        .filter(AllocationHistogram.Budget::isExceeded)
+                        .map(AllocationHistogram.Budget::toString)
+                        .collect(Collectors.toList());
+                if (!exceeded.isEmpty()) {
+                    throw new IllegalStateException(
+                            "Allocation budgets of " + task.getPath() + " exceeded:\n  " + String.join("\n  ", exceeded)
+                    );
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * <p>Make {@code check} depend on every task with allocation budgets, so that exceeded budgets fail the build.</p>
+     */
+    static void declareBudgetChecks(Project project) {
+        project.afterEvaluate(it -> {
+            Task check = project.getTasks().findByName("check");
+            if (check == null) return;
+            project.getTasks().withType(JavaExec.class, task -> {
+                GraalTaskOptions options = task.getExtensions().getByType(GraalTaskOptions.class);
+                if (options.hasAllocationBudgets()) check.dependsOn(task);
+            });
+        });
+    }
+
+}
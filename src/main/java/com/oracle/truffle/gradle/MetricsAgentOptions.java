@@ -0,0 +1,61 @@
+package com.oracle.truffle.gradle;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>Configuration of the {@code truffle-metrics-agent} Java agent (see
+ * {@link GraalExtension#metricsAgent(org.gradle.api.Action)}), which exposes Truffle compilation counters,
+ * compile queue statistics, JIT compile time and code cache usage through JMX and a Prometheus text endpoint
+ * ({@code http://<host>:<port>/metrics}).</p>
+ */
+public class MetricsAgentOptions {
+
+    public static final int DEFAULT_PORT = 9404;
+
+    private String host = "127.0.0.1";
+    private Integer port = DEFAULT_PORT;
+    private boolean jmx = true;
+
+    /**
+     * @return Address of the HTTP endpoint, the loopback address by default.
+     */
+    public String getHost() {
+        return this.host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    /**
+     * @return Port of the HTTP endpoint, or null if the endpoint is disabled.
+     */
+    @Nullable
+    public Integer getPort() {
+        return this.port;
+    }
+
+    /**
+     * @param port Port of the HTTP endpoint, null to only expose the counters through JMX.
+     */
+    public void setPort(@Nullable Integer port) {
+        this.port = port;
+    }
+
+    /**
+     * @return True if the counters are registered as an MBean ({@code org.graalvm.plugin:type=TruffleMetrics}).
+     */
+    public boolean getJmx() {
+        return this.jmx;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    /* Arguments of the agent, as in -javaagent:<jar>=<args>. */
+    String toAgentArgs() {
+        return "host=" + this.host + ",port=" + (this.port == null ? "off" : this.port) + ",jmx=" + this.jmx;
+    }
+
+}
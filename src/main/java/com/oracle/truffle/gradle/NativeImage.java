@@ -1,21 +1,45 @@
 package com.oracle.truffle.gradle;
 
+import groovy.json.JsonOutput;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.*;
 import org.gradle.api.tasks.bundling.Jar;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * <p>A task prototype for using Graal {@code native-image} tool for building native
@@ -36,6 +60,25 @@ import java.util.List;
  *    appendCmdArgs "--arg" "-x"
  *    // Add extra items to native-image classpath.
  *    appendClasspath "/my/extra.jar"
+ *    // Use native-image from a specific GraalVM installation (default: a GraalVM toolchain of the project).
+ *    graalHome "/opt/graalvm"
+ *    // Truffle languages on the classpath enable runtime compilation automatically, this forces it on or off.
+ *    truffle true
+ *    // Append metrics of every build to a file outside of the build directory and write a trend report.
+ *    metricsHistory "$rootDir/native-image-metrics.jsonl"
+ *    // Use configuration from a local reachability metadata repository (directory or zip) for the dependencies.
+ *    metadataRepository "$rootDir/reachability-metadata"
+ *    // Never include resources matching a regular expression (GraalVM 21+).
+ *    excludeResources ".*\\.cnv"
+ *    // Build the binary with Flight Recorder support (run it with -XX:StartFlightRecording=...).
+ *    flightRecorder true
+ * }
+ *
+ * // One binary with several entry points, chosen by the name of a generated link or by the first argument.
+ * task compileTools(type: NativeImage) {
+ *    outputName "tools"
+ *    entryPoint "tool-a", "app.ToolA"
+ *    entryPoint "tool-b", "app.ToolB"
  * }
  * }
  *
@@ -51,6 +94,21 @@ public class NativeImage extends DefaultTask {
     // Can be either a jar file (a Jar task is also acceptable) or a main class name
     private final Property<Object> executable = getProject().getObjects().property(Object.class);
     private final ListProperty<String> cmdArgs = getProject().getObjects().listProperty(String.class);
+    // Entry point name -> main class, for binaries with multiple entry points
+    private final MapProperty<String, String> entryPoints = getProject().getObjects().mapProperty(String.class, String.class);
+    // GraalVM installation providing native-image (optional)
+    private final DirectoryProperty graalHome = getProject().getObjects().directoryProperty();
+    // Truffle mode: null means detect languages on the classpath
+    private final Property<Boolean> truffle = getProject().getObjects().property(Boolean.class);
+    private final Property<Boolean> requireRuntimeCompilation = getProject().getObjects().property(Boolean.class);
+    // Build metrics of all builds, one JSON object per line (optional)
+    private final RegularFileProperty metricsHistory = getProject().getObjects().fileProperty();
+    // Reachability metadata repository, a directory or a zip file (optional)
+    private final ConfigurableFileCollection metadataRepository = getProject().files();
+    private final Property<Boolean> metadataLatestFallback = getProject().getObjects().property(Boolean.class);
+    // Regular expressions of resources which are never included (graal { pruneResources ... })
+    private final ListProperty<String> excludeResources = getProject().getObjects().listProperty(String.class);
+    private final Property<Boolean> flightRecorder = getProject().getObjects().property(Boolean.class);
 
     public NativeImage() {
         // Configure this when task starts so that the distNative task can be configured in the build script
@@ -68,6 +126,9 @@ public class NativeImage extends DefaultTask {
         // Ensure compilation runs after all configuration of default values is done.
         this.doLast(it -> this.compileNativeImage());
         this.classpath.from(getDefaultClasspath());
+        this.requireRuntimeCompilation.set(true);
+        this.metadataLatestFallback.set(true);
+        this.flightRecorder.set(false);
         this.setGroup("graal");
         this.dependsOn("assemble"); // compile Java, Kotlin, whatever before running native image
     }
@@ -107,9 +168,17 @@ public class NativeImage extends DefaultTask {
      * @param name Name of the binary.
      */
     public void setOutputName(String name) {
+        if (name != null && this.entryPoints.get().containsKey(name)) {
+            throw new IllegalStateException("Output name " + name + " is also an entry point, its link would replace the binary.");
+        }
         this.outputName.set(name);
     }
 
+    /* Default output name used unless the name is set in the build script. */
+    void outputNameConvention(Provider<String> name) {
+        this.outputName.convention(name);
+    }
+
     /**
      * Get the intended name of the output binary - null if not set.
      * @return Name of the binary.
@@ -170,6 +239,46 @@ public class NativeImage extends DefaultTask {
         setForJarFile(jarTask.getOutputs().getFiles().iterator().next());
     }
 
+    /**
+     * <p>Add an entry point to a binary with several main classes. All entry points are compiled into one
+     * binary which dispatches by the name it was invoked with or by its first argument. After compilation,
+     * a link named after every entry point is created next to the binary (a symlink on Linux, a wrapper
+     * script elsewhere), so that the tools can be used as separate commands.</p>
+     *
+     * If entry points are set, you can't set a main class or a main jar. Names must be unique file names
+     * different from the output name.
+     *
+     * @param name Name of the entry point (and of its link).
+     * @param className Main class of the entry point.
+     */
+    public void entryPoint(String name, String className) {
+        assertValidEntryPoint(name);
+        if (!EntryPointDispatcher.class.getName().equals(this.executable.getOrNull())) {
+            assertExecutableNotSet(className);
+            this.executable.set(EntryPointDispatcher.class.getName());
+        }
+        this.entryPoints.put(name, className);
+    }
+
+    /**
+     * Add several entry points at once, see {@link #entryPoint(String, String)}.
+     *
+     * @param entryPoints Entry point names mapped to main classes.
+     */
+    public void entryPoints(Map<String, String> entryPoints) {
+        for (Map.Entry<String, String> entry : entryPoints.entrySet()) {
+            entryPoint(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return Entry point names mapped to main classes (empty for binaries with a single main class).
+     */
+    @Input
+    public Map<String, String> getEntryPoints() {
+        return this.entryPoints.get();
+    }
+
     /**
      * Executable is either a {@code String} (main class name) or a {@code File} (jar file)
      * that is used to generate this native image binary.
@@ -202,6 +311,15 @@ public class NativeImage extends DefaultTask {
         this.cmdArgs.addAll(args);
     }
 
+    /**
+     * Add additional arguments for the native image process, computed when the arguments are used.
+     *
+     * @param args Provider of the arguments to be appended.
+     */
+    public void appendCmdArgs(Provider<? extends Iterable<String>> args) {
+        this.cmdArgs.addAll(args);
+    }
+
     /**
      * Extra command line arguments for the native image process.
      *
@@ -239,36 +357,445 @@ public class NativeImage extends DefaultTask {
         return this.classpath.getFiles();
     }
 
+    /**
+     * <p>Set the GraalVM installation whose {@code native-image} should be used. If not set, the Java toolchain
+     * of the project is used when it is GraalVM, then the JVM running Gradle when it is GraalVM, otherwise
+     * {@code GRAALVM_HOME}.</p>
+     *
+     * @param home GraalVM home directory.
+     */
+    public void setGraalHome(Object home) {
+        this.graalHome.set(getProject().file(home));
+    }
+
+    /**
+     * @return Explicitly configured GraalVM installation, or null.
+     */
+    @Internal
+    public File getGraalHome() {
+        return this.graalHome.getAsFile().getOrNull();
+    }
+
+    /**
+     * <p>Enable or disable the Truffle mode. In Truffle mode, the image is built with Truffle runtime
+     * compilation ({@code --macro:truffle}) and with {@code --language:<id>} for every language on the
+     * classpath which is installed in the GraalVM used to build the image. If not set, the mode is enabled
+     * when a Truffle language registration ({@code META-INF/truffle/language}) is found on the classpath.</p>
+     *
+     * @param truffle True to force the Truffle mode, false to disable it.
+     */
+    public void setTruffle(Boolean truffle) {
+        this.truffle.set(truffle);
+    }
+
+    /**
+     * @return Explicit Truffle mode, or null if it is detected from the classpath.
+     */
+    @Input @Optional
+    public Boolean getTruffle() {
+        return this.truffle.getOrNull();
+    }
+
+    /**
+     * <p>In Truffle mode, the compiled binary is checked for the Truffle runtime compiler and the build fails
+     * if it is missing (the binary would only interpret guest code). Enabled by default.</p>
+     *
+     * @param require False to only print a warning.
+     */
+    public void setRequireRuntimeCompilation(boolean require) {
+        this.requireRuntimeCompilation.set(require);
+    }
+
+    @Input
+    public boolean getRequireRuntimeCompilation() {
+        return this.requireRuntimeCompilation.get();
+    }
+
+    /**
+     * <p>Metrics of every build (phase times, peak RSS, GC time, reachable types and methods) are written
+     * to {@code build/reports/nativeImage/<task>/metrics.json}. When a history file is set, the metrics are
+     * also appended to it together with the classpath of the build, and {@code trend.md} compares the recent
+     * builds. Keep the history outside of the build directory, so that it survives {@code clean}.</p>
+     *
+     * @param file History file (JSON lines).
+     */
+    public void setMetricsHistory(Object file) {
+        this.metricsHistory.set(getProject().file(file));
+    }
+
+    @Internal
+    public File getMetricsHistory() {
+        return this.metricsHistory.getAsFile().getOrNull();
+    }
+
+    /**
+     * <p>Use a local reachability metadata repository (a directory or a zip file with the layout of
+     * {@code graalvm-reachability-metadata}). The modules on the image classpath are matched against the repository
+     * by their resolved coordinates and only the configuration of matching modules is passed to {@code native-image}
+     * ({@code -H:ConfigurationFileDirectories}).</p>
+     *
+     * @param repository Repository directory or zip file.
+     */
+    public void setMetadataRepository(Object repository) {
+        this.metadataRepository.setFrom(repository);
+    }
+
+    @InputFiles @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getMetadataRepository() {
+        return this.metadataRepository;
+    }
+
+    /**
+     * If a module version is not among the tested versions of the repository, use the latest metadata of the module
+     * (default true).
+     *
+     * @param fallback False to use only metadata tested with the exact version.
+     */
+    public void setMetadataLatestFallback(boolean fallback) {
+        this.metadataLatestFallback.set(fallback);
+    }
+
+    @Input
+    public boolean getMetadataLatestFallback() {
+        return this.metadataLatestFallback.get();
+    }
+
+    /**
+     * <p>Exclude resources matching the given regular expressions from the image, even if a library configuration
+     * includes them ({@code -H:ExcludeResources}, only supported since GraalVM 21 and ignored by older builders).
+     * Resource pruning rules of the {@code graal} extension are added to every native image task.</p>
+     *
+     * @param expressions Regular expressions matching resource paths.
+     */
+    public void excludeResources(String... expressions) {
+        this.excludeResources.addAll(expressions);
+    }
+
+    @Input
+    public List<String> getExcludeResources() {
+        return this.excludeResources.get();
+    }
+
+    /**
+     * <p>Build the binary with Flight Recorder support ({@code -H:+AllowVMInspection} on GraalVM 21 and 22,
+     * {@code --enable-monitoring=jfr} on later versions). The {@code recordNative} task enables this for
+     * {@code distNative} automatically.</p>
+     *
+     * @param flightRecorder True to include Flight Recorder in the binary.
+     */
+    public void setFlightRecorder(boolean flightRecorder) {
+        this.flightRecorder.set(flightRecorder);
+    }
+
+    @Input
+    public boolean getFlightRecorder() {
+        return this.flightRecorder.get();
+    }
+
+    /**
+     * @return Directory with the metrics of the last build (and the trend report). The history file is not an
+     * output, it is appended to by every build.
+     */
+    @OutputDirectory
+    public File getMetricsDir() {
+        return new File(getProject().getBuildDir(), "reports/nativeImage/" + getName());
+    }
+
     public void compileNativeImage() {
         Project project = getProject();
         ensureNativeImageAvailable(project);
         ensureOutputDir();
-        project.exec(exec -> {
-            exec.setExecutable(getNativeImagePath());
-            List<String> args = new ArrayList<>();
-            // Apply class path
-            args.add("-cp");
-            args.add(this.classpath.getAsPath());
-            // Add user defined arguments
-            args.addAll(cmdArgs.get());
-            // Add main class/jar
-            Object executable = this.executable.get();
-            if (executable instanceof String) {
-                // Set main class
-                args.add((String) executable);
-            } else if (executable instanceof File) {
-                args.add("-jar");
-                args.add(((File) executable).getAbsolutePath());
-            } else {
-                throw new IllegalStateException("Expected File or String as executable.");
+        Map<String, String> entryPoints = this.entryPoints.get();
+        String classpath = this.classpath.getAsPath();
+        if (!entryPoints.isEmpty()) {
+            File dispatcher = prepareDispatcher(entryPoints);
+            classpath = classpath.isEmpty() ? dispatcher.getAbsolutePath() : classpath + File.pathSeparator + dispatcher.getAbsolutePath();
+        }
+        String imageClasspath = classpath;
+        List<String> truffleArgs = truffleArgs();
+        List<String> metadataArgs = metadataArgs();
+        List<String> excludeArgs = excludeResourcesArgs();
+        List<String> monitoringArgs = flightRecorderArgs();
+        NativeImageMetrics metrics = new NativeImageMetrics();
+        OutputStream parser = NativeImageMetrics.lines(line -> {
+            String phase = metrics.accept(line);
+            if (phase != null) getLogger().info("{}: native-image phase {}", getPath(), phase);
+        });
+        try {
+            project.exec(exec -> {
+                exec.setExecutable(getNativeImagePath());
+                exec.setStandardOutput(new TeeOutputStream(exec.getStandardOutput(), parser));
+                List<String> args = new ArrayList<>();
+                // Apply class path
+                args.add("-cp");
+                args.add(imageClasspath);
+                // Add Truffle arguments (if enabled) and user defined arguments
+                args.addAll(truffleArgs);
+                args.addAll(metadataArgs);
+                args.addAll(excludeArgs);
+                args.addAll(monitoringArgs);
+                args.addAll(cmdArgs.get());
+                // Add main class/jar
+                Object executable = this.executable.get();
+                if (executable instanceof String) {
+                    // Set main class
+                    args.add((String) executable);
+                } else if (executable instanceof File) {
+                    args.add("-jar");
+                    args.add(((File) executable).getAbsolutePath());
+                } else {
+                    throw new IllegalStateException("Expected File or String as executable.");
+                }
+                args.add("-H:Path=" + this.outputDir.get().getAsFile().getAbsolutePath());
+                String name = this.outputName.getOrNull();
+                if (name != null) {
+                    args.add("-H:Name=" + name);
+                }
+                exec.setArgs(args);
+            });
+        } finally {
+            try {
+                parser.close();     // parses the last line when the output does not end with a newline
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            args.add("-H:Path=" + this.outputDir.get().getAsFile().getAbsolutePath());
-            String name = this.outputName.getOrNull();
-            if (name != null) {
-                args.add("-H:Name=" + name);
+            metrics.finish();
+        }
+        writeMetrics(metrics);
+        if (!entryPoints.isEmpty()) {
+            createEntryPointLinks(entryPoints.keySet());
+        }
+        if (!truffleArgs.isEmpty()) {
+            checkRuntimeCompilation();
+        }
+    }
+
+    /* Write metrics of this build, append them to the history and update the trend report. */
+    private void writeMetrics(NativeImageMetrics metrics) {
+        File dir = getMetricsDir();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create directory " + dir.getAbsolutePath());
+        }
+        Map<String, Object> build = new LinkedHashMap<>();
+        build.put("time", Instant.now().toString());
+        build.put("task", getPath());
+        build.put("metrics", metrics.toJson());
+        List<String> classpath = new ArrayList<>();
+        for (File item : this.classpath.getFiles()) {
+            classpath.add(item.getName());
+        }
+        build.put("classpath", classpath);
+        try {
+            Files.write(new File(dir, "metrics.json").toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(build)).getBytes(Charset.defaultCharset()));
+            File history = this.metricsHistory.getAsFile().getOrNull();
+            if (history != null) {
+                NativeImageMetrics.appendHistory(history, build);
+                String trend = NativeImageMetrics.trend(NativeImageMetrics.readHistory(history), 20);
+                Files.write(new File(dir, "trend.md").toPath(), trend.getBytes(Charset.defaultCharset()));
             }
-            exec.setArgs(args);
-        });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        getLogger().lifecycle(String.format(Locale.ROOT, "Native image built in %s s, peak RSS %s MB, metrics in %s",
+                metrics.totalMillis == null ? "?" : String.format(Locale.ROOT, "%.1f", metrics.totalMillis / 1000),
+                metrics.peakRssMegabytes == null ? "?" : String.format(Locale.ROOT, "%.0f", metrics.peakRssMegabytes),
+                dir));
+    }
+
+    /* Configuration directories of the reachability metadata matching the image classpath. */
+    private List<String> metadataArgs() {
+        if (this.metadataRepository.isEmpty()) return Collections.emptyList();
+        File repository = this.metadataRepository.getSingleFile();
+        File root = repository;
+        if (repository.isFile()) {
+            File extracted = new File(getTemporaryDir(), "reachability-metadata");
+            getProject().delete(extracted);
+            getProject().copy(copy -> copy.from(getProject().zipTree(repository)).into(extracted));
+            root = extracted;
+        }
+        List<ReachabilityMetadata.Match> matches;
+        try {
+            matches = new ReachabilityMetadata(root).select(classpathCoordinates(), this.metadataLatestFallback.get());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (matches.isEmpty()) return Collections.emptyList();
+        List<String> directories = new ArrayList<>();
+        for (ReachabilityMetadata.Match match : matches) {
+            getLogger().lifecycle("Reachability metadata: " + match);
+            directories.add(match.directory.getAbsolutePath());
+        }
+        return Collections.singletonList("-H:ConfigurationFileDirectories=" + String.join(",", directories));
+    }
+
+    /* Resource exclusions, if supported by the selected native-image. */
+    private List<String> excludeResourcesArgs() {
+        List<String> expressions = this.excludeResources.get();
+        if (expressions.isEmpty()) return Collections.emptyList();
+        int version = JvmProbe.forHome(new File(resolveGraalHome())).getGraalMajorVersion();
+        if (version < 21) {
+            getLogger().info("native-image of GraalVM {} does not support -H:ExcludeResources, only pruned jars are used.",
+                    version < 0 ? "(unknown version)" : version);
+            return Collections.emptyList();
+        }
+        List<String> args = new ArrayList<>();
+        for (String expression : expressions) {
+            args.add("-H:ExcludeResources=" + expression);
+        }
+        return args;
+    }
+
+    /* Flight Recorder support, the option changed in GraalVM 23. */
+    private List<String> flightRecorderArgs() {
+        if (!this.flightRecorder.get()) return Collections.emptyList();
+        int version = JvmProbe.forHome(new File(resolveGraalHome())).getGraalMajorVersion();
+        if (version == 21 || version == 22) {
+            return Collections.singletonList("-H:+AllowVMInspection");
+        }
+        if (version == 20) {
+            getLogger().warn("native-image of GraalVM 20 does not support Flight Recorder, building without it.");
+            return Collections.emptyList();
+        }
+        return Collections.singletonList("--enable-monitoring=jfr");
+    }
+
+    /* Coordinates (group:artifact:version) of the resolved runtime dependencies which are on the image classpath. */
+    private Set<String> classpathCoordinates() {
+        Set<String> coordinates = new TreeSet<>();
+        Configuration runtime = getProject().getConfigurations().findByName("runtimeClasspath");
+        if (runtime == null) return coordinates;
+        Set<File> files = this.classpath.getFiles();
+        for (ResolvedArtifactResult artifact : runtime.getIncoming().getArtifacts()) {
+            ComponentIdentifier id = artifact.getId().getComponentIdentifier();
+            if (id instanceof ModuleComponentIdentifier && files.contains(artifact.getFile())) {
+                ModuleComponentIdentifier module = (ModuleComponentIdentifier) id;
+                coordinates.add(module.getGroup() + ":" + module.getModule() + ":" + module.getVersion());
+            }
+        }
+        return coordinates;
+    }
+
+    /* Arguments of the Truffle mode, empty if the mode is disabled. */
+    private List<String> truffleArgs() {
+        List<File> items = new ArrayList<>(this.classpath.getFiles());
+        Object executable = this.executable.getOrNull();
+        if (executable instanceof File) items.add((File) executable);
+        Set<String> languages;
+        try {
+            languages = TruffleImageSupport.detectLanguages(items);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        boolean enabled = this.truffle.isPresent() ? this.truffle.get() : !languages.isEmpty();
+        if (!enabled) return Collections.emptyList();
+        List<String> args = new ArrayList<>();
+        args.add("--macro:truffle");
+        File home = new File(resolveGraalHome());
+        for (String language : languages) {
+            // Installed languages come with their own image configuration, others are plain classpath.
+            if (new File(home, "languages/" + language).isDirectory() || new File(home, "jre/languages/" + language).isDirectory()) {
+                args.add("--language:" + language);
+            }
+        }
+        getLogger().lifecycle("Truffle languages " + languages + " detected, building with runtime compilation.");
+        return args;
+    }
+
+    /* Fail (or warn) if the binary does not contain Truffle runtime compilation. */
+    private void checkRuntimeCompilation() {
+        File binary = getOutputBinary();
+        if (binary == null || !binary.isFile()) return;     // shared library or unknown name
+        boolean included;
+        try {
+            included = TruffleImageSupport.containsRuntimeCompilation(binary);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (included) return;
+        String message = "Binary " + binary + " does not contain Truffle runtime compilation, guest code will only be interpreted.";
+        if (this.requireRuntimeCompilation.get()) {
+            throw new IllegalStateException(message + " Use `requireRuntimeCompilation false` to allow this.");
+        } else {
+            System.err.println("WARNING: " + message);
+        }
+    }
+
+    /*
+        Copy the dispatcher class from the plugin and generate the entry point mapping together with
+        reflection and resource configuration, which native-image picks up from META-INF/native-image.
+     */
+    private File prepareDispatcher(Map<String, String> entryPoints) {
+        File dir = new File(getTemporaryDir(), "dispatcher");
+        getProject().delete(dir);
+        String classFile = EntryPointDispatcher.class.getName().replace('.', '/') + ".class";
+        File config = new File(dir, "META-INF/native-image/org.graalvm.plugin/" + getName());
+        if (!new File(dir, classFile).getParentFile().mkdirs() || !config.mkdirs()) {
+            throw new IllegalStateException("Cannot create dispatcher directory at " + dir.getAbsolutePath());
+        }
+        try {
+            try (InputStream stream = EntryPointDispatcher.class.getClassLoader().getResourceAsStream(classFile)) {
+                if (stream == null) throw new IllegalStateException("Missing " + classFile + " in plugin classpath.");
+                Files.copy(stream, new File(dir, classFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Properties mapping = new Properties();
+            mapping.putAll(entryPoints);
+            try (OutputStream stream = Files.newOutputStream(new File(dir, EntryPointDispatcher.MAPPING).toPath())) {
+                mapping.store(stream, "Generated by " + getPath());
+            }
+            List<Map<String, Object>> reflection = new ArrayList<>();
+            for (String mainClass : new TreeSet<>(entryPoints.values())) {
+                Map<String, Object> main = new LinkedHashMap<>();
+                main.put("name", "main");
+                main.put("parameterTypes", Collections.singletonList("java.lang.String[]"));
+                Map<String, Object> type = new LinkedHashMap<>();
+                type.put("name", mainClass);
+                type.put("methods", Collections.singletonList(main));
+                reflection.add(type);
+            }
+            Map<String, Object> resource = new LinkedHashMap<>();
+            resource.put("pattern", "\\Q" + EntryPointDispatcher.MAPPING + "\\E");
+            Map<String, Object> resources = new LinkedHashMap<>();
+            resources.put("resources", Collections.singletonList(resource));
+            writeJson(new File(config, "reflect-config.json"), reflection);
+            writeJson(new File(config, "resource-config.json"), resources);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return dir;
+    }
+
+    private static void writeJson(File file, Object content) throws IOException {
+        Files.write(file.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(content)).getBytes(Charset.defaultCharset()));
+    }
+
+    /* Symlinks work on Linux because the dispatcher reads argv[0] from /proc, elsewhere we need scripts. */
+    private void createEntryPointLinks(Iterable<String> names) {
+        File binary = getOutputBinary();
+        if (binary == null) return;
+        boolean linux = System.getProperty("os.name").toLowerCase().contains("linux");
+        try {
+            for (String name : names) {
+                if (PluginUtils.isWindows()) {
+                    Path script = new File(binary.getParentFile(), name + ".bat").toPath();
+                    String content = "@echo off\r\n\"%~dp0" + binary.getName() + "\" " + name + " %*\r\n";
+                    Files.write(script, content.getBytes(Charset.defaultCharset()));
+                } else if (linux) {
+                    Path link = new File(binary.getParentFile(), name).toPath();
+                    Files.deleteIfExists(link);
+                    Files.createSymbolicLink(link, Paths.get(binary.getName()));
+                } else {
+                    File script = new File(binary.getParentFile(), name);
+                    String content = "#!/bin/sh\nexec \"$(dirname \"$0\")/" + binary.getName() + "\" " + name + " \"$@\"\n";
+                    Files.write(script.toPath(), content.getBytes(Charset.defaultCharset()));
+                    if (!script.setExecutable(true)) {
+                        throw new IllegalStateException("Cannot make " + script + " executable.");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /* Helper function that ensures only one executable is set for the task */
@@ -281,8 +808,11 @@ public class NativeImage extends DefaultTask {
         }
     }
 
-    /* Get default classpath for the binary based on the runtime classpath of the main sources. */
-    private Iterable<File> getDefaultClasspath() {
+    /*
+        Get default classpath for the binary based on the runtime classpath of the main sources. The collection
+        is resolved when the task runs, so that dependencies declared after the task are included.
+     */
+    private FileCollection getDefaultClasspath() {
         JavaPluginConvention javaPlugin = getProject().getConvention().findPlugin(JavaPluginConvention.class);
         if (javaPlugin == null) {
             throw new IllegalStateException("Java plugin not configured.");
@@ -290,9 +820,23 @@ public class NativeImage extends DefaultTask {
         SourceSet mainSources = javaPlugin.getSourceSets().findByName("main");
         if (mainSources == null) {
             // If there are no main sources, just ignore and leave it empty.
-            return Collections.emptyList();
+            return getProject().files();
+        }
+        return PruneResources.runtimeClasspath(getProject(), mainSources);
+    }
+
+    /* Entry point names become files next to the binary, so they must not clash with each other or the binary. */
+    private void assertValidEntryPoint(String name) {
+        if (name == null || name.isEmpty() || name.equals(".") || name.equals("..")
+                || name.contains("/") || name.contains("\\")) {
+            throw new IllegalStateException("Entry point name " + name + " is not a valid file name.");
+        }
+        if (this.entryPoints.get().containsKey(name)) {
+            throw new IllegalStateException("Duplicate entry point " + name + ".");
+        }
+        if (name.equals(this.outputName.getOrNull())) {
+            throw new IllegalStateException("Entry point " + name + " has the output name, its link would replace the binary.");
         }
-        return mainSources.getRuntimeClasspath().getFiles();
     }
 
     /* Ensure the output directory of this task exists. */
@@ -312,26 +856,55 @@ public class NativeImage extends DefaultTask {
         }
     }
 
-    private static String getNativeImagePath() {
+    /* The compiled binary, or null if output directory or name is not known (yet). */
+    File getOutputBinary() {
+        File dir = this.outputDir.getAsFile().getOrNull();
+        String name = this.outputName.getOrNull();
+        if (dir == null || name == null) return null;
+        return new File(dir, PluginUtils.isWindows() ? name + ".exe" : name);
+    }
+
+    /* Path to the native-image executable of the selected GraalVM installation. */
+    String getNativeImagePath() {
+        return resolveGraalHome() + "/bin/native-image";
+    }
+
+    /* Explicit graalHome takes priority, then a GraalVM toolchain, then executing GraalVM, then GRAALVM_HOME. */
+    private String resolveGraalHome() {
+        File home = this.graalHome.getAsFile().getOrNull();
+        if (home != null) {
+            if (!JvmProbe.forHome(home).isGraalVM()) {
+                throw new IllegalStateException("Configured graalHome " + home + " is not a GraalVM installation.");
+            }
+            return home.getAbsolutePath();
+        }
+        JvmProbe toolchain = JvmProbe.forToolchain(getProject());
+        if (toolchain != null && toolchain.isGraalVM()) {
+            return toolchain.getJavaHome();
+        }
         String graalHome = PluginUtils.getGraalHome();
         // Executing GraalVM takes priority!
         if (graalHome == null || PluginUtils.isGraalVM()) {
             graalHome = PluginUtils.getJavaHome();
         }
-        return graalHome + "/bin/native-image";
+        return graalHome;
     }
 
-    private static void ensureNativeImageAvailable(Project project) {
-        String graalHome = PluginUtils.getGraalHome();
-        if (graalHome != null && !PluginUtils.isGraalVM()) {
-            System.err.println("Not running on GraalVM, using native image from GRAALVM_HOME.");
+    private void ensureNativeImageAvailable(Project project) {
+        // The selected installation decides, not the JVM running Gradle (GRAALVM_HOME may be any JDK).
+        File graalHome = new File(resolveGraalHome());
+        if (!JvmProbe.forHome(graalHome).isGraalVM()) {
+            throw new IllegalStateException(graalHome + " is not a GraalVM installation and neither graalHome nor GRAALVM_HOME "
+                    + "points to one. Native image not available.");
         }
-        if (graalHome == null && !PluginUtils.isGraalVM()) {
-            throw new IllegalStateException("Not running on GraalVM and GRAALVM_HOME not set. Native image not available.");
+        if (!this.graalHome.isPresent() && !PluginUtils.isGraalVM()
+                && graalHome.getPath().equals(PluginUtils.getGraalHome())) {
+            System.err.println("Not running on GraalVM, using native image from GRAALVM_HOME.");
         }
+        String nativeImage = getNativeImagePath();
         try {
             project.exec(exec -> {
-                exec.setExecutable(getNativeImagePath());
+                exec.setExecutable(nativeImage);
                 exec.setStandardOutput(new OutputStream() {
                     @Override
                     public void write(int b) {
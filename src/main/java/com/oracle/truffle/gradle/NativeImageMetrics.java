@@ -0,0 +1,317 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Metrics of a single {@code native-image} build parsed from its output. Two output formats are
+ * understood:</p>
+ *
+ * <ul>
+ *     <li>GraalVM 20.x/21.x prints {@code [name:pid]   analysis:   8,567.89 ms,  1.23 GB} for every phase
+ *     (sub-phases in parentheses), where the last column is the used heap of the builder. Peak RSS is
+ *     sampled from {@code /proc/<pid>/status} of the builder while it runs.</li>
+ *     <li>Newer releases print {@code [2/7] Performing analysis... (19.0s @ 1.53GB)} per step, followed
+ *     by reachable types/methods, GC time and peak RSS.</li>
+ * </ul>
+ *
+ * <p>Values which the build did not print stay {@code null}.</p>
+ */
+final class NativeImageMetrics {
+
+    private static final Pattern LEGACY_PHASE = Pattern.compile("^\\[[^:\\]]+:(\\d+)]\\s+(\\(?[\\w ]+\\)?|\\[total]):\\s+([\\d,.]+) ms(?:,\\s+([\\d,.]+) GB)?");
+    private static final Pattern STEP = Pattern.compile("^\\[\\d+/\\d+]\\s+([A-Z][\\w ]*?)\\.\\.\\..*\\(([\\d.]+)s @ ([\\d.]+)GB\\)");
+    private static final Pattern REACHABLE = Pattern.compile("^\\s*([\\d,]+) \\(\\s*[\\d.]+%\\) of\\s+[\\d,]+ (types|fields|methods) reachable");
+    private static final Pattern GC = Pattern.compile("([\\d.]+)s \\([\\d.]+% of total time\\) in (\\d+) GCs");
+    private static final Pattern PEAK_RSS = Pattern.compile("Peak RSS: ([\\d.]+)GB");
+    private static final Pattern FINISHED = Pattern.compile("^Finished generating '.*' in (?:(\\d+)m )?([\\d.]+)s");
+
+    // Short names of the steps printed by newer releases, matching the legacy phase names.
+    private static final Map<String, String> STEP_NAMES = new LinkedHashMap<>();
+
+    static {
+        STEP_NAMES.put("Initializing", "setup");
+        STEP_NAMES.put("Performing analysis", "analysis");
+        STEP_NAMES.put("Building universe", "universe");
+        STEP_NAMES.put("Parsing methods", "(parse)");
+        STEP_NAMES.put("Inlining methods", "(inline)");
+        STEP_NAMES.put("Compiling methods", "compile");
+        STEP_NAMES.put("Layouting methods", "layout");
+        STEP_NAMES.put("Creating image", "image");
+    }
+
+    // Phase name -> milliseconds, in the order of the build.
+    final Map<String, Double> phases = new LinkedHashMap<>();
+    Double totalMillis;
+    Double peakHeapGigabytes;
+    Double peakRssMegabytes;
+    Double gcSeconds;
+    Long gcCount;
+    Long reachableTypes;
+    Long reachableFields;
+    Long reachableMethods;
+
+    private volatile Thread rssWatcher;
+    private volatile long watchedPeakKilobytes = -1;
+
+    static NativeImageMetrics parse(Iterable<String> lines) {
+        NativeImageMetrics metrics = new NativeImageMetrics();
+        for (String line : lines) {
+            metrics.accept(line);
+        }
+        return metrics;
+    }
+
+    /**
+     * Process one line of the build output.
+     *
+     * @param line Line of output.
+     * @return Description of a finished phase (for progress reporting) or null.
+     */
+    String accept(String line) {
+        Matcher matcher = LEGACY_PHASE.matcher(line);
+        if (matcher.find()) {
+            watchBuilder(Long.parseLong(matcher.group(1)));
+            String phase = matcher.group(2).trim();
+            double millis = number(matcher.group(3));
+            if (matcher.group(4) != null) {
+                double heap = number(matcher.group(4));
+                this.peakHeapGigabytes = this.peakHeapGigabytes == null ? heap : Math.max(this.peakHeapGigabytes, heap);
+            }
+            if ("[total]".equals(phase)) {
+                this.totalMillis = millis;
+                return null;
+            }
+            this.phases.put(phase, millis);
+            return String.format(Locale.ROOT, "%s %.1f s", phase, millis / 1000);
+        }
+        matcher = STEP.matcher(line);
+        if (matcher.find()) {
+            String step = matcher.group(1).trim();
+            String phase = STEP_NAMES.getOrDefault(step, step.toLowerCase(Locale.ROOT));
+            double seconds = Double.parseDouble(matcher.group(2));
+            double heap = Double.parseDouble(matcher.group(3));
+            this.peakHeapGigabytes = this.peakHeapGigabytes == null ? heap : Math.max(this.peakHeapGigabytes, heap);
+            this.phases.put(phase, seconds * 1000);
+            return String.format(Locale.ROOT, "%s %.1f s", phase, seconds);
+        }
+        matcher = REACHABLE.matcher(line);
+        if (matcher.find()) {
+            long count = (long) number(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "types": this.reachableTypes = count; break;
+                case "fields": this.reachableFields = count; break;
+                default: this.reachableMethods = count;
+            }
+            return null;
+        }
+        matcher = FINISHED.matcher(line);
+        if (matcher.find()) {
+            double minutes = matcher.group(1) == null ? 0 : Double.parseDouble(matcher.group(1));
+            this.totalMillis = (minutes * 60 + Double.parseDouble(matcher.group(2))) * 1000;
+            return null;
+        }
+        matcher = GC.matcher(line);
+        if (matcher.find()) {
+            this.gcSeconds = Double.parseDouble(matcher.group(1));
+            this.gcCount = Long.parseLong(matcher.group(2));
+        }
+        matcher = PEAK_RSS.matcher(line);
+        if (matcher.find()) {
+            this.peakRssMegabytes = Double.parseDouble(matcher.group(1)) * 1024;
+        }
+        return null;
+    }
+
+    /* Poll the peak RSS of the (legacy) builder process, which does not report it itself. */
+    private void watchBuilder(long pid) {
+        File status = new File("/proc/" + pid + "/status");
+        if (this.rssWatcher != null || !status.exists()) return;
+        Thread watcher = new Thread(() -> {
+            while (status.exists() && this.rssWatcher == Thread.currentThread()) {
+                this.watchedPeakKilobytes = Math.max(this.watchedPeakKilobytes, StartupRun.readPeakRss(status));
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "native-image-rss");
+        watcher.setDaemon(true);
+        this.rssWatcher = watcher;
+        watcher.start();
+    }
+
+    /* Stop polling the builder and use the polled value unless the build reported peak RSS. */
+    void finish() {
+        Thread watcher = this.rssWatcher;
+        this.rssWatcher = null;
+        if (watcher != null) {
+            watcher.interrupt();
+            try {
+                watcher.join(1000);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.peakRssMegabytes == null && this.watchedPeakKilobytes > 0) {
+            this.peakRssMegabytes = this.watchedPeakKilobytes / 1024.0;
+        }
+    }
+
+    Map<String, Object> toJson() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("totalMillis", this.totalMillis);
+        result.put("phases", this.phases);
+        result.put("peakHeapGigabytes", this.peakHeapGigabytes);
+        result.put("peakRssMegabytes", this.peakRssMegabytes);
+        result.put("gcSeconds", this.gcSeconds);
+        result.put("gcCount", this.gcCount);
+        result.put("reachableTypes", this.reachableTypes);
+        result.put("reachableFields", this.reachableFields);
+        result.put("reachableMethods", this.reachableMethods);
+        return result;
+    }
+
+    /**
+     * An output stream which passes complete lines of output to the consumer.
+     *
+     * @param consumer Receives every line (without line terminator).
+     * @return Stream to be used as (a part of) process output.
+     */
+    static OutputStream lines(Consumer<String> consumer) {
+        return new OutputStream() {
+
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    flushLine();
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+            }
+
+            @Override
+            public void close() {
+                if (line.size() > 0) flushLine();
+            }
+
+            private void flushLine() {
+                consumer.accept(new String(line.toByteArray(), Charset.defaultCharset()));
+                line.reset();
+            }
+
+        };
+    }
+
+    /* Append one build (a JSON object) to the history file, one build per line. */
+    static void appendHistory(File history, Map<String, Object> build) throws IOException {
+        File dir = history.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create directory " + dir.getAbsolutePath());
+        }
+        Files.write(history.toPath(), Collections.singletonList(JsonOutput.toJson(build)), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> readHistory(File history) throws IOException {
+        List<Map<String, Object>> builds = new ArrayList<>();
+        if (!history.isFile()) return builds;
+        JsonSlurper json = new JsonSlurper();
+        for (String line : Files.readAllLines(history.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                builds.add((Map<String, Object>) json.parseText(line));
+            }
+        }
+        return builds;
+    }
+
+    /**
+     * Markdown table of the last builds, with changes of the classpath against the previous build, so a
+     * slower or bigger build can be matched with the dependency change that caused it.
+     *
+     * @param builds Builds as written to the history file, oldest first.
+     * @param limit Maximal number of builds in the report.
+     * @return Markdown report.
+     */
+    @SuppressWarnings("unchecked")
+    static String trend(List<Map<String, Object>> builds, int limit) {
+        StringBuilder result = new StringBuilder("# Native image build trend\n\n");
+        result.append("| Build | Total (s) | Analysis (s) | Compile (s) | Peak RSS (MB) | GC (s) | Types | Methods | Classpath changes |\n");
+        result.append("|---|---:|---:|---:|---:|---:|---:|---:|---|\n");
+        int first = Math.max(0, builds.size() - limit);
+        for (int i = first; i < builds.size(); i++) {
+            Map<String, Object> build = builds.get(i);
+            Map<String, Object> metrics = (Map<String, Object>) build.get("metrics");
+            Map<String, Object> phases = (Map<String, Object>) metrics.get("phases");
+            String changes = "";
+            if (i > 0) {
+                changes = classpathChanges(
+                        (List<Object>) builds.get(i - 1).get("classpath"), (List<Object>) build.get("classpath")
+                );
+            }
+            result.append("| ").append(build.get("time"))
+                    .append(" | ").append(seconds(metrics.get("totalMillis")))
+                    .append(" | ").append(seconds(phases.get("analysis")))
+                    .append(" | ").append(seconds(phases.get("compile")))
+                    .append(" | ").append(value(metrics.get("peakRssMegabytes"), "%.0f"))
+                    .append(" | ").append(value(metrics.get("gcSeconds"), "%.1f"))
+                    .append(" | ").append(value(metrics.get("reachableTypes"), "%s"))
+                    .append(" | ").append(value(metrics.get("reachableMethods"), "%s"))
+                    .append(" | ").append(changes)
+                    .append(" |\n");
+        }
+        return result.toString();
+    }
+
+    static String classpathChanges(List<Object> before, List<Object> after) {
+        if (before == null || after == null) return "";
+        TreeSet<String> removed = new TreeSet<>();
+        TreeSet<String> added = new TreeSet<>();
+        for (Object item : before) removed.add(item.toString());
+        for (Object item : after) added.add(item.toString());
+        TreeSet<String> common = new TreeSet<>(removed);
+        common.retainAll(added);
+        removed.removeAll(common);
+        added.removeAll(common);
+        List<String> changes = new ArrayList<>();
+        for (String item : added) changes.add("+" + item);
+        for (String item : removed) changes.add("-" + item);
+        return String.join(" ", changes);
+    }
+
+    private static String seconds(Object millis) {
+        return millis instanceof Number ? String.format(Locale.ROOT, "%.1f", ((Number) millis).doubleValue() / 1000) : "";
+    }
+
+    private static String value(Object value, String format) {
+        return value == null ? "" : String.format(Locale.ROOT, format, value);
+    }
+
+    private static double number(String value) {
+        return Double.parseDouble(value.replace(",", ""));
+    }
+
+}
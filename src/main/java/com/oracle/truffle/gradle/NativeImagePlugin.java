@@ -12,12 +12,14 @@ import java.util.Map;
  * <p>Native Image Plugin ({@code org.graalvm.plugin.native-image}) provides a {@link NativeImage} task prototype
  * for creating native binaries using the GraalVM {@code native-image} tool. If the application plugin is enabled,
  * we also automatically create a {@code distNative} task which generates an executable binary for the
- * main distribution.</p>
+ * main distribution, and a {@code recordNative} task which runs that binary with Flight Recorder. Java projects
+ * also get a {@code nativeTest} task which runs the JUnit tests as a native binary (see {@link NativeTest}).</p>
  */
 public class NativeImagePlugin implements Plugin<Project> {
 
     @Override
     public void apply(@Nonnull Project project) {
+        project.getPluginManager().withPlugin("java", java -> NativeTestSuite.declare(project));
         project.getPluginManager().withPlugin("application", appliedPlugin -> {
             Map<String, Object> plugins = project.getConvention().getPlugins();
             Object applicationConvention = plugins.get("application");
@@ -26,7 +28,7 @@ public class NativeImagePlugin implements Plugin<Project> {
                 System.err.println("Expected ApplicationPluginConvention, but found "+applicationConvention+".");
             } else {
                 ApplicationPluginConvention app = (ApplicationPluginConvention) applicationConvention;
-                project.getTasks().create("distNative", NativeImage.class, task -> task.doFirst(it -> {
+                NativeImage distNative = project.getTasks().create("distNative", NativeImage.class, task -> task.doFirst(it -> {
                     // Configure as a first step so that the user can pre-configure the task in the build script.
                     if (task.getExecutable() == null) {
                         task.setForMainClass(app.getMainClassName());
@@ -38,6 +40,7 @@ public class NativeImagePlugin implements Plugin<Project> {
                         task.setOutputDir(new File(project.getBuildDir(), "distributions"));
                     }
                 }));
+                FlightRecorder.declareNativeRecording(project, distNative);
             }
         });
     }
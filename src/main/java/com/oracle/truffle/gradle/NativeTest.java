@@ -0,0 +1,192 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>A task prototype which runs the JUnit tests compiled into a native binary by a {@link NativeImage} task
+ * ({@code nativeTestImage} by default, see {@code NativeImagePlugin}). Results are written as JUnit XML reports
+ * to {@code build/test-results/<task>}, so CI tools pick them up like results of the {@code test} task, and
+ * the task fails if any test fails.</p>
+ *
+ * {@code
+ * nativeTest {
+ *     // Only run test classes whose name contains one of the filters (default: all test classes).
+ *     filter 'com.example.parser'
+ *     // Write per-test timings and compare them to the results of the test task on the JVM.
+ *     timings true
+ *     jvmResults "$buildDir/test-results/test"
+ * }
+ * }
+ *
+ * <p>With {@code timings} enabled, {@code timings.json} (native and JVM time of every test) and
+ * {@code comparison.md} (tests passing in both runs, ordered from the largest native to JVM time ratio)
+ * are written to {@code build/reports/<task>}. Run the {@code test} task first to have JVM results.</p>
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class NativeTest extends DefaultTask {
+
+    private final Property<NativeImage> nativeImage = getProject().getObjects().property(NativeImage.class);
+    private final ListProperty<String> filters = getProject().getObjects().listProperty(String.class);
+    private final Property<Boolean> timings = getProject().getObjects().property(Boolean.class);
+    private final DirectoryProperty jvmResults = getProject().getObjects().directoryProperty();
+    private final DirectoryProperty resultsDir = getProject().getObjects().directoryProperty();
+    private final DirectoryProperty reportDir = getProject().getObjects().directoryProperty();
+
+    public NativeTest() {
+        this.timings.set(false);
+        this.jvmResults.set(new File(getProject().getBuildDir(), "test-results/test"));
+        this.resultsDir.set(new File(getProject().getBuildDir(), "test-results/" + getName()));
+        this.reportDir.set(new File(getProject().getBuildDir(), "reports/" + getName()));
+        this.setGroup("verification");
+        this.dependsOn((Callable<List<Object>>) () -> {
+            NativeImage image = getNativeImage();
+            return image == null ? Collections.emptyList() : Collections.singletonList(image);
+        });
+        this.getInputs().files((Callable<Object>) () -> {
+            NativeImage image = getNativeImage();
+            return image == null || image.getOutputDir() == null ? Collections.emptyList() : image.getOutputDir();
+        });
+    }
+
+    /**
+     * Set the {@code NativeImage} task whose binary contains the tests.
+     *
+     * @param task Native image task.
+     */
+    public void setNativeImage(NativeImage task) {
+        this.nativeImage.set(task);
+    }
+
+    @Internal
+    public NativeImage getNativeImage() {
+        if (this.nativeImage.isPresent()) return this.nativeImage.get();
+        Task image = getProject().getTasks().findByName("nativeTestImage");
+        return image instanceof NativeImage ? (NativeImage) image : null;
+    }
+
+    public void filter(String... filters) {
+        this.filters.addAll(filters);
+    }
+
+    /**
+     * @return Test class name filters, a class runs if its name contains one of them (all classes if empty).
+     */
+    @Input
+    public List<String> getFilters() {
+        return this.filters.get();
+    }
+
+    public void setTimings(boolean timings) {
+        this.timings.set(timings);
+    }
+
+    /**
+     * @return True if the timings of native and JVM tests are written to the report directory.
+     */
+    @Input
+    public boolean getTimings() {
+        return this.timings.get();
+    }
+
+    public void setJvmResults(Object dir) {
+        this.jvmResults.set(getProject().file(dir));
+    }
+
+    /**
+     * @return JUnit XML results of the JVM tests used in the timing comparison.
+     */
+    @Internal
+    public File getJvmResults() {
+        return this.jvmResults.getAsFile().get();
+    }
+
+    public void setResultsDir(Object dir) {
+        this.resultsDir.set(getProject().file(dir));
+    }
+
+    /**
+     * @return Directory with JUnit XML results of the native run.
+     */
+    @OutputDirectory
+    public File getResultsDir() {
+        return this.resultsDir.getAsFile().get();
+    }
+
+    /**
+     * @return Directory with the timing reports.
+     */
+    @OutputDirectory
+    public File getReportDir() {
+        return this.reportDir.getAsFile().get();
+    }
+
+    @TaskAction
+    public void runTests() throws IOException {
+        NativeImage image = getNativeImage();
+        File binary = image == null ? null : image.getOutputBinary();
+        if (binary == null || !binary.isFile()) {
+            throw new IllegalStateException("Native test binary " + binary + " does not exist.");
+        }
+        File results = getResultsDir();
+        getProject().delete(results);
+        List<String> args = new ArrayList<>();
+        args.add("--results");
+        args.add(results.getAbsolutePath());
+        args.addAll(getFilters());
+        ExecResult exec = getProject().exec(spec -> {
+            spec.setExecutable(binary.getAbsolutePath());
+            spec.setArgs(args);
+            spec.setWorkingDir(getProject().getProjectDir());
+            spec.setIgnoreExitValue(true);
+        });
+        Map<String, TestTimings.Result> nativeResults = TestTimings.read(results);
+        if (getTimings()) {
+            writeTimings(nativeResults);
+        }
+        if (exec.getExitValue() != 0) {
+            int failed = TestTimings.count(nativeResults, TestTimings.FAILED);
+            throw new IllegalStateException(failed > 0
+                    ? failed + " native tests failed. See the results at: " + results.toURI()
+                    : "Native test binary " + binary + " exited with " + exec.getExitValue() + ".");
+        }
+    }
+
+    private void writeTimings(Map<String, TestTimings.Result> nativeResults) throws IOException {
+        File dir = getReportDir();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create directory " + dir.getAbsolutePath());
+        }
+        Map<String, TestTimings.Result> jvmResults = TestTimings.read(getJvmResults());
+        String json = JsonOutput.prettyPrint(JsonOutput.toJson(TestTimings.toJson(nativeResults, jvmResults)));
+        Files.write(new File(dir, "timings.json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+        File comparison = new File(dir, "comparison.md");
+        if (jvmResults.isEmpty()) {
+            Files.deleteIfExists(comparison.toPath());
+            getLogger().warn("No JVM test results in {}, run the test task to compare timings.", getJvmResults());
+            return;
+        }
+        Files.write(comparison.toPath(), TestTimings.comparison(nativeResults, jvmResults).getBytes(StandardCharsets.UTF_8));
+        getLogger().lifecycle("Native and JVM test timings: {}", comparison.toURI());
+    }
+
+}
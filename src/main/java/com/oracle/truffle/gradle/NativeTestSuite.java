@@ -0,0 +1,174 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.api.tasks.testing.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * <p>Declares the {@code nativeTest} task of a Java project: the test classes of the {@code test} task are
+ * compiled together with a generated JUnit 4 launcher into a binary by {@code nativeTestImage} (a
+ * {@link NativeImage} task) and executed by {@code nativeTest} (a {@link NativeTest} task).</p>
+ *
+ * <p>The launcher is generated by {@code generateNativeTestLauncher} from a template in the plugin, together
+ * with the list of test classes and the reflection configuration the JUnit runner needs (test classes are
+ * instantiated and inspected reflectively), and compiled against the test runtime classpath by
+ * {@code compileNativeTestLauncher}.</p>
+ */
+final class NativeTestSuite {
+
+    static final String MAIN_CLASS = "org.graalvm.plugin.test.NativeTestMain";
+    private static final String PACKAGE_DIR = "org/graalvm/plugin/test";
+    private static final String CLASSES = "META-INF/native-test/classes.txt";
+    // Runners instantiated reflectively by JUnit (@RunWith)
+    private static final List<String> RUNNERS = Arrays.asList(
+            "org.junit.runners.JUnit4",
+            "org.junit.runners.BlockJUnit4ClassRunner",
+            "org.junit.runners.Parameterized",
+            "org.junit.runners.Suite",
+            "org.junit.runners.parameterized.BlockJUnit4ClassRunnerWithParametersFactory",
+            "org.junit.experimental.categories.Categories",
+            "org.junit.experimental.theories.Theories"
+    );
+
+    private NativeTestSuite() {}
+
+    static void declare(Project project) {
+        JavaPluginConvention javaPlugin = project.getConvention().findPlugin(JavaPluginConvention.class);
+        if (javaPlugin == null) return;
+        SourceSet testSources = javaPlugin.getSourceSets().getByName("test");
+        TaskProvider<Test> test = project.getTasks().named("test", Test.class);
+        File generated = new File(project.getBuildDir(), "generated/nativeTest");
+        File sourceDir = new File(generated, "java");
+        File resourceDir = new File(generated, "resources");
+        File configDir = new File(generated, "config");
+        File classesDir = new File(project.getBuildDir(), "classes/java/nativeTestLauncher");
+
+        TaskProvider<DefaultTask> generate = project.getTasks().register("generateNativeTestLauncher", DefaultTask.class, task -> {
+            task.setGroup("graal");
+            task.setDescription("Generates the JUnit launcher and configuration of the native test binary.");
+            task.dependsOn(testSources.getClassesTaskName());
+            task.getInputs().files(test.map(Test::getCandidateClassFiles));
+            task.getOutputs().dir(generated);
+            task.doLast(it -> generate(project, test.get(), sourceDir, resourceDir, configDir));
+        });
+
+        TaskProvider<JavaCompile> compile = project.getTasks().register("compileNativeTestLauncher", JavaCompile.class, task -> {
+            task.setGroup("graal");
+            task.setDescription("Compiles the JUnit launcher of the native test binary.");
+            task.dependsOn(generate);
+            task.source(sourceDir);
+            task.setClasspath(testSources.getRuntimeClasspath());
+            task.getDestinationDirectory().set(classesDir);
+            task.setSourceCompatibility("1.8");
+            task.setTargetCompatibility("1.8");
+        });
+
+        TaskProvider<NativeImage> image = project.getTasks().register("nativeTestImage", NativeImage.class, task -> {
+            task.setDescription("Builds a native binary running the JUnit tests of the project.");
+            task.dependsOn(compile);
+            task.setForMainClass(MAIN_CLASS);
+            task.classpath(PruneResources.runtimeClasspath(project, testSources), classesDir, resourceDir);
+            task.setOutputDir(new File(project.getBuildDir(), "nativeTest"));
+            task.doFirst(it -> {
+                // Configure as a first step so that the user can pre-configure the task in the build script.
+                if (task.getOutputName() == null) {
+                    task.setOutputName(project.getName() + "-tests");
+                }
+                task.appendCmdArgs(
+                        // A fallback image would silently run the tests on a JVM.
+                        "--no-fallback",
+                        "-H:ReflectionConfigurationFiles=" + new File(configDir, "reflect-config.json").getAbsolutePath(),
+                        "-H:ResourceConfigurationFiles=" + new File(configDir, "resource-config.json").getAbsolutePath()
+                );
+            });
+        });
+
+        project.getTasks().register("nativeTest", NativeTest.class, task -> {
+            task.setDescription("Runs the JUnit tests of the project as a native binary.");
+            task.setNativeImage(image.get());
+        });
+    }
+
+    private static void generate(Project project, Test test, File sourceDir, File resourceDir, File configDir) {
+        project.delete(sourceDir, resourceDir, configDir);
+        File packageDir = new File(sourceDir, PACKAGE_DIR);
+        File classesFile = new File(resourceDir, CLASSES);
+        if (!packageDir.mkdirs() || !classesFile.getParentFile().mkdirs() || !configDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create native test directories in " + sourceDir.getParent());
+        }
+        Set<String> classes = testClassNames(test);
+        List<String> topLevel = new ArrayList<>();
+        for (String name : classes) {
+            if (!name.contains("$")) topLevel.add(name);
+        }
+        try {
+            String launcher = PluginUtils.readTemplate("NativeTestMain.java.template");
+            Files.write(new File(packageDir, "NativeTestMain.java").toPath(), launcher.getBytes(StandardCharsets.UTF_8));
+            Files.write(classesFile.toPath(), String.join("\n", topLevel).getBytes(StandardCharsets.UTF_8));
+            write(new File(configDir, "reflect-config.json"), reflectConfig(classes));
+            Map<String, Object> resource = new LinkedHashMap<>();
+            resource.put("pattern", "\\Q" + CLASSES + "\\E");
+            write(new File(configDir, "resource-config.json"),
+                    Collections.singletonMap("resources", Collections.singletonList(resource)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Classes selected by the test task (including nested classes, which tests may instantiate as well). */
+    private static Set<String> testClassNames(Test test) {
+        Set<String> names = new TreeSet<>();
+        test.getCandidateClassFiles().visit(details -> {
+            String path = details.getRelativePath().getPathString();
+            if (!details.isDirectory() && path.endsWith(".class")) {
+                names.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+            }
+        });
+        return names;
+    }
+
+    static List<Map<String, Object>> reflectConfig(Set<String> testClasses) {
+        List<Map<String, Object>> config = new ArrayList<>();
+        for (String name : testClasses) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", name);
+            entry.put("allDeclaredConstructors", true);
+            entry.put("allPublicConstructors", true);
+            entry.put("allDeclaredMethods", true);
+            entry.put("allPublicMethods", true);
+            entry.put("allDeclaredFields", true);
+            entry.put("allPublicFields", true);
+            config.add(entry);
+        }
+        for (String runner : RUNNERS) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", runner);
+            entry.put("allPublicConstructors", true);
+            config.add(entry);
+        }
+        return config;
+    }
+
+    private static void write(File file, Object json) throws IOException {
+        Files.write(file.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,581 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.Sync;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>A task prototype which writes an OCI image archive (an OCI image layout in a tar file) of the installed
+ * distribution or of a native binary. No container daemon is needed, the archive can be loaded using
+ * {@code docker load}, {@code podman load} or pushed using {@code skopeo copy oci-archive:...}.</p>
+ *
+ * {@code
+ * task distImage(type: OciImage) {
+ *     // The installed distribution (default is installDist), or a native image task.
+ *     distribution installDist
+ *     nativeImage distNative
+ *     imageName 'registry.example.com/app:1.0'
+ *     // Optional: an OCI image layout directory (e.g. from `skopeo copy docker://... oci:dir`) used as the base.
+ *     baseImage "$buildDir/base-image"
+ *     // Optional: a JVM copied into the image (/opt/java), for base images without Java.
+ *     javaHome '/usr/lib/jvm/java-11'
+ * }
+ * }
+ *
+ * <p>Content is split into layers ordered from the least to the most frequently changing one: the JVM,
+ * the Graal compiler ({@code graalCompiler/}), third-party libraries, Truffle languages (jars with a
+ * language registration) and finally the application itself (project jar and start scripts, or the
+ * native binary). Layers are reproducible, so unchanged content produces the same layer digest and is
+ * not transferred again when the image is pushed.</p>
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class OciImage extends DefaultTask {
+
+    private static final String LAYER_TYPE = "application/vnd.oci.image.layer.v1.tar+gzip";
+    private static final String CONFIG_TYPE = "application/vnd.oci.image.config.v1+json";
+    private static final String MANIFEST_TYPE = "application/vnd.oci.image.manifest.v1+json";
+    private static final String INDEX_TYPE = "application/vnd.oci.image.index.v1+json";
+    private static final String JAVA_DIR = "/opt/java";
+
+    private final Property<Sync> distribution = getProject().getObjects().property(Sync.class);
+    private final Property<NativeImage> nativeImage = getProject().getObjects().property(NativeImage.class);
+    private final Property<String> imageName = getProject().getObjects().property(String.class);
+    private final Property<String> appDir = getProject().getObjects().property(String.class);
+    private final ListProperty<String> entrypoint = getProject().getObjects().listProperty(String.class);
+    private final DirectoryProperty baseImage = getProject().getObjects().directoryProperty();
+    private final DirectoryProperty javaHome = getProject().getObjects().directoryProperty();
+    private final RegularFileProperty imageFile = getProject().getObjects().fileProperty();
+
+    /* Content of one layer: paths in the image mapped to files (or symlinks). */
+    private static final class Layer {
+
+        final String name;
+        final Map<String, File> files = new TreeMap<>();
+
+        Layer(String name) {
+            this.name = name;
+        }
+
+    }
+
+    /* A written blob with its descriptor. */
+    private static final class Blob {
+
+        final File file;
+        final String digest;
+        final long size;
+        final String diffId;    // digest of uncompressed content (layers only)
+
+        Blob(File file, String digest, long size, String diffId) {
+            this.file = file;
+            this.digest = digest;
+            this.size = size;
+            this.diffId = diffId;
+        }
+
+    }
+
+    public OciImage() {
+        this.imageName.set(getProject().getName() + ":" + getProject().getVersion());
+        this.appDir.set("/app");
+        this.imageFile.set(new File(getProject().getBuildDir(), "images/" + getName() + ".tar"));
+        this.setGroup("distribution");
+        this.dependsOn((Callable<List<Object>>) () -> {
+            Object source = this.nativeImage.isPresent() ? this.nativeImage.get() : getDistribution();
+            return source == null ? Collections.emptyList() : Collections.singletonList(source);
+        });
+    }
+
+    public void setDistribution(Sync installTask) {
+        this.distribution.set(installTask);
+    }
+
+    /**
+     * @return Task installing the distribution packaged into the image (installDist by default).
+     */
+    @Internal
+    public Sync getDistribution() {
+        if (this.distribution.isPresent()) return this.distribution.get();
+        Task install = getProject().getTasks().findByName("installDist");
+        return install instanceof Sync ? (Sync) install : null;
+    }
+
+    /**
+     * Package the output of a native image task instead of the distribution.
+     *
+     * @param task Native image task.
+     */
+    public void setNativeImage(NativeImage task) {
+        this.nativeImage.set(task);
+    }
+
+    @Internal
+    public NativeImage getNativeImage() {
+        return this.nativeImage.getOrNull();
+    }
+
+    /**
+     * @return Installed distribution packaged into the image, null when a native binary is packaged.
+     */
+    @InputDirectory @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public File getInstallDir() {
+        if (this.nativeImage.isPresent()) return null;
+        Sync install = getDistribution();
+        return install == null ? null : install.getDestinationDir();
+    }
+
+    /**
+     * @return The native binary and its shared libraries, empty when the distribution is packaged.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public FileCollection getNativeFiles() {
+        return getProject().files((Callable<List<File>>) () -> {
+            if (!this.nativeImage.isPresent()) return Collections.emptyList();
+            File binary = this.nativeImage.get().getOutputBinary();
+            return binary == null ? Collections.emptyList() : nativeFiles(binary);
+        });
+    }
+
+    public void setImageName(String name) {
+        this.imageName.set(name);
+    }
+
+    /**
+     * @return Image reference stored in the archive (default is {@code project:version}).
+     */
+    @Input
+    public String getImageName() {
+        return this.imageName.get();
+    }
+
+    public void setAppDir(String dir) {
+        this.appDir.set(dir);
+    }
+
+    /**
+     * @return Directory of the application in the image (default is {@code /app}).
+     */
+    @Input
+    public String getAppDir() {
+        return this.appDir.get();
+    }
+
+    public void entrypoint(String... command) {
+        this.entrypoint.set(Arrays.asList(command));
+    }
+
+    /**
+     * @return Entrypoint of the image, empty for the start script or the native binary.
+     */
+    @Input
+    public List<String> getEntrypoint() {
+        return this.entrypoint.get();
+    }
+
+    public void setBaseImage(Object dir) {
+        this.baseImage.set(getProject().file(dir));
+    }
+
+    @InputDirectory @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public File getBaseImage() {
+        return this.baseImage.getAsFile().getOrNull();
+    }
+
+    public void setJavaHome(Object dir) {
+        this.javaHome.set(getProject().file(dir));
+    }
+
+    @InputDirectory @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public File getJavaHome() {
+        return this.javaHome.getAsFile().getOrNull();
+    }
+
+    public void setImageFile(Object file) {
+        this.imageFile.set(getProject().file(file));
+    }
+
+    @OutputFile
+    public File getImageFile() {
+        return this.imageFile.getAsFile().get();
+    }
+
+    @TaskAction
+    public void writeImage() throws IOException {
+        File blobs = new File(getTemporaryDir(), "blobs");
+        getProject().delete(blobs);
+        if (!blobs.mkdirs()) {
+            throw new IllegalStateException("Cannot create blob directory at " + blobs.getAbsolutePath());
+        }
+        List<Layer> layers = new ArrayList<>();
+        List<String> command;
+        String app = this.appDir.get().replaceAll("/+$", "");
+        if (this.javaHome.isPresent()) {
+            Layer jvm = new Layer("jvm");
+            addTree(jvm, this.javaHome.getAsFile().get(), JAVA_DIR);
+            layers.add(jvm);
+        }
+        if (this.nativeImage.isPresent()) {
+            NativeImage task = this.nativeImage.get();
+            File binary = task.getOutputBinary();
+            if (binary == null || task.getOutputDir() == null) {
+                throw new IllegalStateException("Output of " + task.getPath() + " is not known. Please set its outputDir and outputName.");
+            }
+            Layer layer = new Layer("native");
+            // The output directory may be shared with other files (e.g. build/distributions with the archives).
+            for (File file : nativeFiles(binary)) {
+                layer.files.put(app + "/" + file.getName(), file);
+            }
+            layers.add(layer);
+            command = Collections.singletonList(app + "/" + binary.getName());
+        } else {
+            Sync install = getDistribution();
+            if (install == null) {
+                throw new IllegalStateException("Please specify `distribution installDist` or `nativeImage someNativeImageTask`.");
+            }
+            layers.addAll(distributionLayers(install.getDestinationDir(), app));
+            Task scripts = getProject().getTasks().findByName("startScripts");
+            String script = scripts instanceof CreateStartScripts
+                    ? ((CreateStartScripts) scripts).getApplicationName()
+                    : getProject().getName();
+            command = Collections.singletonList(app + "/bin/" + script);
+        }
+        if (!this.entrypoint.get().isEmpty()) {
+            command = this.entrypoint.get();
+        }
+
+        // Base image layers and configuration.
+        List<Map<String, Object>> layerDescriptors = new ArrayList<>();
+        Map<String, Object> config = new LinkedHashMap<>();
+        List<File> baseBlobs = new ArrayList<>();
+        if (this.baseImage.isPresent()) {
+            config = readBaseImage(this.baseImage.getAsFile().get(), layerDescriptors, baseBlobs);
+        }
+        config.put("architecture", architecture());
+        config.put("os", "linux");
+        Map<String, Object> rootfs = childMap(config, "rootfs");
+        rootfs.put("type", "layers");
+        @SuppressWarnings("unchecked")
+        List<Object> diffIds = rootfs.get("diff_ids") instanceof List ? (List<Object>) rootfs.get("diff_ids") : new ArrayList<>();
+        rootfs.put("diff_ids", diffIds);
+        @SuppressWarnings("unchecked")
+        List<Object> history = config.get("history") instanceof List ? (List<Object>) config.get("history") : new ArrayList<>();
+        config.put("history", history);
+
+        List<Blob> written = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (layer.files.isEmpty()) continue;
+            Blob blob = writeLayer(layer, blobs);
+            written.add(blob);
+            layerDescriptors.add(descriptor(LAYER_TYPE, blob));
+            diffIds.add(blob.diffId);
+            history.add(Collections.singletonMap("created_by", "gradle " + getPath() + " (" + layer.name + ")"));
+        }
+
+        Map<String, Object> runtime = childMap(config, "config");
+        runtime.put("Entrypoint", command);
+        runtime.remove("Cmd");
+        runtime.put("WorkingDir", app);
+        if (this.javaHome.isPresent()) {
+            List<String> env = new ArrayList<>();
+            if (runtime.get("Env") instanceof List) {
+                for (Object item : (List<?>) runtime.get("Env")) {
+                    String value = item.toString();
+                    if (!value.startsWith("JAVA_HOME=") && !value.startsWith("PATH=")) env.add(value);
+                }
+            }
+            env.add("JAVA_HOME=" + JAVA_DIR);
+            env.add("PATH=" + JAVA_DIR + "/bin:/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin");
+            runtime.put("Env", env);
+        }
+
+        Blob configBlob = writeBlob(blobs, JsonOutput.toJson(config).getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("schemaVersion", 2);
+        manifest.put("mediaType", MANIFEST_TYPE);
+        manifest.put("config", descriptor(CONFIG_TYPE, configBlob));
+        manifest.put("layers", layerDescriptors);
+        Blob manifestBlob = writeBlob(blobs, JsonOutput.toJson(manifest).getBytes(StandardCharsets.UTF_8));
+
+        writeArchive(configBlob, manifestBlob, layerDescriptors, baseBlobs, written);
+        getLogger().lifecycle("Image " + this.imageName.get() + " written to " + getImageFile().getAbsolutePath());
+    }
+
+    /* Split the installed distribution into layers. */
+    private List<Layer> distributionLayers(File installDir, String app) throws IOException {
+        Layer compiler = new Layer("graal-compiler");
+        Layer dependencies = new Layer("dependencies");
+        Layer languages = new Layer("languages");
+        Layer application = new Layer("application");
+        Task jar = getProject().getTasks().findByName("jar");
+        String projectJar = jar instanceof Jar ? ((Jar) jar).getArchiveFileName().get() : null;
+        Layer all = new Layer("all");
+        addTree(all, installDir, app);
+        for (Map.Entry<String, File> entry : all.files.entrySet()) {
+            String relative = entry.getKey().substring(app.length() + 1);
+            File file = entry.getValue();
+            Layer target;
+            if (relative.startsWith("graalCompiler/")) {
+                target = compiler;
+            } else if (relative.startsWith("lib/") && relative.endsWith(".jar") && !file.getName().equals(projectJar)) {
+                boolean language = !TruffleImageSupport.detectLanguages(Collections.singletonList(file)).isEmpty();
+                target = language ? languages : dependencies;
+            } else {
+                target = application;
+            }
+            target.files.put(entry.getKey(), file);
+        }
+        return Arrays.asList(compiler, dependencies, languages, application);
+    }
+
+    /* The binary and the shared libraries native-image writes next to it (e.g. of JNI or Truffle NFI code). */
+    static List<File> nativeFiles(File binary) {
+        List<File> files = new ArrayList<>();
+        files.add(binary);
+        File[] siblings = binary.getParentFile().listFiles();
+        if (siblings == null) return files;
+        Arrays.sort(siblings);
+        for (File sibling : siblings) {
+            String name = sibling.getName();
+            if (sibling.isFile() && (name.endsWith(".so") || name.endsWith(".dylib") || name.endsWith(".dll"))) {
+                files.add(sibling);
+            }
+        }
+        return files;
+    }
+
+    /* Add all files (and symlinks) of the directory into the layer under the given image path. */
+    private static void addTree(Layer layer, File dir, String imagePath) throws IOException {
+        Path root = dir.toPath();
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root)) {
+            paths = walk.filter(path -> Files.isSymbolicLink(path) || Files.isRegularFile(path)).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+            layer.files.put(imagePath + "/" + relative, path.toFile());
+        }
+    }
+
+    /* Write a gzipped layer, computing digests of both compressed and uncompressed content. */
+    private static Blob writeLayer(Layer layer, File blobs) throws IOException {
+        File tmp = new File(blobs, layer.name + ".tar.gz");
+        MessageDigest compressed = sha256();
+        MessageDigest uncompressed = sha256();
+        try (OutputStream file = Files.newOutputStream(tmp.toPath());
+             DigestOutputStream compressedOut = new DigestOutputStream(file, compressed);
+             GZIPOutputStream gzip = new GZIPOutputStream(compressedOut);
+             DigestOutputStream uncompressedOut = new DigestOutputStream(gzip, uncompressed);
+             TarWriter tar = new TarWriter(uncompressedOut)) {
+            TreeSet<String> directories = new TreeSet<>();
+            for (String path : layer.files.keySet()) {
+                String relative = path.replaceAll("^/+", "");
+                for (int i = relative.indexOf('/'); i > 0; i = relative.indexOf('/', i + 1)) {
+                    directories.add(relative.substring(0, i));
+                }
+            }
+            for (String directory : directories) {
+                tar.addDirectory(directory);
+            }
+            for (Map.Entry<String, File> entry : layer.files.entrySet()) {
+                String path = entry.getKey().replaceAll("^/+", "");
+                Path source = entry.getValue().toPath();
+                if (Files.isSymbolicLink(source)) {
+                    tar.addSymlink(path, Files.readSymbolicLink(source).toString());
+                } else {
+                    tar.addFile(path, entry.getValue());
+                }
+            }
+        }
+        String digest = "sha256:" + hex(compressed.digest());
+        File blob = new File(blobs, digest.substring("sha256:".length()));
+        Files.move(tmp.toPath(), blob.toPath());
+        return new Blob(blob, digest, blob.length(), "sha256:" + hex(uncompressed.digest()));
+    }
+
+    private static Blob writeBlob(File blobs, byte[] content) throws IOException {
+        String digest = "sha256:" + hex(sha256().digest(content));
+        File blob = new File(blobs, digest.substring("sha256:".length()));
+        Files.write(blob.toPath(), content);
+        return new Blob(blob, digest, content.length, null);
+    }
+
+    /* Read configuration and layer descriptors of the first (matching) image in an OCI layout directory. */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readBaseImage(File layout, List<Map<String, Object>> layers, List<File> layerBlobs) throws IOException {
+        Map<String, Object> index = (Map<String, Object>) readJson(new File(layout, "index.json"));
+        Map<String, Object> manifest = resolveManifest(layout, index);
+        for (Object layer : (List<Object>) manifest.get("layers")) {
+            Map<String, Object> descriptor = (Map<String, Object>) layer;
+            layers.add(new LinkedHashMap<>(descriptor));
+            layerBlobs.add(blobFile(layout, descriptor.get("digest").toString()));
+        }
+        Map<String, Object> configDescriptor = (Map<String, Object>) manifest.get("config");
+        Object config = readJson(blobFile(layout, configDescriptor.get("digest").toString()));
+        return new LinkedHashMap<>((Map<String, Object>) config);
+    }
+
+    /* Follow image indexes until an image manifest for linux and the current architecture is found. */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> resolveManifest(File layout, Map<String, Object> index) throws IOException {
+        List<Object> manifests = (List<Object>) index.get("manifests");
+        if (manifests == null || manifests.isEmpty()) {
+            throw new IllegalStateException("Base image " + layout + " contains no manifests.");
+        }
+        Map<String, Object> selected = (Map<String, Object>) manifests.get(0);
+        for (Object item : manifests) {
+            Map<String, Object> platform = (Map<String, Object>) ((Map<String, Object>) item).get("platform");
+            if (platform != null && "linux".equals(platform.get("os")) && architecture().equals(platform.get("architecture"))) {
+                selected = (Map<String, Object>) item;
+                break;
+            }
+        }
+        Map<String, Object> content = (Map<String, Object>) readJson(blobFile(layout, selected.get("digest").toString()));
+        if (content.containsKey("manifests")) {
+            return resolveManifest(layout, content);
+        }
+        return content;
+    }
+
+    /* Write the OCI layout (plus a Docker compatible manifest.json) into the image archive. */
+    private void writeArchive(Blob config, Blob manifest, List<Map<String, Object>> layerDescriptors,
+                              List<File> baseBlobs, List<Blob> layers) throws IOException {
+        Map<String, Object> manifestDescriptor = descriptor(MANIFEST_TYPE, manifest);
+        manifestDescriptor.put("annotations", Collections.singletonMap("org.opencontainers.image.ref.name", this.imageName.get()));
+        Map<String, Object> index = new LinkedHashMap<>();
+        index.put("schemaVersion", 2);
+        index.put("mediaType", INDEX_TYPE);
+        index.put("manifests", Collections.singletonList(manifestDescriptor));
+
+        Map<String, Object> docker = new LinkedHashMap<>();
+        docker.put("Config", "blobs/sha256/" + config.file.getName());
+        String name = this.imageName.get();
+        docker.put("RepoTags", Collections.singletonList(name.substring(name.lastIndexOf('/') + 1).contains(":") ? name : name + ":latest"));
+        List<String> dockerLayers = new ArrayList<>();
+        for (Map<String, Object> layer : layerDescriptors) {
+            dockerLayers.add("blobs/sha256/" + layer.get("digest").toString().substring("sha256:".length()));
+        }
+        docker.put("Layers", dockerLayers);
+
+        File output = getImageFile();
+        if (!output.getParentFile().isDirectory() && !output.getParentFile().mkdirs()) {
+            throw new IllegalStateException("Cannot create directory " + output.getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(output.toPath()); TarWriter tar = new TarWriter(out)) {
+            tar.addFile("oci-layout", "{\"imageLayoutVersion\":\"1.0.0\"}".getBytes(StandardCharsets.UTF_8), 0644);
+            tar.addFile("index.json", JsonOutput.toJson(index).getBytes(StandardCharsets.UTF_8), 0644);
+            tar.addFile("manifest.json", JsonOutput.toJson(Collections.singletonList(docker)).getBytes(StandardCharsets.UTF_8), 0644);
+            tar.addDirectory("blobs");
+            tar.addDirectory("blobs/sha256");
+            TreeSet<String> added = new TreeSet<>();
+            List<File> files = new ArrayList<>(baseBlobs);
+            for (Blob layer : layers) files.add(layer.file);
+            files.add(config.file);
+            files.add(manifest.file);
+            for (File file : files) {
+                if (added.add(file.getName())) {
+                    tar.addFile("blobs/sha256/" + file.getName(), file);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> descriptor(String mediaType, Blob blob) {
+        Map<String, Object> descriptor = new LinkedHashMap<>();
+        descriptor.put("mediaType", mediaType);
+        descriptor.put("digest", blob.digest);
+        descriptor.put("size", blob.size);
+        return descriptor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> childMap(Map<String, Object> parent, String key) {
+        Object child = parent.get(key);
+        Map<String, Object> result = child instanceof Map ? new LinkedHashMap<>((Map<String, Object>) child) : new LinkedHashMap<>();
+        parent.put(key, result);
+        return result;
+    }
+
+    private static File blobFile(File layout, String digest) {
+        String[] parts = digest.split(":", 2);
+        return new File(layout, "blobs/" + parts[0] + "/" + parts[1]);
+    }
+
+    private static Object readJson(File file) throws IOException {
+        return new JsonSlurper().parseText(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /* OCI architecture name of the JVM running the build (images are built for the build platform). */
+    static String architecture() {
+        String arch = System.getProperty("os.arch");
+        switch (arch) {
+            case "x86_64":
+            case "amd64":
+                return "amd64";
+            case "aarch64":
+                return "arm64";
+            default:
+                return arch;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+}
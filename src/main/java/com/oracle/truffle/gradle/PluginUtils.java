@@ -1,17 +1,24 @@
 package com.oracle.truffle.gradle;
 
 import org.gradle.api.Action;
-import org.gradle.api.JavaVersion;
 import org.gradle.api.Project;
 import org.gradle.api.distribution.DistributionContainer;
+import org.gradle.api.file.FileCollection;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
 
 /**
  * <p>Some basic utility methods used in the plugins.</p>
@@ -22,10 +29,14 @@ class PluginUtils {
      * <p>Returns true if the current JVM is Graal.</p>
      */
     static boolean isGraalVM() {
-        // We don't want to use vendor name because GraalVM vendor also releases non-graal JVMs
-        // (JVMCI enabled OpenJDK8). For Graal based on JDK11, java.vendor.version is set. For older JDKs,
-        // java.vm.name should contain GraalVM as well.
-        return System.getProperty("java.vendor.version", "").contains("GraalVM") || System.getProperty("java.vm.name", "").contains("GraalVM");
+        return JvmProbe.current().isGraalVM();
+    }
+
+    /**
+     * <p>Returns true if Gradle runs on Windows.</p>
+     */
+    static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().startsWith("windows");
     }
 
     /**
@@ -43,6 +54,73 @@ class PluginUtils {
         return System.getenv("GRAALVM_HOME");
     }
 
+    /**
+     * <p>Returns the version of this plugin.</p>
+     */
+    static String getPluginVersion() {
+        try (InputStream stream = PluginUtils.class.getResourceAsStream("plugin.properties")) {
+            if (stream == null) {
+                throw new IllegalStateException("Missing plugin.properties resource.");
+            }
+            Properties properties = new Properties();
+            properties.load(stream);
+            return properties.getProperty("version");
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read plugin version.", e);
+        }
+    }
+
+    /**
+     * <p>Reads a source template bundled with the plugin (a resource next to this class).</p>
+     */
+    static String readTemplate(String name) throws IOException {
+        return new String(readResource(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * <p>Returns jars of runtime artifacts of the plugin (e.g. {@code truffle-test-support}). They are not
+     * published to a repository: the plugin jar carries them (see {@code processResources} in the plugin build)
+     * and they are extracted to the Gradle user home when the returned collection is resolved.</p>
+     */
+    static FileCollection getRuntimeArtifacts(Project project, String... names) {
+        File dir = new File(project.getGradle().getGradleUserHomeDir(), "caches/graal-plugin/" + getPluginVersion());
+        return project.files((Callable<List<File>>) () -> {
+            List<File> jars = new ArrayList<>();
+            for (String name : names) {
+                jars.add(extractRuntimeArtifact(dir, name));
+            }
+            return jars;
+        });
+    }
+
+    /* Jars of development builds change without a new version, so the content is compared. */
+    private static synchronized File extractRuntimeArtifact(File dir, String name) throws IOException {
+        byte[] content = readResource("artifacts/" + name + ".jar");
+        File jar = new File(dir, name + ".jar");
+        if (jar.isFile() && Arrays.equals(content, Files.readAllBytes(jar.toPath()))) return jar;
+        Files.createDirectories(dir.toPath());
+        // Builds in other daemons may extract the same jar, it is replaced atomically.
+        Path temp = Files.createTempFile(dir.toPath(), name, ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return jar;
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream stream = PluginUtils.class.getResourceAsStream(name)) {
+            if (stream == null) {
+                throw new IllegalStateException("Missing " + name + " resource.");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
     /**
      * <p>Execute the given action with the distributions container if distribution plugin is loaded,
      * otherwise do nothing.</p>
@@ -56,34 +134,37 @@ class PluginUtils {
      * <p>Returns true if the current JVM supports JVMCI (Java Virtual Machine Compiler Interface).</p>
      */
     static boolean hasJVMCI() {
-        // We assume a JVM supports CI if the version is at least 11 (first version where publicly available) or
-        // if the `java.vm.version` contains jvmci (indicates custom builds or graal vm).
-        return JavaVersion.current().compareTo(JavaVersion.VERSION_11) >= 0 || System.getProperty("java.vm.version", "").contains("jvmci");
+        return JvmProbe.current().hasJVMCI();
     }
 
     /**
-     * <p>A simple find-replace in a file (used to set-up jvm args in run scripts).</p>
+     * <p>JVM arguments which enable JVMCI and load the Graal compiler from the given directory.</p>
      */
-    static void replaceInFile(File f, String find, String replace) throws IOException {
-        String content = new String(Files.readAllBytes(f.toPath()), Charset.defaultCharset());
-        content = content.replace(find, replace);
-        Files.write(f.toPath(), content.getBytes(Charset.defaultCharset()));
+    static String[] compilerJvmArgs(String compilerPath) {
+        return new String[] {
+                "-XX:+UnlockExperimentalVMOptions", "-XX:+EnableJVMCI",
+                "--module-path=" + compilerPath, "--upgrade-module-path=" + compilerPath
+        };
     }
 
+    /**
+     * <p>JVM arguments selecting the top-tier JIT compiler of host code, {@code graal} or {@code c2} (see
+     * {@link GraalExtension#setHostCompiler(String)}). JVMCI must be enabled with {@link #compilerJvmArgs(String)}
+     * unless the JVM is GraalVM.</p>
+     */
+    static String[] hostCompilerJvmArgs(String hostCompiler) {
+        return new String[] {
+                "-XX:+UnlockExperimentalVMOptions",
+                GraalExtension.HOST_COMPILER_GRAAL.equals(hostCompiler) ? "-XX:+UseJVMCICompiler" : "-XX:-UseJVMCICompiler"
+        };
+    }
 
     /**
-     * <p>Append given strings at the end of a given (possibly null) iterable.</p>
+     * <p>Turn an arbitrary version string into something usable in task and configuration names
+     * (i.e. {@code 20.1.0} becomes {@code 20_1_0}).</p>
      */
-    static Iterable<String> appendIterable(@Nullable Iterable<String> original, String... items) {
-        ArrayList<String> result = new ArrayList<>();
-        if (original != null) {
-            for (String i : original) {
-                result.add(i);
-            }
-        }
-        result.addAll(Arrays.asList(items));
-        return result;
+    static String versionSuffix(String version) {
+        return version.replaceAll("[^A-Za-z0-9]", "_");
     }
 
 }
-
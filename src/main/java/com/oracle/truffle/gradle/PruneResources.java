@@ -0,0 +1,135 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.transform.CacheableTransform;
+import org.gradle.api.artifacts.transform.InputArtifact;
+import org.gradle.api.artifacts.transform.TransformAction;
+import org.gradle.api.artifacts.transform.TransformOutputs;
+import org.gradle.api.artifacts.transform.TransformParameters;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SourceSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>Artifact transform which removes the resources selected by {@link ResourcePruningOptions} from a jar.
+ * Jars without any pruned resource are used as they are.</p>
+ */
+@CacheableTransform
+public abstract class PruneResources implements TransformAction<PruneResources.Parameters> {
+
+    /** Requested through artifact views of the runtime classpaths when resource pruning is configured. */
+    static final Attribute<Boolean> PRUNED = Attribute.of("org.graalvm.plugin.pruned", Boolean.class);
+    static final Attribute<String> ARTIFACT_TYPE = Attribute.of("artifactType", String.class);
+
+    /**
+     * @return Files of the configuration with pruned jars, for configurations which do not request them.
+     */
+    static FileCollection pruned(Configuration configuration) {
+        return configuration.getIncoming()
+                .artifactView(view -> view.attributes(attributes -> attributes.attribute(PRUNED, true)))
+                .getFiles();
+    }
+
+    /**
+     * @return Files of the configuration, pruned if resource pruning is configured in the project. The
+     * configuration is not modified, so the collection can be created before the project is evaluated.
+     */
+    static FileCollection ifConfigured(Project project, Configuration configuration) {
+        return project.files((Callable<FileCollection>) () ->
+                isConfigured(project) ? pruned(configuration) : configuration
+        );
+    }
+
+    /**
+     * @return Runtime classpath of the source set, with pruned jars if resource pruning is configured in the project.
+     */
+    static FileCollection runtimeClasspath(Project project, SourceSet sources) {
+        return project.files((Callable<FileCollection>) () -> {
+            FileCollection classpath = sources.getRuntimeClasspath();
+            if (!isConfigured(project)) return classpath;
+            Configuration configuration = project.getConfigurations().getByName(sources.getRuntimeClasspathConfigurationName());
+            return classpath.minus(configuration).plus(pruned(configuration));
+        });
+    }
+
+    private static boolean isConfigured(Project project) {
+        GraalExtension config = project.getExtensions().findByType(GraalExtension.class);
+        return config != null && config.getResourcePruning() != null;
+    }
+
+    public interface Parameters extends TransformParameters {
+
+        @Input
+        ListProperty<String> getKeepLocales();
+
+        @Input
+        ListProperty<String> getExcludes();
+
+    }
+
+    @InputArtifact
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract Provider<FileSystemLocation> getInputArtifact();
+
+    @Override
+    public void transform(TransformOutputs outputs) {
+        File input = getInputArtifact().get().getAsFile();
+        ResourceFilter filter = new ResourceFilter(getParameters().getKeepLocales().get(), getParameters().getExcludes().get());
+        if (!input.isFile() || filter.isEmpty()) {
+            outputs.file(input);
+            return;
+        }
+        try (ZipFile zip = new ZipFile(input)) {
+            if (zip.stream().noneMatch(entry -> filter.removes(entry.getName()))) {
+                outputs.file(input);
+                return;
+            }
+            // Keep the file name, start scripts and the language component refer to jars by name.
+            File output = outputs.file(input.getName());
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output.toPath()))) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (filter.removes(entry.getName())) continue;
+                    ZipEntry copy = new ZipEntry(entry);
+                    copy.setCompressedSize(-1);     // the entry is compressed again
+                    out.putNextEntry(copy);
+                    try (InputStream stream = zip.getInputStream(entry)) {
+                        copy(stream, out);
+                    }
+                    out.closeEntry();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prune resources of " + input, e);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+}
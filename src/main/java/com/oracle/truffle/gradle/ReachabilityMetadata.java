@@ -0,0 +1,119 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Selects configuration from a local reachability metadata repository (the layout of
+ * {@code oracle/graalvm-reachability-metadata}) for the modules on an image classpath:</p>
+ *
+ * <pre>
+ * index.json                               [{"module": "group:artifact", "directory": "group/artifact"}, ...]
+ * group/artifact/index.json                [{"metadata-version": "1.2", "tested-versions": ["1.2", "1.3"], "latest": true}, ...]
+ * group/artifact/1.2/reflect-config.json   (and other native-image configuration files)
+ * </pre>
+ *
+ * <p>A module uses the metadata whose {@code tested-versions} contain its version, otherwise the metadata
+ * marked as {@code latest} (if {@code latestFallback} is enabled). Modules without an entry get no configuration.</p>
+ */
+final class ReachabilityMetadata {
+
+    /* Configuration selected for one module. */
+    static final class Match {
+
+        final String module;
+        final String version;
+        final String metadataVersion;
+        final File directory;
+        final boolean exact;
+
+        Match(String module, String version, String metadataVersion, File directory, boolean exact) {
+            this.module = module;
+            this.version = version;
+            this.metadataVersion = metadataVersion;
+            this.directory = directory;
+            this.exact = exact;
+        }
+
+        @Override
+        public String toString() {
+            return module + ":" + version + " -> " + metadataVersion + (exact ? "" : " (latest, version not tested)");
+        }
+
+    }
+
+    private final File root;
+    private final Map<String, String> directories = new LinkedHashMap<>();
+
+    ReachabilityMetadata(File root) throws IOException {
+        this.root = root;
+        File index = new File(root, "index.json");
+        if (index.isFile()) {
+            for (Map<String, Object> entry : readEntries(index)) {
+                Object module = entry.get("module");
+                Object directory = entry.get("directory");
+                if (module != null && directory != null) {
+                    this.directories.put(module.toString(), directory.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param coordinates Resolved modules as {@code group:artifact:version}.
+     * @param latestFallback Use the latest metadata for versions which were not tested.
+     * @return Selected configuration directories.
+     */
+    List<Match> select(Collection<String> coordinates, boolean latestFallback) throws IOException {
+        List<Match> result = new ArrayList<>();
+        for (String coordinate : coordinates) {
+            int split = coordinate.lastIndexOf(':');
+            if (split < 0) continue;
+            String module = coordinate.substring(0, split);
+            String version = coordinate.substring(split + 1);
+            // Modules missing in the top-level index use the default group/artifact layout.
+            String directory = this.directories.getOrDefault(module, module.replace(':', '/'));
+            File moduleDir = new File(this.root, directory);
+            File moduleIndex = new File(moduleDir, "index.json");
+            if (!moduleIndex.isFile()) continue;
+            Match latest = null;
+            Match exact = null;
+            for (Map<String, Object> entry : readEntries(moduleIndex)) {
+                Object metadataVersion = entry.get("metadata-version");
+                if (metadataVersion == null) continue;
+                File configDir = new File(moduleDir, metadataVersion.toString());
+                Object tested = entry.get("tested-versions");
+                if (tested instanceof List && ((List<?>) tested).contains(version)) {
+                    exact = new Match(module, version, metadataVersion.toString(), configDir, true);
+                }
+                if (Boolean.TRUE.equals(entry.get("latest"))) {
+                    latest = new Match(module, version, metadataVersion.toString(), configDir, false);
+                }
+            }
+            Match match = exact != null ? exact : (latestFallback ? latest : null);
+            if (match != null && match.directory.isDirectory()) {
+                result.add(match);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> readEntries(File index) throws IOException {
+        Object json = new JsonSlurper().parseText(new String(Files.readAllBytes(index.toPath()), StandardCharsets.UTF_8));
+        if (!(json instanceof List)) {
+            throw new IllegalStateException("Expected a list of entries in " + index);
+        }
+        return (List<Map<String, Object>>) json;
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.oracle.truffle.gradle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Decides which resources of a jar are pruned, based on {@link ResourcePruningOptions}. The rules are
+ * expressed as regular expressions over resource paths, so that the same rules can be passed to
+ * {@code native-image -H:ExcludeResources}:</p>
+ *
+ * <ul>
+ *     <li>every excluded pattern ({@code **}, {@code *} and {@code ?} wildcards) becomes one expression;</li>
+ *     <li>with kept locales, ICU data ({@code <locale>.res}) and resource bundles ({@code <name>_<locale>.properties})
+ *     of other locales are pruned. A locale is recognized by its ISO 639 language code, a kept locale also keeps its
+ *     more specific variants ({@code en} keeps {@code en_GB}) and its parents ({@code de_CH} keeps {@code de}).
+ *     Root and locale independent data are always kept.</li>
+ * </ul>
+ */
+final class ResourceFilter {
+
+    private final List<String> expressions = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    ResourceFilter(Collection<String> keepLocales, Collection<String> excludes) {
+        for (String exclude : excludes) {
+            this.expressions.add(globToRegex(exclude));
+        }
+        if (!keepLocales.isEmpty()) {
+            String locale = localeExpression(keepLocales);
+            this.expressions.add("(?:.*/)?" + locale + "\\.res");
+            this.expressions.add(".*_" + locale + "\\.properties");
+        }
+        for (String expression : this.expressions) {
+            this.patterns.add(Pattern.compile(expression));
+        }
+    }
+
+    boolean isEmpty() {
+        return this.expressions.isEmpty();
+    }
+
+    /**
+     * @return Regular expressions matching the paths of pruned resources.
+     */
+    List<String> getExpressions() {
+        return Collections.unmodifiableList(this.expressions);
+    }
+
+    /**
+     * @param path Path of a jar entry (or resource name), separated by {@code /}.
+     * @return True if the resource is pruned.
+     */
+    boolean removes(String path) {
+        if (path.endsWith("/")) return false;   // directories
+        for (Pattern pattern : this.patterns) {
+            if (pattern.matcher(path).matches()) return true;
+        }
+        return false;
+    }
+
+    /* A locale (language_Script_REGION_variant) of any language that is not kept. */
+    private static String localeExpression(Collection<String> keepLocales) {
+        Set<String> kept = new TreeSet<>();
+        Set<String> parents = new TreeSet<>();
+        for (String locale : keepLocales) {
+            String normalized = locale.replace('-', '_');
+            kept.add(Pattern.quote(normalized));
+            for (int i = normalized.indexOf('_'); i > 0; i = normalized.indexOf('_', i + 1)) {
+                parents.add(Pattern.quote(normalized.substring(0, i)));
+            }
+        }
+        String languages = String.join("|", new TreeSet<>(Arrays.asList(Locale.getISOLanguages())));
+        String skipped = "(?:" + String.join("|", kept) + ")[_.]";
+        if (!parents.isEmpty()) {
+            skipped += "|(?:" + String.join("|", parents) + ")\\.";
+        }
+        return "(?!" + skipped + ")(?:" + languages + ")(?:_[A-Za-z0-9]+)*";
+    }
+
+    /* Ant style pattern to a regular expression: `**` matches directories, `*` and `?` match within a name. */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        String pattern = glob.startsWith("/") ? glob.substring(1) : glob;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (pattern.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (pattern.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.oracle.truffle.gradle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Resources removed from the jars on the runtime classpath (see
+ * {@link GraalExtension#pruneResources(org.gradle.api.Action)}). Rules are applied by an artifact transform, so
+ * distributions, the language component and native images get the pruned jars, and native image tasks
+ * additionally exclude the same resources.</p>
+ */
+public class ResourcePruningOptions {
+
+    private final List<String> keepLocales = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+
+    /**
+     * Keep locale specific data (ICU {@code .res} files and resource bundles) only for the given locales,
+     * for example {@code keepLocales 'en', 'de_CH'}.
+     *
+     * @param locales Kept locales, including their variants and parents.
+     */
+    public void keepLocales(String... locales) {
+        this.keepLocales.addAll(Arrays.asList(locales));
+    }
+
+    public List<String> getKeepLocales() {
+        return Collections.unmodifiableList(this.keepLocales);
+    }
+
+    /**
+     * Remove resources matching the given patterns, for example
+     * {@code exclude 'com/ibm/icu/impl/data/**.cnv'} (charset conversion tables).
+     *
+     * @param patterns Ant style patterns of resource paths.
+     */
+    public void exclude(String... patterns) {
+        this.excludes.addAll(Arrays.asList(patterns));
+    }
+
+    public List<String> getExcludes() {
+        return Collections.unmodifiableList(this.excludes);
+    }
+
+    ResourceFilter toFilter() {
+        return new ResourceFilter(this.keepLocales, this.excludes);
+    }
+
+}
@@ -0,0 +1,382 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.Sync;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>A task prototype which launches every packaging mode of the application many times with the same
+ * command line and compares startup time, time to first output and peak RSS. Supported modes are:</p>
+ *
+ * <ul>
+ *     <li>{@code jvm}: the {@code installDist} start script on a Hotspot JVM (using the Graal compiler
+ *     from the distribution when the compiler plugin is applied);</li>
+ *     <li>{@code graalvm}: the same start script on GraalVM;</li>
+ *     <li>{@code native}: the binary produced by a {@link NativeImage} task ({@code distNative} by default).</li>
+ * </ul>
+ *
+ * {@code
+ * task compareStartup(type: StartupComparison) {
+ *     // Application arguments used in every launch.
+ *     args '--version'
+ *     // Measured launches per mode (default 10), preceded by one discarded warmup launch.
+ *     runs 20
+ *     // Compared modes (default: jvm, graalvm and native).
+ *     modes 'jvm', 'native'
+ *     // JVM used by the jvm mode (default is the JVM running Gradle, unless it is GraalVM) and GraalVM used
+ *     // by the graalvm mode (default is the JVM running Gradle if it is GraalVM, otherwise GRAALVM_HOME).
+ *     javaHome '/usr/lib/jvm/java-11'
+ *     graalHome '/opt/graalvm'
+ *     // Native image task of the native mode.
+ *     nativeImage distNative
+ * }
+ * }
+ *
+ * <p>Launches of different modes are interleaved. The report ({@code report.md} and {@code report.json} in
+ * {@code build/reports/startup/<task>}) shows mean, standard deviation and percentiles of every metric.
+ * Peak RSS is only measured on Linux.</p>
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class StartupComparison extends DefaultTask {
+
+    static final String JVM = "jvm";
+    static final String GRAALVM = "graalvm";
+    static final String NATIVE = "native";
+
+    private final ListProperty<String> args = getProject().getObjects().listProperty(String.class);
+    private final ListProperty<String> modes = getProject().getObjects().listProperty(String.class);
+    private final Property<Integer> runs = getProject().getObjects().property(Integer.class);
+    private final Property<Integer> warmupRuns = getProject().getObjects().property(Integer.class);
+    private final DirectoryProperty javaHome = getProject().getObjects().directoryProperty();
+    private final DirectoryProperty graalHome = getProject().getObjects().directoryProperty();
+    private final Property<NativeImage> nativeImage = getProject().getObjects().property(NativeImage.class);
+    private final RegularFileProperty nativeBinary = getProject().getObjects().fileProperty();
+    private final DirectoryProperty reportDir = getProject().getObjects().directoryProperty();
+
+    public StartupComparison() {
+        this.runs.set(10);
+        this.warmupRuns.set(1);
+        this.reportDir.set(new File(getProject().getBuildDir(), "reports/startup/" + getName()));
+        this.setGroup("graal");
+        // Only build the packages of the selected modes, which are known after configuration.
+        this.dependsOn((Callable<List<Object>>) this::packagingTasks);
+        // Measurements are never up-to-date.
+        this.getOutputs().upToDateWhen(it -> false);
+    }
+
+    public void args(String... args) {
+        this.args.addAll(args);
+    }
+
+    public void setArgs(List<String> args) {
+        this.args.set(args);
+    }
+
+    /**
+     * @return Application arguments used in every launch.
+     */
+    @Input
+    public List<String> getArgs() {
+        return this.args.get();
+    }
+
+    public void modes(String... modes) {
+        for (String mode : modes) {
+            if (!JVM.equals(mode) && !GRAALVM.equals(mode) && !NATIVE.equals(mode)) {
+                throw new IllegalArgumentException("Unknown packaging mode " + mode + ". Use jvm, graalvm or native.");
+            }
+        }
+        this.modes.set(Arrays.asList(modes));
+    }
+
+    /**
+     * @return Compared packaging modes. If not set, every mode available in the project is used.
+     */
+    @Input
+    public List<String> getModes() {
+        List<String> selected = this.modes.get();
+        if (!selected.isEmpty()) return selected;
+        List<String> available = new ArrayList<>();
+        if (getProject().getTasks().findByName("installDist") != null) {
+            available.add(JVM);
+            if (this.graalHome.isPresent() || PluginUtils.isGraalVM() || PluginUtils.getGraalHome() != null) {
+                available.add(GRAALVM);
+            }
+        }
+        if (this.nativeBinary.isPresent() || getNativeImage() != null) {
+            available.add(NATIVE);
+        }
+        return available;
+    }
+
+    public void setRuns(int runs) {
+        this.runs.set(runs);
+    }
+
+    /**
+     * @return Number of measured launches per mode.
+     */
+    @Input
+    public int getRuns() {
+        return this.runs.get();
+    }
+
+    public void setWarmupRuns(int runs) {
+        this.warmupRuns.set(runs);
+    }
+
+    /**
+     * @return Number of discarded launches per mode (file system caches, etc.).
+     */
+    @Input
+    public int getWarmupRuns() {
+        return this.warmupRuns.get();
+    }
+
+    public void setJavaHome(Object home) {
+        this.javaHome.set(getProject().file(home));
+    }
+
+    /**
+     * @return JVM used by the {@code jvm} mode, or null for the JVM running Gradle (which must not be GraalVM).
+     */
+    @Internal
+    public File getJavaHome() {
+        return this.javaHome.getAsFile().getOrNull();
+    }
+
+    public void setGraalHome(Object home) {
+        this.graalHome.set(getProject().file(home));
+    }
+
+    /**
+     * @return GraalVM used by the {@code graalvm} mode, or null if not set explicitly.
+     */
+    @Internal
+    public File getGraalHome() {
+        return this.graalHome.getAsFile().getOrNull();
+    }
+
+    /**
+     * Set the {@code NativeImage} task whose binary is launched in the {@code native} mode.
+     *
+     * @param task Native image task.
+     */
+    public void setNativeImage(NativeImage task) {
+        this.nativeImage.set(task);
+    }
+
+    @Internal
+    public NativeImage getNativeImage() {
+        if (this.nativeImage.isPresent()) return this.nativeImage.get();
+        Task distNative = getProject().getTasks().findByName("distNative");
+        return distNative instanceof NativeImage ? (NativeImage) distNative : null;
+    }
+
+    /**
+     * Override the binary launched in the {@code native} mode (default is the output of the native image task).
+     *
+     * @param binary Path to the binary.
+     */
+    public void setNativeBinary(Object binary) {
+        this.nativeBinary.set(getProject().file(binary));
+    }
+
+    @Internal
+    public File getNativeBinary() {
+        return this.nativeBinary.getAsFile().getOrNull();
+    }
+
+    public void setReportDir(Object dir) {
+        this.reportDir.set(getProject().file(dir));
+    }
+
+    @OutputDirectory
+    public File getReportDir() {
+        return this.reportDir.getAsFile().get();
+    }
+
+    @TaskAction
+    public void compareStartup() throws IOException {
+        Map<String, Launcher> launchers = new LinkedHashMap<>();
+        for (String mode : getModes()) {
+            launchers.put(mode, launcher(mode));
+        }
+        if (launchers.isEmpty()) {
+            throw new IllegalStateException("No packaging mode available. Apply the application or native-image plugin.");
+        }
+        Map<String, List<StartupRun>> results = new LinkedHashMap<>();
+        try {
+            int warmup = this.warmupRuns.get();
+            // Interleave modes so that a noisy period of the machine does not affect just one of them.
+            for (int run = 0; run < warmup + this.runs.get(); run++) {
+                for (Map.Entry<String, Launcher> launcher : launchers.entrySet()) {
+                    getLogger().info("Launching " + launcher.getKey() + " (run " + run + ")");
+                    StartupRun result = StartupRun.launch(
+                            launcher.getValue().command, getProject().getProjectDir(), launcher.getValue().environment
+                    );
+                    if (run >= warmup) {
+                        results.computeIfAbsent(launcher.getKey(), m -> new ArrayList<>()).add(result);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Startup comparison interrupted.", e);
+        }
+        writeReport(results);
+    }
+
+    private static final class Launcher {
+
+        final List<String> command;
+        final Map<String, String> environment;
+
+        Launcher(List<String> command, Map<String, String> environment) {
+            this.command = command;
+            this.environment = environment;
+        }
+
+    }
+
+    /* Start script with JAVA_HOME for JVM modes, the binary itself for the native mode. */
+    private Launcher launcher(String mode) {
+        List<String> command = new ArrayList<>();
+        Map<String, String> environment = new LinkedHashMap<>();
+        if (NATIVE.equals(mode)) {
+            File binary = resolveNativeBinary();
+            if (binary == null || !binary.exists()) {
+                throw new IllegalStateException("Native binary " + binary + " not found. Please specify `nativeImage` or `nativeBinary`.");
+            }
+            command.add(binary.getAbsolutePath());
+        } else {
+            command.add(startScript().getAbsolutePath());
+            environment.put("JAVA_HOME", resolveJavaHome(mode).getAbsolutePath());
+        }
+        command.addAll(this.args.get());
+        return new Launcher(command, environment);
+    }
+
+    private File resolveNativeBinary() {
+        if (this.nativeBinary.isPresent()) return this.nativeBinary.getAsFile().get();
+        NativeImage task = getNativeImage();
+        return task == null ? null : task.getOutputBinary();
+    }
+
+    private File startScript() {
+        Task install = getProject().getTasks().findByName("installDist");
+        Task scripts = getProject().getTasks().findByName("startScripts");
+        if (!(install instanceof Sync) || !(scripts instanceof CreateStartScripts)) {
+            throw new IllegalStateException("JVM packaging modes require the application plugin.");
+        }
+        String name = ((CreateStartScripts) scripts).getApplicationName() + (PluginUtils.isWindows() ? ".bat" : "");
+        return new File(((Sync) install).getDestinationDir(), "bin/" + name);
+    }
+
+    private File resolveJavaHome(String mode) {
+        if (JVM.equals(mode)) {
+            File home = this.javaHome.getAsFile().getOrNull();
+            if (home == null) {
+                home = new File(PluginUtils.getJavaHome());
+                if (JvmProbe.forHome(home).isGraalVM()) {
+                    throw new IllegalStateException("The jvm mode requires a Hotspot JVM, but Gradle runs on GraalVM. Please specify `javaHome`.");
+                }
+            } else if (JvmProbe.forHome(home).isGraalVM()) {
+                getLogger().warn("WARNING: javaHome " + home + " is GraalVM, the jvm mode does not measure a Hotspot JVM.");
+            }
+            return home;
+        }
+        File home = this.graalHome.getAsFile().getOrNull();
+        if (home == null && PluginUtils.isGraalVM()) {
+            home = new File(PluginUtils.getJavaHome());
+        }
+        if (home == null && PluginUtils.getGraalHome() != null) {
+            home = new File(PluginUtils.getGraalHome());
+        }
+        if (home == null || !JvmProbe.forHome(home).isGraalVM()) {
+            throw new IllegalStateException("The graalvm mode requires a GraalVM installation. Please specify `graalHome`.");
+        }
+        return home;
+    }
+
+    /* Tasks which produce the packages of the selected modes. */
+    private List<Object> packagingTasks() {
+        List<Object> tasks = new ArrayList<>();
+        List<String> selected = getModes();
+        if (selected.contains(JVM) || selected.contains(GRAALVM)) {
+            Task install = getProject().getTasks().findByName("installDist");
+            if (install != null) tasks.add(install);
+        }
+        if (selected.contains(NATIVE) && !this.nativeBinary.isPresent()) {
+            NativeImage task = getNativeImage();
+            if (task != null) tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /* Write markdown and JSON versions of the report and print the table. */
+    private void writeReport(Map<String, List<StartupRun>> results) throws IOException {
+        StringBuilder table = new StringBuilder();
+        table.append("| Mode | Runs | Startup [ms] | Startup p50/p90 [ms] | First output [ms] | Peak RSS [MB] | Max RSS [MB] |\n");
+        table.append("|---|---|---|---|---|---|---|\n");
+        List<Map<String, Object>> json = new ArrayList<>();
+        for (Map.Entry<String, List<StartupRun>> entry : results.entrySet()) {
+            List<Double> wall = new ArrayList<>();
+            List<Double> firstOutput = new ArrayList<>();
+            List<Double> rss = new ArrayList<>();
+            for (StartupRun run : entry.getValue()) {
+                wall.add(run.wallMillis);
+                if (!Double.isNaN(run.firstOutputMillis)) firstOutput.add(run.firstOutputMillis);
+                if (!Double.isNaN(run.peakRssMegabytes)) rss.add(run.peakRssMegabytes);
+            }
+            table.append("| ").append(entry.getKey())
+                    .append(" | ").append(wall.size())
+                    .append(" | ").append(Statistics.format(Statistics.mean(wall)))
+                    .append(" +- ").append(Statistics.format(Statistics.stddev(wall)))
+                    .append(" | ").append(Statistics.format(Statistics.percentile(wall, 50)))
+                    .append(" / ").append(Statistics.format(Statistics.percentile(wall, 90)))
+                    .append(" | ").append(Statistics.format(Statistics.mean(firstOutput)))
+                    .append(" +- ").append(Statistics.format(Statistics.stddev(firstOutput)))
+                    .append(" | ").append(Statistics.format(Statistics.mean(rss)))
+                    .append(" +- ").append(Statistics.format(Statistics.stddev(rss)))
+                    .append(" | ").append(Statistics.format(Statistics.max(rss)))
+                    .append(" |\n");
+
+            Map<String, Object> mode = new LinkedHashMap<>();
+            mode.put("mode", entry.getKey());
+            mode.put("startupMillis", wall);
+            mode.put("firstOutputMillis", firstOutput);
+            mode.put("peakRssMegabytes", rss);
+            json.add(mode);
+        }
+        File dir = getReportDir();
+        Files.write(new File(dir, "report.md").toPath(), table.toString().getBytes(Charset.defaultCharset()));
+        Files.write(
+                new File(dir, "report.json").toPath(),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(Charset.defaultCharset())
+        );
+        getLogger().lifecycle(table.toString());
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.oracle.truffle.gradle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A single launch of an application binary or start script. Records wall-clock time until the
+ * process exits, time until the first byte of output and (on Linux) the peak resident set size
+ * ({@code VmHWM} in {@code /proc/<pid>/status}), which is polled while the process runs. Only the standard
+ * output counts as output, the error output (e.g. {@code Picked up JAVA_TOOL_OPTIONS} warnings) is reported
+ * when the launch fails.</p>
+ */
+final class StartupRun {
+
+    final double wallMillis;
+    final double firstOutputMillis;     // NaN if the process printed nothing
+    final double peakRssMegabytes;      // NaN if not available on this platform
+    final String output;                // standard output
+
+    private StartupRun(double wallMillis, double firstOutputMillis, double peakRssMegabytes, String output) {
+        this.wallMillis = wallMillis;
+        this.firstOutputMillis = firstOutputMillis;
+        this.peakRssMegabytes = peakRssMegabytes;
+        this.output = output;
+    }
+
+    static StartupRun launch(List<String> command, File workingDir, Map<String, String> environment) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).directory(workingDir);
+        builder.environment().putAll(environment);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        AtomicLong firstOutput = new AtomicLong(-1);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        Thread reader = drain(process.getInputStream(), output, firstOutput);
+        Thread errorReader = drain(process.getErrorStream(), errors, null);
+        File status = statusFile(process);
+        long peakKilobytes = -1;
+        // Start scripts exec the JVM, so the pid stays the same and the maximum belongs to the application.
+        do {
+            peakKilobytes = Math.max(peakKilobytes, readPeakRss(status));
+        } while (!process.waitFor(2, TimeUnit.MILLISECONDS));
+        long end = System.nanoTime();
+        reader.join();
+        errorReader.join();
+
+        String text = new String(output.toByteArray(), Charset.defaultCharset());
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException(
+                    String.join(" ", command) + " failed with exit code " + process.exitValue() + ":\n" + text
+                            + new String(errors.toByteArray(), Charset.defaultCharset())
+            );
+        }
+        return new StartupRun(
+                (end - start) / 1_000_000.0,
+                firstOutput.get() < 0 ? Double.NaN : (firstOutput.get() - start) / 1_000_000.0,
+                peakKilobytes < 0 ? Double.NaN : peakKilobytes / 1024.0,
+                text
+        );
+    }
+
+    /* Copy a stream of the process on a new thread, recording the time of the first byte if requested. */
+    private static Thread drain(InputStream stream, ByteArrayOutputStream target, AtomicLong firstByte) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = stream) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    if (firstByte != null) firstByte.compareAndSet(-1, System.nanoTime());
+                    target.write(buffer, 0, read);
+                }
+            } catch (IOException ignored) {
+                // process ended
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /* Status file of the process, or null if /proc is not available. */
+    private static File statusFile(Process process) {
+        long pid = pid(process);
+        if (pid < 0) return null;
+        File status = new File("/proc/" + pid + "/status");
+        return status.exists() ? status : null;
+    }
+
+    /* Process.pid() is only available since Java 9, Java 8 keeps the pid in a private field. */
+    static long pid(Process process) {
+        try {
+            return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            try {
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getLong(process);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    /* Peak RSS in kilobytes from a /proc status file (-1 when unavailable). */
+    static long readPeakRss(File status) {
+        if (status == null) return -1;
+        try {
+            for (String line : Files.readAllLines(status.toPath(), Charset.defaultCharset())) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // The process exited in the meantime.
+        }
+        return -1;
+    }
+
+}
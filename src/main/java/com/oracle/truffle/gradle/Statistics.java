@@ -0,0 +1,63 @@
+package com.oracle.truffle.gradle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Basic descriptive statistics used when comparing benchmark runs.</p>
+ */
+final class Statistics {
+
+    private Statistics() {}
+
+    static double mean(List<Double> values) {
+        if (values.isEmpty()) return Double.NaN;
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return sum / values.size();
+    }
+
+    /**
+     * <p>Sample standard deviation (zero for less than two values).</p>
+     */
+    static double stddev(List<Double> values) {
+        if (values.size() < 2) return 0;
+        double mean = mean(values);
+        double sum = 0;
+        for (double v : values) {
+            sum += (v - mean) * (v - mean);
+        }
+        return Math.sqrt(sum / (values.size() - 1));
+    }
+
+    static double min(List<Double> values) {
+        return values.isEmpty() ? Double.NaN : Collections.min(values);
+    }
+
+    static double max(List<Double> values) {
+        return values.isEmpty() ? Double.NaN : Collections.max(values);
+    }
+
+    /**
+     * <p>Nearest-rank percentile, {@code p} is between 0 and 100.</p>
+     */
+    static double percentile(List<Double> values, double p) {
+        if (values.isEmpty()) return Double.NaN;
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+    }
+
+    /**
+     * <p>Format a number for report tables ({@code -} when not available).</p>
+     */
+    static String format(double value) {
+        return Double.isNaN(value) ? "-" : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+}
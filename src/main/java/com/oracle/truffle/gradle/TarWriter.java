@@ -0,0 +1,121 @@
+package com.oracle.truffle.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * <p>Minimal writer of reproducible POSIX ustar archives: all entries are owned by root and have a fixed
+ * modification time, so the same content always produces the same bytes (and the same layer digest).
+ * Paths longer than 100 characters are split into the ustar prefix and name fields.</p>
+ */
+final class TarWriter implements AutoCloseable {
+
+    private static final int BLOCK = 512;
+    // 2000-01-01, some tools treat zero timestamps as missing.
+    private static final long MODIFIED = 946684800L;
+
+    private final OutputStream out;
+
+    TarWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void addDirectory(String path) throws IOException {
+        writeHeader(path.endsWith("/") ? path : path + "/", 0, 0755, '5', "");
+    }
+
+    void addFile(String path, File file) throws IOException {
+        writeHeader(path, file.length(), file.canExecute() ? 0755 : 0644, '0', "");
+        long written = Files.copy(file.toPath(), out);
+        pad(written);
+    }
+
+    void addFile(String path, byte[] content, int mode) throws IOException {
+        writeHeader(path, content.length, mode, '0', "");
+        out.write(content);
+        pad(content.length);
+    }
+
+    void addSymlink(String path, String target) throws IOException {
+        writeHeader(path, 0, 0777, '2', target);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // End of archive: two empty blocks.
+        out.write(new byte[2 * BLOCK]);
+        out.flush();
+    }
+
+    private void pad(long size) throws IOException {
+        int remainder = (int) (size % BLOCK);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK - remainder]);
+        }
+    }
+
+    private void writeHeader(String path, long size, int mode, char type, String linkName) throws IOException {
+        byte[] header = new byte[BLOCK];
+        String name = path;
+        String prefix = "";
+        if (utf8(name).length > 100) {
+            int split = path.lastIndexOf('/', path.length() - 2);
+            while (split > 0 && (utf8(path.substring(0, split)).length > 155 || utf8(path.substring(split + 1)).length > 100)) {
+                split = path.lastIndexOf('/', split - 1);
+            }
+            if (split <= 0) {
+                throw new IllegalStateException("Path is too long for a tar archive: " + path);
+            }
+            prefix = path.substring(0, split);
+            name = path.substring(split + 1);
+        }
+        if (utf8(linkName).length > 100) {
+            throw new IllegalStateException("Link target is too long for a tar archive: " + linkName);
+        }
+        put(header, 0, 100, utf8(name));
+        putOctal(header, 100, 8, mode);
+        putOctal(header, 108, 8, 0);        // uid
+        putOctal(header, 116, 8, 0);        // gid
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, MODIFIED);
+        header[156] = (byte) type;
+        put(header, 157, 100, utf8(linkName));
+        put(header, 257, 6, utf8("ustar\0"));
+        put(header, 263, 2, utf8("00"));
+        put(header, 265, 32, utf8("root"));
+        put(header, 297, 32, utf8("root"));
+        put(header, 345, 155, utf8(prefix));
+        // Checksum is computed with the checksum field filled with spaces.
+        for (int i = 148; i < 156; i++) header[i] = ' ';
+        long checksum = 0;
+        for (byte b : header) checksum += b & 0xff;
+        String octal = String.format("%06o", checksum);
+        put(header, 148, 6, utf8(octal));
+        header[154] = 0;
+        header[155] = ' ';
+        out.write(header);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void put(byte[] header, int offset, int length, byte[] value) {
+        System.arraycopy(value, 0, header, offset, Math.min(length, value.length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        if (octal.length() > length - 1) {
+            throw new IllegalStateException("Value " + value + " does not fit into a tar header.");
+        }
+        StringBuilder padded = new StringBuilder();
+        for (int i = octal.length(); i < length - 1; i++) padded.append('0');
+        padded.append(octal);
+        put(header, offset, length - 1, utf8(padded.toString()));
+    }
+
+}
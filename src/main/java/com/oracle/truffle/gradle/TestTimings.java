@@ -0,0 +1,154 @@
+package com.oracle.truffle.gradle;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Test results read from JUnit XML reports ({@code TEST-*.xml}, as written by the {@code Test} task and by
+ * the native test launcher), used to compare per-test timings of the JVM and native runs.</p>
+ */
+final class TestTimings {
+
+    static final String PASSED = "passed";
+    static final String FAILED = "failed";
+    static final String SKIPPED = "skipped";
+
+    /* Result of one test method. */
+    static final class Result {
+
+        final String className;
+        final String name;
+        final double seconds;
+        final String outcome;
+
+        Result(String className, String name, double seconds, String outcome) {
+            this.className = className;
+            this.name = name;
+            this.seconds = seconds;
+            this.outcome = outcome;
+        }
+
+        String id() {
+            return this.className + "." + this.name;
+        }
+
+    }
+
+    private TestTimings() {}
+
+    /**
+     * @param dir Directory with JUnit XML reports.
+     * @return Results of all tests in the reports by {@code class.method}, empty if the directory does not exist.
+     */
+    static Map<String, Result> read(File dir) throws IOException {
+        Map<String, Result> results = new TreeMap<>();
+        File[] reports = dir.listFiles((parent, name) -> name.startsWith("TEST-") && name.endsWith(".xml"));
+        if (reports == null) return results;
+        Arrays.sort(reports);
+        DocumentBuilder builder;
+        try {
+            builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+        for (File report : reports) {
+            Document document;
+            try {
+                document = builder.parse(report);
+            } catch (SAXException e) {
+                throw new IOException("Cannot parse test report " + report, e);
+            }
+            NodeList cases = document.getElementsByTagName("testcase");
+            for (int i = 0; i < cases.getLength(); i++) {
+                Element element = (Element) cases.item(i);
+                String outcome = PASSED;
+                if (element.getElementsByTagName("skipped").getLength() > 0) {
+                    outcome = SKIPPED;
+                } else if (element.getElementsByTagName("failure").getLength() > 0 || element.getElementsByTagName("error").getLength() > 0) {
+                    outcome = FAILED;
+                }
+                String time = element.getAttribute("time");
+                Result result = new Result(element.getAttribute("classname"), element.getAttribute("name"),
+                        time.isEmpty() ? 0 : Double.parseDouble(time), outcome);
+                results.put(result.id(), result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return Number of results with the given outcome.
+     */
+    static int count(Map<String, Result> results, String outcome) {
+        int count = 0;
+        for (Result result : results.values()) {
+            if (outcome.equals(result.outcome)) count += 1;
+        }
+        return count;
+    }
+
+    /**
+     * @return Timings of native tests (and of the same JVM tests if present) as a JSON-compatible map.
+     */
+    static Map<String, Object> toJson(Map<String, Result> nativeResults, Map<String, Result> jvmResults) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        for (Result result : nativeResults.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("outcome", result.outcome);
+            entry.put("native", result.seconds);
+            Result jvm = jvmResults.get(result.id());
+            if (jvm != null) entry.put("jvm", jvm.seconds);
+            json.put(result.id(), entry);
+        }
+        return json;
+    }
+
+    /**
+     * @return Markdown table of tests which passed in both runs, ordered from the largest native to JVM time ratio.
+     */
+    static String comparison(Map<String, Result> nativeResults, Map<String, Result> jvmResults) {
+        List<Result[]> pairs = new ArrayList<>();
+        double nativeTotal = 0;
+        double jvmTotal = 0;
+        for (Result result : nativeResults.values()) {
+            Result jvm = jvmResults.get(result.id());
+            if (jvm == null || !PASSED.equals(result.outcome) || !PASSED.equals(jvm.outcome)) continue;
+            pairs.add(new Result[] { result, jvm });
+            nativeTotal += result.seconds;
+            jvmTotal += jvm.seconds;
+        }
+        pairs.sort((a, b) -> Double.compare(ratio(b[0].seconds, b[1].seconds), ratio(a[0].seconds, a[1].seconds)));
+        StringBuilder report = new StringBuilder("# Native and JVM test timings\n\n");
+        report.append(String.format(Locale.ROOT, "%d tests passed in both runs: %.3f s native, %.3f s JVM.%n%n",
+                pairs.size(), nativeTotal, jvmTotal));
+        report.append("| Test | Native (ms) | JVM (ms) | Native / JVM |\n");
+        report.append("|------|------------:|---------:|-------------:|\n");
+        for (Result[] pair : pairs) {
+            double ratio = ratio(pair[0].seconds, pair[1].seconds);
+            report.append(String.format(Locale.ROOT, "| %s | %.0f | %.0f | %s |%n", pair[0].id(),
+                    pair[0].seconds * 1000, pair[1].seconds * 1000,
+                    Double.isInfinite(ratio) ? "-" : String.format(Locale.ROOT, "%.2f", ratio)));
+        }
+        return report.toString();
+    }
+
+    private static double ratio(double nativeSeconds, double jvmSeconds) {
+        return jvmSeconds > 0 ? nativeSeconds / jvmSeconds : Double.POSITIVE_INFINITY;
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.oracle.truffle.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <p>Helpers for native images of Truffle languages: detection of languages on the image classpath and
+ * a check that a compiled binary contains Truffle runtime compilation.</p>
+ */
+final class TruffleImageSupport {
+
+    /** Language registration generated by the Truffle DSL processor. */
+    static final String LANGUAGE_REGISTRATION = "META-INF/truffle/language";
+
+    /** Call target of the Substrate Truffle runtime, only present if runtime compilation is included. */
+    static final String RUNTIME_COMPILATION_MARKER = "SubstrateOptimizedCallTarget";
+
+    private static final Pattern LANGUAGE_ID = Pattern.compile("language\\d+\\.id");
+
+    private TruffleImageSupport() {}
+
+    /**
+     * <p>Find ids of all Truffle languages registered in the given jars and directories.</p>
+     */
+    static Set<String> detectLanguages(Iterable<File> classpath) throws IOException {
+        Set<String> result = new TreeSet<>();
+        for (File item : classpath) {
+            if (item.isDirectory()) {
+                File registration = new File(item, LANGUAGE_REGISTRATION);
+                if (registration.isFile()) {
+                    try (InputStream stream = Files.newInputStream(registration.toPath())) {
+                        addLanguageIds(stream, result);
+                    }
+                }
+            } else if (item.isFile() && item.getName().endsWith(".jar")) {
+                try (ZipFile jar = new ZipFile(item)) {
+                    ZipEntry registration = jar.getEntry(LANGUAGE_REGISTRATION);
+                    if (registration != null) {
+                        try (InputStream stream = jar.getInputStream(registration)) {
+                            addLanguageIds(stream, result);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addLanguageIds(InputStream registration, Set<String> ids) throws IOException {
+        Properties properties = new Properties();
+        properties.load(registration);
+        for (String key : properties.stringPropertyNames()) {
+            if (LANGUAGE_ID.matcher(key).matches()) {
+                ids.add(properties.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * <p>Check whether the binary contains the runtime compilation marker. Class names are stored in the
+     * image heap either as Latin-1 (JDK 11) or UTF-16 (JDK 8) strings, so both encodings are searched.</p>
+     */
+    static boolean containsRuntimeCompilation(File binary) throws IOException {
+        byte[] latin = RUNTIME_COMPILATION_MARKER.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] utf16 = RUNTIME_COMPILATION_MARKER.getBytes(StandardCharsets.UTF_16LE);
+        int overlap = utf16.length - 1;
+        byte[] buffer = new byte[1 << 20];
+        int kept = 0;
+        try (InputStream stream = Files.newInputStream(binary.toPath())) {
+            int read;
+            while ((read = stream.read(buffer, kept, buffer.length - kept)) > 0) {
+                int length = kept + read;
+                if (indexOf(buffer, length, latin) >= 0 || indexOf(buffer, length, utf16) >= 0) {
+                    return true;
+                }
+                // Keep the end of the buffer, the marker may span two reads.
+                kept = Math.min(overlap, length);
+                System.arraycopy(buffer, length - kept, buffer, 0, kept);
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.oracle.truffle.gradle;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SkipWhenEmpty;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Checks the compiled node classes of a language for partial evaluation hazards (see {@link TruffleLintRules}
+ * for the rules). The language plugin creates the {@code truffleLint} task for the {@code main} source set, which
+ * runs as part of {@code check}:</p>
+ *
+ * {@code
+ * truffleLint {
+ *     // Fail the build when anything is found (default false, findings are only reported).
+ *     failOnFindings true
+ *     // Highest accepted @Specialization(limit = ...) (default 8).
+ *     maxSpecializationLimit 4
+ *     // Rules which are not checked.
+ *     disable 'object-method'
+ * }
+ * }
+ *
+ * <p>The report ({@code report.md} and {@code report.json}) is stored in {@code build/reports/truffleLint}.</p>
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class TruffleLint extends DefaultTask {
+
+    private final ConfigurableFileCollection classes = getProject().files();
+    private final Property<Boolean> failOnFindings = getProject().getObjects().property(Boolean.class);
+    private final Property<Integer> maxSpecializationLimit = getProject().getObjects().property(Integer.class);
+    private final ListProperty<String> disabledRules = getProject().getObjects().listProperty(String.class);
+    private final DirectoryProperty reportDir = getProject().getObjects().directoryProperty();
+
+    public TruffleLint() {
+        this.failOnFindings.set(false);
+        this.maxSpecializationLimit.set(8);
+        this.reportDir.set(new File(getProject().getBuildDir(), "reports/" + getName()));
+        this.setGroup("verification");
+    }
+
+    /**
+     * @param classes Class directories (or anything accepted by {@code project.files}) which are checked.
+     */
+    public void setClasses(Object classes) {
+        this.classes.setFrom(classes);
+    }
+
+    @InputFiles
+    @SkipWhenEmpty
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getClasses() {
+        return this.classes.getAsFileTree().matching(pattern -> pattern.include("**/*.class"));
+    }
+
+    public void setFailOnFindings(boolean fail) {
+        this.failOnFindings.set(fail);
+    }
+
+    @Input
+    public boolean getFailOnFindings() {
+        return this.failOnFindings.get();
+    }
+
+    public void setMaxSpecializationLimit(int limit) {
+        this.maxSpecializationLimit.set(limit);
+    }
+
+    /**
+     * @return Highest {@code limit} of a {@code @Specialization} which is not reported.
+     */
+    @Input
+    public int getMaxSpecializationLimit() {
+        return this.maxSpecializationLimit.get();
+    }
+
+    /**
+     * @param rules Names of rules which are not checked, e.g. {@code object-method}.
+     */
+    public void disable(String... rules) {
+        this.disabledRules.addAll(rules);
+    }
+
+    @Input
+    public List<String> getDisabledRules() {
+        return this.disabledRules.get();
+    }
+
+    public void setReportDir(Object dir) {
+        this.reportDir.set(getProject().file(dir));
+    }
+
+    @OutputDirectory
+    public File getReportDir() {
+        return this.reportDir.getAsFile().get();
+    }
+
+    @TaskAction
+    public void lint() throws IOException {
+        Map<String, ClassFile> parsed = new LinkedHashMap<>();
+        for (File file : getClasses().getFiles()) {
+            try (InputStream stream = Files.newInputStream(file.toPath())) {
+                ClassFile type = ClassFile.read(stream);
+                parsed.put(type.name, type);
+            } catch (IOException e) {
+                throw new IOException("Cannot read class file " + file, e);
+            }
+        }
+        List<TruffleLintRules.Finding> findings = new ArrayList<>();
+        for (TruffleLintRules.Finding finding : new TruffleLintRules(parsed, this.maxSpecializationLimit.get()).check()) {
+            if (!this.disabledRules.get().contains(finding.rule)) findings.add(finding);
+        }
+        writeReport(parsed.size(), findings);
+        if (findings.isEmpty()) return;
+        String message = findings.size() + " partial evaluation hazard(s) found, see " + new File(getReportDir(), "report.md");
+        if (this.failOnFindings.get()) {
+            throw new IllegalStateException(message);
+        }
+        getLogger().warn("WARNING: " + message);
+    }
+
+    private void writeReport(int classCount, List<TruffleLintRules.Finding> findings) throws IOException {
+        Map<String, Integer> counts = new TreeMap<>();
+        StringBuilder table = new StringBuilder();
+        table.append("| Rule | Class | Method | Location | Problem |\n");
+        table.append("|---|---|---|---|---|\n");
+        List<Map<String, Object>> json = new ArrayList<>();
+        for (TruffleLintRules.Finding finding : findings) {
+            counts.merge(finding.rule, 1, Integer::sum);
+            table.append("| ").append(finding.rule)
+                    .append(" | ").append(finding.className)
+                    .append(" | ").append(finding.member)
+                    .append(" | ").append(finding.location)
+                    .append(" | ").append(finding.message)
+                    .append(" |\n");
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("rule", finding.rule);
+            entry.put("class", finding.className);
+            entry.put("method", finding.member);
+            entry.put("location", finding.location);
+            entry.put("message", finding.message);
+            json.add(entry);
+            getLogger().info(finding.toString());
+        }
+        StringBuilder report = new StringBuilder("# Truffle lint\n\n");
+        report.append(classCount).append(" classes checked, ").append(findings.size()).append(" findings ")
+                .append(counts.isEmpty() ? "" : counts.toString()).append("\n\n");
+        if (!findings.isEmpty()) report.append(table);
+        File dir = getReportDir();
+        Files.write(new File(dir, "report.md").toPath(), report.toString().getBytes(Charset.defaultCharset()));
+        Files.write(
+                new File(dir, "report.json").toPath(),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(Charset.defaultCharset())
+        );
+    }
+
+}
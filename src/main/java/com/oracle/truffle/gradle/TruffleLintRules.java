@@ -0,0 +1,224 @@
+package com.oracle.truffle.gradle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Partial evaluation hazards found in compiled node classes by {@link TruffleLint}. Fast paths are the
+ * {@code execute*} and {@code @Specialization} methods of {@code Node} subclasses which are not annotated with
+ * {@code @TruffleBoundary}. The rules are:</p>
+ *
+ * <ul>
+ *     <li>{@code non-final-field}: a fast path reads an instance field of the node which is neither final,
+ *     {@code @CompilationFinal} nor a {@code @Child}/{@code @Children} field, so compiled code cannot fold it;</li>
+ *     <li>{@code object-method}: a fast path calls {@code toString}, {@code hashCode} or {@code equals}, which
+ *     pulls arbitrary (often recursive) library code into compilation, unless the target is a boundary;</li>
+ *     <li>{@code recursion}: a fast path calls itself on {@code this} (or statically), which partial evaluation
+ *     cannot inline; calls of the same method on other nodes, such as children of the same class, are fine;</li>
+ *     <li>{@code exception-in-fast-path}: a fast path allocates an exception without transferring to the
+ *     interpreter first (control flow and slow path exceptions are exempt);</li>
+ *     <li>{@code specialization-limit}: a {@code @Specialization} has a limit above the configured maximum.</li>
+ * </ul>
+ *
+ * <p>Classes generated by the Truffle DSL are not checked.</p>
+ */
+final class TruffleLintRules {
+
+    static final String COMPILATION_FINAL = "Lcom/oracle/truffle/api/CompilerDirectives$CompilationFinal;";
+    static final String TRUFFLE_BOUNDARY = "Lcom/oracle/truffle/api/CompilerDirectives$TruffleBoundary;";
+    static final String CHILD = "Lcom/oracle/truffle/api/nodes/Node$Child;";
+    static final String CHILDREN = "Lcom/oracle/truffle/api/nodes/Node$Children;";
+    static final String SPECIALIZATION = "Lcom/oracle/truffle/api/dsl/Specialization;";
+    static final String GENERATED_BY = "Lcom/oracle/truffle/api/dsl/GeneratedBy;";
+    static final String COMPILER_DIRECTIVES = "com/oracle/truffle/api/CompilerDirectives";
+
+    private static final Set<String> FAST_PATH_EXCEPTIONS = new HashSet<>(Arrays.asList(
+            "com/oracle/truffle/api/nodes/ControlFlowException",
+            "com/oracle/truffle/api/nodes/SlowPathException",
+            "com/oracle/truffle/api/nodes/UnexpectedResultException"
+    ));
+    private static final Set<String> VALUE_TYPES = new HashSet<>(Arrays.asList(
+            "java/lang/Boolean", "java/lang/Byte", "java/lang/Character", "java/lang/Short",
+            "java/lang/Integer", "java/lang/Long", "java/lang/Float", "java/lang/Double"
+    ));
+
+    static final class Finding {
+
+        final String rule;
+        final String className;
+        final String member;
+        final String location;
+        final String message;
+
+        Finding(String rule, ClassFile type, ClassFile.Method method, int line, String message) {
+            this.rule = rule;
+            this.className = type.name.replace('/', '.');
+            this.member = method.name;
+            String file = type.sourceFile == null ? type.name.substring(type.name.lastIndexOf('/') + 1) + ".class" : type.sourceFile;
+            this.location = line < 0 ? file : file + ":" + line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return this.rule + " " + this.className + "." + this.member + " (" + this.location + "): " + this.message;
+        }
+
+    }
+
+    private final Map<String, ClassFile> classes;
+    private final int maxSpecializationLimit;
+
+    /**
+     * @param classes Checked classes by internal name, also used to resolve class hierarchies and fields.
+     * @param maxSpecializationLimit Highest accepted {@code limit} of a specialization.
+     */
+    TruffleLintRules(Map<String, ClassFile> classes, int maxSpecializationLimit) {
+        this.classes = classes;
+        this.maxSpecializationLimit = maxSpecializationLimit;
+    }
+
+    List<Finding> check() {
+        List<Finding> findings = new ArrayList<>();
+        for (ClassFile type : this.classes.values()) {
+            if (!isNode(type) || isGenerated(type)) continue;
+            for (ClassFile.Method method : type.methods) {
+                checkSpecializationLimit(type, method, findings);
+                if (isFastPath(method)) checkFastPath(type, method, findings);
+            }
+        }
+        return findings;
+    }
+
+    private void checkFastPath(ClassFile type, ClassFile.Method method, List<Finding> findings) {
+        boolean transferred = false;
+        for (ClassFile.Instruction instruction : method.instructions) {
+            switch (instruction.opcode) {
+                case ClassFile.GETFIELD:
+                    // Only the state of nodes is specialized, mutable fields of other objects are fine to read.
+                    ClassFile owner = this.classes.get(instruction.owner);
+                    if (!instruction.onThis && (owner == null || !isNode(owner))) break;
+                    ClassFile.Annotated field = findField(instruction.owner, instruction.name);
+                    if (field != null && !field.is(ClassFile.ACC_FINAL) && !field.is(ClassFile.ACC_SYNTHETIC)
+                            && !field.hasAnnotation(COMPILATION_FINAL) && !field.hasAnnotation(CHILD) && !field.hasAnnotation(CHILDREN)) {
+                        findings.add(new Finding("non-final-field", type, method, instruction.line,
+                                "reads field " + instruction.name + " which is not final or @CompilationFinal"));
+                    }
+                    break;
+                case ClassFile.NEW:
+                    if (!transferred && isThrowable(instruction.owner)) {
+                        findings.add(new Finding("exception-in-fast-path", type, method, instruction.line,
+                                "allocates " + instruction.owner.replace('/', '.') + " without CompilerDirectives.transferToInterpreter()"));
+                    }
+                    break;
+                case ClassFile.INVOKESTATIC:
+                    if (COMPILER_DIRECTIVES.equals(instruction.owner) && instruction.name.startsWith("transferToInterpreter")) {
+                        transferred = true;
+                    }
+                    checkCall(type, method, instruction, findings);
+                    break;
+                case ClassFile.INVOKEVIRTUAL:
+                case ClassFile.INVOKESPECIAL:
+                case ClassFile.INVOKEINTERFACE:
+                    checkCall(type, method, instruction, findings);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void checkCall(ClassFile type, ClassFile.Method method, ClassFile.Instruction call, List<Finding> findings) {
+        if (call.owner.equals(type.name) && call.name.equals(method.name) && call.descriptor.equals(method.descriptor)
+                && (call.opcode == ClassFile.INVOKESTATIC || call.onThis)) {
+            findings.add(new Finding("recursion", type, method, call.line, "calls itself without @TruffleBoundary"));
+            return;
+        }
+        if (call.opcode == ClassFile.INVOKESTATIC || VALUE_TYPES.contains(call.owner) || !isObjectMethod(call)) return;
+        ClassFile.Method target = findMethod(call.owner, call.name, call.descriptor);
+        if (target != null && target.hasAnnotation(TRUFFLE_BOUNDARY)) return;
+        findings.add(new Finding("object-method", type, method, call.line,
+                "calls " + call.owner.replace('/', '.') + "." + call.name + "() outside of a @TruffleBoundary"));
+    }
+
+    private void checkSpecializationLimit(ClassFile type, ClassFile.Method method, List<Finding> findings) {
+        Map<String, Object> specialization = method.annotations.get(SPECIALIZATION);
+        if (specialization == null || !(specialization.get("limit") instanceof String)) return;
+        String limit = ((String) specialization.get("limit")).trim();
+        boolean unbounded = limit.contains("MAX_VALUE");
+        if (limit.matches("\\d+")) {
+            unbounded = Long.parseLong(limit) > this.maxSpecializationLimit;
+        }
+        if (unbounded) {
+            findings.add(new Finding("specialization-limit", type, method, -1,
+                    "limit \"" + limit + "\" exceeds " + this.maxSpecializationLimit + " cached instances"));
+        }
+    }
+
+    private static boolean isFastPath(ClassFile.Method method) {
+        if (method.is(ClassFile.ACC_ABSTRACT) || method.is(ClassFile.ACC_SYNTHETIC) || method.is(ClassFile.ACC_BRIDGE)) return false;
+        if (method.hasAnnotation(TRUFFLE_BOUNDARY)) return false;
+        return method.name.startsWith("execute") || method.hasAnnotation(SPECIALIZATION);
+    }
+
+    private static boolean isObjectMethod(ClassFile.Instruction call) {
+        return ("toString".equals(call.name) && "()Ljava/lang/String;".equals(call.descriptor))
+                || ("hashCode".equals(call.name) && "()I".equals(call.descriptor))
+                || ("equals".equals(call.name) && "(Ljava/lang/Object;)Z".equals(call.descriptor));
+    }
+
+    private static boolean isGenerated(ClassFile type) {
+        return type.annotations.containsKey(GENERATED_BY) || type.name.endsWith("Gen") || type.name.contains("Gen$");
+    }
+
+    /* Node subclass, the hierarchy outside of the checked classes is guessed from the name of the first external class. */
+    private boolean isNode(ClassFile type) {
+        String external = firstExternalSuperclass(type.name);
+        return external != null && external.startsWith("com/oracle/truffle/api/") && external.endsWith("Node");
+    }
+
+    private boolean isThrowable(String name) {
+        for (String current = name; current != null; ) {
+            if (FAST_PATH_EXCEPTIONS.contains(current)) return false;
+            ClassFile type = this.classes.get(current);
+            if (type == null) {
+                return current.endsWith("Exception") || current.endsWith("Error") || current.equals("java/lang/Throwable");
+            }
+            current = type.superName;
+        }
+        return false;
+    }
+
+    private String firstExternalSuperclass(String name) {
+        String current = name;
+        while (current != null && this.classes.containsKey(current)) {
+            current = this.classes.get(current).superName;
+        }
+        return current;
+    }
+
+    private ClassFile.Annotated findField(String owner, String name) {
+        for (String current = owner; current != null && this.classes.containsKey(current); ) {
+            ClassFile type = this.classes.get(current);
+            ClassFile.Annotated field = type.findField(name);
+            if (field != null) return field.is(ClassFile.ACC_STATIC) ? null : field;
+            current = type.superName;
+        }
+        return null;
+    }
+
+    private ClassFile.Method findMethod(String owner, String name, String descriptor) {
+        for (String current = owner; current != null && this.classes.containsKey(current); ) {
+            ClassFile type = this.classes.get(current);
+            ClassFile.Method method = type.findMethod(name, descriptor);
+            if (method != null) return method;
+            current = type.superName;
+        }
+        return null;
+    }
+
+}
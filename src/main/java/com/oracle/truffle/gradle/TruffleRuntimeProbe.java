@@ -0,0 +1,48 @@
+package com.oracle.truffle.gradle;
+
+import java.lang.reflect.Method;
+
+/**
+ * <p>Main class of the {@code verifyTruffleRuntime} task. This class is copied from the plugin into the
+ * classpath of the task, it is not meant to be used directly.</p>
+ *
+ * <p>Creates a polyglot engine and exits with {@value #NOT_OPTIMIZING} if Truffle falls back to the
+ * interpreter, e.g. because JVMCI is not enabled or the versions of Truffle and the compiler do not match.
+ * The runtime is checked by {@code SharedEngine.isOptimizing} of {@code truffle-runtime-support}, which the
+ * task adds to the classpath, the same check as in the test support library. The polyglot API and the
+ * support library are used reflectively, so that the probe does not need them to compile.</p>
+ */
+public final class TruffleRuntimeProbe {
+
+    static final int NOT_OPTIMIZING = 100;
+    static final int NO_TRUFFLE = 101;
+    static final String SHARED_ENGINE = "com.oracle.truffle.gradle.runtime.SharedEngine";
+
+    private TruffleRuntimeProbe() {}
+
+    public static void main(String[] args) throws Exception {
+        Class<?> engineClass;
+        try {
+            engineClass = Class.forName("org.graalvm.polyglot.Engine");
+        } catch (ClassNotFoundException e) {
+            System.err.println("The polyglot API (org.graalvm.sdk:graal-sdk) is not on the classpath.");
+            System.exit(NO_TRUFFLE);
+            return;
+        }
+        Object engine = engineClass.getMethod("create").invoke(null);
+        boolean optimizing;
+        try {
+            Object implementation = engineClass.getMethod("getImplementationName").invoke(engine);
+            Method version = engineClass.getMethod("getVersion");
+            System.err.println("JVM: " + System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+            System.err.println("Polyglot engine: " + implementation + " " + version.invoke(engine));
+            optimizing = (Boolean) Class.forName(SHARED_ENGINE).getMethod("isOptimizing", engineClass).invoke(null, engine);
+        } finally {
+            engineClass.getMethod("close").invoke(engine);
+        }
+        if (!optimizing) {
+            System.exit(NOT_OPTIMIZING);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * <p>Search space of an {@link Autotune} task: named dimensions with alternative values, where every value is
+ * a (possibly empty) space separated list of JVM arguments. A configuration picks one value per dimension.</p>
+ *
+ * <p>Configurations are scored relative to the best measured ones, {@code 1.0} being the fastest in both
+ * steady state and warmup: {@code (1 - w) * bestSteady / steady + w * bestWarmup / warmup}.</p>
+ */
+final class TuningSpace {
+
+    /** Name of the configuration without any extra arguments. */
+    static final String DEFAULT = "default";
+
+    private final Map<String, List<String>> dimensions = new LinkedHashMap<>();
+
+    void add(String dimension, List<String> values) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("Tuning dimension " + dimension + " has no values.");
+        }
+        this.dimensions.computeIfAbsent(dimension, d -> new ArrayList<>()).addAll(values);
+    }
+
+    Map<String, List<String>> getDimensions() {
+        return Collections.unmodifiableMap(this.dimensions);
+    }
+
+    /**
+     * @return Number of configurations in the full cartesian product.
+     */
+    long size() {
+        long size = 1;
+        for (List<String> values : this.dimensions.values()) size *= values.size();
+        return size;
+    }
+
+    /**
+     * <p>Configurations to measure, dimension name mapped to the selected value. If the space has more than
+     * {@code max} configurations, a random (but reproducible) sample is returned.</p>
+     */
+    List<Map<String, String>> configurations(int max) {
+        long size = size();
+        List<Map<String, String>> result = new ArrayList<>();
+        if (size <= max) {
+            for (long index = 0; index < size; index++) result.add(configuration(index));
+            return result;
+        }
+        Set<Long> picked = new LinkedHashSet<>();
+        Random random = new Random(42);
+        while (picked.size() < max) {
+            picked.add(Math.floorMod(random.nextLong(), size));
+        }
+        for (long index : picked) result.add(configuration(index));
+        return result;
+    }
+
+    /* Mixed radix decoding of a configuration index, the last dimension changes fastest. */
+    private Map<String, String> configuration(long index) {
+        Map<String, String> configuration = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>(this.dimensions.keySet());
+        long rest = index;
+        for (int i = names.size() - 1; i >= 0; i--) {
+            List<String> values = this.dimensions.get(names.get(i));
+            configuration.put(names.get(i), values.get((int) (rest % values.size())));
+            rest /= values.size();
+        }
+        Map<String, String> ordered = new LinkedHashMap<>();
+        for (String name : names) ordered.put(name, configuration.get(name));
+        return ordered;
+    }
+
+    /**
+     * @return JVM arguments of the configuration.
+     */
+    static List<String> args(Map<String, String> configuration) {
+        List<String> args = new ArrayList<>();
+        for (String value : configuration.values()) {
+            String trimmed = value.trim();
+            if (!trimmed.isEmpty()) args.addAll(Arrays.asList(trimmed.split("\\s+")));
+        }
+        return args;
+    }
+
+    /**
+     * @return Human readable name of the configuration, e.g. {@code gc=-XX:+UseG1GC heap=-Xmx1g}.
+     */
+    static String label(Map<String, String> configuration) {
+        StringBuilder label = new StringBuilder();
+        for (Map.Entry<String, String> entry : configuration.entrySet()) {
+            if (entry.getValue().trim().isEmpty()) continue;
+            if (label.length() > 0) label.append(' ');
+            label.append(entry.getKey()).append('=').append(entry.getValue().trim());
+        }
+        return label.length() == 0 ? DEFAULT : label.toString();
+    }
+
+    /**
+     * @param steady Steady state iteration time (or fork time) of every configuration, in milliseconds.
+     * @param warmup First iteration time of every configuration (NaN if unknown), in milliseconds.
+     * @param warmupWeight Weight of the warmup in the score, between 0 and 1.
+     * @return Score of every configuration, in the same order.
+     */
+    static List<Double> scores(List<Double> steady, List<Double> warmup, double warmupWeight) {
+        double bestSteady = Double.MAX_VALUE;
+        double bestWarmup = Double.MAX_VALUE;
+        for (int i = 0; i < steady.size(); i++) {
+            if (!Double.isNaN(steady.get(i))) bestSteady = Math.min(bestSteady, steady.get(i));
+            if (!Double.isNaN(warmup.get(i))) bestWarmup = Math.min(bestWarmup, warmup.get(i));
+        }
+        List<Double> scores = new ArrayList<>();
+        for (int i = 0; i < steady.size(); i++) {
+            double steadyScore = Double.isNaN(steady.get(i)) ? 0 : bestSteady / steady.get(i);
+            if (Double.isNaN(warmup.get(i))) {
+                scores.add(steadyScore);
+            } else {
+                scores.add((1 - warmupWeight) * steadyScore + warmupWeight * bestWarmup / warmup.get(i));
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * @return JVM arguments of a settings file written by {@link Autotune}, empty if the file does not exist.
+     */
+    static List<String> readSettings(File file) {
+        List<String> args = new ArrayList<>();
+        if (!file.isFile()) return args;
+        try {
+            for (String line : Files.readAllLines(file.toPath(), Charset.defaultCharset())) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty() && !trimmed.startsWith("#")) args.add(trimmed);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read tuned settings from " + file, e);
+        }
+        return args;
+    }
+
+
+    /**
+     * Tuned settings of a project as JVM arguments of a fork task, the settings file is an input of the task.
+     */
+    static final class Settings implements CommandLineArgumentProvider {
+
+        private final GraalExtension config;
+
+        Settings(GraalExtension config) {
+            this.config = config;
+        }
+
+        @InputFile
+        @Optional
+        @PathSensitive(PathSensitivity.NONE)
+        public File getTuningFile() {
+            File file = this.config.getTuningFile();
+            return file.isFile() ? file : null;
+        }
+
+        @Override
+        public Iterable<String> asArguments() {
+            return readSettings(this.config.getTuningFile());
+        }
+    }
+
+}
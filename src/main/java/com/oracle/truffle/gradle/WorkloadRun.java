@@ -0,0 +1,117 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.Action;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+import org.gradle.process.JavaExecSpec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A single fork of a benchmark workload declared as a {@code JavaExec} task. The fork copies the
+ * main class, classpath, arguments and JVM options of the workload task, runs it and records wall-clock
+ * time together with iteration times printed by the workload.</p>
+ *
+ * <p>Iteration times are extracted from the standard output using a regular expression whose first
+ * group is the duration of one iteration in milliseconds.</p>
+ */
+final class WorkloadRun {
+
+    /** Matches lines like {@code iteration 3: 12.5 ms}. */
+    static final String DEFAULT_ITERATION_PATTERN = "(?i)iteration\\s+\\d+\\D*?([0-9]+(?:\\.[0-9]+)?)\\s*ms";
+
+    final String label;
+    final int fork;
+    final double wallMillis;
+    final List<Double> iterations;
+    final String output;
+
+    private WorkloadRun(String label, int fork, double wallMillis, List<Double> iterations, String output) {
+        this.label = label;
+        this.fork = fork;
+        this.wallMillis = wallMillis;
+        this.iterations = Collections.unmodifiableList(iterations);
+        this.output = output;
+    }
+
+    /**
+     * <p>Duration of the first iteration (NaN if the workload reports no iterations).</p>
+     */
+    double warmupMillis() {
+        return iterations.isEmpty() ? Double.NaN : iterations.get(0);
+    }
+
+    /**
+     * <p>Mean duration of the second half of iterations, i.e. after the workload is warmed up.</p>
+     */
+    double steadyStateMillis() {
+        if (iterations.isEmpty()) return Double.NaN;
+        return Statistics.mean(iterations.subList(iterations.size() / 2, iterations.size()));
+    }
+
+    /**
+     * <p>Run one fork of the workload task. The {@code customize} action is applied last and can add
+     * JVM arguments specific to this fork (compiler location, engine options, ...). Forks run in parallel on
+     * threads of the calling task, so they use {@code ExecOperations} instead of {@code Project.javaexec}.</p>
+     */
+    static WorkloadRun fork(
+            ExecOperations operations, JavaExec workload, String label, int fork, Pattern iterationPattern,
+            Action<JavaExecSpec> customize
+    ) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        ExecResult result = operations.javaexec(exec -> {
+            exec.setExecutable(workload.getExecutable());
+            exec.setMain(workload.getMain());
+            exec.setClasspath(workload.getClasspath());
+            exec.setArgs(workload.getArgs());
+            exec.setWorkingDir(workload.getWorkingDir());
+            exec.systemProperties(workload.getSystemProperties());
+            exec.jvmArgs(withoutCompilerArgs(workload.getJvmArgs()));
+            exec.setStandardOutput(output);
+            exec.setErrorOutput(output);
+            exec.setIgnoreExitValue(true);
+            customize.execute(exec);
+        });
+        double wallMillis = (System.nanoTime() - start) / 1_000_000.0;
+        String text = new String(output.toByteArray(), Charset.defaultCharset());
+        if (result.getExitValue() != 0) {
+            throw new IllegalStateException(
+                    "Workload " + label + " (fork " + fork + ") failed with exit code " + result.getExitValue() + ":\n" + text
+            );
+        }
+        return new WorkloadRun(label, fork, wallMillis, parseIterations(text, iterationPattern), text);
+    }
+
+    /* Extract iteration times from workload output. */
+    static List<Double> parseIterations(String output, Pattern pattern) {
+        List<Double> result = new ArrayList<>();
+        Matcher matcher = pattern.matcher(output);
+        while (matcher.find()) {
+            result.add(Double.parseDouble(matcher.group(1)));
+        }
+        return result;
+    }
+
+    /*
+        If the workload task already executed in this build, the compiler plugin has appended the default
+        compiler location to its JVM arguments. Those must not leak into forks with a different compiler.
+     */
+    private static List<String> withoutCompilerArgs(List<String> jvmArgs) {
+        List<String> result = new ArrayList<>();
+        if (jvmArgs == null) return result;
+        for (String arg : jvmArgs) {
+            if (arg.startsWith("--module-path=") || arg.startsWith("--upgrade-module-path=")) continue;
+            result.add(arg);
+        }
+        return result;
+    }
+
+}
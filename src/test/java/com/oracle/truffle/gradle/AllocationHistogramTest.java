@@ -0,0 +1,90 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AllocationHistogramTest {
+
+    private static final List<String> LOCATION_HISTOGRAM = Arrays.asList(
+            " ------------------------------------------------------------------------------------",
+            " Location Histogram with Allocation Counts. Recorded a total of 15 allocations.",
+            "   Total Count: Number of allocations during the execution of this element.",
+            "   Self Count: Number of allocations in this element alone (excluding sub calls).",
+            " ------------------------------------------------------------------------------------",
+            "  Name        |      Self Count |     Total Count |  Location                  ",
+            " ------------------------------------------------------------------------------------",
+            "  makeArray   |       10  66.7% |      10  66.7%  |  bench.js~3-5:40-90        ",
+            "  main        |        3  20.0% |      15 100.0%  |  bench.js~7-12:92-200      ",
+            "  makeArray   |        2  13.3% |       2  13.3%  |  bench.js~3-5:40-90        ",
+            " ------------------------------------------------------------------------------------"
+    );
+
+    private static final List<String> TYPE_HISTOGRAM = Arrays.asList(
+            " Type Histogram with Allocation Counts. Recorded a total of 4 allocations.",
+            "  Type     |      Self Count",
+            "  Array    |        3  75.0%",
+            "  Object   |        1  25.0%"
+    );
+
+    @Test
+    public void aggregatesLocations() {
+        /* Rows with the same root and location are merged, self counts are used. */
+        AllocationHistogram histogram = AllocationHistogram.parse(AllocationHistogram.LOCATIONS, LOCATION_HISTOGRAM);
+        assertEquals(15, histogram.total);
+        assertEquals(2, histogram.entries.size());
+        AllocationHistogram.Entry makeArray = histogram.entries.get("makeArray (bench.js~3-5:40-90)");
+        assertEquals(12, makeArray.count);
+        assertEquals("bench.js~3-5:40-90", makeArray.location);
+    }
+
+    @Test
+    public void aggregatesTypes() {
+        AllocationHistogram histogram = AllocationHistogram.parse(AllocationHistogram.TYPES, TYPE_HISTOGRAM);
+        assertEquals(4, histogram.total);
+        assertEquals(3, histogram.entries.get("Array").count);
+        assertEquals(null, histogram.entries.get("Array").location);
+    }
+
+    @Test
+    public void checksBudgets() {
+        /* Budgets match root names as well as source locations. */
+        AllocationHistogram histogram = AllocationHistogram.parse(AllocationHistogram.LOCATIONS, LOCATION_HISTOGRAM);
+        Map<String, Long> budgets = new LinkedHashMap<>();
+        budgets.put("makeArray", 10L);
+        budgets.put("bench.js~7", 5L);
+        List<AllocationHistogram.Budget> result = histogram.check(20L, budgets);
+        assertEquals(3, result.size());
+        assertFalse(result.get(0).isExceeded());
+        assertTrue(result.get(1).isExceeded());
+        assertEquals(12, result.get(1).actual);
+        assertFalse(result.get(2).isExceeded());
+        assertEquals(3, result.get(2).actual);
+
+        assertTrue(histogram.check(null, Collections.emptyMap()).isEmpty());
+    }
+
+    @Test
+    public void parsesStreamedOutput() throws IOException {
+        /* The process output is parsed while it is printed, the last line may lack a line terminator. */
+        AllocationHistogram histogram = new AllocationHistogram(AllocationHistogram.TYPES);
+        try (OutputStream stream = NativeImageMetrics.lines(histogram::accept)) {
+            stream.write(String.join("\r\n", TYPE_HISTOGRAM).getBytes(StandardCharsets.UTF_8));
+        }
+        histogram.finish();
+        assertEquals(4, histogram.total);
+        assertEquals(1, histogram.entries.get("Object").count);
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompilationLogSummaryTest {
+
+    @Test
+    public void summarizesCompilation() {
+        /* Inlining decisions and warnings printed before `opt done` belong to the same compilation. */
+        List<String> log = Arrays.asList(
+                "[engine] inline start     fib       |call diff 0.00 |Recursion Depth 0",
+                "[engine] inline success   add       |call diff -2.00 |Recursion Depth 0",
+                "[engine] inline failed    fib       |call diff -1.00 |Recursion Depth 1",
+                "[engine] inline failed    print     |call diff -1.00 |Recursion Depth 0",
+                "[engine] perf warn        fib       |Partial evaluation could not inline the virtual runtime call Virtual to HotSpotMethod<Object.toString()>.",
+                "[engine] perf warn        fib       |Allocation of Frame could not be virtualized.",
+                "[engine] opt done         fib       |AST   23|Time  120( 80+40 )ms|GraalNodes   140/  210 |CodeSize   1234 |Source fib.js:1",
+                "[engine] opt failed       broken    |AST    4|Reason: bailout"
+        );
+        List<CompilationLogSummary.Compilation> compilations = CompilationLogSummary.parse(log);
+
+        assertEquals(2, compilations.size());
+        CompilationLogSummary.Compilation fib = compilations.get(0);
+        assertEquals("fib", fib.callTarget);
+        assertEquals("done", fib.status);
+        assertEquals(140, fib.nodesAfterPartialEvaluation);
+        assertEquals(210, fib.nodesAfterCompilation);
+        assertEquals(1234, fib.codeSize);
+        assertEquals(Arrays.asList("add"), fib.inlined);
+        assertEquals(Arrays.asList("fib", "print"), fib.notInlined);
+        assertEquals(1, fib.virtualCalls.size());
+        assertEquals(1, fib.allocations.size());
+        assertEquals("failed", compilations.get(1).status);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DevServerTest {
+
+    @Test
+    public void reloadsProjectClassesOnly() {
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.truffle-language");
+
+        Task task = project.getTasks().findByName("devServer");
+        assertTrue(task instanceof DevServer);
+        DevServer devServer = (DevServer) task;
+        File classes = new File(project.getBuildDir(), "classes/java/main");
+        assertTrue(devServer.getReloadedClasses().getFiles().contains(classes));
+        assertFalse(devServer.getClasspath().getFiles().contains(classes));
+    }
+
+    @Test
+    public void detectsChangedClasses() throws Exception {
+        File dir = Files.createTempDirectory("classes").toFile();
+        dir.deleteOnExit();
+        File node = new File(dir, "com/example/Node.class");
+        assertTrue(node.getParentFile().mkdirs());
+        Files.write(node.toPath(), "v1".getBytes(StandardCharsets.UTF_8));
+        List<File> watched = Collections.singletonList(dir);
+        Map<String, Long> before = DevServerMain.snapshot(watched);
+        assertEquals(1, before.size());
+        assertEquals(before, DevServerMain.snapshot(watched));
+
+        Files.write(node.toPath(), "version 2".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(before, DevServerMain.snapshot(watched));
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlameGraphTest {
+
+    private static final String SAMPLER_JSON = "{\"tool\": \"CPUSampler\", \"profile\": [{\"thread\": \"main\", \"samples\": [" +
+            "{\"root_name\": \"main\", \"source_section\": {\"source_name\": \"fib.js\", \"start_line\": 10}, \"self_hit_count\": 2, \"children\": [" +
+            "  {\"root_name\": \"fib\", \"source_section\": {\"source_name\": \"fib.js\", \"start_line\": 1}, \"self_hit_count\": 7, \"children\": []}," +
+            "  {\"root_name\": \"Array.prototype.push\", \"self_compiled_hit_count\": 1, \"self_interpreted_hit_count\": 2, \"children\": []}," +
+            "  {\"root_name\": \"java.util.ArrayList.add\", \"source_section\": {\"source_name\": \"ArrayList.java\", \"language\": \"host\"}, \"self_hit_count\": 1, \"children\": []}" +
+            "]}]}]}";
+
+    @Test
+    public void buildsFrameTree() {
+        /* Threads, guest frames (also builtins without source) and host frames (host language) are kept apart. */
+        FlameGraph.Frame root = FlameGraph.fromCpuSamplerJson(SAMPLER_JSON);
+        assertEquals(13, root.total());
+
+        FlameGraph.Frame main = root.children.get("thread main").children.get("main (fib.js:10)");
+        assertFalse(main.host);
+        assertEquals(7, main.children.get("fib (fib.js:1)").self);
+        FlameGraph.Frame push = main.children.get("Array.prototype.push");
+        assertFalse(push.host);
+        assertEquals(3, push.self);
+        assertTrue(main.children.get("java.util.ArrayList.add (ArrayList.java)").host);
+    }
+
+    @Test
+    public void rendersStandaloneSvg() {
+        String svg = FlameGraph.renderSvg(FlameGraph.fromCpuSamplerJson(SAMPLER_JSON), "Test <profile>");
+        assertTrue(svg.startsWith("<?xml"));
+        assertTrue(svg.contains("fib (fib.js:1) (7 samples, 53.85%, guest)"));
+        assertTrue(svg.contains("Test &lt;profile&gt;"));
+    }
+
+}
@@ -1,13 +1,34 @@
 package com.oracle.truffle.gradle;
 
+import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.util.PatternFilterable;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
 import org.gradle.testfixtures.ProjectBuilder;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class GraalCompilerPluginTest {
 
@@ -33,4 +54,260 @@ public class GraalCompilerPluginTest {
         assertTrue(testExec.getDependsOn().contains(project.getTasks().findByName("prepareCompiler")));
     }
 
+    @Test
+    public void registersCompilerMatrixTasks() {
+        /* Check that every matrix version has its own compiler task and the matrix task depends on it. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).compilerMatrix("20.1.0", "20.2.0");
+        Task matrix = project.getTasks().create("matrix", CompilerMatrix.class);
+
+        // Magical `false` will internally call project.evaluate()
+        assertFalse(project.getTasksByName("prepareCompiler20_1_0", false).isEmpty());
+        assertFalse(project.getTasksByName("prepareCompiler20_2_0", false).isEmpty());
+        assertNotNull(project.getConfigurations().findByName("graalCompiler20_2_0"));
+        assertTrue(matrix.getTaskDependencies().getDependencies(matrix).containsAll(
+                project.getTasksByName("prepareCompiler20_1_0", false)
+        ));
+    }
+
+    @Test
+    public void registersPerformanceTestTask() {
+        /* Check that performance tests get their own task and are excluded from the normal test task. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).performanceTests("**/*PerformanceTest*");
+
+        Set<Task> tasks = project.getTasksByName("performanceTest", false);
+        assertFalse(tasks.isEmpty());
+        PatternFilterable performanceTest = (PatternFilterable) tasks.iterator().next();
+        assertTrue(performanceTest.getIncludes().contains("**/*PerformanceTest*"));
+        PatternFilterable test = (PatternFilterable) project.getTasks().getByName("test");
+        assertTrue(test.getExcludes().contains("**/*PerformanceTest*"));
+    }
+
+    @Test
+    public void declaresStartScriptJvmOptionsAsInputs() {
+        /* Options added to start scripts are task inputs, defaultJvmOpts of the user stay untouched. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("application");
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        CreateStartScripts scripts = (CreateStartScripts) project.getTasks().getByName("startScripts");
+
+        Object opts = scripts.getInputs().getProperties().get(GraalStartScripts.INPUT_NAME);
+        assertEquals(Collections.singletonList("-Dtruffle.class.path.append="), opts);
+        assertFalse(scripts.getDefaultJvmOpts().iterator().hasNext());
+    }
+
+    @Test
+    public void quotesJavaOptsForStartScripts() {
+        /* The shell script evaluates JAVA_OPTS, every option must stay one argument. */
+        List<String> opts = Arrays.asList("-Dpath=/opt/my app/lib.jar", "-Dtext=\"$HOME\" \\ `id`");
+        assertEquals("\"-Dpath=/opt/my app/lib.jar\" \"-Dtext=\\\"\\$HOME\\\" \\\\ \\`id\\`\"",
+                GraalStartScripts.quoteJvmOpts(opts, false));
+        assertEquals("\"-Dpath=/opt/my app/lib.jar\"", GraalStartScripts.quoteJvmOpts(opts.subList(0, 1), true));
+    }
+
+    @Test
+    public void alignsTruffleVersions() {
+        /* Truffle artifacts are constrained to the compiler version and the runtime probe task exists. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).setVersion("20.2.0");
+
+        assertNotNull(project.getTasks().findByName("verifyTruffleRuntime"));
+        project.getTasksByName("test", false);  // evaluate project
+        boolean aligned = project.getConfigurations().getByName("implementation").getDependencyConstraints().stream()
+                .anyMatch(constraint -> "truffle-api".equals(constraint.getName())
+                        && "20.2.0".equals(constraint.getVersionConstraint().getRequiredVersion()));
+        assertTrue(aligned);
+    }
+
+    @Test
+    public void failsResolutionWithMisalignedVersion() throws IOException {
+        /* A required version loses against a higher one, so the resolved versions are checked. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).setVersion("20.2.0");
+        File module = project.file("repo/org/graalvm/truffle/truffle-api/20.3.0/truffle-api-20.3.0");
+        assertTrue(module.getParentFile().mkdirs());
+        Files.write(new File(module.getPath() + ".pom").toPath(), ("<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>org.graalvm.truffle</groupId><artifactId>truffle-api</artifactId><version>20.3.0</version>"
+                + "</project>").getBytes(StandardCharsets.UTF_8));
+        writeJar(new File(module.getPath() + ".jar"), "com/oracle/truffle/api/Truffle.class");
+        project.getRepositories().maven(repository -> repository.setUrl(project.file("repo")));
+        project.getDependencies().add("implementation", "org.graalvm.truffle:truffle-api:20.3.0");
+
+        project.getTasksByName("test", false);  // evaluate project
+        try {
+            project.getConfigurations().getByName("compileClasspath").getFiles();
+            fail("truffle-api 20.3.0 does not match the compiler.");
+        } catch (RuntimeException e) {
+            assertTrue(String.valueOf(rootCause(e).getMessage()).contains("does not match the Graal compiler 20.2.0"));
+        }
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        return e.getCause() == null ? e : rootCause(e.getCause());
+    }
+
+    @Test
+    public void addsRuntimeSupportForContextPool() {
+        /* The runtime library is added and the pool configuration is passed as system properties. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).contextPool(pool -> {
+            pool.setMaxContexts(4);
+            pool.engineOption("engine.CompilationThreshold", "500");
+        });
+
+        project.getTasksByName("test", false);  // evaluate project
+        // The library is carried by the plugin and resolves without any repository.
+        Set<String> jars = new HashSet<>();
+        for (File jar : project.getConfigurations().getByName("runtimeClasspath")) {
+            jars.add(jar.getName());
+        }
+        assertTrue(jars.contains("truffle-runtime-support.jar"));
+        ContextPoolOptions pool = project.getExtensions().getByType(GraalExtension.class).getContextPool();
+        assertEquals("4", pool.toSystemProperties().get("org.graalvm.plugin.pool.maxContexts"));
+        assertEquals("500", pool.toSystemProperties().get("polyglot.engine.CompilationThreshold"));
+    }
+
+    @Test
+    public void declaresMetricsAgent() {
+        /* Fork tasks can opt in to the agent, the extension configures its endpoint. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).metricsAgent(agent -> agent.setPort(null));
+
+        assertNotNull(project.getConfigurations().findByName("graalMetricsAgent"));
+        JavaExec task = project.getTasks().create("runWithMetrics", JavaExec.class);
+        GraalTaskOptions options = task.getExtensions().getByType(GraalTaskOptions.class);
+        assertFalse(options.isMetricsAgent());
+        options.setMetricsAgent(true);
+        MetricsAgentOptions agent = project.getExtensions().getByType(GraalExtension.class).getMetricsAgent();
+        assertEquals("host=127.0.0.1,port=off,jmx=true", agent.toAgentArgs());
+    }
+
+    @Test
+    public void addsMetricsAgentToForksAndStartScripts() {
+        /* Opted-in fork tasks get the extracted agent jar, start scripts the copy in the distribution. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("application");
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).metricsAgent(agent -> agent.setPort(null));
+        JavaExec task = project.getTasks().create("runWithMetrics", JavaExec.class);
+        task.getExtensions().getByType(GraalTaskOptions.class).setMetricsAgent(true);
+        CreateStartScripts scripts = (CreateStartScripts) project.getTasks().getByName("startScripts");
+        project.getTasksByName("test", false);  // evaluate project
+
+        // Run the doFirst actions until the agent is added (later doFirst actions run first, the execution is last).
+        String agentArg = null;
+        for (Action<? super Task> action : task.getActions()) {
+            action.execute(task);
+            for (String arg : task.getJvmArgs()) {
+                if (arg.startsWith("-javaagent:")) agentArg = arg;
+            }
+            if (agentArg != null) break;
+        }
+        assertNotNull(agentArg);
+        assertTrue(agentArg.endsWith("truffle-metrics-agent.jar=host=127.0.0.1,port=off,jmx=true"));
+        assertTrue(new File(agentArg.substring("-javaagent:".length(), agentArg.indexOf('='))).isFile());
+
+        Object opts = scripts.getInputs().getProperties().get(GraalStartScripts.INPUT_NAME);
+        assertTrue(((List<?>) opts).contains(
+                "-javaagent:" + GraalStartScripts.APP_HOME + "/graalMetrics/truffle-metrics-agent.jar=host=127.0.0.1,port=off,jmx=true"
+        ));
+    }
+
+    @Test
+    public void prunesClasspathsThroughArtifactViews() throws IOException {
+        /* Native images resolve the runtime classpath, so pruning must not change the attributes of the configuration. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("application");
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        project.getExtensions().getByType(GraalExtension.class).pruneResources(pruning -> pruning.exclude("unused/**"));
+        File jar = project.file("lib/library.jar");
+        writeJar(jar, "used/kept.txt", "unused/removed.txt");
+        project.getDependencies().add("implementation", project.files(jar));
+
+        project.getTasksByName("run", false);  // evaluate project
+        File pruned = findLibrary(((JavaExec) project.getTasks().getByName("run")).getClasspath());
+        assertFalse(jar.equals(pruned));
+        try (ZipFile zip = new ZipFile(pruned)) {
+            assertNotNull(zip.getEntry("used/kept.txt"));
+            assertNull(zip.getEntry("unused/removed.txt"));
+        }
+        assertEquals(pruned, findLibrary(((org.gradle.api.tasks.testing.Test) project.getTasks().getByName("test")).getClasspath()));
+        assertEquals(pruned, findLibrary(((NativeImage) project.getTasks().getByName("distNative")).getClasspath()));
+    }
+
+    private static File findLibrary(Iterable<File> classpath) {
+        for (File file : classpath) {
+            if (file.getName().equals("library.jar")) return file;
+        }
+        throw new AssertionError("library.jar not on the classpath");
+    }
+
+    private static void writeJar(File jar, String... entries) throws IOException {
+        assertTrue(jar.getParentFile().isDirectory() || jar.getParentFile().mkdirs());
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write(entry.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    public void injectsExecOperationsIntoBenchmarkTasks() {
+        /* Benchmark forks run on threads of the task, which must not use Project.javaexec. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+
+        assertNotNull(project.getTasks().create("autotune", Autotune.class).getExecOperations());
+        assertNotNull(project.getTasks().create("matrix", CompilerMatrix.class).getExecOperations());
+        assertNotNull(project.getTasks().create("compareHostCompilers", HostCompilerComparison.class).getExecOperations());
+    }
+
+    @Test
+    public void declaresTuningFileAsInput() throws IOException {
+        /* Tuned settings are passed by an argument provider, so that a new tuning file reruns the tests. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        org.gradle.api.tasks.testing.Test test = (org.gradle.api.tasks.testing.Test) project.getTasks().getByName("test");
+        TuningSpace.Settings settings = null;
+        for (Object provider : test.getJvmArgumentProviders()) {
+            if (provider instanceof TuningSpace.Settings) settings = (TuningSpace.Settings) provider;
+        }
+        assertNotNull(settings);
+        assertNull(settings.getTuningFile());
+
+        GraalExtension config = project.getExtensions().getByType(GraalExtension.class);
+        File file = new File(project.getProjectDir(), "graal-tuning.args");
+        Files.write(file.toPath(), Arrays.asList("# tuned", "-XX:+UseParallelGC"));
+        config.setTuningFile(file);
+        assertEquals(file, settings.getTuningFile());
+        assertEquals(Collections.singletonList("-XX:+UseParallelGC"), settings.asArguments());
+    }
+
+    @Test
+    public void packsGraphDumpsInFinalizer() {
+        /* Dumps are packed by a finalizer task, which also runs when the dumping task fails. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.compiler");
+        JavaExec task = project.getTasks().create("runCustom", JavaExec.class);
+        task.getExtensions().getByType(GraalTaskOptions.class).setDumpGraphs("fib");
+        project.getTasks().create("runPlain", JavaExec.class);
+        // Magical `false` will internally call project.evaluate()
+        project.getTasksByName("runCustom", false);
+
+        Task pack = project.getTasks().getByName("runCustomGraphDumps");
+        assertTrue(task.getFinalizedBy().getDependencies(task).contains(pack));
+        assertNull(project.getTasks().findByName("runPlainGraphDumps"));
+    }
+
 }
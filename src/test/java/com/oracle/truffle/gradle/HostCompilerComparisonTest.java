@@ -0,0 +1,54 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HostCompilerComparisonTest {
+
+    @Test
+    public void summarizesSteadyStateIterations() {
+        List<List<Double>> iterations = Arrays.asList(
+                Arrays.asList(100.0, 20.0, 10.0, 10.0),
+                Arrays.asList(80.0, 30.0, 10.0, 30.0)
+        );
+        Map<String, Double> summary = HostCompilerComparison.summarize(Arrays.asList(1000.0, 1200.0), iterations);
+        assertEquals(1100.0, summary.get("forkMillis"), 1e-9);
+        // Steady state is the second half of every fork: 10, 10, 10, 30.
+        assertEquals(1000.0 / 15.0, summary.get("throughput"), 1e-9);
+        assertEquals(10.0, summary.get("p50"), 1e-9);
+        assertEquals(30.0, summary.get("p90"), 1e-9);
+        assertEquals(30.0, summary.get("max"), 1e-9);
+        assertEquals(90.0, summary.get("warmupMillis"), 1e-9);
+    }
+
+    @Test
+    public void summarizesWorkloadWithoutIterations() {
+        Map<String, Double> summary = HostCompilerComparison.summarize(
+                Collections.singletonList(500.0), Collections.singletonList(Collections.emptyList())
+        );
+        assertEquals(500.0, summary.get("forkMillis"), 1e-9);
+        assertTrue(Double.isNaN(summary.get("throughput")));
+        assertTrue(Double.isNaN(summary.get("p99")));
+    }
+
+    @Test
+    public void selectsHostCompiler() {
+        assertArrayEquals(
+                new String[] { "-XX:+UnlockExperimentalVMOptions", "-XX:+UseJVMCICompiler" },
+                PluginUtils.hostCompilerJvmArgs(GraalExtension.HOST_COMPILER_GRAAL)
+        );
+        assertArrayEquals(
+                new String[] { "-XX:+UnlockExperimentalVMOptions", "-XX:-UseJVMCICompiler" },
+                PluginUtils.hostCompilerJvmArgs(GraalExtension.HOST_COMPILER_C2)
+        );
+    }
+
+}
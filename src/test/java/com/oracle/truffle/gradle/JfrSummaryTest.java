@@ -0,0 +1,61 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JfrSummaryTest {
+
+    private static final List<JfrSummary.Event> EVENTS = Arrays.asList(
+            new JfrSummary.Event("jdk.ExecutionSample", 0).with("method", "app.Parser.next"),
+            new JfrSummary.Event("jdk.ExecutionSample", 0).with("method", "app.Parser.next"),
+            new JfrSummary.Event("jdk.ExecutionSample", 0).with("method", "app.Lexer.read"),
+            new JfrSummary.Event("jdk.ExecutionSample", 0).with("method", "app.Parser.next"),
+            new JfrSummary.Event("jdk.GarbageCollection", 12).with("name", "G1New").with("sumOfPauses", 4.0).with("longestPause", 3.0),
+            new JfrSummary.Event("jdk.GarbageCollection", 30).with("name", "G1Old").with("sumOfPauses", 6.0).with("longestPause", 5.5),
+            new JfrSummary.Event("jdk.Compilation", 2).with("compileLevel", 3).with("succeded", true),
+            new JfrSummary.Event("jdk.Compilation", 40).with("compileLevel", 4).with("succeded", true),
+            new JfrSummary.Event("jdk.Compilation", 60).with("compileLevel", 4).with("succeded", false),
+            new JfrSummary.Event("org.graalvm.compiler.truffle.Compilation", 120).with("rootFunction", "fib"),
+            new JfrSummary.Event("jdk.JavaMonitorEnter", 7).with("monitorClass", "java.lang.Object"),
+            new JfrSummary.Event("jdk.ThreadPark", 3).with("parkedClass", "java.util.concurrent.locks.ReentrantLock$NonfairSync")
+    );
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void summarizesEvents() {
+        Map<String, Object> summary = JfrSummary.summarize(EVENTS);
+        Map<String, Object> totals = (Map<String, Object>) summary.get("totals");
+        assertEquals(4, totals.get("samples"));
+        assertEquals(10.0, totals.get("gcPauseMs"));
+        assertEquals(5.5, totals.get("gcMaxPauseMs"));
+        assertEquals(102.0, totals.get("compilationMs"));
+        assertEquals(120.0, totals.get("truffleCompilationMs"));
+        assertEquals(10.0, totals.get("lockWaitMs"));
+
+        List<Map<String, Object>> hot = (List<Map<String, Object>>) summary.get("hotMethods");
+        assertEquals("app.Parser.next", hot.get(0).get("method"));
+        assertEquals(75.0, hot.get(0).get("percent"));
+        Map<String, Object> compilation = (Map<String, Object>) summary.get("compilation");
+        Map<String, Object> topTier = (Map<String, Object>) compilation.get("tier 4 (C2 or JVMCI)");
+        assertEquals(2, topTier.get("count"));
+        assertEquals(1, topTier.get("failed"));
+        Map<String, Object> locks = (Map<String, Object>) summary.get("locks");
+        assertEquals("monitor java.lang.Object", locks.keySet().iterator().next());
+    }
+
+    @Test
+    public void comparesWithPreviousSummary() {
+        Map<String, Object> previous = JfrSummary.summarize(EVENTS.subList(0, 5));
+        String report = JfrSummary.render("Recording", JfrSummary.summarize(EVENTS), previous);
+        assertTrue(report, report.contains("| gcPauseMs | 10.0 | 4.0 | +150.0% |"));
+        assertTrue(report, report.contains("| Truffle Compilation | 1 | 120.0 |"));
+        assertTrue(report, report.contains("| `app.Lexer.read` | 1 | 25.0 |"));
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JvmProbeTest {
+
+    @Test
+    public void probeMatchesCurrentJvm() {
+        /* Probing the JVM running the tests must give the same answers as reading its properties directly. */
+        File javaHome = new File(System.getProperty("java.home"));
+        JvmProbe probed = JvmProbe.probe(JvmProbe.javaExecutable(javaHome).getAbsolutePath());
+        JvmProbe current = JvmProbe.current();
+
+        assertEquals(current.getJavaHome(), probed.getJavaHome());
+        assertEquals(current.isGraalVM(), probed.isGraalVM());
+        assertEquals(current.hasJVMCI(), probed.hasJVMCI());
+    }
+
+    @Test
+    public void parsesOnlyPropertySettings() {
+        /* Warnings printed by the JVM are not properties, even when they contain ` = `. */
+        Map<String, String> properties = JvmProbe.parseSettings(Arrays.asList(
+                "Picked up JAVA_TOOL_OPTIONS: -Djava.vm.name = Fake",
+                "Property settings:",
+                "    java.home = /opt/graalvm",
+                "    java.library.path = /usr/lib64",
+                "        /lib64",
+                "    java.vm.name = OpenJDK 64-Bit Server VM",
+                "",
+                "openjdk version \"17.0.9\" 2023-10-17",
+                "java.vm.version = 17.0.9+9"
+        ));
+        assertEquals("/opt/graalvm", properties.get("java.home"));
+        assertEquals("/usr/lib64", properties.get("java.library.path"));
+        assertEquals("OpenJDK 64-Bit Server VM", properties.get("java.vm.name"));
+        assertNull(properties.get("java.vm.version"));
+        assertEquals(3, properties.size());
+    }
+
+    @Test
+    public void noToolchainWithoutLanguageVersion() {
+        /* Without a configured language version, the default toolchain is the JVM running Gradle. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        assertNull(JvmProbe.forToolchain(project));
+    }
+
+    @Test
+    public void releaseOfLegacyGraalVM() {
+        assertEquals(20, graal("GraalVM CE 20.1.0", "OpenJDK 64-Bit Server VM GraalVM CE 20.1.0", "11.0.7+10-jvmci-20.1-b02").getGraalMajorVersion());
+        assertEquals(21, graal("GraalVM EE 21.3.0", "Java HotSpot(TM) 64-Bit Server VM GraalVM EE 21.3.0", "17.0.1+12-LTS-jvmci-21.3-b05").getGraalMajorVersion());
+        assertEquals(22, graal("GraalVM CE 22.3.1", "OpenJDK 64-Bit Server VM GraalVM CE 22.3.1", "17.0.6+10-jvmci-22.3-b13").getGraalMajorVersion());
+        /* Java 8 builds only name GraalVM in the VM name. */
+        assertEquals(20, graal("", "OpenJDK 64-Bit Server VM GraalVM CE 20.3.0", "25.272-b10-jvmci-20.3-b06").getGraalMajorVersion());
+        assertEquals(21, graal("GraalVM CE 21.0.0", "OpenJDK 64-Bit Server VM GraalVM CE 21.0.0", "").getGraalMajorVersion());
+        assertEquals("22.3.1", graal("GraalVM CE 22.3.1", "OpenJDK 64-Bit Server VM GraalVM CE 22.3.1", "17.0.6+10-jvmci-22.3-b13").getGraalVersion());
+        assertEquals("20.3.0", graal("", "OpenJDK 64-Bit Server VM GraalVM CE 20.3.0", "25.272-b10-jvmci-20.3-b06").getGraalVersion());
+    }
+
+    @Test
+    public void releaseOfJdkVersionedGraalVM() {
+        /* GraalVM for JDK 17 and 21 are GraalVM 23.0 and 23.1, their vendor version is the JDK version. */
+        assertEquals(23, graal("GraalVM CE 17.0.8+7.1", "OpenJDK 64-Bit Server VM", "17.0.8+7-jvmci-23.0-b15").getGraalMajorVersion());
+        assertEquals(23, graal("Oracle GraalVM 21.0.1+12.1", "Java HotSpot(TM) 64-Bit Server VM", "21.0.1+12-jvmci-23.1-b19").getGraalMajorVersion());
+        assertEquals(24, graal("Oracle GraalVM 24+36.1", "Java HotSpot(TM) 64-Bit Server VM", "24+36-jvmci-b01").getGraalMajorVersion());
+        assertEquals(24, graal("GraalVM CE 21.0.1+12.1", "OpenJDK 64-Bit Server VM", "").getGraalMajorVersion());
+        assertNull(graal("GraalVM CE 17.0.8+7.1", "OpenJDK 64-Bit Server VM", "17.0.8+7-jvmci-23.0-b15").getGraalVersion());
+        assertNull(graal("Oracle GraalVM 24+36.1", "Java HotSpot(TM) 64-Bit Server VM", "24+36-jvmci-b01").getGraalVersion());
+    }
+
+    @Test
+    public void noReleaseOutsideGraalVM() {
+        assertEquals(-1, graal("Temurin-17.0.8+7", "OpenJDK 64-Bit Server VM", "17.0.8+7").getGraalMajorVersion());
+    }
+
+    private static JvmProbe graal(String vendorVersion, String vmName, String vmVersion) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("java.vendor.version", vendorVersion);
+        properties.put("java.vm.name", vmName);
+        properties.put("java.vm.version", vmVersion);
+        return JvmProbe.forProperties(properties);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NativeImageMetricsTest {
+
+    @Test
+    public void parsesLegacyPhases() {
+        NativeImageMetrics metrics = NativeImageMetrics.parse(Arrays.asList(
+                "[app:999999999]    classlist:   1,234.50 ms,  0.96 GB",
+                "[app:999999999]     analysis:   8,567.89 ms,  1.23 GB",
+                "[app:999999999]      (parse):     789.00 ms,  1.23 GB",
+                "[app:999999999]    (compile):   5,678.90 ms,  1.67 GB",
+                "[app:999999999]      compile:   8,123.45 ms,  1.70 GB",
+                "[app:999999999]        image:     789.01 ms,  1.67 GB",
+                "[app:999999999]      [total]:  20,123.45 ms,  1.70 GB"
+        ));
+        metrics.finish();
+        assertEquals(1234.5, metrics.phases.get("classlist"), 1e-9);
+        assertEquals(8567.89, metrics.phases.get("analysis"), 1e-9);
+        assertEquals(789.0, metrics.phases.get("(parse)"), 1e-9);
+        assertEquals(5678.9, metrics.phases.get("(compile)"), 1e-9);
+        assertEquals(8123.45, metrics.phases.get("compile"), 1e-9);
+        assertEquals(20123.45, metrics.totalMillis, 1e-9);
+        assertEquals(1.70, metrics.peakHeapGigabytes, 1e-9);
+        assertNull(metrics.reachableTypes);
+    }
+
+    @Test
+    public void parsesSteps() {
+        NativeImageMetrics metrics = NativeImageMetrics.parse(Arrays.asList(
+                "[1/7] Initializing...                                            (3.2s @ 0.19GB)",
+                "[2/7] Performing analysis...  [******]                           (19.0s @ 1.53GB)",
+                "   4,512 (81.34%) of  5,547 types reachable",
+                "   5,741 (60.99%) of  9,413 fields reachable",
+                "  20,312 (51.36%) of 39,554 methods reachable",
+                "[6/7] Compiling methods...    [****]                             (12.5s @ 2.31GB)",
+                "                        1.9s (4.5% of total time) in 19 GCs | Peak RSS: 3.05GB | CPU load: 7.54",
+                "Finished generating 'app' in 1m 41.6s."
+        ));
+        assertEquals(3200, metrics.phases.get("setup"), 1e-9);
+        assertEquals(19000, metrics.phases.get("analysis"), 1e-9);
+        assertEquals(12500, metrics.phases.get("compile"), 1e-9);
+        assertEquals(4512L, (long) metrics.reachableTypes);
+        assertEquals(20312L, (long) metrics.reachableMethods);
+        assertEquals(1.9, metrics.gcSeconds, 1e-9);
+        assertEquals(19L, (long) metrics.gcCount);
+        assertEquals(3.05 * 1024, metrics.peakRssMegabytes, 1e-9);
+        assertEquals(101600, metrics.totalMillis, 1e-6);
+    }
+
+    @Test
+    public void splitsOutputIntoLines() throws Exception {
+        List<String> lines = new ArrayList<>();
+        OutputStream stream = NativeImageMetrics.lines(lines::add);
+        stream.write("first\r\nsec".getBytes(Charset.defaultCharset()));
+        stream.write("ond\nthird".getBytes(Charset.defaultCharset()));
+        stream.close();
+        assertEquals(Arrays.asList("first", "second", "third"), lines);
+    }
+
+    @Test
+    public void reportsTrendWithClasspathChanges() throws Exception {
+        File history = File.createTempFile("history", ".jsonl");
+        history.delete();
+        history.deleteOnExit();
+        NativeImageMetrics.appendHistory(history, build("lib-1.0.jar", 20000));
+        NativeImageMetrics.appendHistory(history, build("lib-2.0.jar", 30000));
+
+        List<Map<String, Object>> builds = NativeImageMetrics.readHistory(history);
+        assertEquals(2, builds.size());
+        String trend = NativeImageMetrics.trend(builds, 20);
+        assertTrue(trend.contains("| 30.0 |"));
+        assertTrue(trend.contains("+lib-2.0.jar -lib-1.0.jar"));
+    }
+
+    private static Map<String, Object> build(String library, double millis) {
+        NativeImageMetrics metrics = new NativeImageMetrics();
+        metrics.totalMillis = millis;
+        Map<String, Object> build = new LinkedHashMap<>();
+        build.put("time", "now");
+        build.put("metrics", metrics.toJson());
+        build.put("classpath", Arrays.asList("app.jar", library));
+        return build;
+    }
+
+}
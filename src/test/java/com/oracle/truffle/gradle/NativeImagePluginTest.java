@@ -2,10 +2,14 @@ package com.oracle.truffle.gradle;
 
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
 import org.gradle.testfixtures.ProjectBuilder;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.StreamSupport;
 
 import static org.junit.Assert.*;
 
@@ -25,4 +29,127 @@ public class NativeImagePluginTest {
         assertTrue(tasks.iterator().next() instanceof NativeImage);
     }
 
+    @Test
+    public void startupComparisonUsesAvailableModes() {
+        // With application and native-image plugins, both the start script and distNative are compared.
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+        project.getPlugins().apply("application");
+        StartupComparison task = project.getTasks().create("compareStartup", StartupComparison.class);
+
+        assertTrue(task.getModes().contains("jvm"));
+        assertTrue(task.getModes().contains("native"));
+        assertSame(project.getTasks().getByName("distNative"), task.getNativeImage());
+    }
+
+    @Test
+    public void entryPointsUseDispatcher() {
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+        NativeImage task = project.getTasks().create("compileTools", NativeImage.class);
+        task.entryPoint("tool-a", "app.ToolA");
+        task.entryPoint("tool-b", "app.ToolB");
+
+        assertEquals(EntryPointDispatcher.class.getName(), task.getExecutable());
+        assertEquals("app.ToolB", task.getEntryPoints().get("tool-b"));
+        try {
+            task.setForMainClass("app.Main");
+            fail("Main class cannot be combined with entry points.");
+        } catch (IllegalStateException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void declaresMetricsDirAsOutput() {
+        /* Metrics are written by every build, so they are outputs of the task. */
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+        NativeImage task = project.getTasks().create("compileTools", NativeImage.class);
+        task.setOutputDir("binaries");
+
+        assertTrue(task.getOutputs().getFiles().contains(task.getMetricsDir()));
+    }
+
+    @Test
+    public void rejectsClashingEntryPoints() {
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+        NativeImage task = project.getTasks().create("compileTools", NativeImage.class);
+        task.setOutputName("tools");
+        task.entryPoint("tool-a", "app.ToolA");
+
+        // Links are created next to the binary, so names must be unique file names other than the binary.
+        for (String name : new String[] { "tool-a", "tools", "bin/tool-b", "tool\\b", ".." }) {
+            try {
+                task.entryPoint(name, "app.ToolB");
+                fail("Entry point " + name + " must be rejected.");
+            } catch (IllegalStateException expected) {
+                // ok
+            }
+        }
+        try {
+            task.setOutputName("tool-a");
+            fail("Output name cannot be an entry point.");
+        } catch (IllegalStateException expected) {
+            // ok
+        }
+        assertEquals(1, task.getEntryPoints().size());
+    }
+
+    @Test
+    public void registersNativeLauncherForLanguage() {
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.graalvm.plugin.truffle-language");
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+
+        Task launcher = project.getTasks().findByName("nativeLauncher");
+        assertTrue(launcher instanceof NativeImage);
+        assertEquals(LanguageLauncher.MAIN_CLASS, ((NativeImage) launcher).getExecutable());
+        assertNotNull(project.getTasks().findByName("compileNativeLauncher"));
+
+        // The language is configured after the plugins are applied, the arguments follow it.
+        GraalExtension config = project.getExtensions().getByType(GraalExtension.class);
+        config.setLanguageId("sl");
+        config.setLanguageName("SimpleLanguage");
+        NativeImage image = (NativeImage) launcher;
+        assertEquals("SimpleLanguage", image.getOutputName());
+        assertTrue(StreamSupport.stream(image.getCmdArgs().spliterator(), false)
+                .anyMatch("-Dpolyglot.image-build-time.PreinitializeContexts=sl"::equals));
+    }
+
+    @Test
+    public void registersNativeTestForJavaProject() {
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+
+        Task image = project.getTasks().findByName("nativeTestImage");
+        assertTrue(image instanceof NativeImage);
+        assertEquals(NativeTestSuite.MAIN_CLASS, ((NativeImage) image).getExecutable());
+        Task nativeTest = project.getTasks().findByName("nativeTest");
+        assertTrue(nativeTest instanceof NativeTest);
+        assertSame(image, ((NativeTest) nativeTest).getNativeImage());
+        assertTrue(((NativeTest) nativeTest).getResultsDir().getPath().endsWith("nativeTest"));
+    }
+
+    @Test
+    public void defaultClasspathIncludesLaterDependencies() {
+        Project project = ProjectBuilder.builder().build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.graalvm.plugin.native-image");
+        NativeImage task = project.getTasks().create("compileTools", NativeImage.class);
+        File jar = project.file("lib/late.jar");
+        project.getDependencies().add("implementation", project.files(jar));
+
+        assertEquals(Configuration.State.UNRESOLVED, project.getConfigurations().getByName("runtimeClasspath").getState());
+        Set<File> classpath = new HashSet<>();
+        task.getClasspath().forEach(classpath::add);
+        assertTrue(classpath.contains(jar));
+    }
+
 }
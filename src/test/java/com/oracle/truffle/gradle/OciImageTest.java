@@ -0,0 +1,23 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class OciImageTest {
+
+    @Test
+    public void packagesBinaryWithSharedLibrariesOnly() throws Exception {
+        File dir = Files.createTempDirectory("distributions").toFile();
+        for (String name : new String[] { "app", "libnfi.so", "app-1.0.zip", "app-1.0.tar", "app.build_artifacts.txt" }) {
+            Files.write(new File(dir, name).toPath(), new byte[] { 1 });
+        }
+        File binary = new File(dir, "app");
+        assertEquals(Arrays.asList(binary, new File(dir, "libnfi.so")), OciImage.nativeFiles(binary));
+    }
+
+}
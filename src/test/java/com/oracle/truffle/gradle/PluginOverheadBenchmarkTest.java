@@ -0,0 +1,59 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PluginOverheadBenchmarkTest {
+
+    @Test
+    public void detectsConfigurationCacheSupport() {
+        assertFalse(PluginOverheadBenchmark.supportsConfigurationCache("6.5"));
+        assertTrue(PluginOverheadBenchmark.supportsConfigurationCache("6.6"));
+        assertTrue(PluginOverheadBenchmark.supportsConfigurationCache("6.10"));
+        assertTrue(PluginOverheadBenchmark.supportsConfigurationCache("7.0"));
+        assertFalse(PluginOverheadBenchmark.supportsConfigurationCache("5.6"));
+        // The version could not be read from the output of --version.
+        assertFalse(PluginOverheadBenchmark.supportsConfigurationCache("unknown"));
+    }
+
+    @Test
+    public void reportsScenariosSlowerThanTolerance() {
+        /* Scenarios are compared per configuration cache mode, scenarios missing in the baseline are skipped. */
+        Map<String, Object> baseline = results(
+                scenario("configuration", false, 1000), scenario("configuration", true, 200), scenario("noop", false, 500)
+        );
+        Map<String, Object> results = results(
+                scenario("configuration", false, 1190), scenario("configuration", true, 260),
+                scenario("noop", false, 400), scenario("startScripts", false, 5000)
+        );
+        assertEquals(
+                Collections.singletonList("configuration/true: median 260.0 ms, baseline 200.0 ms"),
+                PluginOverheadBenchmark.regressions(baseline, results, 0.2)
+        );
+        assertEquals(2, PluginOverheadBenchmark.regressions(baseline, results, 0.1).size());
+        assertTrue(PluginOverheadBenchmark.regressions(baseline, baseline, 0).isEmpty());
+    }
+
+    @SafeVarargs
+    private static Map<String, Object> results(Map<String, Object>... scenarios) {
+        return Collections.singletonMap("scenarios", Arrays.<Object>asList(scenarios));
+    }
+
+    private static Map<String, Object> scenario(String name, boolean configurationCache, int median) {
+        Map<String, Object> scenario = new LinkedHashMap<>();
+        scenario.put("scenario", name);
+        scenario.put("configurationCache", configurationCache);
+        scenario.put("median", median);
+        return scenario;
+    }
+
+}
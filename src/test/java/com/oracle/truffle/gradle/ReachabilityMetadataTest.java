@@ -0,0 +1,56 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReachabilityMetadataTest {
+
+    private static void write(File file, String content) throws Exception {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static File repository() throws Exception {
+        File root = Files.createTempDirectory("metadata").toFile();
+        root.deleteOnExit();
+        write(new File(root, "index.json"), "[{\"module\": \"org.lib:lib\", \"directory\": \"org.lib/lib\"}]");
+        write(new File(root, "org.lib/lib/index.json"), "[" +
+                "{\"metadata-version\": \"1.0\", \"tested-versions\": [\"1.0\", \"1.1\"]}," +
+                "{\"metadata-version\": \"2.0\", \"tested-versions\": [\"2.0\"], \"latest\": true}" +
+                "]");
+        write(new File(root, "org.lib/lib/1.0/reflect-config.json"), "[]");
+        write(new File(root, "org.lib/lib/2.0/reflect-config.json"), "[]");
+        return root;
+    }
+
+    @Test
+    public void selectsTestedVersion() throws Exception {
+        File root = repository();
+        List<ReachabilityMetadata.Match> matches = new ReachabilityMetadata(root)
+                .select(Arrays.asList("org.lib:lib:1.1", "org.other:other:1.0"), true);
+        assertEquals(1, matches.size());
+        assertEquals("1.0", matches.get(0).metadataVersion);
+        assertTrue(matches.get(0).exact);
+        assertEquals(new File(root, "org.lib/lib/1.0"), matches.get(0).directory);
+    }
+
+    @Test
+    public void fallsBackToLatest() throws Exception {
+        ReachabilityMetadata metadata = new ReachabilityMetadata(repository());
+        List<ReachabilityMetadata.Match> matches = metadata.select(Arrays.asList("org.lib:lib:3.0"), true);
+        assertEquals(1, matches.size());
+        assertEquals("2.0", matches.get(0).metadataVersion);
+        assertFalse(matches.get(0).exact);
+        assertTrue(metadata.select(Arrays.asList("org.lib:lib:3.0"), false).isEmpty());
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceFilterTest {
+
+    private static final String ICU = "com/ibm/icu/impl/data/icudt67b/";
+
+    @Test
+    public void keepsSelectedLocales() {
+        ResourceFilter filter = new ResourceFilter(Arrays.asList("en", "de_CH"), Collections.emptyList());
+        assertFalse(filter.removes(ICU + "en.res"));
+        assertFalse(filter.removes(ICU + "curr/en_GB.res"));
+        assertFalse(filter.removes(ICU + "de_CH.res"));
+        assertFalse(filter.removes(ICU + "de.res"));        // parent of de_CH
+        assertTrue(filter.removes(ICU + "de_AT.res"));
+        assertTrue(filter.removes(ICU + "zone/fr.res"));
+        assertTrue(filter.removes("com/example/Messages_fr_CA.properties"));
+        assertFalse(filter.removes("com/example/Messages_en.properties"));
+        // Locale independent data and non-locale names are kept.
+        assertFalse(filter.removes(ICU + "root.res"));
+        assertFalse(filter.removes(ICU + "res_index.res"));
+        assertFalse(filter.removes(ICU + "supplementalData.res"));
+        assertFalse(filter.removes("com/example/Messages.properties"));
+        assertFalse(filter.removes("com/example/log_config.properties"));
+    }
+
+    @Test
+    public void excludesPatterns() {
+        ResourceFilter filter = new ResourceFilter(Collections.emptyList(), Arrays.asList("**/*.cnv", "com/example/samples/**"));
+        assertTrue(filter.removes(ICU + "ibm-943_P15A-2003.cnv"));
+        assertTrue(filter.removes("com/example/samples/a/b.txt"));
+        assertFalse(filter.removes("com/example/samples/"));
+        assertFalse(filter.removes("com/example/Main.class"));
+        assertEquals("(?:.*/)?[^/]*\\.cnv", ResourceFilter.globToRegex("**/*.cnv"));
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.oracle.truffle.gradle;
+
+import org.gradle.api.JavaVersion;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StartupRunTest {
+
+    @Test
+    public void readsPeakRss() throws Exception {
+        File status = File.createTempFile("status", "");
+        status.deleteOnExit();
+        Files.write(status.toPath(), Arrays.asList("Name:\tjava", "VmPeak:\t 4000 kB", "VmHWM:\t   2048 kB", "VmRSS:\t 1024 kB"), Charset.defaultCharset());
+        assertEquals(2048, StartupRun.readPeakRss(status));
+        assertEquals(-1, StartupRun.readPeakRss(null));
+    }
+
+    @Test
+    public void measuresLaunch() throws Exception {
+        /* java --version (JDK 9+) prints to stdout. */
+        if (!JavaVersion.current().isJava9Compatible()) return;
+        StartupRun run = StartupRun.launch(Arrays.asList(java(), "--version"), new File("."), Collections.emptyMap());
+        assertTrue(run.wallMillis > 0);
+        assertFalse(Double.isNaN(run.firstOutputMillis));
+        assertTrue(run.firstOutputMillis <= run.wallMillis);
+        assertTrue(run.output.contains(System.getProperty("java.vm.name")));
+        if (new File("/proc/self/status").exists()) {
+            assertTrue(run.peakRssMegabytes > 0);
+        }
+    }
+
+    @Test
+    public void ignoresErrorOutput() throws Exception {
+        /* java -version prints to stderr only, so there is no first output. */
+        StartupRun run = StartupRun.launch(Arrays.asList(java(), "-version"), new File("."), Collections.emptyMap());
+        assertTrue(Double.isNaN(run.firstOutputMillis));
+        assertEquals("", run.output);
+        try {
+            StartupRun.launch(Arrays.asList(java(), "-XX:+NoSuchStartupOption", "-version"), new File("."), Collections.emptyMap());
+            fail("The launch must fail.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("NoSuchStartupOption"));
+        }
+    }
+
+    private static String java() {
+        return new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+    }
+
+}
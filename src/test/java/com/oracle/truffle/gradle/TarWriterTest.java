@@ -0,0 +1,65 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TarWriterTest {
+
+    private static byte[] archive(String path) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarWriter tar = new TarWriter(bytes)) {
+            tar.addDirectory("app");
+            tar.addFile(path, "hello".getBytes(StandardCharsets.UTF_8), 0644);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String field(byte[] archive, int offset, int length) {
+        String value = new String(archive, offset, length, StandardCharsets.UTF_8);
+        int end = value.indexOf('\0');
+        return end < 0 ? value : value.substring(0, end);
+    }
+
+    @Test
+    public void writesPaddedEntries() throws Exception {
+        byte[] archive = archive("app/hello.txt");
+        // directory header, file header, one content block and two end blocks
+        assertEquals(5 * 512, archive.length);
+        assertEquals("app/", field(archive, 0, 100));
+        assertEquals("app/hello.txt", field(archive, 512, 100));
+        assertEquals("00000000005", field(archive, 512 + 124, 12));
+        assertEquals("hello", field(archive, 1024, 512));
+    }
+
+    @Test
+    public void computesChecksum() throws Exception {
+        byte[] archive = archive("app/hello.txt");
+        byte[] header = Arrays.copyOfRange(archive, 512, 1024);
+        long expected = 0;
+        for (int i = 0; i < header.length; i++) {
+            expected += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+        assertEquals(expected, Long.parseLong(field(header, 148, 6), 8));
+    }
+
+    @Test
+    public void splitsLongPaths() throws Exception {
+        String directory = String.join("/", Collections.nCopies(12, "directory"));
+        byte[] archive = archive(directory + "/hello.txt");
+        assertEquals("hello.txt", field(archive, 512, 100));
+        assertEquals(directory, field(archive, 512 + 345, 155));
+    }
+
+    @Test
+    public void isReproducible() throws Exception {
+        assertArrayEquals(archive("app/hello.txt"), archive("app/hello.txt"));
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTimingsTest {
+
+    private static File results(String... testCases) throws Exception {
+        File dir = Files.createTempDirectory("results").toFile();
+        dir.deleteOnExit();
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuite name=\"com.example.ParserTest\">\n"
+                + String.join("\n", testCases) + "\n</testsuite>\n";
+        Files.write(new File(dir, "TEST-com.example.ParserTest.xml").toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        return dir;
+    }
+
+    @Test
+    public void readsJUnitReports() throws Exception {
+        Map<String, TestTimings.Result> results = TestTimings.read(results(
+                "<testcase name=\"parses\" classname=\"com.example.ParserTest\" time=\"0.250\"/>",
+                "<testcase name=\"fails\" classname=\"com.example.ParserTest\" time=\"0.010\"><failure message=\"x\">trace</failure></testcase>",
+                "<testcase name=\"ignored\" classname=\"com.example.ParserTest\" time=\"0\"><skipped/></testcase>"
+        ));
+        assertEquals(3, results.size());
+        assertEquals(0.25, results.get("com.example.ParserTest.parses").seconds, 1e-9);
+        assertEquals(TestTimings.FAILED, results.get("com.example.ParserTest.fails").outcome);
+        assertEquals(1, TestTimings.count(results, TestTimings.SKIPPED));
+        assertTrue(TestTimings.read(new File("missing-results")).isEmpty());
+    }
+
+    @Test
+    public void comparesPassedTests() throws Exception {
+        Map<String, TestTimings.Result> nativeResults = TestTimings.read(results(
+                "<testcase name=\"parses\" classname=\"com.example.ParserTest\" time=\"0.100\"/>",
+                "<testcase name=\"evaluates\" classname=\"com.example.ParserTest\" time=\"0.400\"/>",
+                "<testcase name=\"fails\" classname=\"com.example.ParserTest\" time=\"0.010\"><failure message=\"x\"/></testcase>"
+        ));
+        Map<String, TestTimings.Result> jvmResults = TestTimings.read(results(
+                "<testcase name=\"parses\" classname=\"com.example.ParserTest\" time=\"0.200\"/>",
+                "<testcase name=\"evaluates\" classname=\"com.example.ParserTest\" time=\"0.200\"/>",
+                "<testcase name=\"fails\" classname=\"com.example.ParserTest\" time=\"0.010\"/>"
+        ));
+        String report = TestTimings.comparison(nativeResults, jvmResults);
+        assertTrue(report, report.contains("2 tests passed in both runs: 0.500 s native, 0.400 s JVM."));
+        assertTrue(report, report.indexOf("| com.example.ParserTest.evaluates | 400 | 200 | 2.00 |")
+                < report.indexOf("| com.example.ParserTest.parses | 100 | 200 | 0.50 |"));
+        assertTrue(report, !report.contains("fails"));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TruffleImageSupportTest {
+
+    @Test
+    public void detectsLanguagesInJarsAndDirectories() throws Exception {
+        File dir = Files.createTempDirectory("classes").toFile();
+        File registration = new File(dir, TruffleImageSupport.LANGUAGE_REGISTRATION);
+        assertTrue(registration.getParentFile().mkdirs());
+        Files.write(registration.toPath(), "language1.id=sl\nlanguage1.name=SL\n".getBytes(StandardCharsets.UTF_8));
+
+        File jar = File.createTempFile("lang", ".jar");
+        jar.deleteOnExit();
+        try (OutputStream out = Files.newOutputStream(jar.toPath()); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry(TruffleImageSupport.LANGUAGE_REGISTRATION));
+            zip.write("language1.id=js\nlanguage2.id=regex\nlanguage2.internal=true\n".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        File plain = Files.createTempDirectory("plain").toFile();
+
+        Set<String> languages = TruffleImageSupport.detectLanguages(Arrays.asList(dir, jar, plain));
+        assertEquals("[js, regex, sl]", languages.toString());
+        assertTrue(TruffleImageSupport.detectLanguages(Arrays.asList(plain)).isEmpty());
+    }
+
+    @Test
+    public void findsRuntimeCompilationMarker() throws Exception {
+        /* The marker is searched in both string encodings, also across read boundaries. */
+        byte[] marker = ("com.oracle.svm.truffle.api." + TruffleImageSupport.RUNTIME_COMPILATION_MARKER).getBytes(StandardCharsets.UTF_16LE);
+        byte[] data = new byte[(1 << 20) + 100];
+        System.arraycopy(marker, 0, data, (1 << 20) - 20, marker.length);
+        File binary = File.createTempFile("binary", "");
+        binary.deleteOnExit();
+        Files.write(binary.toPath(), data);
+        assertTrue(TruffleImageSupport.containsRuntimeCompilation(binary));
+
+        Files.write(binary.toPath(), ("xx" + TruffleImageSupport.RUNTIME_COMPILATION_MARKER + "yy").getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(TruffleImageSupport.containsRuntimeCompilation(binary));
+
+        Files.write(binary.toPath(), "DefaultTruffleRuntime".getBytes(StandardCharsets.ISO_8859_1));
+        assertFalse(TruffleImageSupport.containsRuntimeCompilation(binary));
+    }
+
+}
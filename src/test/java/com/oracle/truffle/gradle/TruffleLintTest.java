@@ -0,0 +1,174 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TruffleLintTest {
+
+    @Retention(RetentionPolicy.CLASS)
+    @interface Limit {
+        String limit();
+    }
+
+    @SuppressWarnings("unused")
+    static class Fixture {
+
+        int counter;
+        final int fixed = 1;
+
+        @Limit(limit = "3")
+        int executeInt(int x) {
+            switch (x) {
+                case 1: counter += 1; break;
+                case 1000: counter += 2; break;
+                default: break;
+            }
+            switch (x) {
+                case 0: case 1: case 2: case 3: counter -= 1; break;
+                default: break;
+            }
+            if (counter > x) throw new IllegalStateException(toString());
+            return executeInt(x - 1) + fixed;
+        }
+
+        Fixture next;
+
+        int executeNext(long x, int[] values) {
+            if (x == 0) return next.executeNext(x, values);
+            return executeNext(x > 1 ? x - 2 : 0L, values) + next.executeNext(x - 1, values);
+        }
+
+    }
+
+    @Test
+    public void readsClassFile() throws Exception {
+        ClassFile type;
+        try (InputStream stream = Fixture.class.getResourceAsStream("TruffleLintTest$Fixture.class")) {
+            type = ClassFile.read(stream);
+        }
+        assertEquals("com/oracle/truffle/gradle/TruffleLintTest$Fixture", type.name);
+        assertEquals("java/lang/Object", type.superName);
+        assertEquals("TruffleLintTest.java", type.sourceFile);
+        assertFalse(type.findField("counter").is(ClassFile.ACC_FINAL));
+        assertTrue(type.findField("fixed").is(ClassFile.ACC_FINAL));
+
+        ClassFile.Method method = type.findMethod("executeInt", "(I)I");
+        assertEquals("3", method.annotations.get("Lcom/oracle/truffle/gradle/TruffleLintTest$Limit;").get("limit"));
+        List<String> instructions = new ArrayList<>();
+        for (ClassFile.Instruction instruction : method.instructions) {
+            assertTrue(instruction.line > 0);
+            instructions.add(instruction.opcode + " " + instruction.owner + (instruction.name == null ? "" : "." + instruction.name));
+        }
+        // Instructions after both switches are decoded.
+        assertTrue(instructions.toString(), instructions.contains(ClassFile.NEW + " java/lang/IllegalStateException"));
+        assertTrue(instructions.toString(), instructions.contains(ClassFile.INVOKEVIRTUAL + " java/lang/Object.toString"));
+        assertEquals(ClassFile.INVOKEVIRTUAL + " com/oracle/truffle/gradle/TruffleLintTest$Fixture.executeInt", instructions.get(instructions.size() - 1));
+        assertTrue(method.instructions.get(method.instructions.size() - 1).onThis);
+    }
+
+    @Test
+    public void tracksReceivers() throws Exception {
+        ClassFile type;
+        try (InputStream stream = Fixture.class.getResourceAsStream("TruffleLintTest$Fixture.class")) {
+            type = ClassFile.read(stream);
+        }
+        /* Calls on the next node and on this, with a wide argument and a conditional expression before the call. */
+        List<String> receivers = new ArrayList<>();
+        for (ClassFile.Instruction instruction : type.findMethod("executeNext", "(J[I)I").instructions) {
+            receivers.add(instruction.name + (instruction.onThis ? " this" : " other"));
+        }
+        assertEquals("[next this, executeNext other, executeNext this, next this, executeNext other]", receivers.toString());
+    }
+
+    @Test
+    public void findsHazardsInNodes() {
+        ClassFile node = new ClassFile("lang/AddNode", "com/oracle/truffle/api/nodes/Node");
+        node.fields.add(new ClassFile.Annotated("cache", "I", 0));
+        node.fields.add(annotated(new ClassFile.Annotated("left", "Llang/AddNode;", 0), TruffleLintRules.CHILD));
+        node.fields.add(annotated(new ClassFile.Annotated("stable", "I", 0), TruffleLintRules.COMPILATION_FINAL));
+        node.fields.add(new ClassFile.Annotated("constant", "I", ClassFile.ACC_FINAL));
+
+        ClassFile.Method execute = new ClassFile.Method("executeGeneric", "()Ljava/lang/Object;", 0);
+        execute.instructions.add(instruction(ClassFile.GETFIELD, "lang/AddNode", "cache", "I"));
+        execute.instructions.add(instruction(ClassFile.GETFIELD, "lang/AddNode", "left", "Llang/AddNode;"));
+        execute.instructions.add(instruction(ClassFile.GETFIELD, "lang/AddNode", "stable", "I"));
+        execute.instructions.add(instruction(ClassFile.GETFIELD, "lang/AddNode", "constant", "I"));
+        // Mutable fields of objects which are not nodes are not partially evaluated as constants.
+        execute.instructions.add(instruction(ClassFile.GETFIELD, "lang/Counter", "count", "I"));
+        execute.instructions.add(instruction(ClassFile.NEW, "java/lang/IllegalStateException", null, null));
+        execute.instructions.add(instruction(ClassFile.INVOKEVIRTUAL, "java/lang/Object", "toString", "()Ljava/lang/String;"));
+        execute.instructions.add(instruction(ClassFile.INVOKEVIRTUAL, "java/lang/Integer", "equals", "(Ljava/lang/Object;)Z"));
+        execute.instructions.add(onThis(instruction(ClassFile.INVOKEVIRTUAL, "lang/AddNode", "executeGeneric", "()Ljava/lang/Object;")));
+        // The same method of the left child is not recursion.
+        execute.instructions.add(instruction(ClassFile.INVOKEVIRTUAL, "lang/AddNode", "executeGeneric", "()Ljava/lang/Object;"));
+        node.methods.add(execute);
+
+        ClassFile.Method checked = new ClassFile.Method("executeChecked", "()V", 0);
+        checked.instructions.add(instruction(ClassFile.INVOKESTATIC, TruffleLintRules.COMPILER_DIRECTIVES, "transferToInterpreterAndInvalidate", "()V"));
+        checked.instructions.add(instruction(ClassFile.NEW, "java/lang/IllegalStateException", null, null));
+        node.methods.add(checked);
+
+        ClassFile.Method boundary = annotated(new ClassFile.Method("executeSlowly", "()V", 0), TruffleLintRules.TRUFFLE_BOUNDARY);
+        boundary.instructions.add(instruction(ClassFile.GETFIELD, "lang/AddNode", "cache", "I"));
+        node.methods.add(boundary);
+
+        ClassFile.Method cached = new ClassFile.Method("doCached", "(I)I", 0);
+        cached.annotations.put(TruffleLintRules.SPECIALIZATION, Collections.singletonMap("limit", "Integer.MAX_VALUE"));
+        node.methods.add(cached);
+        ClassFile.Method bounded = new ClassFile.Method("doBounded", "(I)I", 0);
+        bounded.annotations.put(TruffleLintRules.SPECIALIZATION, Collections.singletonMap("limit", "3"));
+        node.methods.add(bounded);
+
+        // Generated code and classes which are not nodes are skipped.
+        ClassFile generated = new ClassFile("lang/AddNodeGen", "lang/AddNode");
+        ClassFile.Method generatedExecute = new ClassFile.Method("executeGeneric", "()Ljava/lang/Object;", 0);
+        generatedExecute.instructions.add(instruction(ClassFile.GETFIELD, "lang/AddNode", "cache", "I"));
+        generated.methods.add(generatedExecute);
+        ClassFile helper = new ClassFile("lang/Helper", "java/lang/Object");
+        helper.methods.add(execute);
+        ClassFile counter = new ClassFile("lang/Counter", "java/lang/Object");
+        counter.fields.add(new ClassFile.Annotated("count", "I", 0));
+
+        Map<String, ClassFile> classes = new LinkedHashMap<>();
+        for (ClassFile type : new ClassFile[] { node, generated, helper, counter }) classes.put(type.name, type);
+        List<String> findings = new ArrayList<>();
+        for (TruffleLintRules.Finding finding : new TruffleLintRules(classes, 8).check()) {
+            findings.add(finding.rule + " " + finding.member);
+            assertEquals("lang.AddNode", finding.className);
+        }
+        assertEquals(
+                "[non-final-field executeGeneric, exception-in-fast-path executeGeneric, object-method executeGeneric, "
+                        + "recursion executeGeneric, specialization-limit doCached]",
+                findings.toString()
+        );
+    }
+
+    private static <T extends ClassFile.Annotated> T annotated(T member, String annotation) {
+        member.annotations.put(annotation, Collections.emptyMap());
+        return member;
+    }
+
+    private static ClassFile.Instruction onThis(ClassFile.Instruction instruction) {
+        instruction.onThis = true;
+        return instruction;
+    }
+
+    private static ClassFile.Instruction instruction(int opcode, String owner, String name, String descriptor) {
+        ClassFile.Instruction instruction = new ClassFile.Instruction(0, opcode, owner, name, descriptor);
+        instruction.line = 10;
+        return instruction;
+    }
+
+}
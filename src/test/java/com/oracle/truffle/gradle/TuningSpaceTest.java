@@ -0,0 +1,70 @@
+package com.oracle.truffle.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TuningSpaceTest {
+
+    private static TuningSpace space() {
+        TuningSpace space = new TuningSpace();
+        space.add("threshold", Arrays.asList("-Dpolyglot.engine.CompilationThreshold=100", "-Dpolyglot.engine.CompilationThreshold=1000"));
+        space.add("gc", Arrays.asList("", "-XX:+UseParallelGC", "-XX:+UseG1GC"));
+        space.add("heap", Arrays.asList("-Xms1g -Xmx1g", "-Xmx4g"));
+        return space;
+    }
+
+    @Test
+    public void enumeratesConfigurations() {
+        TuningSpace space = space();
+        assertEquals(12, space.size());
+        List<Map<String, String>> all = space.configurations(100);
+        assertEquals(12, all.size());
+        assertEquals(12, new HashSet<>(all).size());
+        Map<String, String> first = all.get(0);
+        assertEquals(Arrays.asList("-Dpolyglot.engine.CompilationThreshold=100", "-Xms1g", "-Xmx1g"), TuningSpace.args(first));
+        assertEquals("threshold=-Dpolyglot.engine.CompilationThreshold=100 heap=-Xms1g -Xmx1g", TuningSpace.label(first));
+        assertEquals("-Xmx4g", all.get(1).get("heap"));     // last dimension changes fastest
+    }
+
+    @Test
+    public void samplesLargeSpaces() {
+        List<Map<String, String>> sample = space().configurations(5);
+        assertEquals(5, sample.size());
+        assertEquals(5, new HashSet<>(sample).size());
+        assertEquals(sample, space().configurations(5));    // reproducible
+    }
+
+    @Test
+    public void scoresRelativeToBest() {
+        List<Double> scores = TuningSpace.scores(
+                Arrays.asList(10.0, 20.0, 10.0),
+                Arrays.asList(100.0, 50.0, Double.NaN),
+                0.5
+        );
+        assertEquals(0.75, scores.get(0), 1e-9);
+        assertEquals(0.75, scores.get(1), 1e-9);
+        assertEquals(1.0, scores.get(2), 1e-9);        // no iterations, steady state only
+        assertEquals(TuningSpace.DEFAULT, TuningSpace.label(Collections.singletonMap("gc", "")));
+    }
+
+    @Test
+    public void readsSettingsFile() throws Exception {
+        File file = File.createTempFile("graal-tuning", ".args");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "# generated\n-XX:+UseParallelGC\n\n -Dpolyglot.engine.CompilerThreads=2 \n".getBytes(Charset.defaultCharset()));
+        assertEquals(Arrays.asList("-XX:+UseParallelGC", "-Dpolyglot.engine.CompilerThreads=2"), TuningSpace.readSettings(file));
+        assertTrue(TuningSpace.readSettings(new File(file.getPath() + ".missing")).isEmpty());
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.oracle.truffle.gradle.agent;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.management.ObjectName;
+
+/**
+ * <p>Java agent exposing compilation metrics of Truffle and the JVM (see {@link TruffleMetricsMBean}) through
+ * JMX and a Prometheus text endpoint ({@code http://127.0.0.1:9404/metrics} by default). The compiler plugin
+ * bundles it into distributions and adds it to fork tasks when requested:</p>
+ *
+ * {@code
+ * java -javaagent:truffle-metrics-agent.jar=port=9404,host=127.0.0.1 ...
+ * }
+ *
+ * <p>Options are {@code host}, {@code port} ({@code off} disables the endpoint) and {@code jmx} ({@code false}
+ * disables the MBean). The agent does not initialize Truffle: it waits until the application loads the Truffle
+ * API and then registers a compilation listener with the runtime, so it has no effect on applications which do
+ * not use Truffle besides the JVM metrics.</p>
+ */
+public final class MetricsAgent {
+
+    public static final String OBJECT_NAME = "org.graalvm.plugin:type=TruffleMetrics";
+
+    private static final String TRUFFLE_CLASS = "com/oracle/truffle/api/Truffle";
+
+    private MetricsAgent() {}
+
+    public static void premain(String args, Instrumentation instrumentation) {
+        start(args, instrumentation);
+    }
+
+    public static void agentmain(String args, Instrumentation instrumentation) {
+        start(args, instrumentation);
+    }
+
+    private static void start(String args, Instrumentation instrumentation) {
+        Map<String, String> options = parseOptions(args);
+        TruffleMetrics metrics = new TruffleMetrics();
+        if (!"false".equals(options.get("jmx"))) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                System.err.println("WARNING: Truffle metrics are not registered in JMX: " + e);
+            }
+        }
+        String port = options.getOrDefault("port", "9404");
+        if (!"off".equals(port)) {
+            try {
+                startServer(metrics, options.getOrDefault("host", "127.0.0.1"), Integer.parseInt(port));
+            } catch (IOException | RuntimeException e) {
+                // Typically a port used by another process, JMX still works.
+                System.err.println("WARNING: Truffle metrics endpoint not started on port " + port + ": " + e);
+            }
+        }
+        for (Class<?> loaded : instrumentation.getAllLoadedClasses()) {
+            if (loaded.getName().equals(TRUFFLE_CLASS.replace('/', '.'))) {
+                attachLater(metrics, instrumentation, loaded.getClassLoader());
+                return;
+            }
+        }
+        instrumentation.addTransformer(new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> redefined, ProtectionDomain domain, byte[] bytes) {
+                if (TRUFFLE_CLASS.equals(className)) {
+                    instrumentation.removeTransformer(this);
+                    attachLater(metrics, instrumentation, loader);
+                }
+                return null;    // classes are never changed
+            }
+        });
+    }
+
+    static Map<String, String> parseOptions(String args) {
+        Map<String, String> options = new HashMap<>();
+        if (args == null) return options;
+        for (String option : args.split(",")) {
+            int separator = option.indexOf('=');
+            if (separator > 0) options.put(option.substring(0, separator).trim(), option.substring(separator + 1).trim());
+        }
+        return options;
+    }
+
+    private static void startServer(TruffleMetrics metrics, String host, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // The dispatcher thread inherits the daemon flag of the thread starting the server.
+        Thread starter = new Thread(server::start, "truffle-metrics-http");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    /* The listener is registered from a separate thread, class loading must not wait for the Truffle runtime. */
+    private static void attachLater(TruffleMetrics metrics, Instrumentation instrumentation, ClassLoader loader) {
+        Thread thread = new Thread(() -> {
+            try {
+                Object runtime = Class.forName(TRUFFLE_CLASS.replace('/', '.'), true, loader).getMethod("getRuntime").invoke(null);
+                Method addListener = null;
+                for (Method method : runtime.getClass().getMethods()) {
+                    if (method.getName().equals("addListener") && method.getParameterCount() == 1
+                            && method.getParameterTypes()[0].isInterface()) {
+                        addListener = method;
+                    }
+                }
+                if (addListener == null) {
+                    System.err.println("WARNING: " + runtime.getClass().getName() + " does not report compilations, "
+                            + "Truffle metrics are not available (interpreter only runtime?).");
+                    return;
+                }
+                Class<?> listenerType = addListener.getParameterTypes()[0];
+                exportPackages(instrumentation, addListener.getDeclaringClass(), listenerType);
+                Object listener = Proxy.newProxyInstance(listenerType.getClassLoader(), new Class<?>[] { listenerType }, metrics.listener());
+                addListener.invoke(runtime, listener);
+                metrics.setTruffleAttached();
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.err.println("WARNING: Truffle metrics are not available: " + e);
+            }
+        }, "truffle-metrics-attach");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+        With the compiler on the module path (JDK 9+), the Truffle runtime is in a named module which does not
+        export its packages to the application. Instrumentation.redefineModule (called reflectively, the agent
+        is compiled for Java 8) exports them to the agent.
+     */
+    private static void exportPackages(Instrumentation instrumentation, Class<?>... types) throws ReflectiveOperationException {
+        Method getModule;
+        try {
+            getModule = Class.class.getMethod("getModule");
+        } catch (NoSuchMethodException e) {
+            return;     // Java 8
+        }
+        Object agentModule = getModule.invoke(MetricsAgent.class);
+        Method redefineModule = null;
+        for (Method method : Instrumentation.class.getMethods()) {
+            if (method.getName().equals("redefineModule")) redefineModule = method;
+        }
+        if (redefineModule == null) return;
+        for (Class<?> type : types) {
+            Object module = getModule.invoke(type);
+            if (!(Boolean) module.getClass().getMethod("isNamed").invoke(module)) continue;
+            Set<Object> agent = new HashSet<>(Collections.singleton(agentModule));
+            Map<String, Set<Object>> exports = Collections.singletonMap(type.getPackage().getName(), agent);
+            redefineModule.invoke(instrumentation, module, Collections.emptySet(), exports, Collections.emptyMap(),
+                    Collections.emptySet(), Collections.emptyMap());
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.oracle.truffle.gradle.agent;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Compilation counters of the Truffle runtime and the JVM. Truffle events are received by a proxy of the
+ * runtime listener interface (see {@link #listener()}), so the counters only cost a map update per compilation.
+ * JVM values are read from the platform MXBeans when requested.</p>
+ */
+public final class TruffleMetrics implements TruffleMetricsMBean {
+
+    private volatile boolean truffleAttached;
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong compileNanos = new AtomicLong();
+    private final AtomicLong deoptimizations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    // Call targets are compared by identity, the maps only hold targets between two events.
+    private final Map<Object, Long> queuedAt = new IdentityHashMap<>();
+    private final Map<Object, Long> startedAt = new IdentityHashMap<>();
+
+    void setTruffleAttached() {
+        this.truffleAttached = true;
+    }
+
+    /**
+     * @return Handler of the Truffle runtime listener, methods are dispatched by name.
+     */
+    InvocationHandler listener() {
+        return this::onEvent;
+    }
+
+    private Object onEvent(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "hashCode": return System.identityHashCode(proxy);
+            case "equals": return proxy == args[0];
+            case "toString": return "TruffleMetrics listener";
+            default: break;
+        }
+        Object target = args == null || args.length == 0 ? null : args[0];
+        long now = System.nanoTime();
+        switch (method.getName()) {
+            case "onCompilationQueued":
+                this.queued.incrementAndGet();
+                synchronized (this.queuedAt) {
+                    this.queuedAt.put(target, now);
+                }
+                break;
+            case "onCompilationDequeued":
+                dequeued(target, now, false);
+                break;
+            case "onCompilationStarted":
+                dequeued(target, now, true);
+                synchronized (this.startedAt) {
+                    this.startedAt.put(target, now);
+                }
+                break;
+            case "onCompilationSuccess":
+                this.succeeded.incrementAndGet();
+                finished(target, now);
+                break;
+            case "onCompilationFailed":
+                this.failed.incrementAndGet();
+                finished(target, now);
+                break;
+            case "onCompilationDeoptimized":
+                this.deoptimizations.incrementAndGet();
+                break;
+            case "onCompilationInvalidated":
+                this.invalidations.incrementAndGet();
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    private void dequeued(Object target, long now, boolean started) {
+        Long since;
+        synchronized (this.queuedAt) {
+            since = this.queuedAt.remove(target);
+        }
+        if (since != null && started) this.queueWaitNanos.addAndGet(now - since);
+    }
+
+    private void finished(Object target, long now) {
+        Long since;
+        synchronized (this.startedAt) {
+            since = this.startedAt.remove(target);
+        }
+        if (since != null) this.compileNanos.addAndGet(now - since);
+    }
+
+    @Override
+    public boolean isTruffleAttached() {
+        return this.truffleAttached;
+    }
+
+    @Override
+    public long getCompilationsQueued() {
+        return this.queued.get();
+    }
+
+    @Override
+    public int getCompileQueueSize() {
+        synchronized (this.queuedAt) {
+            return this.queuedAt.size();
+        }
+    }
+
+    @Override
+    public long getCompileQueueWaitMillis() {
+        return this.queueWaitNanos.get() / 1_000_000;
+    }
+
+    @Override
+    public long getCompilationsSucceeded() {
+        return this.succeeded.get();
+    }
+
+    @Override
+    public long getCompilationsFailed() {
+        return this.failed.get();
+    }
+
+    @Override
+    public long getTruffleCompileTimeMillis() {
+        return this.compileNanos.get() / 1_000_000;
+    }
+
+    @Override
+    public long getDeoptimizations() {
+        return this.deoptimizations.get();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    @Override
+    public long getJitCompileTimeMillis() {
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        return compilation != null && compilation.isCompilationTimeMonitoringSupported()
+                ? compilation.getTotalCompilationTime() : -1;
+    }
+
+    @Override
+    public String getJitCompilerName() {
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        return compilation == null ? "none" : compilation.getName();
+    }
+
+    @Override
+    public long getCodeCacheUsedBytes() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : codeCachePools()) {
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    @Override
+    public long getCodeCacheMaxBytes() {
+        long max = 0;
+        for (MemoryPoolMXBean pool : codeCachePools()) {
+            if (pool.getUsage().getMax() < 0) return -1;
+            max += pool.getUsage().getMax();
+        }
+        return max;
+    }
+
+    /* "Code Cache" on JDK 8, "CodeHeap '...'" segments on later versions. */
+    private static List<MemoryPoolMXBean> codeCachePools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.NON_HEAP && pool.getName().startsWith("Code")) pools.add(pool);
+        }
+        return pools;
+    }
+
+    /**
+     * @return All counters in the Prometheus text exposition format.
+     */
+    String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        metric(text, "truffle_attached", "gauge", "1 if Truffle compilations are observed.", this.truffleAttached ? 1 : 0);
+        metric(text, "truffle_compilations_queued_total", "counter", "Call targets queued for compilation.", getCompilationsQueued());
+        metric(text, "truffle_compile_queue_size", "gauge", "Call targets waiting for compilation.", getCompileQueueSize());
+        metric(text, "truffle_compile_queue_wait_seconds_total", "counter", "Time call targets waited for compilation.", this.queueWaitNanos.get() / 1e9);
+        metric(text, "truffle_compilations_succeeded_total", "counter", "Successful Truffle compilations.", getCompilationsSucceeded());
+        metric(text, "truffle_compilations_failed_total", "counter", "Failed Truffle compilations.", getCompilationsFailed());
+        metric(text, "truffle_compile_seconds_total", "counter", "Duration of Truffle compilations.", this.compileNanos.get() / 1e9);
+        metric(text, "truffle_deoptimizations_total", "counter", "Deoptimizations of compiled call targets.", getDeoptimizations());
+        metric(text, "truffle_invalidations_total", "counter", "Invalidations of compiled call targets.", getInvalidations());
+        long jitMillis = getJitCompileTimeMillis();
+        if (jitMillis >= 0) {
+            metric(text, "jvm_jit_compile_seconds_total", "counter", "Compilation time of the JIT compilers (" + getJitCompilerName() + ").", jitMillis / 1e3);
+        }
+        metric(text, "jvm_code_cache_used_bytes", "gauge", "Used bytes of the code cache.", getCodeCacheUsedBytes());
+        long max = getCodeCacheMaxBytes();
+        if (max >= 0) {
+            metric(text, "jvm_code_cache_max_bytes", "gauge", "Maximal size of the code cache.", max);
+        }
+        return text.toString();
+    }
+
+    private static void metric(StringBuilder text, String name, String type, String help, double value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    /* Sample values of the text format: integers without a fraction, NaN and +Inf/-Inf as Prometheus spells them. */
+    static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+}
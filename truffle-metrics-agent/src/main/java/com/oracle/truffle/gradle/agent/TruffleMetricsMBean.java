@@ -0,0 +1,48 @@
+package com.oracle.truffle.gradle.agent;
+
+/**
+ * <p>Counters exposed by the metrics agent through JMX (as {@value MetricsAgent#OBJECT_NAME}). Truffle counters
+ * stay zero until the Truffle runtime of the application is initialized.</p>
+ */
+public interface TruffleMetricsMBean {
+
+    /** @return True if the agent listens to compilations of the Truffle runtime. */
+    boolean isTruffleAttached();
+
+    /** @return Call targets queued for compilation since start. */
+    long getCompilationsQueued();
+
+    /** @return Call targets currently waiting in the compile queue. */
+    int getCompileQueueSize();
+
+    /** @return Total time call targets waited in the compile queue. */
+    long getCompileQueueWaitMillis();
+
+    /** @return Successful Truffle compilations. */
+    long getCompilationsSucceeded();
+
+    /** @return Failed (bailed out) Truffle compilations. */
+    long getCompilationsFailed();
+
+    /** @return Total duration of Truffle compilations. */
+    long getTruffleCompileTimeMillis();
+
+    /** @return Deoptimizations of compiled call targets. */
+    long getDeoptimizations();
+
+    /** @return Invalidations of compiled call targets (e.g. after an assumption failed). */
+    long getInvalidations();
+
+    /** @return Total compilation time of the JVM JIT compilers (including JVMCI), -1 if not available. */
+    long getJitCompileTimeMillis();
+
+    /** @return Name of the JVM JIT compiler. */
+    String getJitCompilerName();
+
+    /** @return Used bytes of all code cache memory pools. */
+    long getCodeCacheUsedBytes();
+
+    /** @return Maximal size of all code cache memory pools, -1 if undefined. */
+    long getCodeCacheMaxBytes();
+
+}
@@ -0,0 +1,38 @@
+package com.oracle.truffle.gradle.agent;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsAgentTest {
+
+    @Test
+    public void parsesAgentArguments() {
+        /* The arguments written by the compiler plugin, with the endpoint disabled. */
+        Map<String, String> options = MetricsAgent.parseOptions("host=127.0.0.1,port=off,jmx=true");
+        assertEquals(3, options.size());
+        assertEquals("127.0.0.1", options.get("host"));
+        assertEquals("off", options.get("port"));
+        assertEquals("true", options.get("jmx"));
+    }
+
+    @Test
+    public void ignoresMalformedOptions() {
+        /* Entries are trimmed, entries without a name or value separator are skipped. */
+        Map<String, String> options = MetricsAgent.parseOptions(" port = 9500 ,jmx,=false,host=");
+        assertEquals(2, options.size());
+        assertEquals("9500", options.get("port"));
+        assertEquals("", options.get("host"));
+    }
+
+    @Test
+    public void acceptsMissingArguments() {
+        /* -javaagent:truffle-metrics-agent.jar without arguments uses the defaults. */
+        assertTrue(MetricsAgent.parseOptions(null).isEmpty());
+        assertTrue(MetricsAgent.parseOptions("").isEmpty());
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.oracle.truffle.gradle.agent;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TruffleMetricsTest {
+
+    /* Same method names as the listener of the Truffle runtime, which the agent only knows by name. */
+    public interface CompilationListener {
+
+        void onCompilationQueued(Object target);
+
+        void onCompilationDequeued(Object target, Object source, CharSequence reason);
+
+        void onCompilationStarted(Object target);
+
+        void onCompilationSuccess(Object target, Object tier, Object graph, Object result);
+
+        void onCompilationFailed(Object target, String reason, boolean bailout, boolean permanentBailout);
+
+        void onCompilationDeoptimized(Object target, Object frame);
+
+        void onCompilationInvalidated(Object target, Object source, CharSequence reason);
+
+        void onEngineClosed(Object runtime);
+
+    }
+
+    private static CompilationListener listener(TruffleMetrics metrics) {
+        return (CompilationListener) Proxy.newProxyInstance(
+                CompilationListener.class.getClassLoader(), new Class<?>[] { CompilationListener.class }, metrics.listener()
+        );
+    }
+
+    @Test
+    public void tracksCompileQueue() {
+        /* Dequeued targets leave the queue without a compilation, started targets count their queue wait. */
+        TruffleMetrics metrics = new TruffleMetrics();
+        CompilationListener listener = listener(metrics);
+        Object fib = new Object();
+        Object loop = new Object();
+        listener.onCompilationQueued(fib);
+        listener.onCompilationQueued(loop);
+        assertEquals(2, metrics.getCompilationsQueued());
+        assertEquals(2, metrics.getCompileQueueSize());
+
+        listener.onCompilationStarted(fib);
+        assertEquals(1, metrics.getCompileQueueSize());
+        listener.onCompilationDequeued(loop, null, "target invalidated");
+        assertEquals(0, metrics.getCompileQueueSize());
+        assertEquals(2, metrics.getCompilationsQueued());
+        assertTrue(metrics.getCompileQueueWaitMillis() >= 0);
+    }
+
+    @Test
+    public void countsCompilationResults() {
+        TruffleMetrics metrics = new TruffleMetrics();
+        CompilationListener listener = listener(metrics);
+        Object fib = new Object();
+        listener.onCompilationQueued(fib);
+        listener.onCompilationStarted(fib);
+        listener.onCompilationSuccess(fib, null, null, null);
+        listener.onCompilationDeoptimized(fib, null);
+        listener.onCompilationInvalidated(fib, null, "assumption");
+        // A failure of a target the agent did not see start (attached late) has no duration.
+        listener.onCompilationFailed(new Object(), "bailout", true, false);
+        listener.onEngineClosed(null);
+
+        assertEquals(1, metrics.getCompilationsSucceeded());
+        assertEquals(1, metrics.getCompilationsFailed());
+        assertEquals(1, metrics.getDeoptimizations());
+        assertEquals(1, metrics.getInvalidations());
+        assertEquals(0, metrics.getCompileQueueSize());
+        assertTrue(metrics.getTruffleCompileTimeMillis() >= 0);
+    }
+
+    @Test
+    public void proxyBehavesAsObject() {
+        /* The runtime keeps listeners in collections, so identity methods must not count events. */
+        TruffleMetrics metrics = new TruffleMetrics();
+        CompilationListener first = listener(metrics);
+        CompilationListener second = listener(metrics);
+        assertEquals(first, first);
+        assertNotEquals(first, second);
+        assertEquals(System.identityHashCode(first), first.hashCode());
+        assertEquals("TruffleMetrics listener", first.toString());
+        assertEquals(0, metrics.getCompilationsQueued());
+    }
+
+    @Test
+    public void exposesPrometheusText() {
+        TruffleMetrics metrics = new TruffleMetrics();
+        CompilationListener listener = listener(metrics);
+        Object fib = new Object();
+        listener.onCompilationQueued(fib);
+        listener.onCompilationStarted(fib);
+        listener.onCompilationSuccess(fib, null, null, null);
+        String text = metrics.toPrometheus();
+
+        assertTrue(text.startsWith("# HELP truffle_attached 1 if Truffle compilations are observed.\n# TYPE truffle_attached gauge\ntruffle_attached 0\n"));
+        assertTrue(text.contains("\n# TYPE truffle_compilations_queued_total counter\ntruffle_compilations_queued_total 1\n"));
+        assertTrue(text.contains("\ntruffle_compilations_succeeded_total 1\n"));
+        assertTrue(text.contains("\ntruffle_compile_queue_size 0\n"));
+        assertTrue(text.contains("\n# TYPE jvm_code_cache_used_bytes gauge\n"));
+        metrics.setTruffleAttached();
+        assertTrue(metrics.toPrometheus().contains("\ntruffle_attached 1\n"));
+        for (String line : text.split("\n")) {
+            // Every sample is "<name> <value>" with a value in the text format.
+            if (!line.startsWith("#")) assertTrue(line, line.matches("[a-z_]+ (-?[0-9]+(\\.[0-9]+)?|NaN|[+-]Inf)"));
+        }
+    }
+
+    @Test
+    public void formatsSampleValues() {
+        assertEquals("42", TruffleMetrics.format(42));
+        assertEquals("0", TruffleMetrics.format(0));
+        assertEquals("-3", TruffleMetrics.format(-3));
+        assertEquals("0.125000", TruffleMetrics.format(0.125));
+        assertEquals("0.000001", TruffleMetrics.format(1e-6));
+        assertEquals("NaN", TruffleMetrics.format(Double.NaN));
+        assertEquals("+Inf", TruffleMetrics.format(Double.POSITIVE_INFINITY));
+        assertEquals("-Inf", TruffleMetrics.format(Double.NEGATIVE_INFINITY));
+        assertFalse(TruffleMetrics.format(1e20).contains("E"));
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.oracle.truffle.gradle.runtime;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>A bounded, thread-safe pool of polyglot contexts sharing one {@link Engine}. At most
+ * {@code maxContexts} contexts exist at the same time, callers block until a context is available.
+ * Contexts are created lazily and reused, so guest global state survives between uses of the same
+ * context; use {@link #newContext()} when every use needs a fresh context (it still shares compiled code
+ * through the engine).</p>
+ */
+public final class ContextPool implements AutoCloseable {
+
+    private final Engine engine;
+    private final String[] permittedLanguages;
+    private final SourceCache sources;
+    private final Semaphore permits;
+    private final Deque<Context> idle = new ArrayDeque<>();
+    private volatile Consumer<Context.Builder> customizer = builder -> builder.allowAllAccess(true);
+    private boolean closed = false;
+
+    public ContextPool(Engine engine, int maxContexts, SourceCache sources, String... permittedLanguages) {
+        if (maxContexts < 1) {
+            throw new IllegalArgumentException("Context pool needs at least one context, got " + maxContexts + ".");
+        }
+        this.engine = engine;
+        this.permittedLanguages = permittedLanguages;
+        this.sources = sources;
+        this.permits = new Semaphore(maxContexts, true);
+    }
+
+    /**
+     * Replace the configuration of newly created contexts (default is {@code allowAllAccess(true)}).
+     *
+     * @param customizer Action applied to the builder of every new context.
+     */
+    public void setContextCustomizer(Consumer<Context.Builder> customizer) {
+        this.customizer = customizer;
+    }
+
+    /**
+     * @return Cache of parsed sources shared by all users of the pool.
+     */
+    public SourceCache getSources() {
+        return this.sources;
+    }
+
+    /**
+     * @return The engine shared by all pooled contexts.
+     */
+    public Engine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * Run the action with a pooled context, waiting until one is available.
+     *
+     * @param action Action using the context. It must not keep the context (or its values) after it returns.
+     * @return Result of the action.
+     */
+    public <T> T withContext(Function<Context, T> action) {
+        Context context = acquire();
+        try {
+            return action.apply(context);
+        } finally {
+            release(context);
+        }
+    }
+
+    /**
+     * Take a context from the pool, waiting until one is available. Every acquired context must be
+     * returned using {@link #release(Context)}.
+     *
+     * @return A pooled context.
+     */
+    public Context acquire() {
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a context.", e);
+        }
+        synchronized (this) {
+            if (this.closed) {
+                this.permits.release();
+                throw new IllegalStateException("Context pool is closed.");
+            }
+            Context context = this.idle.pollFirst();
+            if (context != null) return context;
+        }
+        try {
+            return newContext();
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a context acquired from this pool.
+     *
+     * @param context The context.
+     */
+    public void release(Context context) {
+        synchronized (this) {
+            if (this.closed) {
+                context.close();
+            } else {
+                this.idle.addFirst(context);    // most recently used contexts are the warmest
+            }
+        }
+        this.permits.release();
+    }
+
+    /**
+     * Create a context which is not pooled but shares the engine of the pool. The caller closes it.
+     *
+     * @return A new context.
+     */
+    public Context newContext() {
+        Context.Builder builder = Context.newBuilder(this.permittedLanguages).engine(this.engine);
+        this.customizer.accept(builder);
+        return builder.build();
+    }
+
+    /**
+     * Close all idle contexts. Contexts in use are closed when they are released.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        for (Context context : this.idle) {
+            context.close();
+        }
+        this.idle.clear();
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.oracle.truffle.gradle.runtime;
+
+import org.graalvm.polyglot.Engine;
+
+/**
+ * <p>One polyglot {@link Engine} per JVM, shared by all contexts of the application, so that guest code
+ * compiled for one context is reused by the others instead of warming up again:</p>
+ *
+ * {@code
+ * ContextPool pool = SharedEngine.pool("mylang");
+ * Value result = pool.withContext(context -> context.eval(pool.getSources().get("mylang", code, "request")));
+ * }
+ *
+ * <p>Engine options are read from {@code polyglot.*} system properties (for example
+ * {@code -Dpolyglot.engine.CompilationThreshold=500}). The default pool is configured using the
+ * {@value #MAX_CONTEXTS} and {@value #SOURCE_CACHE_SIZE} system properties, which the compiler plugin sets
+ * from {@code graal { contextPool { ... } }}. The engine is closed when the JVM exits, cancelling contexts
+ * which are still in use.</p>
+ */
+public final class SharedEngine {
+
+    public static final String MAX_CONTEXTS = "org.graalvm.plugin.pool.maxContexts";
+    public static final String SOURCE_CACHE_SIZE = "org.graalvm.plugin.pool.sourceCacheSize";
+
+    private static volatile Engine engine;
+    private static volatile ContextPool pool;
+
+    private SharedEngine() {}
+
+    /**
+     * @return The shared engine, created on first use.
+     */
+    public static Engine get() {
+        Engine result = engine;
+        if (result == null) {
+            synchronized (SharedEngine.class) {
+                result = engine;
+                if (result == null) {
+                    result = Engine.create();
+                    Runtime.getRuntime().addShutdownHook(new Thread(SharedEngine::shutdown, "shared-engine-shutdown"));
+                    engine = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the default context pool of the shared engine. The permitted languages are only used when the
+     * pool is created by the first call.
+     *
+     * @param permittedLanguages Languages of the pooled contexts (all installed languages if empty).
+     * @return The default context pool.
+     */
+    public static ContextPool pool(String... permittedLanguages) {
+        ContextPool result = pool;
+        if (result == null) {
+            synchronized (SharedEngine.class) {
+                result = pool;
+                if (result == null) {
+                    int maxContexts = Integer.getInteger(MAX_CONTEXTS, Runtime.getRuntime().availableProcessors());
+                    int cacheSize = Integer.getInteger(SOURCE_CACHE_SIZE, SourceCache.DEFAULT_SIZE);
+                    result = new ContextPool(get(), maxContexts, new SourceCache(cacheSize), permittedLanguages);
+                    pool = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check whether Truffle compiles guest code in the JVM of the engine. Truffle falls back to the interpreter
+     * (the {@code Interpreted} or {@code Default} runtime) when the JVM does not support JVMCI or the Truffle
+     * version does not match the compiler. This check is shared by the {@code verifyTruffleRuntime} task and
+     * the test support library.
+     *
+     * @param engine Any engine of the JVM.
+     * @return True if the engine uses the optimizing Graal runtime.
+     */
+    public static boolean isOptimizing(Engine engine) {
+        return engine.getImplementationName().contains("Graal");
+    }
+
+    /*
+        Closing an engine with open contexts fails, so idle pooled contexts are closed first and contexts which
+        are still in use (by threads running at exit) are cancelled.
+     */
+    static synchronized void shutdown() {
+        if (pool != null) pool.close();
+        if (engine != null) engine.close(true);
+    }
+
+}
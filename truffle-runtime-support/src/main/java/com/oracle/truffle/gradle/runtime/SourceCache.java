@@ -0,0 +1,123 @@
+package com.oracle.truffle.gradle.runtime;
+
+import org.graalvm.polyglot.Source;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>A thread-safe LRU cache of polyglot {@link Source}s. Evaluating the same cached {@code Source} object
+ * in contexts of one engine lets the languages reuse the parsed code, instead of reading and parsing the
+ * same source for every request. File sources are reloaded when the file changes.</p>
+ */
+public final class SourceCache {
+
+    public static final int DEFAULT_SIZE = 256;
+
+    private final Map<Key, Entry> cache;
+
+    public SourceCache(int maxSize) {
+        this.cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get a source with the given code.
+     *
+     * @param language Language of the source.
+     * @param code Source code.
+     * @param name Name of the source (part of the cache key).
+     * @return Cached source.
+     */
+    public Source get(String language, CharSequence code, String name) {
+        Key key = new Key(language, name, code.toString());
+        synchronized (this) {
+            Entry entry = this.cache.get(key);
+            if (entry != null) return entry.source;
+        }
+        Source source = Source.newBuilder(language, code, name).cached(true).buildLiteral();
+        synchronized (this) {
+            Entry entry = this.cache.putIfAbsent(key, new Entry(source, 0));
+            return entry == null ? source : entry.source;
+        }
+    }
+
+    /**
+     * Get a source of the given file, loading it again if the file was modified since it was cached.
+     *
+     * @param language Language of the source.
+     * @param file Source file.
+     * @return Cached source.
+     * @throws IOException If the file cannot be read.
+     */
+    public Source get(String language, File file) throws IOException {
+        Key key = new Key(language, file.getAbsolutePath(), null);
+        long modified = file.lastModified();
+        synchronized (this) {
+            Entry entry = this.cache.get(key);
+            if (entry != null && entry.modified == modified) return entry.source;
+        }
+        Source source = Source.newBuilder(language, file).cached(true).build();
+        synchronized (this) {
+            this.cache.put(key, new Entry(source, modified));
+        }
+        return source;
+    }
+
+    /**
+     * @return Number of cached sources.
+     */
+    public synchronized int size() {
+        return this.cache.size();
+    }
+
+    public synchronized void clear() {
+        this.cache.clear();
+    }
+
+    private static final class Key {
+
+        final String language;
+        final String name;
+        final String code;      // null for file sources
+
+        Key(String language, String name, String code) {
+            this.language = language;
+            this.name = name;
+            this.code = code;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return language.equals(key.language) && Objects.equals(name, key.name) && Objects.equals(code, key.code);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(language, name, code);
+        }
+
+    }
+
+    private static final class Entry {
+
+        final Source source;
+        final long modified;
+
+        Entry(Source source, long modified) {
+            this.source = source;
+            this.modified = modified;
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.oracle.truffle.gradle.runtime;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContextPoolTest {
+
+    @Test
+    public void rejectsEmptyPool() {
+        try (Engine engine = Engine.create()) {
+            new ContextPool(engine, 0, new SourceCache(1));
+            fail("A pool without contexts was created.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("at least one context"));
+        }
+    }
+
+    @Test
+    public void reusesReleasedContexts() {
+        /* The most recently released context is the next one acquired, fresh contexts are not pooled. */
+        try (Engine engine = Engine.create(); ContextPool pool = new ContextPool(engine, 2, new SourceCache(1))) {
+            Context first = pool.acquire();
+            Context second = pool.acquire();
+            assertNotSame(first, second);
+            pool.release(first);
+            pool.release(second);
+            assertSame(second, pool.acquire());
+            assertSame(first, pool.acquire());
+            // Contexts in use would keep the engine from closing.
+            pool.release(first);
+            pool.release(second);
+
+            Context fresh = pool.newContext();
+            assertNotSame(first, fresh);
+            assertNotSame(second, fresh);
+            fresh.close();
+        }
+    }
+
+    @Test
+    public void blocksWhenAllContextsAreInUse() throws Exception {
+        /* The third caller waits until one of the two contexts is returned and then gets that context. */
+        try (Engine engine = Engine.create(); ContextPool pool = new ContextPool(engine, 2, new SourceCache(1))) {
+            Context first = pool.acquire();
+            Context second = pool.acquire();
+            AtomicReference<Context> waiting = new AtomicReference<>();
+            CountDownLatch acquired = new CountDownLatch(1);
+            Thread thread = new Thread(() -> {
+                waiting.set(pool.acquire());
+                acquired.countDown();
+            });
+            thread.start();
+            assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+            pool.release(first);
+            assertTrue(acquired.await(10, TimeUnit.SECONDS));
+            assertSame(first, waiting.get());
+            thread.join();
+            pool.release(waiting.get());
+            pool.release(second);
+        }
+    }
+
+    @Test
+    public void boundsConcurrentUsers() throws Exception {
+        /* Many threads borrowing and returning contexts never use more contexts than the pool allows. */
+        int maxContexts = 3;
+        try (Engine engine = Engine.create(); ContextPool pool = new ContextPool(engine, maxContexts, new SourceCache(1))) {
+            AtomicInteger users = new AtomicInteger();
+            AtomicInteger maxUsers = new AtomicInteger();
+            Set<Context> contexts = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    tasks.add(executor.submit(() -> {
+                        for (int use = 0; use < 200; use++) {
+                            pool.withContext(context -> {
+                                int current = users.incrementAndGet();
+                                maxUsers.accumulateAndGet(current, Math::max);
+                                contexts.add(context);
+                                Thread.yield();
+                                users.decrementAndGet();
+                                return null;
+                            });
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertTrue(maxUsers.get() <= maxContexts);
+            assertTrue(contexts.size() <= maxContexts);
+            assertEquals(0, users.get());
+        }
+    }
+
+    @Test
+    public void rejectsAcquireAfterClose() {
+        try (Engine engine = Engine.create()) {
+            ContextPool pool = new ContextPool(engine, 1, new SourceCache(1));
+            Context context = pool.acquire();
+            pool.close();
+            pool.release(context);  // closed instead of pooled
+            try {
+                pool.acquire();
+                fail("A closed pool returned a context.");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains("closed"));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.oracle.truffle.gradle.runtime;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedEngineTest {
+
+    @Test
+    public void interpreterIsNotOptimizing() {
+        /* Tests of this project run without the Graal compiler. */
+        try (Engine engine = Engine.create()) {
+            assertFalse(SharedEngine.isOptimizing(engine));
+        }
+    }
+
+    @Test
+    public void shutdownClosesPoolWithContextsInUse() {
+        /* The shutdown hook must not fail when a context is still in use, and the pool is closed afterwards.
+           No other test of this project uses the shared engine, which stays closed. */
+        ContextPool pool = SharedEngine.pool();
+        assertSame(pool, SharedEngine.pool("ignored"));
+        assertSame(SharedEngine.get(), pool.getEngine());
+        pool.release(pool.acquire());
+        Context inUse = pool.acquire();
+
+        SharedEngine.shutdown();
+
+        pool.release(inUse);
+        try {
+            pool.acquire();
+            fail("The pool of a closed engine returned a context.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.oracle.truffle.gradle.runtime;
+
+import org.graalvm.polyglot.Source;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SourceCacheTest {
+
+    @Test
+    public void cachesLiteralSources() {
+        /* The name is part of the key, sources with the same code and different names are distinct. */
+        SourceCache cache = new SourceCache(SourceCache.DEFAULT_SIZE);
+        Source source = cache.get("test", "1 + 2", "request");
+        assertSame(source, cache.get("test", new StringBuilder("1 + 2"), "request"));
+        assertNotSame(source, cache.get("test", "1 + 2", "other"));
+        assertNotSame(source, cache.get("test", "1 + 3", "request"));
+        assertEquals(3, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedSources() {
+        SourceCache cache = new SourceCache(2);
+        Source first = cache.get("test", "first", "a");
+        Source second = cache.get("test", "second", "b");
+        assertSame(first, cache.get("test", "first", "a"));     // second is now the eldest
+        cache.get("test", "third", "c");
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get("test", "first", "a"));
+        assertNotSame(second, cache.get("test", "second", "b"));
+    }
+
+    @Test
+    public void reloadsModifiedFiles() throws IOException {
+        File file = File.createTempFile("source", ".test");
+        try {
+            Files.write(file.toPath(), "1 + 2".getBytes(StandardCharsets.UTF_8));
+            SourceCache cache = new SourceCache(SourceCache.DEFAULT_SIZE);
+            Source source = cache.get("test", file);
+            assertSame(source, cache.get("test", file));
+
+            Files.write(file.toPath(), "1 + 3".getBytes(StandardCharsets.UTF_8));
+            // File systems with a coarse modification time would not see the change otherwise.
+            file.setLastModified(file.lastModified() + 2000);
+            Source reloaded = cache.get("test", file);
+            assertNotSame(source, reloaded);
+            assertEquals("1 + 3", reloaded.getCharacters().toString());
+            assertEquals(1, cache.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.oracle.truffle.gradle.test;
+
+import com.oracle.truffle.gradle.runtime.SharedEngine;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Tracks Truffle compilation events of one polyglot {@link Engine} so that tests can assert that
+ * hot code actually compiles and stays compiled:</p>
+ *
+ * {@code
+ * try (CompilationTracker tracker = CompilationTracker.create()) {
+ *     Context context = tracker.newContext("mylang");
+ *     Value fib = context.eval("mylang", "...");
+ *     tracker.assertCompilesWithin("fib", 1000, () -> fib.execute(20));
+ *     tracker.assertNoDeoptimizations("fib");
+ *     tracker.assertNoInvalidations("fib");
+ *     tracker.assertCodeSizeBelow("fib", 8 * 1024);
+ * }
+ * }
+ *
+ * <p>The engine compiles synchronously on the calling thread (no background compilation), so the number
+ * of calls needed to compile a call target is deterministic. Events are collected from the compilation
+ * trace of the engine, which only uses public polyglot options. Call targets are matched by their name as
+ * printed in the trace (usually the name of the root node).</p>
+ */
+public final class CompilationTracker implements AutoCloseable {
+
+    private static final Pattern EVENT = Pattern.compile(
+            "opt (done|failed|deopt|invalidated)\\s+([^\\s|]+)"
+    );
+    private static final Pattern CODE_SIZE = Pattern.compile("CodeSize\\s+(\\d+)");
+
+    private final Engine engine;
+    private final Map<String, List<Event>> events = new LinkedHashMap<>();
+
+    private CompilationTracker(Map<String, String> options) {
+        Engine.Builder builder = Engine.newBuilder()
+                .allowExperimentalOptions(true)
+                .option("engine.BackgroundCompilation", "false")
+                .option("engine.TraceCompilation", "true")
+                .option("engine.TraceCompilationDetails", "true")
+                .logHandler(new TraceStream());
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            builder.option(option.getKey(), option.getValue());
+        }
+        this.engine = builder.build();
+    }
+
+    /**
+     * Create a tracker with default engine options.
+     */
+    public static CompilationTracker create() {
+        return new CompilationTracker(Collections.emptyMap());
+    }
+
+    /**
+     * Create a tracker with extra engine options (for example {@code engine.CompilationThreshold}).
+     */
+    public static CompilationTracker create(Map<String, String> options) {
+        return new CompilationTracker(options);
+    }
+
+    /**
+     * @return The tracked engine. Contexts must use this engine for their compilations to be tracked.
+     */
+    public Engine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * Create a new context using the tracked engine.
+     */
+    public Context newContext(String... permittedLanguages) {
+        return Context.newBuilder(permittedLanguages).engine(this.engine).allowAllAccess(true).build();
+    }
+
+    /**
+     * Invoke {@code call} repeatedly until the given call target is compiled.
+     *
+     * @return Number of calls it took to compile the call target.
+     * @throws AssertionError if the target is not compiled after {@code maxCalls} calls.
+     */
+    public int assertCompilesWithin(String callTarget, int maxCalls, Runnable call) {
+        assertOptimizingRuntime();
+        for (int i = 1; i <= maxCalls; i++) {
+            call.run();
+            if (!eventsOf(callTarget, "done").isEmpty()) {
+                return i;
+            }
+        }
+        List<Event> failures = eventsOf(callTarget, "failed");
+        throw new AssertionError(
+                "Call target " + callTarget + " not compiled within " + maxCalls + " calls" +
+                        (failures.isEmpty() ? "." : ": " + failures.get(0).line)
+        );
+    }
+
+    /**
+     * @throws AssertionError if the call target was deoptimized.
+     */
+    public void assertNoDeoptimizations(String callTarget) {
+        assertNoEvents(callTarget, "deopt", "deoptimized");
+    }
+
+    /**
+     * @throws AssertionError if the compiled code of the call target was invalidated.
+     */
+    public void assertNoInvalidations(String callTarget) {
+        assertNoEvents(callTarget, "invalidated", "invalidated");
+    }
+
+    /**
+     * @throws AssertionError if the call target was not compiled, or its largest compiled code exceeds the budget.
+     */
+    public void assertCodeSizeBelow(String callTarget, int maxBytes) {
+        List<Event> done = eventsOf(callTarget, "done");
+        if (done.isEmpty()) {
+            throw new AssertionError("Call target " + callTarget + " was not compiled.");
+        }
+        for (Event event : done) {
+            if (event.codeSize > maxBytes) {
+                throw new AssertionError(
+                        "Compiled code of " + callTarget + " has " + event.codeSize + " bytes, budget is " + maxBytes + ": " + event.line
+                );
+            }
+        }
+    }
+
+    /**
+     * @return Raw trace lines recorded for the given call target.
+     */
+    public synchronized List<String> getTrace(String callTarget) {
+        List<String> result = new ArrayList<>();
+        for (Event event : this.events.getOrDefault(callTarget, Collections.emptyList())) {
+            result.add(event.line);
+        }
+        return result;
+    }
+
+    /**
+     * Forget all recorded events (e.g. after a warmup phase).
+     */
+    public synchronized void reset() {
+        this.events.clear();
+    }
+
+    @Override
+    public void close() {
+        this.engine.close();
+    }
+
+    private void assertOptimizingRuntime() {
+        if (!SharedEngine.isOptimizing(this.engine)) {
+            throw new AssertionError(
+                    "Truffle runtime is not optimizing (" + this.engine.getImplementationName() + "). Is the Graal compiler enabled for this test task?"
+            );
+        }
+    }
+
+    private void assertNoEvents(String callTarget, String kind, String description) {
+        List<Event> matching = eventsOf(callTarget, kind);
+        if (!matching.isEmpty()) {
+            throw new AssertionError(
+                    "Call target " + callTarget + " was " + description + " " + matching.size() + " time(s): " + matching.get(0).line
+            );
+        }
+    }
+
+    private synchronized List<Event> eventsOf(String callTarget, String kind) {
+        List<Event> result = new ArrayList<>();
+        for (Event event : this.events.getOrDefault(callTarget, Collections.emptyList())) {
+            if (event.kind.equals(kind)) result.add(event);
+        }
+        return result;
+    }
+
+    private synchronized void record(String line) {
+        Event event = Event.parse(line);
+        if (event == null) return;
+        this.events.computeIfAbsent(event.callTarget, k -> new ArrayList<>()).add(event);
+    }
+
+    static final class Event {
+
+        final String callTarget;
+        final String kind;
+        final int codeSize;
+        final String line;
+
+        Event(String callTarget, String kind, int codeSize, String line) {
+            this.callTarget = callTarget;
+            this.kind = kind;
+            this.codeSize = codeSize;
+            this.line = line;
+        }
+
+        /* Returns null for trace lines which do not report a compilation result. */
+        static Event parse(String line) {
+            Matcher matcher = EVENT.matcher(line);
+            if (!matcher.find()) return null;
+            Matcher size = CODE_SIZE.matcher(line);
+            int codeSize = size.find() ? Integer.parseInt(size.group(1)) : 0;
+            return new Event(matcher.group(2), matcher.group(1), codeSize, line.trim());
+        }
+
+    }
+
+    /* Receives the engine log and splits it into lines. */
+    private final class TraceStream extends OutputStream {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                record(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                bytes.reset();
+            } else {
+                bytes.write(b);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.oracle.truffle.gradle.test;
+
+import com.oracle.truffle.gradle.runtime.ContextPool;
+import com.oracle.truffle.gradle.runtime.SharedEngine;
+import org.graalvm.polyglot.Context;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * <p>JUnit rule which gives every test a context from the pool of the {@link SharedEngine}. The engine
+ * is shared by all test classes running in the same JVM, so guest code compiled by one test class
+ * stays warm for the others:</p>
+ *
+ * {@code
+ * public class InterpreterTest {
+ *
+ *     @Rule
+ *     public final SharedContextRule polyglot = new SharedContextRule("mylang");
+ *
+ *     @Test
+ *     public void evaluates() {
+ *         assertEquals(42, polyglot.getContext().eval("mylang", "6 * 7").asInt());
+ *     }
+ *
+ * }
+ * }
+ *
+ * <p>Pooled contexts are reused between tests, so tests should not depend on fresh guest global state
+ * (use {@link #newContext()} for such tests). The engine is only shared if the test task does not fork
+ * a new JVM for every test class ({@code forkEvery} is 0, the default).</p>
+ */
+public final class SharedContextRule implements TestRule {
+
+    private final String[] permittedLanguages;
+    private Context context;
+
+    public SharedContextRule(String... permittedLanguages) {
+        this.permittedLanguages = permittedLanguages;
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                ContextPool pool = getPool();
+                context = pool.acquire();
+                try {
+                    base.evaluate();
+                } finally {
+                    pool.release(context);
+                    context = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The pooled context of the running test.
+     */
+    public Context getContext() {
+        if (this.context == null) {
+            throw new IllegalStateException("Context is only available while a test is running.");
+        }
+        return this.context;
+    }
+
+    /**
+     * @return A fresh context using the shared engine, closed by the caller.
+     */
+    public Context newContext() {
+        return getPool().newContext();
+    }
+
+    /**
+     * @return The pool of the shared engine (with its source cache).
+     */
+    public ContextPool getPool() {
+        return SharedEngine.pool(this.permittedLanguages);
+    }
+
+}
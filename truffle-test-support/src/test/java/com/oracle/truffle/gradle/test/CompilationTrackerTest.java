@@ -0,0 +1,43 @@
+package com.oracle.truffle.gradle.test;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompilationTrackerTest {
+
+    @Test
+    public void parsesCompilationResults() {
+        /* Successful compilations carry the code size, other results are recorded without it. */
+        CompilationTracker.Event done = CompilationTracker.Event.parse(
+                "[engine] opt done         fib                         |ASTSize      21/   21 |Time   142( 107+35  )ms " +
+                        "|DirectCallNodes I    0/D    0 |GraalNodes   109/  124 |CodeSize          460 |Source fib.sl:1\n"
+        );
+        assertEquals("fib", done.callTarget);
+        assertEquals("done", done.kind);
+        assertEquals(460, done.codeSize);
+        assertTrue(done.line.endsWith("|Source fib.sl:1"));
+
+        CompilationTracker.Event deopt = CompilationTracker.Event.parse(
+                "[engine] opt deopt        loop|ASTSize      12/   12 |Calls/Thres    1000/    3 |Source loop.sl:3"
+        );
+        assertEquals("loop", deopt.callTarget);
+        assertEquals("deopt", deopt.kind);
+        assertEquals(0, deopt.codeSize);
+
+        assertEquals("invalidated", CompilationTracker.Event.parse("[engine] opt invalidated  fib |Reason assumption").kind);
+        assertEquals("failed", CompilationTracker.Event.parse("[engine] opt failed       fib |Reason: bailout").kind);
+    }
+
+    @Test
+    public void ignoresOtherTraceLines() {
+        /* Queued and started compilations, or unrelated log lines, are not compilation results. */
+        assertNull(CompilationTracker.Event.parse("[engine] opt queued       fib |ASTSize      21/   21 |Calls/Thres    1000/    3"));
+        assertNull(CompilationTracker.Event.parse("[engine] opt start        fib |ASTSize      21/   21"));
+        assertNull(CompilationTracker.Event.parse("[engine] WARNING: The polyglot context is using an implementation that does not support runtime compilation."));
+        assertNull(CompilationTracker.Event.parse(""));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.oracle.truffle.gradle.test;
+
+import org.graalvm.polyglot.Context;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedContextRuleTest {
+
+    @Test
+    public void reusesPooledContextBetweenTests() throws Throwable {
+        /* Consecutive tests get the same warm context, which is only available while a test runs. */
+        SharedContextRule rule = new SharedContextRule();
+        List<Context> contexts = new ArrayList<>();
+        Statement test = new Statement() {
+            @Override
+            public void evaluate() {
+                contexts.add(rule.getContext());
+            }
+        };
+        rule.apply(test, Description.EMPTY).evaluate();
+        rule.apply(test, Description.EMPTY).evaluate();
+
+        assertEquals(2, contexts.size());
+        assertSame(contexts.get(0), contexts.get(1));
+        assertNotContext(rule);
+    }
+
+    @Test
+    public void returnsContextWhenTestFails() throws Throwable {
+        SharedContextRule rule = new SharedContextRule();
+        Statement failing = new Statement() {
+            @Override
+            public void evaluate() {
+                throw new AssertionError("test failure");
+            }
+        };
+        try {
+            rule.apply(failing, Description.EMPTY).evaluate();
+            fail("The failure of the test was lost.");
+        } catch (AssertionError e) {
+            assertEquals("test failure", e.getMessage());
+        }
+        assertNotContext(rule);
+        // The context went back to the pool, all contexts can still be acquired.
+        int available = Integer.getInteger("org.graalvm.plugin.pool.maxContexts", Runtime.getRuntime().availableProcessors());
+        List<Context> acquired = new ArrayList<>();
+        for (int i = 0; i < available; i++) {
+            acquired.add(rule.getPool().acquire());
+        }
+        for (Context context : acquired) {
+            rule.getPool().release(context);
+        }
+    }
+
+    @Test
+    public void createsFreshContextsOnTheSharedEngine() {
+        SharedContextRule rule = new SharedContextRule();
+        Context pooled = rule.getPool().acquire();
+        try (Context fresh = rule.newContext()) {
+            assertNotSame(pooled, fresh);
+        } finally {
+            rule.getPool().release(pooled);
+        }
+    }
+
+    private static void assertNotContext(SharedContextRule rule) {
+        try {
+            rule.getContext();
+            fail("Context is available outside of a test.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("while a test is running"));
+        }
+    }
+
+}